@@ -0,0 +1,50 @@
+package com.wly.chatgptsdk.benchmark;
+
+import com.wly.chatgptsdk.codec.JsonCodec;
+import com.wly.chatgptsdk.domain.embedd.EmbeddingResponse;
+import com.wly.chatgptsdk.domain.embedd.FloatEmbeddingResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 1536 维向量应答的反序列化
+ * bigDecimal 为 EmbeddingResponse 的 List<BigDecimal>；floatArray 与 base64 为 FloatEmbeddingResponse 的两种编码。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmbeddingDeserializationBenchmark {
+
+    @Param({"1536"})
+    public int dimensions;
+
+    private byte[] json;
+    private byte[] base64;
+
+    @Setup
+    public void setup() {
+        json = Fixtures.embeddingResponse(dimensions, false);
+        base64 = Fixtures.embeddingResponse(dimensions, true);
+    }
+
+    @Benchmark
+    public EmbeddingResponse bigDecimal() throws IOException {
+        return JsonCodec.objectMapper().readValue(json, EmbeddingResponse.class);
+    }
+
+    @Benchmark
+    public FloatEmbeddingResponse floatArray() throws IOException {
+        return JsonCodec.objectMapper().readValue(json, FloatEmbeddingResponse.class);
+    }
+
+    @Benchmark
+    public FloatEmbeddingResponse base64() throws IOException {
+        return JsonCodec.objectMapper().readValue(base64, FloatEmbeddingResponse.class);
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.wly.chatgptsdk.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+
+/**
+ * 基准测试使用的固定数据；随机数种子固定，多次运行的输入一致
+ */
+final class Fixtures {
+
+    private static final String[] WORDS = {"the", "model", "returns", "a", "stream", "of", "tokens", "that", "are",
+            "decoded", "into", "deltas", "while", "the", "client", "keeps", "latency", "low", "和", "中文", "内容"};
+
+    private Fixtures() {
+    }
+
+    /**
+     * 由 words 个单词组成的句子
+     */
+    static String sentence(int seed, int words) {
+        Random random = new Random(seed);
+        StringBuilder sentence = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) sentence.append(' ');
+            sentence.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sentence.toString();
+    }
+
+    /**
+     * 对话流式应答的一个分片；与 OpenAI 返回的 data 字段一致
+     */
+    static byte[] chatChunk(int i) {
+        String json = "{\"id\":\"chatcmpl-7QyqpwdfhqwajicIEznoc6Q47XAyW\",\"object\":\"chat.completion.chunk\",\"created\":1677652288,"
+                + "\"model\":\"gpt-3.5-turbo-0613\",\"choices\":[{\"index\":0,\"delta\":{\"content\":\" " + WORDS[i % WORDS.length]
+                + "\"},\"finish_reason\":null}]}";
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 非流式对话应答
+     */
+    static String chatResponse() {
+        return "{\"id\":\"chatcmpl-123\",\"object\":\"chat.completion\",\"created\":1677652288,\"model\":\"gpt-3.5-turbo\","
+                + "\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"" + sentence(1, 40) + "\"},"
+                + "\"finish_reason\":\"stop\"}],\"usage\":{\"prompt_tokens\":9,\"completion_tokens\":12,\"total_tokens\":21}}";
+    }
+
+    /**
+     * 向量应答；base64 为 true 时与 encoding_format=base64 的格式一致
+     */
+    static byte[] embeddingResponse(int dimensions, boolean base64) {
+        Random random = new Random(dimensions);
+        float[] vector = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = (random.nextFloat() - 0.5f) * 0.1f;
+        }
+        StringBuilder json = new StringBuilder("{\"object\":\"list\",\"data\":[{\"object\":\"embedding\",\"index\":0,\"embedding\":");
+        if (base64) {
+            ByteBuffer bytes = ByteBuffer.allocate(dimensions * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            bytes.asFloatBuffer().put(vector);
+            json.append('"').append(Base64.getEncoder().encodeToString(bytes.array())).append('"');
+        } else {
+            json.append('[');
+            for (int i = 0; i < dimensions; i++) {
+                if (i > 0) json.append(',');
+                json.append(vector[i]);
+            }
+            json.append(']');
+        }
+        json.append("}],\"model\":\"text-embedding-ada-002\",\"usage\":{\"prompt_tokens\":8,\"total_tokens\":8}}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.wly.chatgptsdk.benchmark;
+
+import com.wly.chatgptsdk.circuit.CircuitBreakerRegistry;
+import com.wly.chatgptsdk.common.Constants;
+import com.wly.chatgptsdk.domain.chat.ChatCompletionRequest;
+import com.wly.chatgptsdk.domain.chat.ChatCompletionResponse;
+import com.wly.chatgptsdk.domain.chat.Message;
+import com.wly.chatgptsdk.metrics.InMemoryMetricsRecorder;
+import com.wly.chatgptsdk.retry.RetryPolicy;
+import com.wly.chatgptsdk.session.Configuration;
+import com.wly.chatgptsdk.session.OpenAiSession;
+import com.wly.chatgptsdk.session.defaults.DefaultOpenAiSessionFactory;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一次同步对话请求的端到端开销：序列化、OpenAiInterceptor 等拦截器、本机 MockWebServer 往返与反序列化
+ * chain 为 plain 时只有默认拦截器；resilient 时额外开启重试、熔断与指标记录，用于观察这些拦截器的成本。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InterceptorChainBenchmark {
+
+    @Param({"plain", "resilient"})
+    public String chain;
+
+    private MockWebServer server;
+    private OpenAiSession session;
+    private ChatCompletionRequest request;
+
+    @Setup
+    public void setup() throws IOException {
+        String body = Fixtures.chatResponse();
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @NotNull
+            @Override
+            public MockResponse dispatch(@NotNull RecordedRequest recordedRequest) {
+                return new MockResponse().setHeader("Content-Type", "application/json").setBody(body);
+            }
+        });
+        server.start();
+
+        Configuration configuration = new Configuration();
+        configuration.setApiHost(server.url("/").toString());
+        configuration.setApiKey("sk-benchmark");
+        if ("resilient".equals(chain)) {
+            configuration.setRetryPolicy(RetryPolicy.builder().build());
+            configuration.setCircuitBreakers(CircuitBreakerRegistry.builder().build());
+            configuration.setMetricsRecorder(new InMemoryMetricsRecorder());
+        }
+        session = new DefaultOpenAiSessionFactory(configuration).openSession();
+
+        request = new ChatCompletionRequest();
+        request.setMessages(Collections.singletonList(Message.builder().role(Constants.Role.USER).content("写一个java冒泡排序").build()));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Benchmark
+    public ChatCompletionResponse completions() {
+        return session.completions(request);
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.wly.chatgptsdk.benchmark;
+
+import com.wly.chatgptsdk.codec.JsonRequestBody;
+import com.wly.chatgptsdk.common.Constants;
+import com.wly.chatgptsdk.domain.chat.ChatCompletionRequest;
+import com.wly.chatgptsdk.domain.chat.Message;
+import okio.Buffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ChatCompletionRequest 序列化；与 Retrofit 发送请求时相同，经由 JsonRequestBody 写入 okio Buffer
+ * history 为对话历史的消息数量，分别对应单轮问答与长对话。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"2", "100"})
+    public int history;
+
+    private ChatCompletionRequest request;
+    private final Buffer buffer = new Buffer();
+
+    @Setup
+    public void setup() {
+        List<Message> messages = new ArrayList<>();
+        messages.add(Message.builder().role(Constants.Role.SYSTEM).content("You are a helpful assistant.").build());
+        for (int i = 1; i < history; i++) {
+            Constants.Role role = i % 2 == 1 ? Constants.Role.USER : Constants.Role.ASSISTANT;
+            messages.add(Message.builder().role(role).content(Fixtures.sentence(i, 60)).build());
+        }
+        request = new ChatCompletionRequest();
+        request.setMessages(messages);
+    }
+
+    @Benchmark
+    public long serialize() throws IOException {
+        JsonRequestBody.create(request).writeTo(buffer);
+        long size = buffer.size();
+        buffer.clear();
+        return size;
+    }
+
+}
@@ -0,0 +1,74 @@
+package com.wly.chatgptsdk.benchmark;
+
+import com.alibaba.fastjson.JSON;
+import com.wly.chatgptsdk.codec.JsonCodec;
+import com.wly.chatgptsdk.domain.chat.ChatCompletionResponse;
+import com.wly.chatgptsdk.stream.ChatDeltaDecoder;
+import com.wly.chatgptsdk.stream.ChatDeltaListener;
+import okhttp3.sse.EventSource;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 流式分片解码；每次操作解码一次应答中的 64 个分片
+ * delta 为 chatCompletions(ChatCompletionRequest) 使用的 ChatDeltaDecoder，直接从字节读取增量字段；
+ * fastjson 与 jackson 为先转 String 再解析成 ChatCompletionResponse 的做法，作为对照。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SseDecodingBenchmark {
+
+    private static final int CHUNKS = 64;
+
+    private final byte[][] chunks = new byte[CHUNKS][];
+    private final ChatDeltaDecoder decoder = new ChatDeltaDecoder();
+    private Blackhole blackhole;
+    private ChatDeltaListener listener;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        for (int i = 0; i < CHUNKS; i++) {
+            chunks[i] = Fixtures.chatChunk(i);
+        }
+        listener = new ChatDeltaListener() {
+            @Override
+            public void onDelta(EventSource eventSource, int index, String role, char[] content, int offset, int length, String finishReason) {
+                SseDecodingBenchmark.this.blackhole.consume(content[offset]);
+                SseDecodingBenchmark.this.blackhole.consume(length);
+            }
+        };
+    }
+
+    @Benchmark
+    public void delta() throws IOException {
+        for (byte[] chunk : chunks) {
+            decoder.decode(chunk, 0, chunk.length, null, listener);
+        }
+    }
+
+    @Benchmark
+    public void fastjson(Blackhole blackhole) {
+        for (byte[] chunk : chunks) {
+            ChatCompletionResponse response = JSON.parseObject(new String(chunk, StandardCharsets.UTF_8), ChatCompletionResponse.class);
+            blackhole.consume(response.getChoices().get(0).getDelta().getContent());
+        }
+    }
+
+    @Benchmark
+    public void jackson(Blackhole blackhole) throws IOException {
+        for (byte[] chunk : chunks) {
+            ChatCompletionResponse response = JsonCodec.objectMapper().readValue(chunk, ChatCompletionResponse.class);
+            blackhole.consume(response.getChoices().get(0).getDelta().getContent());
+        }
+    }
+
+}
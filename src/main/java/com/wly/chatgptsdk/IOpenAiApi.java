@@ -8,6 +8,7 @@ import com.wly.chatgptsdk.domain.edits.EditRequest;
 import com.wly.chatgptsdk.domain.edits.EditResponse;
 import com.wly.chatgptsdk.domain.embedd.EmbeddingRequest;
 import com.wly.chatgptsdk.domain.embedd.EmbeddingResponse;
+import com.wly.chatgptsdk.domain.embedd.FloatEmbeddingResponse;
 import com.wly.chatgptsdk.domain.files.DeleteFileResponse;
 import com.wly.chatgptsdk.domain.files.UploadFileResponse;
 import com.wly.chatgptsdk.domain.images.ImageRequest;
@@ -158,6 +159,15 @@ public interface IOpenAiApi {
     @POST("v1/embeddings")
     Single<EmbeddingResponse> embeddings(@Body EmbeddingRequest embeddingRequest);
 
+    /**
+     * 向量计算；向量直接反序列化为 float[]，配合 encoding_format=base64 使用
+     *
+     * @param embeddingRequest 请求对象
+     * @return 应答结果
+     */
+    @POST("v1/embeddings")
+    Single<FloatEmbeddingResponse> floatEmbeddings(@Body EmbeddingRequest embeddingRequest);
+
     /**
      * 文件列表；在你上传文件到服务端后，可以获取列表信息
      * curl https://api.openai.com/v1/files \
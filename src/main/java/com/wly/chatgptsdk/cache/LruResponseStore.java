@@ -0,0 +1,48 @@
+package com.wly.chatgptsdk.cache;
+
+import com.wly.chatgptsdk.common.LruCache;
+
+/**
+ * 进程内的应答存储；容量有限，按 LRU 淘汰，读取时检查过期
+ */
+public class LruResponseStore implements ResponseStore {
+
+    private final LruCache<String, Entry> cache;
+
+    public LruResponseStore(int maxSize) {
+        this.cache = new LruCache<>(maxSize);
+    }
+
+    @Override
+    public byte[] get(String key) {
+        Entry entry = cache.get(key);
+        if (null == entry) return null;
+        if (entry.expireAt <= System.currentTimeMillis()) {
+            cache.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    @Override
+    public void put(String key, byte[] value, long ttlMillis) {
+        cache.put(key, new Entry(value, System.currentTimeMillis() + ttlMillis));
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    private static final class Entry {
+
+        private final byte[] value;
+        private final long expireAt;
+
+        Entry(byte[] value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+
+    }
+
+}
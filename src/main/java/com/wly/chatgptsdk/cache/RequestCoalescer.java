@@ -0,0 +1,264 @@
+package com.wly.chatgptsdk.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.sse.EventSource;
+import okhttp3.sse.EventSourceListener;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 请求合并
+ * 规范化后相同的并发请求只向上游发送一次，所有等待方得到同一个结果或异常（应答对象是共享的，调用方不应修改）。
+ * 流式对话同样合并：后加入的监听先重放已收到的事件，再与其他监听一起接收后续事件；
+ * 所有监听都取消后才取消上游请求。流式回调在共享的锁内分发，只适合不阻塞的监听；一个监听抛出异常不影响其他监听。
+ * 通过 Configuration#requestCoalescer 开启，同一个工厂打开的同步与异步会话共享合并状态。
+ */
+@Slf4j
+public class RequestCoalescer {
+
+    private final SingleFlight<String, Object> calls = new SingleFlight<>();
+    private final ConcurrentHashMap<String, SharedStream> streams = new ConcurrentHashMap<>();
+
+    /**
+     * 同步调用
+     *
+     * @param request      请求对象
+     * @param responseType 应答类型；同一请求可能对应不同接口，应答类型也参与合并键
+     * @param call         实际调用
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(Object request, Class<T> responseType, Supplier<T> call) {
+        return (T) calls.execute(RequestKey.of(request, responseType.getName()), (Supplier<Object>) call);
+    }
+
+    /**
+     * 异步调用
+     *
+     * @param request      请求对象
+     * @param responseType 应答类型；同一请求可能对应不同接口，应答类型也参与合并键
+     * @param call         实际调用
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> executeAsync(Object request, Class<T> responseType, Supplier<CompletableFuture<T>> call) {
+        Supplier<CompletableFuture<Object>> loader = () -> (CompletableFuture<Object>) call.get();
+        return (CompletableFuture<T>) (CompletableFuture<?>) calls.executeAsync(RequestKey.of(request, responseType.getName()), loader);
+    }
+
+    /**
+     * 加入流式应答；没有进行中的相同请求时由 starter 开启上游事件源
+     *
+     * @param request   请求对象
+     * @param qualifier 附加区分信息；可为空
+     * @param listener  监听
+     * @param starter   开启上游事件源
+     * @return 当前监听的事件源；取消时只移除该监听
+     */
+    public EventSource stream(Object request, String qualifier, EventSourceListener listener, Function<EventSourceListener, EventSource> starter) {
+        String key = RequestKey.of(request, qualifier);
+        for (; ; ) {
+            SharedStream stream = streams.get(key);
+            if (null == stream) {
+                SharedStream created = new SharedStream(key);
+                if (null != streams.putIfAbsent(key, created)) continue;
+                // 先加入再开启，不会错过任何事件
+                EventSource member = created.join(listener);
+                created.start(starter);
+                return member;
+            }
+            EventSource member = stream.join(listener);
+            if (null != member) return member;
+            // 已结束的流不再接受加入
+            streams.remove(key, stream);
+        }
+    }
+
+    /**
+     * 进行中的调用与流数量
+     */
+    public int inFlight() {
+        return calls.inFlight() + streams.size();
+    }
+
+    /**
+     * 被多个监听共享的上游事件流；事件的记录与分发都在锁内完成，重放与实时事件的顺序一致
+     * 回调在上游的读取线程与锁内执行，监听不应阻塞。每个监听的回调相互隔离：onOpen 或 onEvent 抛出异常时只移除该监听，
+     * 并以该异常回调它的 onFailure，其余监听照常接收事件。
+     */
+    private final class SharedStream extends EventSourceListener {
+
+        private final String key;
+        private final List<String[]> events = new ArrayList<>();
+        /** 监听可能在回调中取消自己或其他监听，遍历时需要快照语义，并跳过已离开的监听 */
+        private final List<Member> members = new CopyOnWriteArrayList<>();
+
+        private volatile EventSource upstream;
+        private Response openResponse;
+        private boolean terminated;
+
+        SharedStream(String key) {
+            this.key = key;
+        }
+
+        void start(Function<EventSourceListener, EventSource> starter) {
+            try {
+                upstream = starter.apply(this);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    terminated = true;
+                    members.clear();
+                }
+                streams.remove(key, this);
+                throw e;
+            }
+            synchronized (this) {
+                // 开启过程中所有监听都已取消
+                if (members.isEmpty()) cancelUpstream();
+            }
+        }
+
+        synchronized EventSource join(EventSourceListener listener) {
+            if (terminated) return null;
+            Member member = new Member(this, listener);
+            // 先登记再重放：重放过程中取消的监听经由 leave 正常移除，不会留下一个让上游一直运行的成员
+            members.add(member);
+            if (null != openResponse) {
+                Response response = openResponse;
+                deliver(member, () -> listener.onOpen(member, response));
+            }
+            for (int i = 0; i < events.size() && !member.left; i++) {
+                String[] event = events.get(i);
+                deliver(member, () -> listener.onEvent(member, event[0], event[1], event[2]));
+            }
+            return member;
+        }
+
+        synchronized void leave(Member member) {
+            remove(member);
+        }
+
+        /**
+         * 移除监听；最后一个监听离开时取消上游
+         */
+        private void remove(Member member) {
+            member.left = true;
+            if (!members.remove(member) || !members.isEmpty() || terminated) return;
+            terminated = true;
+            streams.remove(key, this);
+            // 尚未开启时由 start 负责取消
+            if (null != upstream) upstream.cancel();
+        }
+
+        private void cancelUpstream() {
+            terminated = true;
+            streams.remove(key, this);
+            upstream.cancel();
+        }
+
+        /**
+         * 向单个监听分发事件；监听抛出异常时只移除该监听
+         */
+        private void deliver(Member member, Runnable callback) {
+            if (member.left) return;
+            try {
+                callback.run();
+            } catch (Throwable t) {
+                remove(member);
+                try {
+                    member.listener.onFailure(member, t, null);
+                } catch (Throwable e) {
+                    log.warn("coalesced stream listener failed in onFailure", e);
+                }
+            }
+        }
+
+        /**
+         * 分发终止事件；流已结束，监听抛出的异常只记录日志
+         */
+        private void terminate(Member member, Runnable callback) {
+            if (member.left) return;
+            member.left = true;
+            try {
+                callback.run();
+            } catch (Throwable t) {
+                log.warn("coalesced stream listener failed on termination", t);
+            }
+        }
+
+        @Override
+        public synchronized void onOpen(@NotNull EventSource eventSource, @NotNull Response response) {
+            openResponse = response;
+            for (Member member : members) {
+                deliver(member, () -> member.listener.onOpen(member, response));
+            }
+        }
+
+        @Override
+        public synchronized void onEvent(@NotNull EventSource eventSource, String id, String type, @NotNull String data) {
+            events.add(new String[]{id, type, data});
+            for (Member member : members) {
+                deliver(member, () -> member.listener.onEvent(member, id, type, data));
+            }
+        }
+
+        @Override
+        public synchronized void onClosed(@NotNull EventSource eventSource) {
+            terminated = true;
+            streams.remove(key, this);
+            for (Member member : members) {
+                terminate(member, () -> member.listener.onClosed(member));
+            }
+            members.clear();
+        }
+
+        @Override
+        public synchronized void onFailure(@NotNull EventSource eventSource, Throwable t, Response response) {
+            terminated = true;
+            streams.remove(key, this);
+            for (Member member : members) {
+                terminate(member, () -> member.listener.onFailure(member, t, response));
+            }
+            members.clear();
+        }
+
+    }
+
+    /**
+     * 单个监听看到的事件源
+     */
+    private static final class Member implements EventSource {
+
+        private final SharedStream stream;
+        private final EventSourceListener listener;
+        /** 已离开共享流；由 SharedStream 的锁保护 */
+        private boolean left;
+
+        Member(SharedStream stream, EventSourceListener listener) {
+            this.stream = stream;
+            this.listener = listener;
+        }
+
+        @NotNull
+        @Override
+        public Request request() {
+            EventSource upstream = stream.upstream;
+            if (null == upstream) throw new IllegalStateException("stream not started");
+            return upstream.request();
+        }
+
+        @Override
+        public void cancel() {
+            stream.leave(this);
+        }
+
+    }
+
+}
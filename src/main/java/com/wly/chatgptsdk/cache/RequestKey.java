@@ -0,0 +1,38 @@
+package com.wly.chatgptsdk.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.wly.chatgptsdk.codec.JsonCodec;
+import okio.Buffer;
+
+/**
+ * 请求的规范化键
+ * 请求类型与 JSON 的 sha256：字段按声明顺序输出，Map 按键排序，内容相同的请求总是得到同样的键。
+ */
+public final class RequestKey {
+
+    private RequestKey() {
+    }
+
+    public static String of(Object request) {
+        return of(request, null);
+    }
+
+    /**
+     * @param request   请求对象
+     * @param qualifier 附加区分信息，如调用方指定的 apiHost 与 apiKey；可为空
+     */
+    public static String of(Object request, String qualifier) {
+        try {
+            byte[] json = JsonCodec.writerFor(request.getClass())
+                    .with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+                    .writeValueAsBytes(request);
+            Buffer buffer = new Buffer().writeUtf8(request.getClass().getName()).writeByte(0);
+            if (null != qualifier) buffer.writeUtf8(qualifier).writeByte(0);
+            return buffer.write(json).sha256().hex();
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("request is not serializable: " + request.getClass().getName(), e);
+        }
+    }
+
+}
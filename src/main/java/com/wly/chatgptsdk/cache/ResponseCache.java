@@ -0,0 +1,140 @@
+package com.wly.chatgptsdk.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.wly.chatgptsdk.codec.JsonCodec;
+import com.wly.chatgptsdk.domain.chat.ChatCompletionRequest;
+import com.wly.chatgptsdk.domain.qa.QACompletionRequest;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 确定性请求的应答缓存
+ * 只缓存 temperature 为 0 的非流式请求。缓存键是请求的 RequestKey，同样的请求总是得到同样的键。
+ * 命中时直接返回，不发起网络请求。
+ * 应答以 JSON 字节存放，每次命中都反序列化出新的对象，调用方修改应答不会影响缓存。
+ * 通过 Configuration#responseCache 开启。
+ */
+@Slf4j
+public class ResponseCache {
+
+    private final ResponseStore store;
+    private final long ttlMillis;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * 进程内缓存
+     *
+     * @param maxSize 最多缓存的应答数
+     * @param ttl     有效期
+     * @param unit    时间单位
+     */
+    public ResponseCache(int maxSize, long ttl, TimeUnit unit) {
+        this(new LruResponseStore(maxSize), ttl, unit);
+    }
+
+    /**
+     * 自定义存储
+     *
+     * @param store 存储
+     * @param ttl   有效期
+     * @param unit  时间单位
+     */
+    public ResponseCache(ResponseStore store, long ttl, TimeUnit unit) {
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("ttl must be positive: " + ttl);
+        }
+        this.store = store;
+        this.ttlMillis = unit.toMillis(ttl);
+    }
+
+    public static boolean cacheable(ChatCompletionRequest chatCompletionRequest) {
+        return !chatCompletionRequest.isStream() && chatCompletionRequest.getTemperature() == 0;
+    }
+
+    public static boolean cacheable(QACompletionRequest qaCompletionRequest) {
+        return !qaCompletionRequest.isStream() && qaCompletionRequest.getTemperature() == 0;
+    }
+
+    /**
+     * 缓存键；见 RequestKey
+     */
+    public String key(Object request) {
+        return RequestKey.of(request);
+    }
+
+    /**
+     * 同步读取；未命中时调用 loader 并写入缓存
+     */
+    public <T> T load(Object request, Class<T> type, Supplier<T> loader) {
+        String key = key(request);
+        T cached = get(key, type);
+        if (null != cached) return cached;
+        T response = loader.get();
+        put(key, response);
+        return response;
+    }
+
+    /**
+     * 异步读取；未命中时调用 loader，应答成功后写入缓存
+     */
+    public <T> CompletableFuture<T> loadAsync(Object request, Class<T> type, Supplier<CompletableFuture<T>> loader) {
+        String key = key(request);
+        T cached = get(key, type);
+        if (null != cached) return CompletableFuture.completedFuture(cached);
+        CompletableFuture<T> future = loader.get();
+        future.thenAccept(response -> put(key, response));
+        return future;
+    }
+
+    /**
+     * 读取缓存；无法解析的条目视为未命中
+     */
+    public <T> T get(String key, Class<T> type) {
+        byte[] bytes = store.get(key);
+        if (null != bytes) {
+            try {
+                T response = JsonCodec.objectMapper().readValue(bytes, type);
+                hits.increment();
+                return response;
+            } catch (IOException e) {
+                log.warn("discard unreadable cached response {}", key, e);
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    public void put(String key, Object response) {
+        if (null == response) return;
+        try {
+            store.put(key, JsonCodec.writerFor(response.getClass()).writeValueAsBytes(response), ttlMillis);
+        } catch (JsonProcessingException e) {
+            log.warn("skip caching response {}", key, e);
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * 命中率；没有请求时为 0
+     */
+    public double hitRate() {
+        long hits = hits();
+        long total = hits + misses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+}
@@ -0,0 +1,26 @@
+package com.wly.chatgptsdk.cache;
+
+/**
+ * 应答缓存的存储
+ * 值是应答的 JSON 字节，便于接入 Redis 等外部存储；实现需要线程安全，并自行处理过期。
+ */
+public interface ResponseStore {
+
+    /**
+     * 读取缓存
+     *
+     * @param key 缓存键
+     * @return 应答字节；不存在或已过期返回 null
+     */
+    byte[] get(String key);
+
+    /**
+     * 写入缓存
+     *
+     * @param key       缓存键
+     * @param value     应答字节
+     * @param ttlMillis 有效期，单位毫秒
+     */
+    void put(String key, byte[] value, long ttlMillis);
+
+}
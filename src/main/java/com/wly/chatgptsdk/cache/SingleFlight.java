@@ -0,0 +1,84 @@
+package com.wly.chatgptsdk.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 合并相同键的并发调用
+ * 同一个键同时只有一次调用在执行，期间到达的调用等待并共享它的结果或异常；调用结束后键即被移除，之后的调用重新执行。
+ *
+ * @param <K> 键
+ * @param <V> 结果
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> calls = new ConcurrentHashMap<>();
+
+    /**
+     * 同步执行；已有相同键的调用时阻塞等待其结果
+     */
+    public V execute(K key, Supplier<V> loader) {
+        CompletableFuture<V> promise = new CompletableFuture<>();
+        CompletableFuture<V> existing = calls.putIfAbsent(key, promise);
+        if (null != existing) return await(existing);
+        try {
+            V value = loader.get();
+            calls.remove(key, promise);
+            promise.complete(value);
+            return value;
+        } catch (Throwable e) {
+            calls.remove(key, promise);
+            promise.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * 异步执行；已有相同键的调用时直接共享其结果
+     * 每个调用方得到各自的 future，取消其中一个不会影响其他调用方。
+     */
+    public CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> loader) {
+        CompletableFuture<V> promise = new CompletableFuture<>();
+        CompletableFuture<V> existing = calls.putIfAbsent(key, promise);
+        if (null != existing) return existing.thenApply(value -> value);
+        try {
+            loader.get().whenComplete((value, throwable) -> {
+                calls.remove(key, promise);
+                if (null != throwable) {
+                    promise.completeExceptionally(unwrap(throwable));
+                } else {
+                    promise.complete(value);
+                }
+            });
+        } catch (Throwable e) {
+            calls.remove(key, promise);
+            promise.completeExceptionally(e);
+        }
+        return promise.thenApply(value -> value);
+    }
+
+    /**
+     * 正在执行的调用数
+     */
+    public int inFlight() {
+        return calls.size();
+    }
+
+    private static <V> V await(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw e;
+        }
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        return throwable instanceof CompletionException && null != throwable.getCause() ? throwable.getCause() : throwable;
+    }
+
+}
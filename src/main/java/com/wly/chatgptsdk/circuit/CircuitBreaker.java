@@ -0,0 +1,147 @@
+package com.wly.chatgptsdk.circuit;
+
+/**
+ * 熔断器
+ * 以最近 windowSize 次调用为滑动窗口，失败率或慢调用率达到阈值时打开；打开期间直接拒绝调用，
+ * 经过 openDuration 后进入半开状态，放行 halfOpenCalls 个探测请求，探测结果达标则关闭，否则重新打开。
+ * 状态判断与结果记录都在同一把锁内完成，单次开销只是几次数组读写。
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * 状态变化监听；可用于通知负载均衡摘除流量。回调在熔断器的锁内执行，不要做阻塞操作
+     */
+    public interface StateListener {
+        void onStateChange(String name, State from, State to);
+    }
+
+    private static final byte FAILURE = 1;
+    private static final byte SLOW = 2;
+
+    private final String name;
+    private final CircuitBreakerRegistry.Settings settings;
+
+    /** 环形窗口；每个元素是 FAILURE 与 SLOW 的组合 */
+    private final byte[] window;
+    private int position;
+    private int recorded;
+    private int failures;
+    private int slowCalls;
+
+    private State state = State.CLOSED;
+    private long openedAtNanos;
+    private int halfOpenPermits;
+
+    CircuitBreaker(String name, CircuitBreakerRegistry.Settings settings) {
+        this.name = name;
+        this.settings = settings;
+        this.window = new byte[settings.windowSize];
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 当前状态；打开时间已到时返回 HALF_OPEN
+     */
+    public synchronized State getState() {
+        transitionIfOpenExpired(System.nanoTime());
+        return state;
+    }
+
+    /**
+     * 窗口内的失败率；调用数不足 minimumCalls 时返回 -1
+     */
+    public synchronized float getFailureRate() {
+        return recorded < settings.minimumCalls ? -1 : (float) failures / recorded;
+    }
+
+    /**
+     * 窗口内的慢调用率；调用数不足 minimumCalls 时返回 -1
+     */
+    public synchronized float getSlowCallRate() {
+        return recorded < settings.minimumCalls ? -1 : (float) slowCalls / recorded;
+    }
+
+    /**
+     * 申请调用许可
+     *
+     * @return 打开状态，或半开状态下探测名额已用完时返回 false
+     */
+    public synchronized boolean tryAcquire() {
+        transitionIfOpenExpired(System.nanoTime());
+        switch (state) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (halfOpenPermits <= 0) return false;
+                halfOpenPermits--;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 记录一次调用结果
+     *
+     * @param failed        是否失败
+     * @param durationNanos 调用耗时
+     */
+    public synchronized void record(boolean failed, long durationNanos) {
+        byte outcome = (byte) ((failed ? FAILURE : 0) | (durationNanos >= settings.slowCallNanos ? SLOW : 0));
+        if (recorded == window.length) {
+            byte evicted = window[position];
+            if ((evicted & FAILURE) != 0) failures--;
+            if ((evicted & SLOW) != 0) slowCalls--;
+        } else {
+            recorded++;
+        }
+        window[position] = outcome;
+        position = (position + 1) % window.length;
+        if ((outcome & FAILURE) != 0) failures++;
+        if ((outcome & SLOW) != 0) slowCalls++;
+
+        if (state == State.CLOSED) {
+            if (recorded >= settings.minimumCalls && exceedsThreshold()) transition(State.OPEN);
+        } else if (state == State.HALF_OPEN && recorded >= settings.halfOpenCalls) {
+            // 进入半开时窗口已清空，记录满探测数量后按探测结果决定关闭还是重新打开
+            transition(exceedsThreshold() ? State.OPEN : State.CLOSED);
+        }
+    }
+
+    /**
+     * 放弃一次许可而不记录结果；用于调用方主动取消的请求，半开状态下归还探测名额
+     */
+    public synchronized void release() {
+        if (state == State.HALF_OPEN && halfOpenPermits < settings.halfOpenCalls - recorded) halfOpenPermits++;
+    }
+
+    private boolean exceedsThreshold() {
+        return failures >= settings.failureRateThreshold * recorded
+                || slowCalls >= settings.slowCallRateThreshold * recorded;
+    }
+
+    private void transitionIfOpenExpired(long now) {
+        if (state == State.OPEN && now - openedAtNanos >= settings.openNanos) transition(State.HALF_OPEN);
+    }
+
+    private void transition(State to) {
+        State from = state;
+        state = to;
+        position = 0;
+        recorded = 0;
+        failures = 0;
+        slowCalls = 0;
+        if (to == State.OPEN) openedAtNanos = System.nanoTime();
+        halfOpenPermits = to == State.HALF_OPEN ? settings.halfOpenCalls : 0;
+        StateListener listener = settings.listener;
+        if (null != listener) listener.onStateChange(name, from, to);
+    }
+
+}
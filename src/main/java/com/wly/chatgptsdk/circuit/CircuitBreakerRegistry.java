@@ -0,0 +1,178 @@
+package com.wly.chatgptsdk.circuit;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 熔断器注册表；按 host 与接口路径（如 api.openai.com/v1/chat/completions）各自维护一个熔断器，
+ * 某个接口或代理节点劣化时只影响对应的请求。所有熔断器共享同一份配置。
+ */
+public class CircuitBreakerRegistry {
+
+    private final Settings settings;
+    private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    private CircuitBreakerRegistry(Settings settings) {
+        this.settings = settings;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 获取或创建熔断器
+     *
+     * @param host host，带非默认端口时包含端口
+     * @param path 接口路径
+     */
+    public CircuitBreaker breaker(String host, String path) {
+        return breakers.computeIfAbsent(host + path, name -> new CircuitBreaker(name, settings));
+    }
+
+    /**
+     * 所有熔断器的当前状态；用于健康检查或负载均衡摘除流量
+     */
+    public Map<String, CircuitBreaker.State> states() {
+        Map<String, CircuitBreaker.State> states = new LinkedHashMap<>();
+        for (CircuitBreaker breaker : breakers.values()) {
+            states.put(breaker.getName(), breaker.getState());
+        }
+        return Collections.unmodifiableMap(states);
+    }
+
+    /**
+     * 是否所有熔断器都处于关闭状态
+     */
+    public boolean isHealthy() {
+        for (CircuitBreaker breaker : breakers.values()) {
+            if (breaker.getState() != CircuitBreaker.State.CLOSED) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 熔断器配置；构建后不再修改
+     */
+    static final class Settings {
+
+        final int windowSize;
+        final int minimumCalls;
+        final float failureRateThreshold;
+        final float slowCallRateThreshold;
+        final long slowCallNanos;
+        final long openNanos;
+        final int halfOpenCalls;
+        final CircuitBreaker.StateListener listener;
+
+        private Settings(Builder builder) {
+            this.windowSize = builder.windowSize;
+            this.minimumCalls = builder.minimumCalls;
+            this.failureRateThreshold = builder.failureRateThreshold;
+            this.slowCallRateThreshold = builder.slowCallRateThreshold;
+            this.slowCallNanos = builder.slowCallNanos;
+            this.openNanos = builder.openNanos;
+            this.halfOpenCalls = builder.halfOpenCalls;
+            this.listener = builder.listener;
+        }
+
+    }
+
+    /**
+     * 建造者模式
+     */
+    public static final class Builder {
+
+        private int windowSize = 100;
+        private int minimumCalls = 20;
+        private float failureRateThreshold = 0.5f;
+        private float slowCallRateThreshold = 0.8f;
+        private long slowCallNanos = TimeUnit.SECONDS.toNanos(30);
+        private long openNanos = TimeUnit.SECONDS.toNanos(30);
+        private int halfOpenCalls = 5;
+        private CircuitBreaker.StateListener listener;
+
+        private Builder() {
+        }
+
+        /**
+         * 滑动窗口大小，以调用次数计
+         */
+        public Builder windowSize(int windowSize) {
+            this.windowSize = windowSize;
+            return this;
+        }
+
+        /**
+         * 窗口内至少有这么多次调用才计算失败率
+         */
+        public Builder minimumCalls(int minimumCalls) {
+            this.minimumCalls = minimumCalls;
+            return this;
+        }
+
+        /**
+         * 失败率阈值；0 到 1
+         */
+        public Builder failureRateThreshold(float failureRateThreshold) {
+            this.failureRateThreshold = failureRateThreshold;
+            return this;
+        }
+
+        /**
+         * 慢调用率阈值；0 到 1
+         */
+        public Builder slowCallRateThreshold(float slowCallRateThreshold) {
+            this.slowCallRateThreshold = slowCallRateThreshold;
+            return this;
+        }
+
+        /**
+         * 耗时达到该值的调用计为慢调用；流式请求以收到应答头为准
+         */
+        public Builder slowCallDuration(long duration, TimeUnit unit) {
+            this.slowCallNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * 打开状态的持续时间，之后进入半开
+         */
+        public Builder openDuration(long duration, TimeUnit unit) {
+            this.openNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * 半开状态放行的探测请求数
+         */
+        public Builder halfOpenCalls(int halfOpenCalls) {
+            this.halfOpenCalls = halfOpenCalls;
+            return this;
+        }
+
+        public Builder listener(CircuitBreaker.StateListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        public CircuitBreakerRegistry build() {
+            if (windowSize <= 0 || minimumCalls <= 0 || halfOpenCalls <= 0) {
+                throw new IllegalArgumentException("windowSize, minimumCalls and halfOpenCalls must be positive");
+            }
+            if (halfOpenCalls > windowSize) {
+                throw new IllegalArgumentException("halfOpenCalls must not exceed windowSize");
+            }
+            if (failureRateThreshold <= 0 || failureRateThreshold > 1 || slowCallRateThreshold <= 0 || slowCallRateThreshold > 1) {
+                throw new IllegalArgumentException("rate thresholds must be in (0, 1]");
+            }
+            return new CircuitBreakerRegistry(new Settings(this));
+        }
+
+    }
+
+}
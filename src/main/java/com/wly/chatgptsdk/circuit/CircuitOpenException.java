@@ -0,0 +1,24 @@
+package com.wly.chatgptsdk.circuit;
+
+import java.io.IOException;
+
+/**
+ * 熔断器打开时快速失败抛出的异常；继承 IOException，可以从 OkHttp 拦截器中抛出并经由 Retrofit 与 EventSource 回调原样传递
+ */
+public class CircuitOpenException extends IOException {
+
+    private final String name;
+
+    public CircuitOpenException(String name) {
+        super("circuit breaker is open: " + name);
+        this.name = name;
+    }
+
+    /**
+     * 熔断器名称；host 与接口路径
+     */
+    public String getName() {
+        return name;
+    }
+
+}
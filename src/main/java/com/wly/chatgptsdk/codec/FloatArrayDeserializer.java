@@ -0,0 +1,54 @@
+package com.wly.chatgptsdk.codec;
+
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * 向量反序列化为 float[]
+ * 支持两种格式：
+ * 1. 数字数组；逐个读取为 float，不经过 BigDecimal
+ * 2. base64 字符串（encoding_format=base64）；直接解码为小端序 float32，不产生任何数字 token
+ */
+public class FloatArrayDeserializer extends JsonDeserializer<float[]> {
+
+    /** ada-002 的向量维度；作为数组初始容量 */
+    private static final int DEFAULT_DIMENSIONS = 1536;
+
+    @Override
+    public float[] deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_STRING) {
+            return decodeBase64(parser.getBinaryValue(Base64Variants.MIME_NO_LINEFEEDS));
+        }
+        if (token != JsonToken.START_ARRAY) {
+            return (float[]) context.handleUnexpectedToken(float[].class, parser);
+        }
+        float[] vector = new float[DEFAULT_DIMENSIONS];
+        int size = 0;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (size == vector.length) {
+                vector = Arrays.copyOf(vector, size << 1);
+            }
+            vector[size++] = token == JsonToken.VALUE_NULL ? 0f : parser.getFloatValue();
+        }
+        return size == vector.length ? vector : Arrays.copyOf(vector, size);
+    }
+
+    /**
+     * 小端序 float32 字节转 float[]
+     */
+    public static float[] decodeBase64(byte[] bytes) {
+        float[] vector = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vector);
+        return vector;
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.wly.chatgptsdk.codec;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.wly.chatgptsdk.domain.chat.ChatCompletionRequest;
+import com.wly.chatgptsdk.domain.edits.EditRequest;
+import com.wly.chatgptsdk.domain.embedd.EmbeddingRequest;
+import com.wly.chatgptsdk.domain.images.ImageRequest;
+import com.wly.chatgptsdk.domain.qa.QACompletionRequest;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * JSON 编解码
+ * 全局共享一个 ObjectMapper，并为每种请求类型预先解析好 ObjectWriter，序列化器的构建成本每种类型只付一次。
+ * ObjectMapper 与 ObjectWriter 都是线程安全的。
+ */
+public final class JsonCodec {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final Map<Class<?>, ObjectWriter> WRITERS = new ConcurrentHashMap<>();
+
+    static {
+        // 请求体直接写入 okio 的 BufferedSink，写完后不能由 Jackson 关闭输出流
+        OBJECT_MAPPER.getFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        writerFor(ChatCompletionRequest.class);
+        writerFor(QACompletionRequest.class);
+        writerFor(EditRequest.class);
+        writerFor(ImageRequest.class);
+        writerFor(EmbeddingRequest.class);
+    }
+
+    private JsonCodec() {
+    }
+
+    public static ObjectMapper objectMapper() {
+        return OBJECT_MAPPER;
+    }
+
+    /**
+     * 获取类型对应的 ObjectWriter；首次获取时解析并缓存
+     */
+    public static ObjectWriter writerFor(Class<?> type) {
+        return WRITERS.computeIfAbsent(type, OBJECT_MAPPER::writerFor);
+    }
+
+}
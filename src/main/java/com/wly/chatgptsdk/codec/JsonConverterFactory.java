@@ -0,0 +1,39 @@
+package com.wly.chatgptsdk.codec;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+import retrofit2.converter.jackson.JacksonConverterFactory;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+/**
+ * Retrofit 转换器
+ * 请求体使用 JsonRequestBody 直接写入输出流；应答体仍交给 JacksonConverterFactory，两者共享 JsonCodec 的 ObjectMapper。
+ */
+public class JsonConverterFactory extends Converter.Factory {
+
+    private final JacksonConverterFactory delegate = JacksonConverterFactory.create(JsonCodec.objectMapper());
+
+    public static JsonConverterFactory create() {
+        return new JsonConverterFactory();
+    }
+
+    @Override
+    public Converter<?, RequestBody> requestBodyConverter(Type type, Annotation[] parameterAnnotations, Annotation[] methodAnnotations, Retrofit retrofit) {
+        if (!(type instanceof Class)) {
+            return delegate.requestBodyConverter(type, parameterAnnotations, methodAnnotations, retrofit);
+        }
+        ObjectWriter writer = JsonCodec.writerFor((Class<?>) type);
+        return value -> new JsonRequestBody(value, writer);
+    }
+
+    @Override
+    public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations, Retrofit retrofit) {
+        return delegate.responseBodyConverter(type, annotations, retrofit);
+    }
+
+}
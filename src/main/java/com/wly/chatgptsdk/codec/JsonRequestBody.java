@@ -0,0 +1,52 @@
+package com.wly.chatgptsdk.codec;
+
+import cn.hutool.http.ContentType;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+
+/**
+ * JSON 请求体
+ * 发送时由预先解析好的 ObjectWriter 直接序列化到 okio 的 BufferedSink，不生成中间的 String 或 byte[]。
+ * 请求体持有原始请求对象，拦截器可以通过 {@link #value()} 读取请求参数（如模型、max_tokens）而不必再次解析 JSON。
+ * 长度未知，按 chunked 方式发送；可重复写入，支持重试。
+ */
+public class JsonRequestBody extends RequestBody {
+
+    public static final MediaType JSON = MediaType.parse(ContentType.JSON.getValue());
+
+    private final Object value;
+    private final ObjectWriter writer;
+
+    public JsonRequestBody(Object value, ObjectWriter writer) {
+        this.value = value;
+        this.writer = writer;
+    }
+
+    /**
+     * 使用类型对应的共享 ObjectWriter 创建请求体
+     */
+    public static JsonRequestBody create(Object value) {
+        return new JsonRequestBody(value, JsonCodec.writerFor(value.getClass()));
+    }
+
+    public Object value() {
+        return value;
+    }
+
+    @Nullable
+    @Override
+    public MediaType contentType() {
+        return JSON;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        writer.writeValue(sink.outputStream(), value);
+    }
+
+}
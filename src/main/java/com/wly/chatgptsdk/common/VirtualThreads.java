@@ -0,0 +1,90 @@
+package com.wly.chatgptsdk.common;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 虚拟线程支持
+ * 基线为 Java 8，通过 MethodHandle 调用 Thread.ofVirtual 与 Executors.newThreadPerTaskExecutor，不依赖构建时的 JDK 版本；
+ * 类加载时探测一次，Java 21 以下（包括未开启预览特性的 Java 19/20）的运行时返回不支持。
+ */
+public final class VirtualThreads {
+
+    /** Thread.ofVirtual().name(prefix, start).factory()；不支持时为空 */
+    private static final MethodHandle OF_VIRTUAL;
+    private static final MethodHandle NAME;
+    private static final MethodHandle FACTORY;
+    /** Executors.newThreadPerTaskExecutor(ThreadFactory) */
+    private static final MethodHandle NEW_THREAD_PER_TASK_EXECUTOR;
+
+    static {
+        MethodHandle ofVirtual = null;
+        MethodHandle name = null;
+        MethodHandle factory = null;
+        MethodHandle newThreadPerTaskExecutor = null;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> builder = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            ofVirtual = lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(builder));
+            name = lookup.findVirtual(builder, "name", MethodType.methodType(builder, String.class, long.class));
+            factory = lookup.findVirtual(builder, "factory", MethodType.methodType(ThreadFactory.class));
+            newThreadPerTaskExecutor = lookup.findStatic(Class.forName("java.util.concurrent.Executors"), "newThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class, ThreadFactory.class));
+            // Java 19/20 未开启预览特性时 ofVirtual 抛出 UnsupportedOperationException
+            ofVirtual.invoke();
+        } catch (Throwable t) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        FACTORY = factory;
+        NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+    }
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * 当前运行时是否支持虚拟线程
+     */
+    public static boolean isSupported() {
+        return null != OF_VIRTUAL;
+    }
+
+    /**
+     * 虚拟线程工厂
+     *
+     * @param name 线程名前缀；线程名为前缀加序号
+     */
+    public static ThreadFactory factory(String name) {
+        checkSupported();
+        try {
+            Object builder = NAME.invoke(OF_VIRTUAL.invoke(), name + "-", 0L);
+            return (ThreadFactory) FACTORY.invoke(builder);
+        } catch (Throwable t) {
+            throw new IllegalStateException("failed to create virtual thread factory", t);
+        }
+    }
+
+    /**
+     * 每个任务一个虚拟线程的执行器；适合提交 OpenAiSession 的同步方法，阻塞等待应答时不占用平台线程
+     *
+     * @param name 线程名前缀
+     */
+    public static ExecutorService newExecutor(String name) {
+        ThreadFactory factory = factory(name);
+        try {
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(factory);
+        } catch (Throwable t) {
+            throw new IllegalStateException("failed to create virtual thread executor", t);
+        }
+    }
+
+    private static void checkSupported() {
+        if (null == OF_VIRTUAL) throw new UnsupportedOperationException("virtual threads require Java 21 or later");
+    }
+
+}
@@ -0,0 +1,163 @@
+package com.wly.chatgptsdk.conversation;
+
+import com.wly.chatgptsdk.common.Constants;
+import com.wly.chatgptsdk.domain.chat.ChatCompletionRequest;
+import com.wly.chatgptsdk.domain.chat.Message;
+import com.wly.chatgptsdk.token.TokenCounter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按 token 预算维护的对话窗口
+ * 保存一段对话的消息历史，生成的请求总能放进模型的上下文：预算为模型上下文窗口减去 maxTokens（为回复预留）。
+ * system 消息始终保留；超出预算时从最早的一轮对话开始丢弃，一轮是一条 user 消息及其后直到下一条 user 消息的全部消息，
+ * 不会出现丢掉提问却留下回答的情况。最新追加的消息总是保留。
+ * 每条消息只在追加时计数一次，窗口维护累计值，追加与裁剪都不会重新编码整段历史。
+ * 线程安全。
+ */
+public class ConversationWindow {
+
+    private final String model;
+    private final int maxTokens;
+    private final int budget;
+    private final TokenCounter tokenCounter;
+
+    private final List<Entry> pinned = new ArrayList<>();
+    private final ArrayDeque<Entry> turns = new ArrayDeque<>();
+    private int pinnedTokens;
+    private int turnTokens;
+
+    /**
+     * @param model     模型；决定上下文窗口与编码
+     * @param maxTokens 为回复预留的 token 数
+     */
+    public ConversationWindow(ChatCompletionRequest.Model model, int maxTokens) {
+        this(model.getCode(), model.getContextWindow(), maxTokens, TokenCounter.getInstance());
+    }
+
+    /**
+     * @param model         模型名称
+     * @param contextWindow 上下文窗口
+     * @param maxTokens     为回复预留的 token 数
+     * @param tokenCounter  token 计数
+     */
+    public ConversationWindow(String model, int contextWindow, int maxTokens, TokenCounter tokenCounter) {
+        if (maxTokens <= 0 || maxTokens >= contextWindow) {
+            throw new IllegalArgumentException("maxTokens must be positive and less than context window " + contextWindow);
+        }
+        this.model = model;
+        this.maxTokens = maxTokens;
+        this.budget = contextWindow - maxTokens;
+        this.tokenCounter = tokenCounter;
+    }
+
+    /**
+     * 追加消息；system 消息固定保留，其他消息超出预算时淘汰最早的对话
+     *
+     * @param message 消息
+     * @throws IllegalArgumentException 消息与固定的 system 消息合计已超出预算
+     */
+    public synchronized ConversationWindow append(Message message) {
+        Entry entry = new Entry(message, tokenCounter.count(model, message));
+        if (pinnedTokens + entry.tokens + TokenCounter.TOKENS_REPLY_PRIMING > budget) {
+            throw new IllegalArgumentException("message has " + entry.tokens + " tokens, exceeds the remaining budget of "
+                    + (budget - pinnedTokens - TokenCounter.TOKENS_REPLY_PRIMING));
+        }
+        boolean system = Constants.Role.SYSTEM.getCode().equals(message.getRole());
+        if (system) {
+            pinned.add(entry);
+            pinnedTokens += entry.tokens;
+        } else {
+            turns.addLast(entry);
+            turnTokens += entry.tokens;
+        }
+        trim(system ? 0 : 1);
+        return this;
+    }
+
+    /**
+     * 追加消息；简单文本
+     */
+    public ConversationWindow append(Constants.Role role, String content) {
+        return append(Message.builder().role(role).content(content).build());
+    }
+
+    /**
+     * 当前窗口内的消息；system 消息在前，其余按时间顺序
+     */
+    public synchronized List<Message> messages() {
+        List<Message> messages = new ArrayList<>(pinned.size() + turns.size());
+        for (Entry entry : pinned) {
+            messages.add(entry.message);
+        }
+        for (Entry entry : turns) {
+            messages.add(entry.message);
+        }
+        return messages;
+    }
+
+    /**
+     * 当前窗口的 prompt token 数；包含回复前缀
+     */
+    public synchronized int promptTokens() {
+        return pinnedTokens + turnTokens + TokenCounter.TOKENS_REPLY_PRIMING;
+    }
+
+    /**
+     * 生成请求；其余参数使用 ChatCompletionRequest 的默认值
+     */
+    public ChatCompletionRequest request() {
+        return apply(new ChatCompletionRequest());
+    }
+
+    /**
+     * 把窗口内的消息、模型与 maxTokens 写入请求
+     *
+     * @param chatCompletionRequest 请求模板；温度等参数保持不变
+     * @return 同一个请求对象
+     */
+    public ChatCompletionRequest apply(ChatCompletionRequest chatCompletionRequest) {
+        chatCompletionRequest.setModel(model);
+        chatCompletionRequest.setMaxTokens(maxTokens);
+        chatCompletionRequest.setMessages(messages());
+        return chatCompletionRequest;
+    }
+
+    /**
+     * 清空对话消息；保留 system 消息
+     */
+    public synchronized void clear() {
+        turns.clear();
+        turnTokens = 0;
+    }
+
+    /**
+     * 从最早的一轮开始丢弃，直到满足预算
+     *
+     * @param keep 末尾必须保留的消息数；刚追加的对话消息不参与淘汰
+     */
+    private void trim(int keep) {
+        while (pinnedTokens + turnTokens + TokenCounter.TOKENS_REPLY_PRIMING > budget && turns.size() > keep) {
+            // 丢弃最早的一轮：开头的消息连同其后的回答，直到下一条 user 消息
+            turnTokens -= turns.removeFirst().tokens;
+            while (turns.size() > keep && !Constants.Role.USER.getCode().equals(turns.peekFirst().message.getRole())) {
+                turnTokens -= turns.removeFirst().tokens;
+            }
+        }
+    }
+
+    private static final class Entry {
+
+        private final Message message;
+        private final int tokens;
+
+        Entry(Message message, int tokens) {
+            this.message = message;
+            this.tokens = tokens;
+        }
+
+    }
+
+}
@@ -55,13 +55,15 @@ public class ChatCompletionRequest implements Serializable {
     @AllArgsConstructor
     public enum Model {
         /** gpt-3.5-turbo */
-        GPT_3_5_TURBO("gpt-3.5-turbo"),
+        GPT_3_5_TURBO("gpt-3.5-turbo", 4096),
         /** GPT4.0 */
-        GPT_4("gpt-4"),
+        GPT_4("gpt-4", 8192),
         /** GPT4.0 超长上下文 */
-        GPT_4_32K("gpt-4-32k"),
+        GPT_4_32K("gpt-4-32k", 32768),
         ;
         private String code;
+        /** 上下文窗口；prompt 与回复的 token 总数上限 */
+        private int contextWindow;
     }
 
 }
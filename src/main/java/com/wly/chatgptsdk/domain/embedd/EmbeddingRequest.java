@@ -1,6 +1,7 @@
 package com.wly.chatgptsdk.domain.embedd;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.*;
 import lombok.extern.slf4j.Slf4j;
 
@@ -12,7 +13,7 @@ import java.util.List;
  */
 @Slf4j
 @Getter
-@Builder
+@Builder(toBuilder = true)
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @NoArgsConstructor
 @AllArgsConstructor
@@ -26,6 +27,10 @@ public class EmbeddingRequest implements Serializable {
     private List<String> input;
     @Setter
     private String user;
+    /** 向量编码格式；float、base64。base64 为小端序 float32 的原始字节，体积更小，解析时不产生数字 token */
+    @Setter
+    @JsonProperty("encoding_format")
+    private String encodingFormat;
 
     @Getter
     @AllArgsConstructor
@@ -35,4 +40,13 @@ public class EmbeddingRequest implements Serializable {
         private String code;
     }
 
+    @Getter
+    @AllArgsConstructor
+    public enum EncodingFormat {
+        FLOAT("float"),
+        BASE64("base64"),
+        ;
+        private String code;
+    }
+
 }
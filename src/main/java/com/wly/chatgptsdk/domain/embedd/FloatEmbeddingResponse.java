@@ -0,0 +1,18 @@
+package com.wly.chatgptsdk.domain.embedd;
+
+import com.wly.chatgptsdk.domain.other.Usage;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 反馈对象；向量以 float[] 表示
+ */
+@Data
+public class FloatEmbeddingResponse implements Serializable {
+    private String object;
+    private List<FloatItem> data;
+    private String model;
+    private Usage usage;
+}
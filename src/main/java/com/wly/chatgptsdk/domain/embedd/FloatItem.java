@@ -0,0 +1,31 @@
+package com.wly.chatgptsdk.domain.embedd;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.wly.chatgptsdk.codec.FloatArrayDeserializer;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * 条目信息；1536 维向量占用约 6KB，而 List<BigDecimal> 需要 60KB 以上
+ */
+@Data
+public class FloatItem implements Serializable {
+    private String object;
+    @JsonDeserialize(using = FloatArrayDeserializer.class)
+    private float[] embedding;
+    private Integer index;
+
+    /**
+     * 复制到堆外的 FloatBuffer；便于交给向量库或 JNI 使用
+     */
+    public FloatBuffer toDirectBuffer() {
+        FloatBuffer buffer = ByteBuffer.allocateDirect(embedding.length * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        buffer.put(embedding).flip();
+        return buffer;
+    }
+
+}
@@ -0,0 +1,334 @@
+package com.wly.chatgptsdk.embedding;
+
+import com.wly.chatgptsdk.domain.embedd.EmbeddingRequest;
+import com.wly.chatgptsdk.domain.embedd.FloatEmbeddingResponse;
+import com.wly.chatgptsdk.domain.embedd.FloatItem;
+import com.wly.chatgptsdk.session.OpenAiAsyncSession;
+import com.wly.chatgptsdk.token.TokenCounter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 批量向量计算
+ * 把任意长度的文本列表切分为满足单次请求条数与 token 数限制的若干请求，以有限的并发度异步发送，
+ * 最后按 Item.index 把向量还原为输入顺序。切分在发送过程中按需进行，token 计数与网络请求重叠执行。
+ * 配置 EmbeddingCache 时，每个请求发送前先查缓存，命中的文本不再发送。
+ * 大批量任务使用 {@link #embed(List, int, BatchConsumer)} 逐批交付，内存占用与并发度成正比，而不是与输入总量成正比。
+ */
+public class BatchEmbeddingEngine {
+
+    /**
+     * 逐批交付向量
+     * 批次按输入顺序交付，offset 为该批第一条在输入中的位置；交付在请求回调线程上串行执行，不会并发调用。
+     * 抛出异常会终止任务。
+     */
+    public interface BatchConsumer {
+        void accept(int offset, float[][] vectors) throws Exception;
+    }
+
+    private final OpenAiAsyncSession session;
+    private final String model;
+    private final int maxItemsPerRequest;
+    private final int maxTokensPerRequest;
+    private final int maxTokensPerInput;
+    private final int parallelism;
+    private final EmbeddingCache cache;
+    private final TokenCounter tokenCounter;
+
+    private BatchEmbeddingEngine(Builder builder) {
+        this.session = builder.session;
+        this.model = builder.model;
+        this.maxItemsPerRequest = builder.maxItemsPerRequest;
+        this.maxTokensPerRequest = builder.maxTokensPerRequest;
+        this.maxTokensPerInput = builder.maxTokensPerInput;
+        this.parallelism = builder.parallelism;
+        this.cache = builder.cache;
+        this.tokenCounter = TokenCounter.getInstance();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 计算向量
+     *
+     * @param inputs 文本列表；任意长度
+     * @return 与输入顺序一致的向量
+     */
+    public CompletableFuture<float[][]> embed(List<String> inputs) {
+        float[][] vectors = new float[inputs.size()][];
+        return embed(inputs, 0, (offset, batch) -> System.arraycopy(batch, 0, vectors, offset, batch.length))
+                .thenApply(v -> vectors);
+    }
+
+    /**
+     * 计算向量并逐批交付
+     * 批次按输入顺序交付，已交付的批次总是输入的连续前缀；任务失败后以最后一批的 offset + vectors.length 作为 from 重新调用即可续跑。
+     * 在途请求与已完成未交付的批次合计不超过 parallelism 个，consumer 处理慢时不再切分新的请求。
+     *
+     * @param inputs   文本列表；任意长度
+     * @param from     起始位置；之前的输入视为已完成
+     * @param consumer 批次消费者
+     * @return 全部批次交付后完成；任一请求失败或 consumer 抛出异常时以该异常完成
+     */
+    public CompletableFuture<Void> embed(List<String> inputs, int from, BatchConsumer consumer) {
+        if (from < 0 || from > inputs.size()) {
+            throw new IllegalArgumentException("from " + from + " out of range [0, " + inputs.size() + "]");
+        }
+        Job job = new Job(inputs, from, consumer);
+        if (from == inputs.size()) {
+            job.future.complete(null);
+            return job.future;
+        }
+        for (int i = 0; i < parallelism; i++) {
+            job.next();
+        }
+        return job.future;
+    }
+
+    /**
+     * 一次批量计算任务
+     */
+    private final class Job {
+
+        private final List<String> inputs;
+        private final BatchConsumer consumer;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        /** 切分游标；下一个未分配的输入位置。切分在锁外进行，以 CAS 认领区间 */
+        private final AtomicInteger cursor;
+        /** 每条输入的 token 数加一；0 表示尚未计算。认领失败重试时复用已计算的结果 */
+        private final AtomicIntegerArray tokens;
+
+        /** 已完成、等待按序交付的批次；以 offset 为键 */
+        private final TreeMap<Integer, float[][]> pending = new TreeMap<>();
+        /** 下一个待交付批次的 offset */
+        private int delivered;
+        /** 是否有线程正在交付；保证 consumer 串行调用且不在锁内执行 */
+        private boolean draining;
+
+        Job(List<String> inputs, int from, BatchConsumer consumer) {
+            this.inputs = inputs;
+            this.consumer = consumer;
+            this.cursor = new AtomicInteger(from);
+            this.tokens = new AtomicIntegerArray(inputs.size());
+            this.delivered = from;
+        }
+
+        /**
+         * 切出下一个请求并发送；每交付一个批次再切分一个，保持并发度不变
+         */
+        void next() {
+            if (future.isDone()) return;
+            int start;
+            int end;
+            try {
+                do {
+                    start = cursor.get();
+                    end = chunkEnd(start);
+                } while (start != end && !cursor.compareAndSet(start, end));
+            } catch (IllegalArgumentException e) {
+                future.completeExceptionally(e);
+                return;
+            }
+            if (start == end) return;
+
+            List<String> chunk = inputs.subList(start, end);
+            EmbeddingCache.Lookup lookup = null == cache ? null : cache.lookup(EmbeddingRequest.builder().model(model).input(chunk).build());
+            if (null != lookup && lookup.misses.isEmpty()) {
+                try {
+                    deliver(start, lookup.vectors);
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+                return;
+            }
+            int offset = start;
+            List<String> misses = null == lookup ? chunk : lookup.misses;
+            EmbeddingRequest request = EmbeddingRequest.builder()
+                    .model(model)
+                    .input(misses)
+                    .build();
+            session.floatEmbeddings(request).whenComplete((response, throwable) -> {
+                // 回调中的异常会被 CompletableFuture 吞掉，必须转交给 job.future，否则调用方永远等待
+                try {
+                    if (null != throwable) {
+                        future.completeExceptionally(throwable);
+                        return;
+                    }
+                    if (future.isDone()) return;
+                    float[][] vectors = collect(misses.size(), response);
+                    if (null == vectors) return;
+                    if (null != lookup) {
+                        for (int i = 0; i < vectors.length; i++) {
+                            lookup.fill(i, vectors[i]);
+                        }
+                        vectors = lookup.vectors;
+                    }
+                    deliver(offset, vectors);
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        }
+
+        /**
+         * 按输入顺序交付批次；由放入批次时恰好空闲的线程负责交付，其余线程放入后直接返回
+         */
+        private void deliver(int offset, float[][] vectors) throws Exception {
+            synchronized (pending) {
+                pending.put(offset, vectors);
+                if (draining) return;
+                draining = true;
+            }
+            while (true) {
+                Map.Entry<Integer, float[][]> entry;
+                synchronized (pending) {
+                    entry = pending.isEmpty() || pending.firstKey() != delivered ? null : pending.pollFirstEntry();
+                    if (null == entry || future.isDone()) {
+                        draining = false;
+                        return;
+                    }
+                    delivered += entry.getValue().length;
+                }
+                try {
+                    consumer.accept(entry.getKey(), entry.getValue());
+                } catch (Throwable e) {
+                    synchronized (pending) {
+                        draining = false;
+                    }
+                    throw e;
+                }
+                if (delivered == inputs.size()) {
+                    future.complete(null);
+                } else {
+                    next();
+                }
+            }
+        }
+
+        /**
+         * 从 start 开始累加，直到条数或 token 数达到上限
+         */
+        private int chunkEnd(int start) {
+            int end = start;
+            long total = 0;
+            while (end < inputs.size() && end - start < maxItemsPerRequest) {
+                int inputTokens = tokens(end);
+                if (inputTokens > maxTokensPerInput) {
+                    throw new IllegalArgumentException("input " + end + " has " + inputTokens + " tokens, exceeds " + maxTokensPerInput);
+                }
+                if (end > start && total + inputTokens > maxTokensPerRequest) break;
+                total += inputTokens;
+                end++;
+            }
+            return end;
+        }
+
+        private int tokens(int index) {
+            int counted = tokens.get(index);
+            if (counted > 0) return counted - 1;
+            int inputTokens = tokenCounter.count(model, inputs.get(index));
+            tokens.set(index, inputTokens + 1);
+            return inputTokens;
+        }
+
+        /**
+         * 校验一个请求的结果并按 Item.index 排列；Item.index 必须落在 [0, size) 内且互不重复
+         *
+         * @return 按请求内顺序排列的向量；校验失败时任务已结束，返回 null
+         */
+        private float[][] collect(int size, FloatEmbeddingResponse response) {
+            List<FloatItem> items = null == response ? null : response.getData();
+            if (null == items || items.size() != size) {
+                future.completeExceptionally(new IllegalStateException("embedding response size mismatch, expected " + size));
+                return null;
+            }
+            float[][] vectors = new float[size][];
+            for (FloatItem item : items) {
+                Integer index = item.getIndex();
+                if (null == index || index < 0 || index >= size || null != vectors[index]) {
+                    future.completeExceptionally(new IllegalStateException("illegal embedding index " + index + ", expected a unique value in [0, " + size + ")"));
+                    return null;
+                }
+                if (null == item.getEmbedding()) {
+                    future.completeExceptionally(new IllegalStateException("embedding " + index + " is missing"));
+                    return null;
+                }
+                vectors[index] = item.getEmbedding();
+            }
+            return vectors;
+        }
+
+    }
+
+    /**
+     * 建造者模式
+     */
+    public static final class Builder {
+
+        private OpenAiAsyncSession session;
+        private String model = EmbeddingRequest.Model.TEXT_EMBEDDING_ADA_002.getCode();
+        /** 官方限制：单次请求最多 2048 条输入 */
+        private int maxItemsPerRequest = 2048;
+        /** 单次请求累计 token 上限 */
+        private int maxTokensPerRequest = 300_000;
+        /** 单条输入 token 上限；ada-002 为 8191 */
+        private int maxTokensPerInput = 8191;
+        /** 同时在途的请求数 */
+        private int parallelism = 4;
+        /** 向量缓存；可为空 */
+        private EmbeddingCache cache;
+
+        public Builder session(OpenAiAsyncSession session) {
+            this.session = session;
+            return this;
+        }
+
+        public Builder model(String model) {
+            this.model = model;
+            return this;
+        }
+
+        public Builder maxItemsPerRequest(int maxItemsPerRequest) {
+            this.maxItemsPerRequest = maxItemsPerRequest;
+            return this;
+        }
+
+        public Builder maxTokensPerRequest(int maxTokensPerRequest) {
+            this.maxTokensPerRequest = maxTokensPerRequest;
+            return this;
+        }
+
+        public Builder maxTokensPerInput(int maxTokensPerInput) {
+            this.maxTokensPerInput = maxTokensPerInput;
+            return this;
+        }
+
+        public Builder parallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        public Builder cache(EmbeddingCache cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        public BatchEmbeddingEngine build() {
+            if (null == session) throw new IllegalArgumentException("session is required");
+            if (maxItemsPerRequest <= 0 || maxTokensPerRequest <= 0 || parallelism <= 0) {
+                throw new IllegalArgumentException("limits and parallelism must be positive");
+            }
+            return new BatchEmbeddingEngine(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,173 @@
+package com.wly.chatgptsdk.embedding;
+
+import com.wly.chatgptsdk.common.LruCache;
+import com.wly.chatgptsdk.domain.embedd.EmbeddingRequest;
+import com.wly.chatgptsdk.domain.embedd.FloatEmbeddingResponse;
+import com.wly.chatgptsdk.domain.embedd.FloatItem;
+import com.wly.chatgptsdk.session.OpenAiAsyncSession;
+import com.wly.chatgptsdk.session.OpenAiSession;
+import okio.ByteString;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 向量缓存；以 sha256(模型 + 文本) 为键
+ * 两级存储：堆内 LRU 与可选的内存映射文件，文件层在进程重启后仍然有效。向量以原始 float 存放，不经过 JSON。
+ * 批量计算时逐条查找，只把未命中的文本发往上游，再按输入顺序合并结果。
+ * 返回的向量数组在各调用方之间共享，调用方不应修改。
+ */
+public class EmbeddingCache {
+
+    private final LruCache<ByteString, float[]> heap;
+    private final MappedEmbeddingStore store;
+
+    /**
+     * @param heapSize 堆内缓存的条数
+     */
+    public EmbeddingCache(int heapSize) {
+        this(heapSize, null);
+    }
+
+    /**
+     * @param heapSize 堆内缓存的条数
+     * @param store    文件层；可为空
+     */
+    public EmbeddingCache(int heapSize, MappedEmbeddingStore store) {
+        this.heap = new LruCache<>(heapSize);
+        this.store = store;
+    }
+
+    /**
+     * 缓存键；模型与文本之间以 \0 分隔，避免拼接歧义
+     */
+    public static ByteString key(String model, String input) {
+        return ByteString.encodeUtf8(model + '\u0000' + input).sha256();
+    }
+
+    /**
+     * 查找向量；堆内未命中时读取文件层，并回填堆内缓存
+     *
+     * @return 向量；未命中返回 null
+     */
+    public float[] get(String model, String input) {
+        ByteString key = key(model, input);
+        float[] vector = heap.get(key);
+        if (null != vector || null == store) return vector;
+        vector = store.get(key);
+        if (null != vector) heap.put(key, vector);
+        return vector;
+    }
+
+    /**
+     * 写入向量；维度与文件层不一致时只写入堆内缓存
+     */
+    public void put(String model, String input, float[] vector) {
+        ByteString key = key(model, input);
+        heap.put(key, vector);
+        if (null != store && vector.length == store.dimensions()) {
+            store.put(key, vector);
+        }
+    }
+
+    /**
+     * 向量计算；只请求未命中的文本
+     *
+     * @param session          会话
+     * @param embeddingRequest 请求信息
+     * @return 与 input 顺序一致的向量
+     */
+    public float[][] embeddings(OpenAiSession session, EmbeddingRequest embeddingRequest) {
+        Lookup lookup = lookup(embeddingRequest);
+        if (lookup.misses.isEmpty()) return lookup.vectors;
+        FloatEmbeddingResponse response = session.floatEmbeddings(lookup.missRequest(embeddingRequest));
+        return lookup.merge(response);
+    }
+
+    /**
+     * 向量计算；异步，只请求未命中的文本
+     *
+     * @param session          异步会话
+     * @param embeddingRequest 请求信息
+     * @return 与 input 顺序一致的向量
+     */
+    public CompletableFuture<float[][]> embeddings(OpenAiAsyncSession session, EmbeddingRequest embeddingRequest) {
+        Lookup lookup = lookup(embeddingRequest);
+        if (lookup.misses.isEmpty()) return CompletableFuture.completedFuture(lookup.vectors);
+        return session.floatEmbeddings(lookup.missRequest(embeddingRequest)).thenApply(lookup::merge);
+    }
+
+    /**
+     * 逐条查找；记录未命中文本及其在输入中的位置
+     */
+    Lookup lookup(EmbeddingRequest embeddingRequest) {
+        String model = embeddingRequest.getModel();
+        List<String> input = embeddingRequest.getInput();
+        Lookup lookup = new Lookup(model, input.size());
+        for (int i = 0; i < input.size(); i++) {
+            float[] vector = get(model, input.get(i));
+            if (null != vector) {
+                lookup.vectors[i] = vector;
+            } else {
+                lookup.positions.add(i);
+                lookup.misses.add(input.get(i));
+            }
+        }
+        return lookup;
+    }
+
+    /**
+     * 一次查找的结果
+     */
+    final class Lookup {
+
+        final String model;
+        final float[][] vectors;
+        final List<Integer> positions = new ArrayList<>();
+        final List<String> misses = new ArrayList<>();
+
+        Lookup(String model, int size) {
+            this.model = model;
+            this.vectors = new float[size][];
+        }
+
+        EmbeddingRequest missRequest(EmbeddingRequest embeddingRequest) {
+            return embeddingRequest.toBuilder().input(misses).build();
+        }
+
+        /**
+         * 合并上游结果并写入缓存；Item.index 对应未命中列表中的位置，必须落在 [0, misses.size()) 内且互不重复
+         * 全部校验通过后才写入，错误的应答不会污染缓存
+         */
+        float[][] merge(FloatEmbeddingResponse response) {
+            int size = misses.size();
+            List<FloatItem> items = null == response ? null : response.getData();
+            if (null == items || items.size() != size) {
+                throw new IllegalStateException("embedding response size mismatch, expected " + size);
+            }
+            boolean[] seen = new boolean[size];
+            for (FloatItem item : items) {
+                Integer index = item.getIndex();
+                if (null == index || index < 0 || index >= size || seen[index]) {
+                    throw new IllegalStateException("illegal embedding index " + index + ", expected a unique value in [0, " + size + ")");
+                }
+                if (null == item.getEmbedding()) {
+                    throw new IllegalStateException("embedding " + index + " is missing");
+                }
+                seen[index] = true;
+            }
+            for (FloatItem item : items) {
+                fill(item.getIndex(), item.getEmbedding());
+            }
+            return vectors;
+        }
+
+        void fill(int missIndex, float[] vector) {
+            vectors[positions.get(missIndex)] = vector;
+            put(model, misses.get(missIndex), vector);
+        }
+
+    }
+
+}
@@ -0,0 +1,236 @@
+package com.wly.chatgptsdk.embedding;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 精确检索的向量索引
+ * 全部向量首尾相连存放在一个 float[] 中，检索时顺序扫描，访存连续；
+ * 向量数量超过 PARALLEL_THRESHOLD 时按区间拆分，交给 ForkJoinPool 在多核上并行扫描后合并 top-k。
+ * 删除时把最后一个向量移入空位，存储始终保持紧凑。适合十万级以内的数据；更大规模使用 HnswIndex。
+ */
+public class FlatVectorIndex implements VectorIndex {
+
+    private static final int MAGIC = 0x464C4154;
+
+    /** 单个任务扫描的向量数；低于此值时不再拆分 */
+    private static final int PARALLEL_THRESHOLD = 16 * 1024;
+
+    /** 数组长度上限；部分虚拟机在数组头部保留若干字 */
+    private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+    private final int dimensions;
+    /** 向量数量上限；所有向量存放在一个 float[] 中，总长度不能超过数组上限 */
+    private final int maxSize;
+    private final ForkJoinPool pool;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Integer> slots = new HashMap<>();
+
+    private float[] vectors;
+    private long[] ids;
+    private int size;
+
+    public FlatVectorIndex(int dimensions) {
+        this(dimensions, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param dimensions 向量维度
+     * @param pool       并行检索使用的线程池
+     */
+    public FlatVectorIndex(int dimensions, ForkJoinPool pool) {
+        if (dimensions <= 0) {
+            throw new IllegalArgumentException("dimensions must be positive: " + dimensions);
+        }
+        this.dimensions = dimensions;
+        this.maxSize = MAX_ARRAY_LENGTH / dimensions;
+        this.pool = pool;
+        int initial = Math.min(16, maxSize);
+        this.vectors = new float[initial * dimensions];
+        this.ids = new long[initial];
+    }
+
+    /**
+     * 读取 save 保存的快照
+     */
+    public static FlatVectorIndex load(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not a flat vector index: " + path);
+            }
+            FlatVectorIndex index = new FlatVectorIndex(in.readInt());
+            int size = in.readInt();
+            if (size < 0) {
+                throw new IOException("illegal vector count " + size + ": " + path);
+            }
+            index.ensureCapacity(size);
+            for (int i = 0; i < size; i++) {
+                index.ids[i] = in.readLong();
+                index.slots.put(index.ids[i], i);
+            }
+            for (int i = 0, n = index.offset(size); i < n; i++) {
+                index.vectors[i] = in.readFloat();
+            }
+            index.size = size;
+            return index;
+        }
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void add(long id, float[] vector) {
+        float[] normalized = VectorMath.normalize(vector, dimensions);
+        lock.writeLock().lock();
+        try {
+            Integer slot = slots.get(id);
+            if (null == slot) {
+                ensureCapacity(size + 1);
+                slot = size++;
+                slots.put(id, slot);
+                ids[slot] = id;
+            }
+            System.arraycopy(normalized, 0, vectors, offset(slot), dimensions);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(long id) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slots.remove(id);
+            if (null == slot) return false;
+            int last = --size;
+            if (slot != last) {
+                System.arraycopy(vectors, offset(last), vectors, offset(slot), dimensions);
+                ids[slot] = ids[last];
+                slots.put(ids[slot], slot);
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<SearchResult> search(float[] query, int k) {
+        float[] normalized = VectorMath.normalize(query, dimensions);
+        lock.readLock().lock();
+        try {
+            int limit = Math.min(k, size);
+            if (limit <= 0) return Collections.emptyList();
+            TopK topK = size <= PARALLEL_THRESHOLD
+                    ? scan(normalized, limit, 0, size)
+                    : pool.invoke(new ScanTask(normalized, limit, 0, size));
+            return topK.toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void save(Path path) throws IOException {
+        lock.readLock().lock();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(dimensions);
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeLong(ids[i]);
+            }
+            for (int i = 0, n = offset(size); i < n; i++) {
+                out.writeFloat(vectors[i]);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private TopK scan(float[] query, int k, int from, int to) {
+        TopK topK = new TopK(k);
+        for (int i = from; i < to; i++) {
+            topK.offer(ids[i], VectorMath.dot(vectors, offset(i), query, dimensions));
+        }
+        return topK;
+    }
+
+    /**
+     * 向量在 vectors 中的起始位置；容量受 maxSize 限制，multiplyExact 确保异常的下标不会静默回绕
+     */
+    private int offset(int slot) {
+        return Math.multiplyExact(slot, dimensions);
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= ids.length) return;
+        if (required > maxSize) {
+            throw new IllegalStateException("flat vector index is limited to " + maxSize + " vectors of "
+                    + dimensions + " dimensions, use HnswIndex for larger data sets");
+        }
+        int capacity = (int) Math.min(maxSize, Math.max(required, ids.length + (long) (ids.length >> 1)));
+        ids = Arrays.copyOf(ids, capacity);
+        vectors = Arrays.copyOf(vectors, offset(capacity));
+    }
+
+    /**
+     * 区间扫描任务；调用方持有读锁，任务执行期间存储不会变化
+     */
+    private final class ScanTask extends RecursiveTask<TopK> {
+
+        private final float[] query;
+        private final int k;
+        private final int from;
+        private final int to;
+
+        ScanTask(float[] query, int k, int from, int to) {
+            this.query = query;
+            this.k = k;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected TopK compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                return scan(query, k, from, to);
+            }
+            int middle = (from + to) >>> 1;
+            ScanTask left = new ScanTask(query, k, from, middle);
+            left.fork();
+            TopK topK = new ScanTask(query, k, middle, to).compute();
+            topK.merge(left.join());
+            return topK;
+        }
+
+    }
+
+}
@@ -0,0 +1,564 @@
+package com.wly.chatgptsdk.embedding;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 近似检索的向量索引；分层可导航小世界图（HNSW）
+ * 每个向量随机分配层数，高层稀疏、低层稠密。检索从最高层入口贪心下降，在第 0 层以 efSearch 的候选集宽度做最佳优先搜索，
+ * 代价约为 O(log n)，适合百万级向量。
+ * 删除与覆盖写入采用墓碑标记：节点仍参与图的导航，但不出现在结果中。墓碑数量达到 COMPACT_MIN_TOMBSTONES 且超过节点总数的一半时，
+ * 用存活的向量重建图，释放墓碑占用的内存并恢复检索质量；也可以调用 compact() 主动重建。
+ * 写入持有写锁，检索持有读锁，多个检索可以并发执行。
+ */
+public class HnswIndex implements VectorIndex {
+
+    private static final int MAGIC = 0x484E5357;
+    private static final int VERSION = 1;
+
+    /** 层数上限；防止极端随机数产生过高的层 */
+    private static final int MAX_LEVEL = 16;
+
+    /** 自动重建的最少墓碑数；避免小索引频繁重建 */
+    private static final int COMPACT_MIN_TOMBSTONES = 1024;
+
+    private final int dimensions;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final int efSearch;
+    private final double levelMultiplier;
+    private final Random random;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Node> nodes = new ArrayList<>();
+    private final Map<Long, Integer> nodeById = new HashMap<>();
+    private final ThreadLocal<Visited> visited = ThreadLocal.withInitial(Visited::new);
+
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private int tombstones;
+
+    private HnswIndex(Builder builder) {
+        this.dimensions = builder.dimensions;
+        this.m = builder.m;
+        this.maxM0 = builder.m * 2;
+        this.efConstruction = builder.efConstruction;
+        this.efSearch = builder.efSearch;
+        this.levelMultiplier = 1 / Math.log(builder.m);
+        this.random = new Random(builder.seed);
+    }
+
+    public static Builder builder(int dimensions) {
+        return new Builder(dimensions);
+    }
+
+    /**
+     * 读取 save 保存的快照
+     * 逐项校验入口点、层数、邻居数量与邻居编号，损坏或截断的文件抛出 IOException，而不是在检索时越界
+     */
+    public static HnswIndex load(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("not an hnsw index: " + path);
+            }
+            HnswIndex index;
+            try {
+                index = builder(in.readInt())
+                        .m(in.readInt())
+                        .efConstruction(in.readInt())
+                        .efSearch(in.readInt())
+                        .build();
+            } catch (IllegalArgumentException e) {
+                throw new IOException("corrupt hnsw index " + path + ": " + e.getMessage(), e);
+            }
+            int entryPoint = in.readInt();
+            int maxLevel = in.readInt();
+            int count = in.readInt();
+            if (count < 0) throw corrupt(path, "negative node count " + count);
+            if (count == 0 ? entryPoint != -1 || maxLevel != -1 : entryPoint < 0 || entryPoint >= count || maxLevel < 0 || maxLevel > MAX_LEVEL) {
+                throw corrupt(path, "entry point " + entryPoint + " at level " + maxLevel + " is invalid for " + count + " nodes");
+            }
+            index.entryPoint = entryPoint;
+            index.maxLevel = maxLevel;
+            for (int i = 0; i < count; i++) {
+                long id = in.readLong();
+                boolean deleted = in.readBoolean();
+                int level = in.readInt();
+                if (level < 0 || level > maxLevel) {
+                    throw corrupt(path, "node " + i + " has level " + level + ", expected [0, " + maxLevel + "]");
+                }
+                float[] vector = new float[index.dimensions];
+                for (int d = 0; d < vector.length; d++) {
+                    vector[d] = in.readFloat();
+                }
+                Node node = index.newNode(id, vector, level);
+                node.deleted = deleted;
+                for (int layer = 0; layer <= level; layer++) {
+                    int size = in.readInt();
+                    if (size < 0 || size > node.neighbors[layer].length) {
+                        throw corrupt(path, "node " + i + " has " + size + " neighbors at layer " + layer + ", capacity " + node.neighbors[layer].length);
+                    }
+                    for (int n = 0; n < size; n++) {
+                        int neighbor = in.readInt();
+                        if (neighbor < 0 || neighbor >= count) {
+                            throw corrupt(path, "node " + i + " links to node " + neighbor + ", expected [0, " + count + ")");
+                        }
+                        node.neighbors[layer][n] = neighbor;
+                    }
+                    node.counts[layer] = size;
+                }
+                index.nodes.add(node);
+                if (deleted) {
+                    index.tombstones++;
+                } else if (null != index.nodeById.put(id, i)) {
+                    throw corrupt(path, "duplicate id " + id);
+                }
+            }
+            // 检索从入口点的最高层下降，邻居必须存在于所在的层
+            if (count > 0 && index.nodes.get(entryPoint).neighbors.length - 1 != maxLevel) {
+                throw corrupt(path, "entry point " + entryPoint + " is not at level " + maxLevel);
+            }
+            for (int i = 0; i < count; i++) {
+                Node node = index.nodes.get(i);
+                for (int layer = 0; layer < node.neighbors.length; layer++) {
+                    for (int n = 0; n < node.counts[layer]; n++) {
+                        int neighbor = node.neighbors[layer][n];
+                        if (index.nodes.get(neighbor).neighbors.length <= layer) {
+                            throw corrupt(path, "node " + i + " links to node " + neighbor + " above its level at layer " + layer);
+                        }
+                    }
+                }
+            }
+            return index;
+        }
+    }
+
+    private static IOException corrupt(Path path, String message) {
+        return new IOException("corrupt hnsw index " + path + ": " + message);
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nodeById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void add(long id, float[] vector) {
+        float[] normalized = VectorMath.normalize(vector, dimensions);
+        lock.writeLock().lock();
+        try {
+            // 覆盖写入：旧节点记为墓碑，新向量作为新节点插入
+            Integer existing = nodeById.get(id);
+            if (null != existing) markDeleted(existing);
+            insert(id, normalized);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(long id) {
+        lock.writeLock().lock();
+        try {
+            Integer index = nodeById.remove(id);
+            if (null == index) return false;
+            markDeleted(index);
+            compactIfNeeded();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 丢弃墓碑，用存活的向量重建图；重建期间持有写锁
+     */
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            rebuild();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<SearchResult> search(float[] query, int k) {
+        float[] normalized = VectorMath.normalize(query, dimensions);
+        lock.readLock().lock();
+        try {
+            if (entryPoint == -1 || k <= 0) return Collections.emptyList();
+            int current = greedyDescend(normalized, entryPoint, maxLevel, 0);
+            List<Candidate> candidates = searchLayer(normalized, current, Math.max(efSearch, k), 0);
+            TopK topK = new TopK(k);
+            for (Candidate candidate : candidates) {
+                Node node = nodes.get(candidate.node);
+                if (!node.deleted) topK.offer(node.id, candidate.score);
+            }
+            return topK.toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void save(Path path) throws IOException {
+        lock.readLock().lock();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(dimensions);
+            out.writeInt(m);
+            out.writeInt(efConstruction);
+            out.writeInt(efSearch);
+            out.writeInt(entryPoint);
+            out.writeInt(maxLevel);
+            out.writeInt(nodes.size());
+            for (Node node : nodes) {
+                out.writeLong(node.id);
+                out.writeBoolean(node.deleted);
+                out.writeInt(node.neighbors.length - 1);
+                for (float v : node.vector) {
+                    out.writeFloat(v);
+                }
+                for (int layer = 0; layer < node.neighbors.length; layer++) {
+                    out.writeInt(node.counts[layer]);
+                    for (int n = 0; n < node.counts[layer]; n++) {
+                        out.writeInt(node.neighbors[layer][n]);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void insert(long id, float[] normalized) {
+        int level = randomLevel();
+        int index = nodes.size();
+        Node node = newNode(id, normalized, level);
+        nodes.add(node);
+        nodeById.put(id, index);
+        if (entryPoint == -1) {
+            entryPoint = index;
+            maxLevel = level;
+            return;
+        }
+
+        int current = greedyDescend(normalized, entryPoint, maxLevel, level);
+        for (int layer = Math.min(level, maxLevel); layer >= 0; layer--) {
+            List<Candidate> candidates = searchLayer(normalized, current, efConstruction, layer);
+            int[] selected = selectNeighbors(candidates, m);
+            System.arraycopy(selected, 0, node.neighbors[layer], 0, selected.length);
+            node.counts[layer] = selected.length;
+            for (int neighbor : selected) {
+                connect(neighbor, index, layer);
+            }
+            current = candidates.get(0).node;
+        }
+        if (level > maxLevel) {
+            entryPoint = index;
+            maxLevel = level;
+        }
+    }
+
+    private void markDeleted(int index) {
+        nodes.get(index).deleted = true;
+        tombstones++;
+    }
+
+    private void compactIfNeeded() {
+        if (tombstones >= COMPACT_MIN_TOMBSTONES && tombstones > nodes.size() / 2) rebuild();
+    }
+
+    private void rebuild() {
+        if (tombstones == 0) return;
+        List<Node> live = new ArrayList<>(nodeById.size());
+        for (Node node : nodes) {
+            if (!node.deleted) live.add(node);
+        }
+        nodes.clear();
+        nodeById.clear();
+        entryPoint = -1;
+        maxLevel = -1;
+        tombstones = 0;
+        for (Node node : live) {
+            insert(node.id, node.vector);
+        }
+    }
+
+    private Node newNode(long id, float[] vector, int level) {
+        int[][] neighbors = new int[level + 1][];
+        for (int layer = 0; layer <= level; layer++) {
+            neighbors[layer] = new int[capacity(layer)];
+        }
+        return new Node(id, vector, neighbors);
+    }
+
+    private int capacity(int layer) {
+        return layer == 0 ? maxM0 : m;
+    }
+
+    private int randomLevel() {
+        double level = -Math.log(1 - random.nextDouble()) * levelMultiplier;
+        return Math.min((int) level, MAX_LEVEL);
+    }
+
+    /**
+     * 从 fromLayer 贪心下降到 toLayer + 1 层，每层只保留最相似的一个节点
+     */
+    private int greedyDescend(float[] query, int current, int fromLayer, int toLayer) {
+        float currentScore = VectorMath.dot(nodes.get(current).vector, query);
+        for (int layer = fromLayer; layer > toLayer; layer--) {
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                Node node = nodes.get(current);
+                for (int n = 0; n < node.counts[layer]; n++) {
+                    int neighbor = node.neighbors[layer][n];
+                    float score = VectorMath.dot(nodes.get(neighbor).vector, query);
+                    if (score > currentScore) {
+                        current = neighbor;
+                        currentScore = score;
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 单层内的最佳优先搜索
+     *
+     * @return 最多 ef 个候选，按相似度降序排列
+     */
+    private List<Candidate> searchLayer(float[] query, int entry, int ef, int layer) {
+        Visited visited = this.visited.get();
+        visited.reset(nodes.size());
+        visited.visit(entry);
+
+        Candidate first = new Candidate(entry, VectorMath.dot(nodes.get(entry).vector, query));
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(Candidate.DESCENDING);
+        PriorityQueue<Candidate> results = new PriorityQueue<>(Candidate.ASCENDING);
+        candidates.add(first);
+        results.add(first);
+        while (!candidates.isEmpty()) {
+            Candidate closest = candidates.poll();
+            if (closest.score < results.peek().score && results.size() >= ef) break;
+            Node node = nodes.get(closest.node);
+            for (int n = 0; n < node.counts[layer]; n++) {
+                int neighbor = node.neighbors[layer][n];
+                if (!visited.visit(neighbor)) continue;
+                float score = VectorMath.dot(nodes.get(neighbor).vector, query);
+                if (results.size() < ef || score > results.peek().score) {
+                    Candidate candidate = new Candidate(neighbor, score);
+                    candidates.add(candidate);
+                    results.add(candidate);
+                    if (results.size() > ef) results.poll();
+                }
+            }
+        }
+        List<Candidate> sorted = new ArrayList<>(results);
+        sorted.sort(Candidate.DESCENDING);
+        return sorted;
+    }
+
+    /**
+     * 启发式选择邻居：候选与查询的相似度高于与任一已选邻居的相似度时才入选，使邻居分布在不同方向；
+     * 不足 max 个时用落选的候选按相似度补齐
+     *
+     * @param candidates 按相似度降序排列的候选
+     */
+    private int[] selectNeighbors(List<Candidate> candidates, int max) {
+        List<Candidate> selected = new ArrayList<>(max);
+        List<Candidate> pruned = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            if (selected.size() >= max) break;
+            float[] vector = nodes.get(candidate.node).vector;
+            boolean diverse = true;
+            for (Candidate chosen : selected) {
+                if (VectorMath.dot(vector, nodes.get(chosen.node).vector) > candidate.score) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected.add(candidate);
+            } else {
+                pruned.add(candidate);
+            }
+        }
+        for (int i = 0; i < pruned.size() && selected.size() < max; i++) {
+            selected.add(pruned.get(i));
+        }
+        int[] result = new int[selected.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = selected.get(i).node;
+        }
+        return result;
+    }
+
+    /**
+     * 添加反向连接；邻居已满时重新选择
+     */
+    private void connect(int from, int to, int layer) {
+        Node node = nodes.get(from);
+        int count = node.counts[layer];
+        int[] neighbors = node.neighbors[layer];
+        if (count < neighbors.length) {
+            neighbors[count] = to;
+            node.counts[layer] = count + 1;
+            return;
+        }
+        List<Candidate> candidates = new ArrayList<>(count + 1);
+        for (int n = 0; n < count; n++) {
+            candidates.add(new Candidate(neighbors[n], VectorMath.dot(node.vector, nodes.get(neighbors[n]).vector)));
+        }
+        candidates.add(new Candidate(to, VectorMath.dot(node.vector, nodes.get(to).vector)));
+        candidates.sort(Candidate.DESCENDING);
+        int[] selected = selectNeighbors(candidates, neighbors.length);
+        System.arraycopy(selected, 0, neighbors, 0, selected.length);
+        node.counts[layer] = selected.length;
+    }
+
+    private static final class Node {
+
+        final long id;
+        final float[] vector;
+        /** 每层的邻居；数组长度即该层容量 */
+        final int[][] neighbors;
+        final int[] counts;
+        boolean deleted;
+
+        Node(long id, float[] vector, int[][] neighbors) {
+            this.id = id;
+            this.vector = vector;
+            this.neighbors = neighbors;
+            this.counts = new int[neighbors.length];
+        }
+
+    }
+
+    private static final class Candidate {
+
+        static final Comparator<Candidate> ASCENDING = (a, b) -> Float.compare(a.score, b.score);
+        static final Comparator<Candidate> DESCENDING = ASCENDING.reversed();
+
+        final int node;
+        final float score;
+
+        Candidate(int node, float score) {
+            this.node = node;
+            this.score = score;
+        }
+
+    }
+
+    /**
+     * 访问标记；以轮次号代替每次检索清空数组
+     */
+    private static final class Visited {
+
+        private int[] marks = new int[0];
+        private int epoch;
+
+        void reset(int size) {
+            if (marks.length < size) {
+                marks = new int[Math.max(size, marks.length + (marks.length >> 1))];
+                epoch = 0;
+            }
+            if (++epoch == 0) {
+                Arrays.fill(marks, 0);
+                epoch = 1;
+            }
+        }
+
+        /**
+         * @return 首次访问返回 true
+         */
+        boolean visit(int node) {
+            if (marks[node] == epoch) return false;
+            marks[node] = epoch;
+            return true;
+        }
+
+    }
+
+    /**
+     * 建造者模式
+     */
+    public static final class Builder {
+
+        private final int dimensions;
+        /** 每层的邻居数；第 0 层为 2m */
+        private int m = 16;
+        /** 构建时的候选集宽度；越大图质量越高，写入越慢 */
+        private int efConstruction = 200;
+        /** 检索时的候选集宽度；越大召回率越高，检索越慢 */
+        private int efSearch = 64;
+        private long seed = 42;
+
+        private Builder(int dimensions) {
+            this.dimensions = dimensions;
+        }
+
+        public Builder m(int m) {
+            this.m = m;
+            return this;
+        }
+
+        public Builder efConstruction(int efConstruction) {
+            this.efConstruction = efConstruction;
+            return this;
+        }
+
+        public Builder efSearch(int efSearch) {
+            this.efSearch = efSearch;
+            return this;
+        }
+
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public HnswIndex build() {
+            if (dimensions <= 0) throw new IllegalArgumentException("dimensions must be positive: " + dimensions);
+            if (m < 2 || efConstruction <= 0 || efSearch <= 0) {
+                throw new IllegalArgumentException("m must be at least 2, ef must be positive");
+            }
+            return new HnswIndex(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,217 @@
+package com.wly.chatgptsdk.embedding;
+
+import okio.ByteString;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 基于内存映射文件的向量存储；进程重启后仍然有效
+ * 文件是一张定长的开放寻址哈希表：头部记录维度与槽位数，之后每个槽位依次存放 32 字节的键与 dimensions 个小端序 float。
+ * 键全为 0 表示空槽。查找与写入直接在映射内存上完成，无需在启动时重建索引；
+ * 线性探测超过 MAX_PROBE 仍未找到空槽时覆盖首个槽位，存储因此具有缓存语义。
+ */
+public class MappedEmbeddingStore implements Closeable {
+
+    private static final int MAGIC = 0x454D4244;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int KEY_SIZE = 32;
+    private static final int MAX_PROBE = 16;
+
+    private final FileChannel channel;
+    private final int dimensions;
+    private final int capacity;
+    private final int slotSize;
+    private final int slotsPerSegment;
+    private final MappedByteBuffer[] segments;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private MappedEmbeddingStore(FileChannel channel, int dimensions, int capacity) throws IOException {
+        this.channel = channel;
+        this.dimensions = dimensions;
+        this.capacity = capacity;
+        this.slotSize = KEY_SIZE + dimensions * Float.BYTES;
+        // 单个 MappedByteBuffer 不能超过 2GB，按段映射
+        this.slotsPerSegment = Math.max(1, (Integer.MAX_VALUE - HEADER_SIZE) / slotSize);
+        int segmentCount = (capacity + slotsPerSegment - 1) / slotsPerSegment;
+        this.segments = new MappedByteBuffer[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            int slots = Math.min(slotsPerSegment, capacity - i * slotsPerSegment);
+            long position = HEADER_SIZE + (long) i * slotsPerSegment * slotSize;
+            segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, position, (long) slots * slotSize);
+            segments[i].order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /**
+     * 打开或创建存储文件；已有文件的维度与槽位数必须与参数一致
+     *
+     * @param path       文件路径
+     * @param dimensions 向量维度
+     * @param capacity   槽位数
+     * @return 存储
+     */
+    public static MappedEmbeddingStore open(Path path, int dimensions, int capacity) throws IOException {
+        if (dimensions <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("dimensions and capacity must be positive");
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (channel.size() == 0) {
+                header.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, dimensions).putInt(12, capacity);
+                channel.write(header, 0);
+            } else {
+                channel.read(header, 0);
+                if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                    throw new IOException("not an embedding store: " + path);
+                }
+                int storedDimensions = header.getInt(8);
+                int storedCapacity = header.getInt(12);
+                if (storedDimensions != dimensions || storedCapacity != capacity) {
+                    throw new IllegalStateException("embedding store " + path + " has dimensions " + storedDimensions
+                            + " and capacity " + storedCapacity + ", expected " + dimensions + " and " + capacity);
+                }
+            }
+            return new MappedEmbeddingStore(channel, dimensions, capacity);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 读取向量；不存在时返回 null
+     */
+    public float[] get(ByteString key) {
+        checkKey(key);
+        lock.readLock().lock();
+        try {
+            int slot = find(key);
+            if (slot < 0) return null;
+            float[] vector = new float[dimensions];
+            slice(slot, KEY_SIZE).asFloatBuffer().get(vector);
+            return vector;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 写入向量
+     */
+    public void put(ByteString key, float[] vector) {
+        checkKey(key);
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("vector has " + vector.length + " dimensions, store expects " + dimensions);
+        }
+        lock.writeLock().lock();
+        try {
+            int home = home(key);
+            int target = home;
+            for (int i = 0; i < MAX_PROBE; i++) {
+                int slot = (home + i) % capacity;
+                if (isEmpty(slot) || keyEquals(slot, key)) {
+                    target = slot;
+                    break;
+                }
+            }
+            // 覆盖其他键的槽位时先清空旧键，写入中途进程退出也不会让旧键指向写了一半的新向量
+            if (!isEmpty(target) && !keyEquals(target, key)) {
+                slice(target, 0).put(new byte[KEY_SIZE]);
+            }
+            slice(target, KEY_SIZE).asFloatBuffer().put(vector);
+            slice(target, 0).put(key.asByteBuffer());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    /**
+     * 把映射内存刷写到磁盘
+     */
+    public void flush() {
+        lock.writeLock().lock();
+        try {
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    private int find(ByteString key) {
+        int home = home(key);
+        for (int i = 0; i < MAX_PROBE; i++) {
+            int slot = (home + i) % capacity;
+            if (isEmpty(slot)) return -1;
+            if (keyEquals(slot, key)) return slot;
+        }
+        return -1;
+    }
+
+    private int home(ByteString key) {
+        long hash = 0;
+        for (int i = 0; i < 8; i++) {
+            hash = (hash << 8) | (key.getByte(i) & 0xFF);
+        }
+        return (int) Math.floorMod(hash, (long) capacity);
+    }
+
+    private boolean isEmpty(int slot) {
+        ByteBuffer buffer = slice(slot, 0);
+        for (int i = 0; i < KEY_SIZE; i += Long.BYTES) {
+            if (buffer.getLong(i) != 0) return false;
+        }
+        return true;
+    }
+
+    private boolean keyEquals(int slot, ByteString key) {
+        ByteBuffer buffer = slice(slot, 0);
+        for (int i = 0; i < KEY_SIZE; i++) {
+            if (buffer.get(i) != key.getByte(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 槽位内指定偏移开始的视图；duplicate 后的视图各自维护 position，读写互不干扰
+     */
+    private ByteBuffer slice(int slot, int offset) {
+        MappedByteBuffer segment = segments[slot / slotsPerSegment];
+        ByteBuffer buffer = segment.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int position = (slot % slotsPerSegment) * slotSize + offset;
+        // 以 Buffer 调用，保证在 Java 8 运行时的二进制兼容
+        ((Buffer) buffer).limit(position + slotSize - offset);
+        ((Buffer) buffer).position(position);
+        return buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void checkKey(ByteString key) {
+        if (key.size() != KEY_SIZE) {
+            throw new IllegalArgumentException("key must be " + KEY_SIZE + " bytes");
+        }
+    }
+
+}
@@ -0,0 +1,18 @@
+package com.wly.chatgptsdk.embedding;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 相似度检索结果
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class SearchResult {
+    /** 向量 ID */
+    private final long id;
+    /** 余弦相似度；越大越相似 */
+    private final float score;
+}
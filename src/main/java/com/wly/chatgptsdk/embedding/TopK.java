@@ -0,0 +1,89 @@
+package com.wly.chatgptsdk.embedding;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 保留得分最高的 k 个结果；基于原始类型数组的小顶堆，不产生装箱对象
+ */
+final class TopK {
+
+    private final int k;
+    private final long[] ids;
+    private final float[] scores;
+    private int size;
+
+    TopK(int k) {
+        this.k = k;
+        this.ids = new long[k];
+        this.scores = new float[k];
+    }
+
+    void offer(long id, float score) {
+        if (size < k) {
+            ids[size] = id;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (k > 0 && score > scores[0]) {
+            ids[0] = id;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    void merge(TopK other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.ids[i], other.scores[i]);
+        }
+    }
+
+    /**
+     * 按得分从高到低输出；依次弹出堆顶的最小值，从数组尾部向前填充
+     */
+    List<SearchResult> toList() {
+        long[] heapIds = Arrays.copyOf(ids, size);
+        float[] heapScores = Arrays.copyOf(scores, size);
+        SearchResult[] results = new SearchResult[size];
+        for (int n = size; n > 0; n--) {
+            results[n - 1] = new SearchResult(heapIds[0], heapScores[0]);
+            heapIds[0] = heapIds[n - 1];
+            heapScores[0] = heapScores[n - 1];
+            siftDown(heapIds, heapScores, n - 1, 0);
+        }
+        return Arrays.asList(results);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (scores[parent] <= scores[i]) break;
+            swap(ids, scores, i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        siftDown(ids, scores, size, i);
+    }
+
+    private static void siftDown(long[] ids, float[] scores, int size, int i) {
+        while (true) {
+            int left = (i << 1) + 1;
+            if (left >= size) return;
+            int smallest = left + 1 < size && scores[left + 1] < scores[left] ? left + 1 : left;
+            if (scores[i] <= scores[smallest]) return;
+            swap(ids, scores, i, smallest);
+            i = smallest;
+        }
+    }
+
+    private static void swap(long[] ids, float[] scores, int a, int b) {
+        long id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+        float score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.wly.chatgptsdk.embedding;
+
+import com.wly.chatgptsdk.domain.embedd.EmbeddingResponse;
+import com.wly.chatgptsdk.domain.embedd.FloatEmbeddingResponse;
+import com.wly.chatgptsdk.domain.embedd.FloatItem;
+import com.wly.chatgptsdk.domain.embedd.Item;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * 进程内向量索引；按余弦相似度检索 top-k
+ * 写入时向量被归一化并复制，调用方之后修改原数组不影响索引。
+ */
+public interface VectorIndex {
+
+    /**
+     * 向量维度
+     */
+    int dimensions();
+
+    /**
+     * 已索引的向量数量
+     */
+    int size();
+
+    /**
+     * 写入向量；ID 已存在时覆盖
+     *
+     * @param id     向量 ID
+     * @param vector 向量
+     */
+    void add(long id, float[] vector);
+
+    /**
+     * 删除向量
+     *
+     * @param id 向量 ID
+     * @return 是否存在
+     */
+    boolean remove(long id);
+
+    /**
+     * 检索最相似的 k 个向量
+     *
+     * @param query 查询向量
+     * @param k     结果数量
+     * @return 按相似度降序排列的结果
+     */
+    List<SearchResult> search(float[] query, int k);
+
+    /**
+     * 保存快照；由对应实现的 load 方法读取
+     *
+     * @param path 文件路径
+     */
+    void save(Path path) throws IOException;
+
+    /**
+     * 写入向量计算结果；第 i 条的 ID 为 firstId + Item.index
+     *
+     * @param firstId  起始 ID
+     * @param response 应答结果
+     */
+    default void addAll(long firstId, FloatEmbeddingResponse response) {
+        for (FloatItem item : response.getData()) {
+            add(firstId + item.getIndex(), item.getEmbedding());
+        }
+    }
+
+    /**
+     * 写入向量计算结果；第 i 条的 ID 为 firstId + Item.index
+     *
+     * @param firstId  起始 ID
+     * @param response 应答结果
+     */
+    default void addAll(long firstId, EmbeddingResponse response) {
+        for (Item item : response.getData()) {
+            float[] vector = new float[item.getEmbedding().size()];
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = item.getEmbedding().get(i).floatValue();
+            }
+            add(firstId + item.getIndex(), vector);
+        }
+    }
+
+}
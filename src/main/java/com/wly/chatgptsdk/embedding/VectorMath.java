@@ -0,0 +1,52 @@
+package com.wly.chatgptsdk.embedding;
+
+/**
+ * 向量运算
+ * 索引中的向量都已归一化，余弦相似度即点积。
+ * 浮点加法不满足结合律，JIT 不会把单个累加变量的归约循环向量化，每次加法都要等待上一次的结果；
+ * 点积因此拆成 4 个相互独立的累加变量，让流水线同时推进多条加法链，最后再合并。
+ */
+final class VectorMath {
+
+    private VectorMath() {
+    }
+
+    static float dot(float[] a, int offset, float[] b, int length) {
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        for (int bound = length & ~3; i < bound; i += 4) {
+            s0 += a[offset + i] * b[i];
+            s1 += a[offset + i + 1] * b[i + 1];
+            s2 += a[offset + i + 2] * b[i + 2];
+            s3 += a[offset + i + 3] * b[i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[offset + i] * b[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    static float dot(float[] a, float[] b) {
+        return dot(a, 0, b, a.length);
+    }
+
+    /**
+     * 归一化后的副本；零向量原样复制
+     */
+    static float[] normalize(float[] vector, int dimensions) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("vector has " + vector.length + " dimensions, index expects " + dimensions);
+        }
+        double sum = 0;
+        for (float v : vector) {
+            sum += v * v;
+        }
+        float[] normalized = new float[dimensions];
+        float scale = sum == 0 ? 1f : (float) (1 / Math.sqrt(sum));
+        for (int i = 0; i < dimensions; i++) {
+            normalized[i] = vector[i] * scale;
+        }
+        return normalized;
+    }
+
+}
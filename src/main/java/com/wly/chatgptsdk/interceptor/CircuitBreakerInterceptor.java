@@ -0,0 +1,52 @@
+package com.wly.chatgptsdk.interceptor;
+
+import com.wly.chatgptsdk.circuit.CircuitBreaker;
+import com.wly.chatgptsdk.circuit.CircuitBreakerRegistry;
+import com.wly.chatgptsdk.circuit.CircuitOpenException;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+/**
+ * 熔断拦截器
+ * 按请求的 host 与接口选择熔断器，接口名称见 Endpoints，同一接口的不同路径参数共用一个熔断器；
+ * 打开时直接抛出 CircuitOpenException，不占用连接也不等待超时。
+ * 连接异常与 5xx 计为失败，429 属于限流而非服务劣化，不计为失败；调用方主动取消的请求不记录结果。
+ * 需要位于 RetryInterceptor 之后，每次重试都单独记录，熔断打开后重试也随之停止。
+ */
+public class CircuitBreakerInterceptor implements Interceptor {
+
+    private final CircuitBreakerRegistry registry;
+
+    public CircuitBreakerInterceptor(CircuitBreakerRegistry registry) {
+        this.registry = registry;
+    }
+
+    @NotNull
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        HttpUrl url = chain.request().url();
+        String host = url.port() == HttpUrl.defaultPort(url.scheme()) ? url.host() : url.host() + ":" + url.port();
+        CircuitBreaker breaker = registry.breaker(host, Endpoints.path(chain.request()));
+        if (!breaker.tryAcquire()) throw new CircuitOpenException(breaker.getName());
+
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(chain.request());
+        } catch (IOException | RuntimeException e) {
+            if (chain.call().isCanceled()) {
+                breaker.release();
+            } else {
+                breaker.record(true, System.nanoTime() - start);
+            }
+            throw e;
+        }
+        breaker.record(response.code() >= 500, System.nanoTime() - start);
+        return response;
+    }
+
+}
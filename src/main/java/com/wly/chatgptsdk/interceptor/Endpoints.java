@@ -0,0 +1,82 @@
+package com.wly.chatgptsdk.interceptor;
+
+import okhttp3.Request;
+import retrofit2.Invocation;
+import retrofit2.http.DELETE;
+import retrofit2.http.GET;
+import retrofit2.http.HEAD;
+import retrofit2.http.HTTP;
+import retrofit2.http.OPTIONS;
+import retrofit2.http.PATCH;
+import retrofit2.http.POST;
+import retrofit2.http.PUT;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 接口名称
+ * 熔断与指标按接口而不是按具体路径分组，否则 v1/files/{file_id} 的每个文件各占一份状态且永不回收。
+ * Retrofit 发出的请求带有 Invocation 标记，取接口方法注解上的相对路径作为模板；会话手工构建的流式请求路径固定，直接使用路径。
+ * apiHost 带路径前缀时保留前缀，两种请求得到的名称一致。
+ */
+public final class Endpoints {
+
+    private static final String[] NO_TEMPLATE = new String[0];
+
+    /** 接口方法对应的模板路径段；方法数量有限，不需要淘汰 */
+    private static final Map<Method, String[]> TEMPLATES = new ConcurrentHashMap<>();
+
+    private Endpoints() {
+    }
+
+    /**
+     * 请求对应的接口路径；以 / 开头，路径参数保留为 {name} 占位符
+     */
+    public static String path(Request request) {
+        Invocation invocation = request.tag(Invocation.class);
+        if (null == invocation) return request.url().encodedPath();
+        String[] template = TEMPLATES.computeIfAbsent(invocation.method(), Endpoints::template);
+        List<String> segments = request.url().encodedPathSegments();
+        if (template == NO_TEMPLATE || segments.size() < template.length) return request.url().encodedPath();
+        // 前缀来自 apiHost，其余路径段换成模板
+        StringBuilder path = new StringBuilder();
+        for (int i = 0; i < segments.size() - template.length; i++) {
+            path.append('/').append(segments.get(i));
+        }
+        for (String segment : template) {
+            path.append('/').append(segment);
+        }
+        return path.toString();
+    }
+
+    private static String[] template(Method method) {
+        for (Annotation annotation : method.getAnnotations()) {
+            String value = value(annotation);
+            if (null == value) continue;
+            int query = value.indexOf('?');
+            if (query >= 0) value = value.substring(0, query);
+            // 空路径（@Url 动态地址）与绝对地址没有可用的模板
+            if (value.isEmpty() || value.contains("://")) return NO_TEMPLATE;
+            if (value.startsWith("/")) value = value.substring(1);
+            return value.isEmpty() ? NO_TEMPLATE : value.split("/");
+        }
+        return NO_TEMPLATE;
+    }
+
+    private static String value(Annotation annotation) {
+        if (annotation instanceof GET) return ((GET) annotation).value();
+        if (annotation instanceof POST) return ((POST) annotation).value();
+        if (annotation instanceof DELETE) return ((DELETE) annotation).value();
+        if (annotation instanceof PUT) return ((PUT) annotation).value();
+        if (annotation instanceof PATCH) return ((PATCH) annotation).value();
+        if (annotation instanceof HEAD) return ((HEAD) annotation).value();
+        if (annotation instanceof OPTIONS) return ((OPTIONS) annotation).value();
+        if (annotation instanceof HTTP) return ((HTTP) annotation).path();
+        return null;
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.wly.chatgptsdk.interceptor;
+
+import com.wly.chatgptsdk.metrics.MetricsRecorder;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+/**
+ * 指标拦截器
+ * 位于拦截器链的最外层，记录的是使用方感受到的耗时，包含重试、限流与 apiKey 等待；流式请求记录到收到应答头为止。
+ */
+public class MetricsInterceptor implements Interceptor {
+
+    private final MetricsRecorder recorder;
+
+    public MetricsInterceptor(MetricsRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * 指标中使用的 endpoint 名称；接口模板去掉开头的 /，如 v1/files/{file_id}。每个名称对应一组直方图，不能随路径参数增长
+     */
+    public static String endpoint(Request request) {
+        return Endpoints.path(request).substring(1);
+    }
+
+    @NotNull
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        String endpoint = endpoint(chain.request());
+        recorder.requestStarted(endpoint);
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(chain.request());
+        } catch (IOException | RuntimeException e) {
+            recorder.requestFailed(endpoint, e, System.nanoTime() - start);
+            throw e;
+        }
+        recorder.requestCompleted(endpoint, response.code(), System.nanoTime() - start);
+        return response;
+    }
+
+}
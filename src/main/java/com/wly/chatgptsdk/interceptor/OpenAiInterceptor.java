@@ -3,21 +3,37 @@ package com.wly.chatgptsdk.interceptor;
 import cn.hutool.http.ContentType;
 import cn.hutool.http.Header;
 
+import com.wly.chatgptsdk.key.ApiKeyPool;
 import okhttp3.Interceptor;
+import okhttp3.MediaType;
 import okhttp3.Request;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 public class OpenAiInterceptor implements Interceptor {
 
     /** OpenAi apiKey 需要在官网申请 */
     private final String apiKeyBySystem;
+    /** apiKey 池；为空时使用 apiKeyBySystem */
+    private final ApiKeyPool apiKeyPool;
+
     /** 访问授权接口的认证 Token */
     public OpenAiInterceptor(String apiKeyBySystem) {
+        this(apiKeyBySystem, null);
+    }
+
+    public OpenAiInterceptor(String apiKeyBySystem, ApiKeyPool apiKeyPool) {
         this.apiKeyBySystem = apiKeyBySystem;
+        this.apiKeyPool = apiKeyPool;
     }
 
     @NotNull
@@ -26,20 +42,85 @@ public class OpenAiInterceptor implements Interceptor {
         // 1. 获取原始 Request
         Request original = chain.request();
 
-        // 2. 读取 apiKey；优先使用自己传递的 apiKey
+        // 2. 读取 apiKey；优先使用自己传递的 apiKey，其次使用准入时已借出的 apiKey，最后从 apiKey 池中借出
+        ApiKeyPool.Lease lease = original.tag(ApiKeyPool.Lease.class);
         String apiKeyByUser = original.header("apiKey");
-        String apiKey = null == apiKeyByUser ? apiKeyBySystem : apiKeyByUser;
+        if (null == lease) {
+            if (null != apiKeyByUser || null == apiKeyPool) {
+                return chain.proceed(authorize(original, null == apiKeyByUser ? apiKeyBySystem : apiKeyByUser));
+            }
+            lease = apiKeyPool.acquireLease();
+        }
 
-        // 3. 构建 Request
-        Request request = original.newBuilder()
+        Response response;
+        try {
+            response = chain.proceed(authorize(original, lease.key()));
+        } catch (IOException | RuntimeException e) {
+            lease.release();
+            throw e;
+        }
+        lease.update(response);
+        ResponseBody body = response.body();
+        if (null == body) {
+            lease.release();
+            return response;
+        }
+        // 应答体关闭时归还，流式应答读取期间一直占用该 key 的在途名额
+        return response.newBuilder().body(new ReleasingResponseBody(body, lease::release)).build();
+    }
+
+    /**
+     * 3. 构建 Request
+     */
+    private Request authorize(Request original, String apiKey) {
+        return original.newBuilder()
                 .url(original.url())
                 .header(Header.AUTHORIZATION.getValue(), "Bearer " + apiKey)
                 .header(Header.CONTENT_TYPE.getValue(), ContentType.JSON.getValue())
                 .method(original.method(), original.body())
                 .build();
+    }
+
+    /**
+     * 关闭时执行一次回调的应答体
+     */
+    private static final class ReleasingResponseBody extends ResponseBody {
+
+        private final ResponseBody delegate;
+        private final BufferedSource source;
+
+        ReleasingResponseBody(ResponseBody delegate, Runnable onClose) {
+            this.delegate = delegate;
+            AtomicBoolean closed = new AtomicBoolean();
+            this.source = Okio.buffer(new ForwardingSource(delegate.source()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        if (closed.compareAndSet(false, true)) onClose.run();
+                    }
+                }
+            });
+        }
+
+        @Nullable
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return delegate.contentLength();
+        }
+
+        @NotNull
+        @Override
+        public BufferedSource source() {
+            return source;
+        }
 
-        // 4. 返回执行结果
-        return chain.proceed(request);
     }
 
 }
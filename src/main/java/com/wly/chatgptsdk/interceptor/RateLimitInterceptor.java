@@ -0,0 +1,71 @@
+package com.wly.chatgptsdk.interceptor;
+
+import com.wly.chatgptsdk.ratelimit.RateLimitedCallFactory;
+import com.wly.chatgptsdk.ratelimit.RateLimiter;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 限流拦截器
+ * 会话发出的请求都已由 RateLimitedCallFactory 或 RateLimitedEventSourceFactory 在进入调度器之前准入；
+ * 这里只为其余请求申请准入（RetryInterceptor 在调用线程上的同步重试，以及直接使用 OkHttpClient 发出的请求），等待期间占用当前线程。
+ * 收到应答头时释放本次请求的预留，并以应答头校准本地余量；请求失败时只释放预留。需要位于 OpenAiInterceptor 之后，以便看到实际使用的 apiKey。
+ */
+public class RateLimitInterceptor implements Interceptor {
+
+    private static final String BEARER = "Bearer ";
+
+    private final RateLimiter rateLimiter;
+    private final String apiKeyBySystem;
+
+    public RateLimitInterceptor(RateLimiter rateLimiter, String apiKeyBySystem) {
+        this.rateLimiter = rateLimiter;
+        this.apiKeyBySystem = apiKeyBySystem;
+    }
+
+    @NotNull
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        // OpenAiInterceptor 已写入实际使用的 apiKey；apiKey 池借出的每个 key 各自分桶
+        String authorization = request.header("Authorization");
+        String apiKey = null != authorization && authorization.startsWith(BEARER) ? authorization.substring(BEARER.length()) : apiKeyBySystem;
+        String model = RateLimiter.model(request);
+
+        RateLimitedCallFactory.Permit permit = request.tag(RateLimitedCallFactory.Permit.class);
+        RateLimiter.Reservation reservation;
+        if (null != permit) {
+            reservation = permit.reservation();
+        } else {
+            CompletableFuture<RateLimiter.Reservation> admission = rateLimiter.reserve(apiKey, model, rateLimiter.estimateTokens(request));
+            try {
+                reservation = admission.get();
+            } catch (InterruptedException e) {
+                admission.cancel(false);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for rate limit");
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            }
+        }
+
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException | RuntimeException e) {
+            rateLimiter.release(reservation);
+            throw e;
+        }
+        // 服务端余量已计入本次请求，释放预留后再校准
+        rateLimiter.update(reservation, response.headers());
+        return response;
+    }
+
+}
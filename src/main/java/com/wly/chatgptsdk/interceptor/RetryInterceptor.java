@@ -0,0 +1,111 @@
+package com.wly.chatgptsdk.interceptor;
+
+import com.wly.chatgptsdk.key.ApiKeyPool;
+import com.wly.chatgptsdk.ratelimit.RateLimitedCallFactory;
+import com.wly.chatgptsdk.retry.RetryPolicy;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * 重试拦截器
+ * 需要位于拦截器链的最前面，这样每次重试都会重新经过 apiKey 选择与限流。重试只依据状态码与连接异常，发生在读取应答体之前。
+ * 退避期间占用当前线程，每 100ms 检查一次请求是否已取消。
+ * 带有 Bypass 标记的请求只执行一次，由调用方在调度线程上重试：流式请求由 RetryingEventSource 重连，
+ * 经 RateLimitedCallFactory 异步执行的请求由其重新排队，重试重新申请准入时都不占用调度器线程。
+ */
+public class RetryInterceptor implements Interceptor {
+
+    private static final long CANCEL_CHECK_MILLIS = 100;
+
+    private final RetryPolicy retryPolicy;
+
+    public RetryInterceptor(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    @NotNull
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (null != request.tag(Bypass.class)) return chain.proceed(request);
+        retryPolicy.budget().onRequest();
+        for (int attempt = 1; ; attempt++) {
+            Response response;
+            try {
+                response = chain.proceed(request);
+            } catch (IOException e) {
+                long delay = delay(chain, attempt, null, e);
+                if (delay < 0) throw e;
+                sleep(chain, delay);
+                request = retryRequest(request);
+                continue;
+            }
+            long delay = delay(chain, attempt, response, null);
+            if (delay < 0) return response;
+            response.close();
+            sleep(chain, delay);
+            request = retryRequest(request);
+        }
+    }
+
+    /**
+     * 计算重试等待时间；不应重试时返回 -1
+     */
+    private long delay(Chain chain, int attempt, Response response, IOException e) {
+        if (attempt >= retryPolicy.maxAttempts() || chain.call().isCanceled()) return -1;
+        boolean retryable = null == response ? retryPolicy.isRetryable(e) : retryPolicy.isRetryable(response);
+        if (!retryable) return -1;
+        long delay = retryPolicy.delayMillis(attempt - 1, response);
+        if (delay < 0 || !retryPolicy.budget().tryAcquire()) return -1;
+        return delay;
+    }
+
+    /**
+     * 重试请求去掉准入与借出的 apiKey 标记，重新选择 apiKey 并经过限流；上次借出的 apiKey 已随应答关闭归还
+     */
+    private static Request retryRequest(Request request) {
+        if (null == request.tag(RateLimitedCallFactory.Permit.class) && null == request.tag(ApiKeyPool.Lease.class)) return request;
+        return request.newBuilder()
+                .tag(RateLimitedCallFactory.Permit.class, null)
+                .tag(ApiKeyPool.Lease.class, null)
+                .build();
+    }
+
+    /**
+     * 加上 Bypass 标记，请求的重试由调用方负责
+     */
+    public static Request bypass(Request request) {
+        return request.newBuilder().tag(Bypass.class, Bypass.INSTANCE).build();
+    }
+
+    private static void sleep(Chain chain, long delayMillis) throws IOException {
+        long deadline = System.nanoTime() + delayMillis * 1_000_000L;
+        try {
+            for (long remaining = delayMillis; remaining > 0; remaining = (deadline - System.nanoTime()) / 1_000_000L) {
+                if (chain.call().isCanceled()) throw new IOException("Canceled");
+                Thread.sleep(Math.min(remaining, CANCEL_CHECK_MILLIS));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting to retry");
+        }
+    }
+
+    /**
+     * 调用方负责重试的标记
+     */
+    public static final class Bypass {
+
+        static final Bypass INSTANCE = new Bypass();
+
+        private Bypass() {
+        }
+
+    }
+
+}
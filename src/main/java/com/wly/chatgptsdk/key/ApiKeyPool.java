@@ -0,0 +1,388 @@
+package com.wly.chatgptsdk.key;
+
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * apiKey 池
+ * 每次请求从池中借出一个 apiKey，应答体关闭后归还：按应答头中的剩余额度加权随机选择，额度越多被选中的概率越大；
+ * 收到 429 的 key 冷却一段时间（优先使用 Retry-After），收到 401 的 key 冷却更久。
+ * 每个 key 有独立的在途请求上限，总吞吐随 key 的数量线性增长；所有可用 key 都已满时，借出方等待归还。
+ * acquire 在调用线程上等待，使用 ReentrantLock 的 Condition 而不是 Object.wait，在虚拟线程上等待时不会占住载体线程；
+ * lease 返回 future，归还时按到达顺序交给排队的借出方，不占用任何线程，供进入调度器之前选择 key 的限流准入使用。
+ */
+public class ApiKeyPool {
+
+    private static final ScheduledExecutorService SCHEDULER = newScheduler();
+
+    private final List<KeyState> keys;
+    private final int maxInFlightPerKey;
+    private final long rateLimitedCooldownMillis;
+    private final long unauthorizedCooldownMillis;
+    private final long acquireTimeoutMillis;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    /** 等待中的异步借出方；由 lock 保护 */
+    private final ArrayDeque<CompletableFuture<Lease>> waiters = new ArrayDeque<>();
+
+    private ApiKeyPool(Builder builder) {
+        List<KeyState> keys = new ArrayList<>(builder.keys.size());
+        for (String key : builder.keys) {
+            keys.add(new KeyState(key));
+        }
+        this.keys = Collections.unmodifiableList(keys);
+        this.maxInFlightPerKey = builder.maxInFlightPerKey;
+        this.rateLimitedCooldownMillis = builder.rateLimitedCooldownMillis;
+        this.unauthorizedCooldownMillis = builder.unauthorizedCooldownMillis;
+        this.acquireTimeoutMillis = builder.acquireTimeoutMillis;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 借出一个 apiKey；用完后必须调用 release
+     *
+     * @return apiKey
+     * @throws IOException 所有 key 都在冷却，或等待超时
+     */
+    public String acquire() throws IOException {
+        long deadline = System.currentTimeMillis() + acquireTimeoutMillis;
+        lock.lock();
+        try {
+            while (true) {
+                long now = System.currentTimeMillis();
+                KeyState selected = select(now);
+                if (null != selected) {
+                    selected.inFlight++;
+                    return selected.key;
+                }
+                if (allCoolingDown(now)) {
+                    throw new IOException("all " + keys.size() + " api keys are cooling down");
+                }
+                long wait = deadline - now;
+                if (wait <= 0) {
+                    throw new IOException("timed out waiting for an api key, " + maxInFlightPerKey + " requests in flight per key");
+                }
+                try {
+                    released.await(wait, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted while waiting for an api key");
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 借出一个 apiKey；用完后必须调用 Lease.release
+     *
+     * @return 借出后完成的 future；所有 key 都在冷却或等待超时时以 IOException 完成，取消 future 即放弃等待
+     */
+    public CompletableFuture<Lease> lease() {
+        CompletableFuture<Lease> future = new CompletableFuture<>();
+        Lease lease = null;
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            KeyState selected = waiters.isEmpty() ? select(now) : null;
+            if (null != selected) {
+                selected.inFlight++;
+                lease = new Lease(selected.key);
+            } else if (allCoolingDown(now)) {
+                future.completeExceptionally(new IOException("all " + keys.size() + " api keys are cooling down"));
+                return future;
+            } else {
+                waiters.addLast(future);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (null != lease) {
+            future.complete(lease);
+            return future;
+        }
+        ScheduledFuture<?> timeout = SCHEDULER.schedule(() -> {
+            future.completeExceptionally(new IOException("timed out waiting for an api key, " + maxInFlightPerKey + " requests in flight per key"));
+        }, acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        future.whenComplete((value, throwable) -> {
+            timeout.cancel(false);
+            if (null == throwable) return;
+            lock.lock();
+            try {
+                waiters.remove(future);
+            } finally {
+                lock.unlock();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 借出一个 apiKey；在调用线程上等待，用完后必须调用 Lease.release
+     *
+     * @throws IOException 所有 key 都在冷却，或等待超时
+     */
+    public Lease acquireLease() throws IOException {
+        return new Lease(acquire());
+    }
+
+    /**
+     * 根据应答更新额度与冷却状态；收到应答头时调用
+     *
+     * @param key      apiKey
+     * @param response 应答
+     */
+    public void update(String key, Response response) {
+        KeyState state = find(key);
+        if (null == state) return;
+        double quota = quota(response, -1);
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            if (response.code() == 429) {
+                long retryAfter = parse(response.header("Retry-After"));
+                state.coolDownUntil = now + (retryAfter > 0 ? TimeUnit.SECONDS.toMillis(retryAfter) : rateLimitedCooldownMillis);
+            } else if (response.code() == 401) {
+                state.coolDownUntil = now + unauthorizedCooldownMillis;
+            }
+            if (quota >= 0) state.quota = quota;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 归还 apiKey；应答体关闭或请求失败时调用，流式应答在读取完毕前一直占用名额
+     *
+     * @param key apiKey
+     */
+    public void release(String key) {
+        KeyState state = find(key);
+        if (null == state) return;
+        List<CompletableFuture<Lease>> served = new ArrayList<>();
+        List<Lease> leases = new ArrayList<>();
+        lock.lock();
+        try {
+            state.inFlight--;
+            // 先按顺序交给异步借出方，再唤醒同步借出方
+            long now = System.currentTimeMillis();
+            while (!waiters.isEmpty()) {
+                if (waiters.peekFirst().isDone()) {
+                    waiters.pollFirst();
+                    continue;
+                }
+                KeyState selected = select(now);
+                if (null == selected) break;
+                selected.inFlight++;
+                served.add(waiters.pollFirst());
+                leases.add(new Lease(selected.key));
+            }
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        // 在锁外完成 future；借出方已放弃时立即归还
+        for (int i = 0; i < served.size(); i++) {
+            if (!served.get(i).complete(leases.get(i))) leases.get(i).release();
+        }
+    }
+
+    /**
+     * 池中 key 的数量
+     */
+    public int size() {
+        return keys.size();
+    }
+
+    /**
+     * 加权随机选择；权重为剩余额度比例乘以空闲的在途名额比例
+     */
+    private KeyState select(long now) {
+        double total = 0;
+        double[] weights = new double[keys.size()];
+        for (int i = 0; i < weights.length; i++) {
+            KeyState state = keys.get(i);
+            if (state.coolDownUntil > now || state.inFlight >= maxInFlightPerKey) continue;
+            weights[i] = Math.max(state.quota, 0.01) * (maxInFlightPerKey - state.inFlight) / maxInFlightPerKey;
+            total += weights[i];
+        }
+        if (total == 0) return null;
+        double point = ThreadLocalRandom.current().nextDouble(total);
+        for (int i = 0; i < weights.length; i++) {
+            point -= weights[i];
+            if (weights[i] > 0 && point < 0) return keys.get(i);
+        }
+        // 浮点误差；返回最后一个可用的 key
+        for (int i = weights.length - 1; i >= 0; i--) {
+            if (weights[i] > 0) return keys.get(i);
+        }
+        return null;
+    }
+
+    private boolean allCoolingDown(long now) {
+        for (KeyState state : keys) {
+            if (state.coolDownUntil <= now) return false;
+        }
+        return true;
+    }
+
+    private KeyState find(String key) {
+        for (KeyState state : keys) {
+            if (state.key.equals(key)) return state;
+        }
+        return null;
+    }
+
+    /**
+     * 剩余额度比例；取请求数与 token 数两者中较紧张的一个，应答头缺失时保持原值
+     */
+    private static double quota(Response response, double current) {
+        double requests = ratio(response.header("x-ratelimit-remaining-requests"), response.header("x-ratelimit-limit-requests"));
+        double tokens = ratio(response.header("x-ratelimit-remaining-tokens"), response.header("x-ratelimit-limit-tokens"));
+        if (requests < 0 && tokens < 0) return current;
+        if (requests < 0) return tokens;
+        if (tokens < 0) return requests;
+        return Math.min(requests, tokens);
+    }
+
+    private static double ratio(String remaining, String limit) {
+        long remainingValue = parse(remaining);
+        long limitValue = parse(limit);
+        if (remainingValue < 0 || limitValue <= 0) return -1;
+        return Math.min(1d, (double) remainingValue / limitValue);
+    }
+
+    private static long parse(String value) {
+        if (null == value) return -1;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static ScheduledExecutorService newScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "openai-api-key-pool");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    /**
+     * 借出的 apiKey；release 只生效一次，可以在多处安全调用
+     */
+    public final class Lease {
+
+        private final String key;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Lease(String key) {
+            this.key = key;
+        }
+
+        public String key() {
+            return key;
+        }
+
+        /**
+         * 根据应答更新该 key 的额度与冷却状态
+         */
+        public void update(Response response) {
+            ApiKeyPool.this.update(key, response);
+        }
+
+        /**
+         * 归还
+         */
+        public void release() {
+            if (released.compareAndSet(false, true)) ApiKeyPool.this.release(key);
+        }
+
+    }
+
+    private static final class KeyState {
+
+        private final String key;
+        private int inFlight;
+        private long coolDownUntil;
+        /** 剩余额度比例；0 到 1，未收到应答头前为 1 */
+        private double quota = 1;
+
+        KeyState(String key) {
+            this.key = key;
+        }
+
+    }
+
+    /**
+     * 建造者模式
+     */
+    public static final class Builder {
+
+        private final List<String> keys = new ArrayList<>();
+        private int maxInFlightPerKey = 64;
+        private long rateLimitedCooldownMillis = TimeUnit.SECONDS.toMillis(20);
+        private long unauthorizedCooldownMillis = TimeUnit.MINUTES.toMillis(10);
+        private long acquireTimeoutMillis = TimeUnit.SECONDS.toMillis(60);
+
+        public Builder key(String key) {
+            this.keys.add(key);
+            return this;
+        }
+
+        public Builder keys(List<String> keys) {
+            this.keys.addAll(keys);
+            return this;
+        }
+
+        public Builder maxInFlightPerKey(int maxInFlightPerKey) {
+            this.maxInFlightPerKey = maxInFlightPerKey;
+            return this;
+        }
+
+        public Builder rateLimitedCooldown(long duration, TimeUnit unit) {
+            this.rateLimitedCooldownMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        public Builder unauthorizedCooldown(long duration, TimeUnit unit) {
+            this.unauthorizedCooldownMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        public Builder acquireTimeout(long duration, TimeUnit unit) {
+            this.acquireTimeoutMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        public ApiKeyPool build() {
+            if (keys.isEmpty()) throw new IllegalArgumentException("at least one api key is required");
+            if (maxInFlightPerKey <= 0) throw new IllegalArgumentException("maxInFlightPerKey must be positive");
+            return new ApiKeyPool(this);
+        }
+
+    }
+
+}
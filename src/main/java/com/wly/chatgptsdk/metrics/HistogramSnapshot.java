@@ -0,0 +1,73 @@
+package com.wly.chatgptsdk.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 直方图快照；不再变化，可以多次计算分位数
+ */
+public class HistogramSnapshot {
+
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long max;
+
+    HistogramSnapshot(long[] counts, long sum, long max) {
+        this.counts = counts;
+        long total = 0;
+        for (long c : counts) {
+            total += c;
+        }
+        this.count = total;
+        this.sum = sum;
+        this.max = max;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * 分位数
+     *
+     * @param percentile 0 到 100
+     * @return 所在桶的最大值，不超过实际最大值；没有数据时返回 0
+     */
+    public long percentile(double percentile) {
+        if (count == 0) return 0;
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) return Math.min(Histogram.highestEquivalent(i), max);
+        }
+        return max;
+    }
+
+    /**
+     * 以毫秒展示；适用于记录纳秒耗时的直方图
+     */
+    public String toMillisString() {
+        return String.format("count=%d mean=%.2fms p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms",
+                count, millis((long) getMean()), millis(percentile(50)), millis(percentile(90)), millis(percentile(99)), millis(max));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.2f p50=%d p90=%d p99=%d max=%d",
+                count, getMean(), percentile(50), percentile(90), percentile(99), max);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+}
@@ -0,0 +1,133 @@
+package com.wly.chatgptsdk.metrics;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 内存中的指标记录；按 endpoint 汇总，通过 snapshot() 读取分位数
+ * 耗时以纳秒记录；生成速度以每秒 token 数记录。
+ */
+public class InMemoryMetricsRecorder implements MetricsRecorder {
+
+    private final ConcurrentMap<String, EndpointMetrics> endpoints = new ConcurrentHashMap<>();
+
+    @Override
+    public void requestStarted(String endpoint) {
+        metrics(endpoint).inFlight.increment();
+    }
+
+    @Override
+    public void requestCompleted(String endpoint, int status, long latencyNanos) {
+        EndpointMetrics metrics = metrics(endpoint);
+        metrics.inFlight.decrement();
+        metrics.latency.record(latencyNanos);
+        if (status >= 400) metrics.error(String.valueOf(status));
+    }
+
+    @Override
+    public void requestFailed(String endpoint, Throwable t, long latencyNanos) {
+        EndpointMetrics metrics = metrics(endpoint);
+        metrics.inFlight.decrement();
+        metrics.latency.record(latencyNanos);
+        metrics.error(t.getClass().getSimpleName());
+    }
+
+    @Override
+    public void firstToken(String endpoint, long nanos) {
+        metrics(endpoint).timeToFirstToken.record(nanos);
+    }
+
+    @Override
+    public void interTokenGap(String endpoint, long nanos) {
+        metrics(endpoint).interTokenGap.record(nanos);
+    }
+
+    @Override
+    public void streamCompleted(String endpoint, int outputTokens, long generationNanos, boolean success) {
+        EndpointMetrics metrics = metrics(endpoint);
+        metrics.outputTokens.record(outputTokens);
+        if (success && outputTokens > 1 && generationNanos > 0) {
+            // 首个 token 之后生成的数量除以耗时
+            metrics.tokensPerSecond.record(Math.round((outputTokens - 1) * (double) TimeUnit.SECONDS.toNanos(1) / generationNanos));
+        }
+        if (!success) metrics.error("stream");
+    }
+
+    /**
+     * 各 endpoint 的指标快照
+     */
+    public Map<String, EndpointSnapshot> snapshot() {
+        Map<String, EndpointSnapshot> snapshot = new LinkedHashMap<>();
+        endpoints.forEach((endpoint, metrics) -> snapshot.put(endpoint, metrics.snapshot()));
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    private EndpointMetrics metrics(String endpoint) {
+        EndpointMetrics metrics = endpoints.get(endpoint);
+        return null != metrics ? metrics : endpoints.computeIfAbsent(endpoint, key -> new EndpointMetrics());
+    }
+
+    private static final class EndpointMetrics {
+
+        final LongAdder inFlight = new LongAdder();
+        final Histogram latency = new Histogram();
+        final ConcurrentMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+        final Histogram timeToFirstToken = new Histogram();
+        final Histogram interTokenGap = new Histogram();
+        final Histogram outputTokens = new Histogram();
+        final Histogram tokensPerSecond = new Histogram();
+
+        void error(String kind) {
+            errors.computeIfAbsent(kind, key -> new LongAdder()).increment();
+        }
+
+        EndpointSnapshot snapshot() {
+            Map<String, Long> errorCounts = new LinkedHashMap<>();
+            errors.forEach((kind, count) -> errorCounts.put(kind, count.sum()));
+            return new EndpointSnapshot(inFlight.sum(), latency.snapshot(), Collections.unmodifiableMap(errorCounts),
+                    timeToFirstToken.snapshot(), interTokenGap.snapshot(), outputTokens.snapshot(), tokensPerSecond.snapshot());
+        }
+
+    }
+
+    /**
+     * 单个 endpoint 的指标快照
+     */
+    @Getter
+    @ToString
+    @AllArgsConstructor
+    public static class EndpointSnapshot {
+
+        /** 在途请求数；流式请求在收到应答头后即不再计入 */
+        private final long inFlight;
+
+        /** 请求耗时，纳秒；流式请求为收到应答头的耗时 */
+        private final HistogramSnapshot latency;
+
+        /** 错误次数；键为状态码、异常类名，或 stream 表示流式应答中断 */
+        private final Map<String, Long> errors;
+
+        /** 首 token 时间，纳秒 */
+        private final HistogramSnapshot timeToFirstToken;
+
+        /** token 间隔，纳秒 */
+        private final HistogramSnapshot interTokenGap;
+
+        /** 每次流式应答的输出 token 数 */
+        private final HistogramSnapshot outputTokens;
+
+        /** 生成速度，每秒 token 数 */
+        private final HistogramSnapshot tokensPerSecond;
+
+    }
+
+}
@@ -0,0 +1,56 @@
+package com.wly.chatgptsdk.metrics;
+
+/**
+ * 指标记录 SPI
+ * Http 层的请求耗时、在途数量与错误由 MetricsInterceptor 记录；流式应答的首 token 时间、token 间隔与生成速度由 StreamMetrics 记录。
+ * endpoint 为接口路径，如 v1/chat/completions。未配置时 SDK 不创建任何记录对象，不产生额外开销。
+ * 回调在请求线程或 OkHttp 回调线程上执行，实现需要线程安全且不能阻塞。
+ */
+public interface MetricsRecorder {
+
+    /**
+     * 请求开始
+     */
+    default void requestStarted(String endpoint) {
+    }
+
+    /**
+     * 收到应答头
+     *
+     * @param status       状态码
+     * @param latencyNanos 从请求开始到收到应答头的耗时
+     */
+    default void requestCompleted(String endpoint, int status, long latencyNanos) {
+    }
+
+    /**
+     * 请求失败；没有收到应答
+     */
+    default void requestFailed(String endpoint, Throwable t, long latencyNanos) {
+    }
+
+    /**
+     * 流式应答的首个 token
+     *
+     * @param nanos 从发起请求到首个 token 的耗时
+     */
+    default void firstToken(String endpoint, long nanos) {
+    }
+
+    /**
+     * 流式应答中相邻两个 token 的间隔
+     */
+    default void interTokenGap(String endpoint, long nanos) {
+    }
+
+    /**
+     * 流式应答结束
+     *
+     * @param outputTokens    输出 token 数量；以增量分片计数
+     * @param generationNanos 从首个 token 到结束的耗时
+     * @param success         是否正常结束
+     */
+    default void streamCompleted(String endpoint, int outputTokens, long generationNanos, boolean success) {
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.wly.chatgptsdk.metrics;
+
+import com.wly.chatgptsdk.stream.ChatDeltaListener;
+import okhttp3.Response;
+import okhttp3.sse.EventSource;
+import okhttp3.sse.EventSourceListener;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+
+/**
+ * 单次流式应答的计时
+ * 包装使用方的监听，在回调经过时记录首 token 时间、token 间隔与生成速度。每个增量分片计为一个 token，
+ * 与 OpenAI 流式应答每个分片携带一个 token 的行为一致。回调按顺序在事件源线程上执行，这里不需要同步。
+ */
+public final class StreamMetrics {
+
+    private static final String DONE = "[DONE]";
+
+    private final MetricsRecorder recorder;
+    private final String endpoint;
+    private final long startNanos = System.nanoTime();
+
+    private long firstTokenNanos;
+    private long lastTokenNanos;
+    private int tokens;
+    private boolean finished;
+
+    private StreamMetrics(MetricsRecorder recorder, String endpoint) {
+        this.recorder = recorder;
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * 包装 EventSourceListener；[DONE] 不计为 token
+     */
+    public static EventSourceListener wrap(MetricsRecorder recorder, String endpoint, EventSourceListener listener) {
+        StreamMetrics metrics = new StreamMetrics(recorder, endpoint);
+        return new EventSourceListener() {
+            @Override
+            public void onOpen(@NotNull EventSource eventSource, @NotNull Response response) {
+                listener.onOpen(eventSource, response);
+            }
+
+            @Override
+            public void onEvent(@NotNull EventSource eventSource, @Nullable String id, @Nullable String type, @NotNull String data) {
+                if (!DONE.equals(data)) metrics.token();
+                listener.onEvent(eventSource, id, type, data);
+            }
+
+            @Override
+            public void onClosed(@NotNull EventSource eventSource) {
+                metrics.finish(true);
+                listener.onClosed(eventSource);
+            }
+
+            @Override
+            public void onFailure(@NotNull EventSource eventSource, @Nullable Throwable t, @Nullable Response response) {
+                metrics.finish(false);
+                listener.onFailure(eventSource, t, response);
+            }
+        };
+    }
+
+    /**
+     * 包装 ChatDeltaListener；只计入带有内容的增量
+     */
+    public static ChatDeltaListener wrap(MetricsRecorder recorder, String endpoint, ChatDeltaListener listener) {
+        StreamMetrics metrics = new StreamMetrics(recorder, endpoint);
+        return new ChatDeltaListener() {
+            @Override
+            public void onOpen(EventSource eventSource, Response response) {
+                listener.onOpen(eventSource, response);
+            }
+
+            @Override
+            public void onMetadata(EventSource eventSource, String id, String model, long created) {
+                listener.onMetadata(eventSource, id, model, created);
+            }
+
+            @Override
+            public void onDelta(EventSource eventSource, int index, String role, char[] content, int offset, int length, String finishReason) throws IOException {
+                if (length > 0) metrics.token();
+                listener.onDelta(eventSource, index, role, content, offset, length, finishReason);
+            }
+
+            @Override
+            public void onClosed(EventSource eventSource) {
+                metrics.finish(true);
+                listener.onClosed(eventSource);
+            }
+
+            @Override
+            public void onFailure(EventSource eventSource, Throwable t, Response response) {
+                metrics.finish(false);
+                listener.onFailure(eventSource, t, response);
+            }
+        };
+    }
+
+    private void token() {
+        long now = System.nanoTime();
+        if (tokens++ == 0) {
+            firstTokenNanos = now;
+            recorder.firstToken(endpoint, now - startNanos);
+        } else {
+            recorder.interTokenGap(endpoint, now - lastTokenNanos);
+        }
+        lastTokenNanos = now;
+    }
+
+    private void finish(boolean success) {
+        if (finished) return;
+        finished = true;
+        recorder.streamCompleted(endpoint, tokens, tokens == 0 ? 0 : lastTokenNanos - firstTokenNanos, success);
+    }
+
+}
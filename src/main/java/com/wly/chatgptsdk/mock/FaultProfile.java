@@ -0,0 +1,134 @@
+package com.wly.chatgptsdk.mock;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模拟服务的故障注入
+ * 每个请求按比例抽取一种故障：429（带 retry-after-ms）、5xx，或者连接中断；流式应答的中断发生在输出一半 token 之后。
+ * 随机数种子固定，相同的请求顺序得到相同的故障序列。
+ */
+public final class FaultProfile {
+
+    /** 不注入故障 */
+    public static final FaultProfile NONE = builder().build();
+
+    enum Fault {
+        NONE, RATE_LIMIT, SERVER_ERROR, DISCONNECT
+    }
+
+    private final double rateLimitRate;
+    private final double serverErrorRate;
+    private final double disconnectRate;
+    private final int serverErrorStatus;
+    private final long retryAfterMillis;
+    private final Random random;
+
+    private FaultProfile(Builder builder) {
+        this.rateLimitRate = builder.rateLimitRate;
+        this.serverErrorRate = builder.serverErrorRate;
+        this.disconnectRate = builder.disconnectRate;
+        this.serverErrorStatus = builder.serverErrorStatus;
+        this.retryAfterMillis = builder.retryAfterMillis;
+        this.random = new Random(builder.seed);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    int serverErrorStatus() {
+        return serverErrorStatus;
+    }
+
+    long retryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    /**
+     * 为下一个请求抽取故障
+     */
+    Fault next() {
+        double roll;
+        synchronized (random) {
+            roll = random.nextDouble();
+        }
+        if (roll < rateLimitRate) return Fault.RATE_LIMIT;
+        if (roll < rateLimitRate + serverErrorRate) return Fault.SERVER_ERROR;
+        if (roll < rateLimitRate + serverErrorRate + disconnectRate) return Fault.DISCONNECT;
+        return Fault.NONE;
+    }
+
+    /**
+     * 建造者模式
+     */
+    public static final class Builder {
+
+        private double rateLimitRate;
+        private double serverErrorRate;
+        private double disconnectRate;
+        private int serverErrorStatus = 502;
+        private long retryAfterMillis = 1000;
+        private long seed = 42;
+
+        private Builder() {
+        }
+
+        /**
+         * 返回 429 的比例；0 到 1
+         */
+        public Builder rateLimit(double rate) {
+            this.rateLimitRate = rate;
+            return this;
+        }
+
+        /**
+         * 429 应答中 retry-after-ms 的值
+         */
+        public Builder retryAfter(long duration, TimeUnit unit) {
+            this.retryAfterMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        /**
+         * 返回 5xx 的比例；0 到 1
+         */
+        public Builder serverError(double rate) {
+            this.serverErrorRate = rate;
+            return this;
+        }
+
+        /**
+         * 5xx 的状态码；默认 502
+         */
+        public Builder serverErrorStatus(int status) {
+            this.serverErrorStatus = status;
+            return this;
+        }
+
+        /**
+         * 连接中断的比例；0 到 1
+         */
+        public Builder disconnect(double rate) {
+            this.disconnectRate = rate;
+            return this;
+        }
+
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public FaultProfile build() {
+            if (rateLimitRate < 0 || serverErrorRate < 0 || disconnectRate < 0 || rateLimitRate + serverErrorRate + disconnectRate > 1) {
+                throw new IllegalArgumentException("fault rates must be non-negative and sum to at most 1");
+            }
+            if (serverErrorStatus < 500 || serverErrorStatus > 599) {
+                throw new IllegalArgumentException("serverErrorStatus must be 5xx");
+            }
+            return new FaultProfile(this);
+        }
+
+    }
+
+}
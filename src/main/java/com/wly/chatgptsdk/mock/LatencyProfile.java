@@ -0,0 +1,96 @@
+package com.wly.chatgptsdk.mock;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模拟服务的延迟配置
+ * 流式应答在首个 token 前等待 timeToFirstToken，之后每个 token 间隔 interTokenDelay；
+ * 非流式应答在返回前一次性等待相同的总时长，与真实接口的耗时构成一致。jitter 为每次等待叠加的 [0, jitter] 随机量。
+ */
+public final class LatencyProfile {
+
+    /** 不等待 */
+    public static final LatencyProfile NONE = builder().build();
+
+    private final long timeToFirstTokenMillis;
+    private final long interTokenDelayMillis;
+    private final long jitterMillis;
+
+    private LatencyProfile(Builder builder) {
+        this.timeToFirstTokenMillis = builder.timeToFirstTokenMillis;
+        this.interTokenDelayMillis = builder.interTokenDelayMillis;
+        this.jitterMillis = builder.jitterMillis;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 接近 gpt-3.5-turbo 的典型表现：首 token 约 400ms，之后每个 token 约 25ms
+     */
+    public static LatencyProfile typical() {
+        return builder()
+                .timeToFirstToken(400, TimeUnit.MILLISECONDS)
+                .interTokenDelay(25, TimeUnit.MILLISECONDS)
+                .jitter(10, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    long firstTokenDelay() {
+        return withJitter(timeToFirstTokenMillis);
+    }
+
+    long tokenDelay() {
+        return withJitter(interTokenDelayMillis);
+    }
+
+    /**
+     * 非流式应答的总等待时长
+     */
+    long totalDelay(int tokens) {
+        return withJitter(timeToFirstTokenMillis + Math.max(0, tokens - 1) * interTokenDelayMillis);
+    }
+
+    private long withJitter(long millis) {
+        return jitterMillis == 0 ? millis : millis + ThreadLocalRandom.current().nextLong(jitterMillis + 1);
+    }
+
+    /**
+     * 建造者模式
+     */
+    public static final class Builder {
+
+        private long timeToFirstTokenMillis;
+        private long interTokenDelayMillis;
+        private long jitterMillis;
+
+        private Builder() {
+        }
+
+        public Builder timeToFirstToken(long duration, TimeUnit unit) {
+            this.timeToFirstTokenMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        public Builder interTokenDelay(long duration, TimeUnit unit) {
+            this.interTokenDelayMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        public Builder jitter(long duration, TimeUnit unit) {
+            this.jitterMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        public LatencyProfile build() {
+            if (timeToFirstTokenMillis < 0 || interTokenDelayMillis < 0 || jitterMillis < 0) {
+                throw new IllegalArgumentException("delays must not be negative");
+            }
+            return new LatencyProfile(this);
+        }
+
+    }
+
+}
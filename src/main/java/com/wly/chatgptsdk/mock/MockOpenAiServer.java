@@ -0,0 +1,554 @@
+package com.wly.chatgptsdk.mock;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.wly.chatgptsdk.codec.JsonCodec;
+import com.wly.chatgptsdk.domain.chat.ChatCompletionRequest;
+import com.wly.chatgptsdk.domain.qa.QACompletionRequest;
+import com.wly.chatgptsdk.token.TokenCounter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 本地的 OpenAI 兼容模拟服务；基于 JDK 自带的 HttpServer，不引入额外依赖
+ * 覆盖 IOpenAiApi 中的接口：对话与问答（含 SSE 流式）、向量、文件、图片、音频、编辑与账单。
+ * 应答内容由请求体决定：相同的请求得到相同的文本与向量；usage 中的 prompt_tokens 由 TokenCounter 计算。
+ * 通过 LatencyProfile 模拟首 token 时间与 token 间隔，通过 FaultProfile 注入 429、5xx 与连接中断，
+ * 用于离线压测和验证限流、重试、熔断等功能。
+ * 单独运行：java -cp chatgpt-sdk.jar com.wly.chatgptsdk.mock.MockOpenAiServer [port]
+ */
+@Slf4j
+public class MockOpenAiServer implements Closeable {
+
+    private static final String[] WORDS = {"Hello", "from", "the", "mock", "server", "this", "reply", "is",
+            "deterministic", "and", "arrives", "token", "by", "token", "for", "offline", "tests"};
+
+    /** 固定的 created 时间戳，保证应答可重复 */
+    private static final long CREATED = 1700000000L;
+
+    private final int port;
+    private final LatencyProfile latency;
+    private final FaultProfile faults;
+    private final int tokens;
+    private final int dimensions;
+
+    private final ObjectMapper objectMapper = JsonCodec.objectMapper();
+    private final AtomicLong requests = new AtomicLong();
+    private final Map<String, AtomicLong> requestsByKey = new ConcurrentHashMap<>();
+    private final AtomicInteger fileIds = new AtomicInteger();
+    private final Map<String, ObjectNode> files = new ConcurrentHashMap<>();
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    private MockOpenAiServer(Builder builder) {
+        this.port = builder.port;
+        this.latency = builder.latency;
+        this.faults = builder.faults;
+        this.tokens = builder.tokens;
+        this.dimensions = builder.dimensions;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        MockOpenAiServer server = builder().port(port).latency(LatencyProfile.typical()).build().start();
+        log.info("mock OpenAI server listening on {}", server.url());
+    }
+
+    /**
+     * 启动服务；只监听本机回环地址
+     */
+    public synchronized MockOpenAiServer start() throws IOException {
+        if (null != server) throw new IllegalStateException("mock server already started");
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "mock-openai");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 压测时会有大量并发连接，加大 accept 队列
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 4096);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        return this;
+    }
+
+    /**
+     * 服务地址；可直接作为 Configuration 的 apiHost
+     */
+    public String url() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/";
+    }
+
+    /**
+     * 已收到的请求数；包含注入故障的请求
+     */
+    public long requestCount() {
+        return requests.get();
+    }
+
+    /**
+     * 使用指定 apiKey 的请求数；按 Authorization 请求头统计
+     */
+    public long requestCount(String apiKey) {
+        AtomicLong count = requestsByKey.get(apiKey);
+        return null == count ? 0 : count.get();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (null == server) return;
+        server.stop(0);
+        executor.shutdownNow();
+        server = null;
+    }
+
+    /**
+     * 处理请求；抛出异常时 HttpServer 直接关闭连接而不结束应答，客户端看到的就是连接中断
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (null != authorization && authorization.startsWith("Bearer ")) {
+            requestsByKey.computeIfAbsent(authorization.substring(7), key -> new AtomicLong()).incrementAndGet();
+        }
+        dispatch(exchange);
+        exchange.close();
+    }
+
+    private void dispatch(HttpExchange exchange) throws IOException {
+        byte[] body = readAll(exchange.getRequestBody());
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+
+        FaultProfile.Fault fault = faults.next();
+        if (fault == FaultProfile.Fault.RATE_LIMIT) {
+            exchange.getResponseHeaders().add("retry-after-ms", String.valueOf(faults.retryAfterMillis()));
+            exchange.getResponseHeaders().add("Retry-After", String.valueOf((faults.retryAfterMillis() + 999) / 1000));
+            error(exchange, 429, "Rate limit reached for requests", "requests", "rate_limit_exceeded");
+            return;
+        }
+        if (fault == FaultProfile.Fault.SERVER_ERROR) {
+            error(exchange, faults.serverErrorStatus(), "The server had an error while processing your request", "server_error", null);
+            return;
+        }
+        boolean disconnect = fault == FaultProfile.Fault.DISCONNECT;
+
+        if ("POST".equals(method) && "/v1/chat/completions".equals(path)) {
+            chatCompletions(exchange, body, disconnect);
+        } else if ("POST".equals(method) && "/v1/completions".equals(path)) {
+            completions(exchange, body, disconnect);
+        } else {
+            // 非流式接口的中断发生在返回应答头之前
+            if (disconnect) throw new IOException("injected disconnect");
+            route(exchange, method, path, body);
+        }
+    }
+
+    private void route(HttpExchange exchange, String method, String path, byte[] body) throws IOException {
+        if ("POST".equals(method) && "/v1/embeddings".equals(path)) {
+            embeddings(exchange, body);
+        } else if ("POST".equals(method) && "/v1/edits".equals(path)) {
+            JsonNode request = objectMapper.readTree(body);
+            ObjectNode response = completion("edit", text(request.path("model").asText("text-davinci-edit-001"), body));
+            respond(exchange, 200, response);
+        } else if ("POST".equals(method) && ("/v1/images/generations".equals(path) || "/v1/images/edits".equals(path))) {
+            int n = path.endsWith("generations") ? objectMapper.readTree(body).path("n").asInt(1) : 1;
+            ObjectNode response = objectMapper.createObjectNode().put("created", CREATED);
+            ArrayNode data = response.putArray("data");
+            for (int i = 0; i < n; i++) {
+                data.addObject().put("url", "https://mock.openai.invalid/images/" + seed(body) + "-" + i + ".png");
+            }
+            respond(exchange, 200, response);
+        } else if ("POST".equals(method) && path.startsWith("/v1/audio/")) {
+            respond(exchange, 200, objectMapper.createObjectNode().put("text", words(seed(body), tokens)));
+        } else if (path.startsWith("/v1/files")) {
+            files(exchange, method, path, body);
+        } else if ("GET".equals(method) && "/v1/dashboard/billing/subscription".equals(path)) {
+            ObjectNode response = objectMapper.createObjectNode()
+                    .put("object", "billing_subscription")
+                    .put("has_payment_method", true)
+                    .put("access_until", CREATED + TimeUnit.DAYS.toSeconds(365))
+                    .put("soft_limit_usd", 100.0)
+                    .put("hard_limit_usd", 120.0)
+                    .put("system_hard_limit_usd", 120.0)
+                    .put("account_name", "mock");
+            response.putObject("plan").put("title", "Pay-as-you-go").put("id", "payg");
+            respond(exchange, 200, response);
+        } else if ("GET".equals(method) && "/v1/dashboard/billing/usage".equals(path)) {
+            ObjectNode response = objectMapper.createObjectNode().put("object", "list").put("total_usage", 0);
+            response.putArray("daily_costs");
+            respond(exchange, 200, response);
+        } else {
+            error(exchange, 404, "Unknown request URL: " + method + " " + path, "invalid_request_error", "unknown_url");
+        }
+    }
+
+    private void chatCompletions(HttpExchange exchange, byte[] body, boolean disconnect) throws IOException {
+        ChatCompletionRequest request = objectMapper.readValue(body, ChatCompletionRequest.class);
+        int outputTokens = outputTokens(request.getMaxTokens());
+        int n = null == request.getN() ? 1 : request.getN();
+        long seed = seed(body);
+        String id = "chatcmpl-mock-" + Long.toHexString(seed);
+
+        if (!request.isStream()) {
+            if (disconnect) throw new IOException("injected disconnect");
+            sleep(latency.totalDelay(outputTokens));
+            ObjectNode response = header(id, "chat.completion", request.getModel());
+            ArrayNode choices = response.putArray("choices");
+            for (int i = 0; i < n; i++) {
+                ObjectNode choice = choices.addObject().put("index", i);
+                choice.putObject("message").put("role", "assistant").put("content", words(seed + i, outputTokens));
+                choice.put("finish_reason", "stop");
+            }
+            usage(response, TokenCounter.getInstance().count(request), outputTokens * n);
+            respond(exchange, 200, response);
+            return;
+        }
+
+        OutputStream out = startStream(exchange);
+        sleep(latency.firstTokenDelay());
+        for (int i = 0; i < n; i++) {
+            ObjectNode chunk = header(id, "chat.completion.chunk", request.getModel());
+            ObjectNode choice = chunk.putArray("choices").addObject().put("index", i);
+            choice.putObject("delta").put("role", "assistant").put("content", "");
+            choice.putNull("finish_reason");
+            event(out, chunk);
+        }
+        for (int t = 0; t < outputTokens; t++) {
+            if (disconnect && t == outputTokens / 2) throw new IOException("injected disconnect");
+            if (t > 0) sleep(latency.tokenDelay());
+            for (int i = 0; i < n; i++) {
+                ObjectNode chunk = header(id, "chat.completion.chunk", request.getModel());
+                ObjectNode choice = chunk.putArray("choices").addObject().put("index", i);
+                choice.putObject("delta").put("content", token(seed + i, t));
+                choice.putNull("finish_reason");
+                event(out, chunk);
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            ObjectNode chunk = header(id, "chat.completion.chunk", request.getModel());
+            ObjectNode choice = chunk.putArray("choices").addObject().put("index", i);
+            choice.putObject("delta");
+            choice.put("finish_reason", "stop");
+            event(out, chunk);
+        }
+        done(out);
+    }
+
+    private void completions(HttpExchange exchange, byte[] body, boolean disconnect) throws IOException {
+        QACompletionRequest request = objectMapper.readValue(body, QACompletionRequest.class);
+        int outputTokens = outputTokens(request.getMaxTokens());
+        long seed = seed(body);
+        String id = "cmpl-mock-" + Long.toHexString(seed);
+
+        if (!request.isStream()) {
+            if (disconnect) throw new IOException("injected disconnect");
+            sleep(latency.totalDelay(outputTokens));
+            ObjectNode response = completion("text_completion", words(seed, outputTokens));
+            response.put("id", id).put("model", request.getModel());
+            usage(response, TokenCounter.getInstance().count(request), outputTokens);
+            respond(exchange, 200, response);
+            return;
+        }
+
+        OutputStream out = startStream(exchange);
+        sleep(latency.firstTokenDelay());
+        for (int t = 0; t < outputTokens; t++) {
+            if (disconnect && t == outputTokens / 2) throw new IOException("injected disconnect");
+            if (t > 0) sleep(latency.tokenDelay());
+            ObjectNode chunk = header(id, "text_completion", request.getModel());
+            chunk.putArray("choices").addObject()
+                    .put("text", token(seed, t))
+                    .put("index", 0)
+                    .putNull("logprobs")
+                    .put("finish_reason", t == outputTokens - 1 ? "stop" : null);
+            event(out, chunk);
+        }
+        done(out);
+    }
+
+    private void embeddings(HttpExchange exchange, byte[] body) throws IOException {
+        JsonNode request = objectMapper.readTree(body);
+        String model = request.path("model").asText("text-embedding-ada-002");
+        boolean base64 = "base64".equals(request.path("encoding_format").asText(null));
+        List<String> inputs = new ArrayList<>();
+        JsonNode input = request.path("input");
+        if (input.isArray()) {
+            input.forEach(node -> inputs.add(node.asText()));
+        } else {
+            inputs.add(input.asText());
+        }
+
+        ObjectNode response = objectMapper.createObjectNode().put("object", "list");
+        ArrayNode data = response.putArray("data");
+        long promptTokens = 0;
+        for (int i = 0; i < inputs.size(); i++) {
+            float[] vector = vector(inputs.get(i));
+            ObjectNode item = data.addObject().put("object", "embedding").put("index", i);
+            if (base64) {
+                ByteBuffer bytes = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                bytes.asFloatBuffer().put(vector);
+                item.put("embedding", Base64.getEncoder().encodeToString(bytes.array()));
+            } else {
+                ArrayNode embedding = item.putArray("embedding");
+                for (float value : vector) {
+                    embedding.add(value);
+                }
+            }
+            promptTokens += TokenCounter.getInstance().count(model, inputs.get(i));
+        }
+        response.put("model", model);
+        response.putObject("usage").put("prompt_tokens", promptTokens).put("total_tokens", promptTokens);
+        respond(exchange, 200, response);
+    }
+
+    private void files(HttpExchange exchange, String method, String path, byte[] body) throws IOException {
+        String[] segments = path.split("/");
+        // /v1/files -> ["", "v1", "files"]
+        String fileId = segments.length > 3 ? segments[3] : null;
+        if (null == fileId && "GET".equals(method)) {
+            ObjectNode response = objectMapper.createObjectNode().put("object", "list");
+            ArrayNode data = response.putArray("data");
+            files.values().forEach(data::add);
+            respond(exchange, 200, response);
+        } else if (null == fileId && "POST".equals(method)) {
+            String id = "file-mock-" + fileIds.incrementAndGet();
+            ObjectNode file = objectMapper.createObjectNode()
+                    .put("id", id)
+                    .put("object", "file")
+                    .put("bytes", body.length)
+                    .put("created_at", CREATED)
+                    .put("filename", "upload.jsonl")
+                    .put("purpose", "fine-tune")
+                    .put("status", "uploaded");
+            files.put(id, file);
+            respond(exchange, 200, file);
+        } else if (null != fileId && null == files.get(fileId)) {
+            error(exchange, 404, "No such File object: " + fileId, "invalid_request_error", null);
+        } else if ("DELETE".equals(method)) {
+            files.remove(fileId);
+            respond(exchange, 200, objectMapper.createObjectNode().put("id", fileId).put("object", "file").put("deleted", true));
+        } else if (segments.length > 4 && "content".equals(segments[4])) {
+            byte[] content = ("{\"prompt\":\"mock\",\"completion\":\"" + fileId + "\"}\n").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/octet-stream");
+            exchange.sendResponseHeaders(200, content.length);
+            exchange.getResponseBody().write(content);
+        } else {
+            respond(exchange, 200, files.get(fileId));
+        }
+    }
+
+    private ObjectNode header(String id, String object, String model) {
+        return objectMapper.createObjectNode()
+                .put("id", id)
+                .put("object", object)
+                .put("created", CREATED)
+                .put("model", null == model ? "gpt-3.5-turbo" : model);
+    }
+
+    private ObjectNode completion(String object, String text) {
+        ObjectNode response = objectMapper.createObjectNode().put("object", object).put("created", CREATED);
+        response.putArray("choices").addObject()
+                .put("text", text)
+                .put("index", 0)
+                .putNull("logprobs")
+                .put("finish_reason", "stop");
+        return response;
+    }
+
+    private static void usage(ObjectNode response, long promptTokens, long completionTokens) {
+        response.putObject("usage")
+                .put("prompt_tokens", promptTokens)
+                .put("completion_tokens", completionTokens)
+                .put("total_tokens", promptTokens + completionTokens);
+    }
+
+    private int outputTokens(Integer maxTokens) {
+        return null == maxTokens || maxTokens <= 0 ? tokens : Math.min(tokens, maxTokens);
+    }
+
+    /**
+     * 与输入文本一一对应的单位向量
+     */
+    private float[] vector(String input) {
+        Random random = new Random(input.hashCode());
+        float[] vector = new float[dimensions];
+        double norm = 0;
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = (float) random.nextGaussian();
+            norm += vector[i] * vector[i];
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+
+    private static String text(String model, byte[] body) {
+        return words(seed(body) ^ model.hashCode(), 8);
+    }
+
+    private static String words(long seed, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int t = 0; t < count; t++) {
+            text.append(token(seed, t));
+        }
+        return text.toString().trim();
+    }
+
+    /**
+     * 第 t 个 token；除第一个外都以空格开头，拼接后与非流式应答的文本一致
+     */
+    private static String token(long seed, int t) {
+        String word = WORDS[(int) Math.floorMod(seed + t * 31L, (long) WORDS.length)];
+        return t == 0 ? word : " " + word;
+    }
+
+    private static long seed(byte[] body) {
+        long hash = 1125899906842597L;
+        for (byte b : body) {
+            hash = 31 * hash + b;
+        }
+        return hash;
+    }
+
+    private void respond(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private void error(HttpExchange exchange, int status, String message, String type, String code) throws IOException {
+        ObjectNode response = objectMapper.createObjectNode();
+        response.putObject("error").put("message", message).put("type", type).putNull("param").put("code", code);
+        respond(exchange, status, response);
+    }
+
+    private static OutputStream startStream(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        exchange.getResponseHeaders().add("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        return exchange.getResponseBody();
+    }
+
+    private void event(OutputStream out, JsonNode data) throws IOException {
+        out.write("data: ".getBytes(StandardCharsets.US_ASCII));
+        out.write(objectMapper.writeValueAsBytes(data));
+        out.write("\n\n".getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    private static void done(OutputStream out) throws IOException {
+        out.write("data: [DONE]\n\n".getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static void sleep(long millis) throws IOException {
+        if (millis <= 0) return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("mock server stopped", e);
+        }
+    }
+
+    /**
+     * 建造者模式
+     */
+    public static final class Builder {
+
+        private int port;
+        private LatencyProfile latency = LatencyProfile.NONE;
+        private FaultProfile faults = FaultProfile.NONE;
+        private int tokens = 16;
+        private int dimensions = 1536;
+
+        private Builder() {
+        }
+
+        /**
+         * 监听端口；0 表示随机端口
+         */
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        public Builder latency(LatencyProfile latency) {
+            this.latency = latency;
+            return this;
+        }
+
+        public Builder faults(FaultProfile faults) {
+            this.faults = faults;
+            return this;
+        }
+
+        /**
+         * 每个应答输出的 token 数；请求的 max_tokens 更小时以 max_tokens 为准
+         */
+        public Builder tokens(int tokens) {
+            this.tokens = tokens;
+            return this;
+        }
+
+        /**
+         * 向量维度
+         */
+        public Builder dimensions(int dimensions) {
+            this.dimensions = dimensions;
+            return this;
+        }
+
+        public MockOpenAiServer build() {
+            if (tokens <= 0 || dimensions <= 0) throw new IllegalArgumentException("tokens and dimensions must be positive");
+            if (null == latency || null == faults) throw new IllegalArgumentException("latency and faults are required");
+            return new MockOpenAiServer(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,304 @@
+package com.wly.chatgptsdk.ratelimit;
+
+import com.wly.chatgptsdk.interceptor.RetryInterceptor;
+import com.wly.chatgptsdk.key.ApiKeyPool;
+import com.wly.chatgptsdk.retry.RetryPolicy;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.Timeout;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 限流的 Call 工厂
+ * enqueue 先申请准入，准入后才把请求交给 OkHttp 调度器，排队期间不占用任何线程；execute 在调用线程上等待准入。
+ * 准入之前先确定 apiKey：请求头 apiKey 优先，其次从 apiKey 池借出，最后使用默认 apiKey；限流按实际使用的 apiKey 分桶。
+ * 已准入的请求带有 Permit 标记，RateLimitInterceptor 不会重复申请，并在收到应答后释放其中的预留；借出的 apiKey 以 ApiKeyPool.Lease 标记交给 OpenAiInterceptor。
+ * 配置了重试策略时，enqueue 的请求带有 RetryInterceptor.Bypass 标记，由这里在调度线程上退避后重新申请准入再发送，
+ * 等待期间同样不占用调度器线程；调用方已带有 Bypass 标记的请求（如流式请求）由调用方自行重试。
+ */
+public class RateLimitedCallFactory implements Call.Factory {
+
+    private final OkHttpClient client;
+    private final RateLimiter rateLimiter;
+    private final String apiKey;
+    private final ApiKeyPool apiKeyPool;
+    private final RetryPolicy retryPolicy;
+
+    /**
+     * @param client      Http 客户端
+     * @param rateLimiter 限流
+     * @param apiKey      默认 apiKey；请求头 apiKey 优先
+     */
+    public RateLimitedCallFactory(OkHttpClient client, RateLimiter rateLimiter, String apiKey) {
+        this(client, rateLimiter, apiKey, null, null);
+    }
+
+    /**
+     * @param client      Http 客户端
+     * @param rateLimiter 限流
+     * @param apiKey      默认 apiKey；请求头 apiKey 优先
+     * @param apiKeyPool  apiKey 池；可为空，不为空时优先于默认 apiKey
+     * @param retryPolicy 异步请求的重试策略；可为空
+     */
+    public RateLimitedCallFactory(OkHttpClient client, RateLimiter rateLimiter, String apiKey, ApiKeyPool apiKeyPool, RetryPolicy retryPolicy) {
+        this.client = client;
+        this.rateLimiter = rateLimiter;
+        this.apiKey = apiKey;
+        this.apiKeyPool = apiKeyPool;
+        this.retryPolicy = retryPolicy;
+    }
+
+    @NotNull
+    @Override
+    public Call newCall(@NotNull Request request) {
+        return new RateLimitedCall(request);
+    }
+
+    /**
+     * 选择 apiKey 并申请准入
+     * 请求头 apiKey 优先，其次从 apiKey 池借出，最后使用默认 apiKey。取消返回的 future 即放弃排队，已借出的 apiKey 随即归还
+     *
+     * @return 准入后完成的 future；值为带有 Permit 标记、借出时还带有 ApiKeyPool.Lease 标记的请求
+     */
+    static CompletableFuture<Request> admit(RateLimiter rateLimiter, ApiKeyPool apiKeyPool, String apiKey, Request request) {
+        CompletableFuture<Request> admitted = new CompletableFuture<>();
+        String apiKeyByUser = request.header("apiKey");
+        if (null != apiKeyByUser || null == apiKeyPool) {
+            CompletableFuture<RateLimiter.Reservation> admission = rateLimiter.reserve(null == apiKeyByUser ? apiKey : apiKeyByUser, request);
+            admission.whenComplete((reservation, throwable) -> {
+                if (null != throwable) {
+                    admitted.completeExceptionally(throwable);
+                } else if (!admitted.complete(permit(request, reservation, null))) {
+                    reservation.release();
+                }
+            });
+            admitted.whenComplete((value, throwable) -> {
+                if (admitted.isCancelled()) admission.cancel(false);
+            });
+            return admitted;
+        }
+        CompletableFuture<ApiKeyPool.Lease> leased = apiKeyPool.lease();
+        leased.whenComplete((lease, throwable) -> {
+            if (null != throwable) {
+                admitted.completeExceptionally(throwable);
+                return;
+            }
+            CompletableFuture<RateLimiter.Reservation> admission = rateLimiter.reserve(lease.key(), request);
+            admission.whenComplete((reservation, failure) -> {
+                if (null != failure) {
+                    lease.release();
+                    admitted.completeExceptionally(failure);
+                } else if (!admitted.complete(permit(request, reservation, lease))) {
+                    reservation.release();
+                    lease.release();
+                }
+            });
+            admitted.whenComplete((value, failure) -> {
+                if (admitted.isCancelled()) admission.cancel(false);
+            });
+        });
+        admitted.whenComplete((value, throwable) -> {
+            if (admitted.isCancelled()) leased.cancel(false);
+        });
+        return admitted;
+    }
+
+    /**
+     * 归还请求借出的 apiKey 并释放限流预留；请求没有经过 OpenAiInterceptor 就结束时调用，重复归还不会生效
+     */
+    static void release(Request request) {
+        if (null == request) return;
+        ApiKeyPool.Lease lease = request.tag(ApiKeyPool.Lease.class);
+        if (null != lease) lease.release();
+        Permit permit = request.tag(Permit.class);
+        if (null != permit) permit.reservation.release();
+    }
+
+    private static Request permit(Request request, RateLimiter.Reservation reservation, ApiKeyPool.Lease lease) {
+        return request.newBuilder()
+                .tag(Permit.class, new Permit(reservation))
+                .tag(ApiKeyPool.Lease.class, lease)
+                .build();
+    }
+
+    /**
+     * 准入标记；持有准入时的限流预留
+     */
+    public static final class Permit {
+
+        private final RateLimiter.Reservation reservation;
+
+        private Permit(RateLimiter.Reservation reservation) {
+            this.reservation = reservation;
+        }
+
+        public RateLimiter.Reservation reservation() {
+            return reservation;
+        }
+
+    }
+
+    private final class RateLimitedCall implements Call {
+
+        private final Request request;
+        /** 由这里负责重试 */
+        private final boolean retrying;
+        private volatile Call delegate;
+        private volatile CompletableFuture<Request> admission;
+        private volatile boolean executed;
+        private volatile boolean canceled;
+
+        RateLimitedCall(Request request) {
+            this.request = request;
+            this.retrying = null != retryPolicy && null == request.tag(RetryInterceptor.Bypass.class);
+        }
+
+        @NotNull
+        @Override
+        public Request request() {
+            return request;
+        }
+
+        @NotNull
+        @Override
+        public Response execute() throws IOException {
+            markExecuted();
+            Request admitted;
+            try {
+                admitted = admit().get();
+            } catch (InterruptedException e) {
+                admission.cancel(false);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for rate limit");
+            } catch (CancellationException e) {
+                throw new IOException("Canceled");
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            }
+            // 同步请求的重试由 RetryInterceptor 在调用线程上完成
+            Call call = client.newCall(admitted);
+            delegate = call;
+            if (canceled) call.cancel();
+            return call.execute();
+        }
+
+        @Override
+        public void enqueue(@NotNull Callback callback) {
+            markExecuted();
+            if (retrying) retryPolicy.budget().onRequest();
+            attempt(1, callback);
+        }
+
+        private void attempt(int attempt, Callback callback) {
+            admit().whenComplete((admitted, throwable) -> {
+                if (null != throwable || canceled) {
+                    release(admitted);
+                    callback.onFailure(this, null == throwable || throwable instanceof CancellationException
+                            ? new IOException("Canceled")
+                            : throwable instanceof IOException ? (IOException) throwable : new IOException(throwable));
+                    return;
+                }
+                Call call = client.newCall(retrying ? RetryInterceptor.bypass(admitted) : admitted);
+                delegate = call;
+                // 与 cancel 并发时，保证新发起的请求也被取消
+                if (canceled) call.cancel();
+                call.enqueue(new Callback() {
+                    @Override
+                    public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                        // 请求没有到达 OpenAiInterceptor 时，借出的 apiKey 在这里归还
+                        release(admitted);
+                        long delay = delay(attempt, null, e);
+                        if (delay < 0) {
+                            callback.onFailure(RateLimitedCall.this, e);
+                        } else {
+                            retryPolicy.schedule(() -> attempt(attempt + 1, callback), delay);
+                        }
+                    }
+
+                    @Override
+                    public void onResponse(@NotNull Call call, @NotNull Response response) throws IOException {
+                        long delay = delay(attempt, response, null);
+                        if (delay < 0) {
+                            callback.onResponse(RateLimitedCall.this, response);
+                        } else {
+                            response.close();
+                            retryPolicy.schedule(() -> attempt(attempt + 1, callback), delay);
+                        }
+                    }
+                });
+            });
+        }
+
+        /**
+         * 计算重试等待时间；不应重试时返回 -1
+         */
+        private long delay(int attempt, Response response, IOException e) {
+            if (!retrying || canceled || attempt >= retryPolicy.maxAttempts()) return -1;
+            boolean retryable = null == response ? retryPolicy.isRetryable(e) : retryPolicy.isRetryable(response);
+            if (!retryable) return -1;
+            long delay = retryPolicy.delayMillis(attempt - 1, response);
+            if (delay < 0 || !retryPolicy.budget().tryAcquire()) return -1;
+            return delay;
+        }
+
+        /**
+         * 每次尝试都重新选择 apiKey 并申请准入；收到 429 的 key 已在池中冷却，重试会换用其他 key
+         */
+        private CompletableFuture<Request> admit() {
+            CompletableFuture<Request> admission = RateLimitedCallFactory.admit(rateLimiter, apiKeyPool, apiKey, request);
+            this.admission = admission;
+            return admission;
+        }
+
+        private synchronized void markExecuted() {
+            if (executed) throw new IllegalStateException("Already Executed");
+            executed = true;
+        }
+
+        @Override
+        public void cancel() {
+            canceled = true;
+            Call delegate = this.delegate;
+            if (null != delegate) delegate.cancel();
+            CompletableFuture<Request> admission = this.admission;
+            if (null != admission) admission.cancel(false);
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return executed;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return canceled;
+        }
+
+        /**
+         * 实际的请求在准入之后才创建，超时由 OkHttpClient 的配置决定
+         */
+        @NotNull
+        @Override
+        public Timeout timeout() {
+            return Timeout.NONE;
+        }
+
+        @SuppressWarnings("MethodDoesntCallSuperMethod")
+        @NotNull
+        @Override
+        public Call clone() {
+            return new RateLimitedCall(request);
+        }
+
+    }
+
+}
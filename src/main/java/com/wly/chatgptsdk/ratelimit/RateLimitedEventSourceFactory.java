@@ -0,0 +1,130 @@
+package com.wly.chatgptsdk.ratelimit;
+
+import com.wly.chatgptsdk.key.ApiKeyPool;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.sse.EventSource;
+import okhttp3.sse.EventSourceListener;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 限流的事件源工厂
+ * EventSources 创建的事件源直接把请求交给 OkHttp 调度器，无法经过 RateLimitedCallFactory；这里先选择 apiKey 并申请准入，
+ * 准入后才开启上游事件源，排队期间不占用调度器线程。apiKey 的选择与标记方式与 RateLimitedCallFactory 相同。
+ * 排队期间取消事件源会放弃准入，并以 Canceled 回调 onFailure。
+ */
+public class RateLimitedEventSourceFactory implements EventSource.Factory {
+
+    private final EventSource.Factory factory;
+    private final RateLimiter rateLimiter;
+    private final String apiKey;
+    private final ApiKeyPool apiKeyPool;
+
+    /**
+     * @param factory     上游事件源工厂
+     * @param rateLimiter 限流
+     * @param apiKey      默认 apiKey；请求头 apiKey 优先
+     */
+    public RateLimitedEventSourceFactory(EventSource.Factory factory, RateLimiter rateLimiter, String apiKey) {
+        this(factory, rateLimiter, apiKey, null);
+    }
+
+    /**
+     * @param factory     上游事件源工厂
+     * @param rateLimiter 限流
+     * @param apiKey      默认 apiKey；请求头 apiKey 优先
+     * @param apiKeyPool  apiKey 池；可为空，不为空时优先于默认 apiKey
+     */
+    public RateLimitedEventSourceFactory(EventSource.Factory factory, RateLimiter rateLimiter, String apiKey, ApiKeyPool apiKeyPool) {
+        this.factory = factory;
+        this.rateLimiter = rateLimiter;
+        this.apiKey = apiKey;
+        this.apiKeyPool = apiKeyPool;
+    }
+
+    @NotNull
+    @Override
+    public EventSource newEventSource(@NotNull Request request, @NotNull EventSourceListener listener) {
+        AdmittedEventSource eventSource = new AdmittedEventSource(request, listener);
+        eventSource.admit();
+        return eventSource;
+    }
+
+    private final class AdmittedEventSource extends EventSourceListener implements EventSource {
+
+        private final Request request;
+        private final EventSourceListener listener;
+        private volatile CompletableFuture<Request> admission;
+        private volatile Request admitted;
+        private volatile EventSource upstream;
+        private volatile boolean canceled;
+
+        AdmittedEventSource(Request request, EventSourceListener listener) {
+            this.request = request;
+            this.listener = listener;
+        }
+
+        void admit() {
+            CompletableFuture<Request> admission = RateLimitedCallFactory.admit(rateLimiter, apiKeyPool, apiKey, request);
+            this.admission = admission;
+            admission.whenComplete((admitted, throwable) -> {
+                if (null != throwable || canceled) {
+                    RateLimitedCallFactory.release(admitted);
+                    listener.onFailure(this, null == throwable || throwable instanceof CancellationException ? new IOException("Canceled") : throwable, null);
+                    return;
+                }
+                this.admitted = admitted;
+                upstream = factory.newEventSource(admitted, this);
+                // 与 cancel 并发时，保证新开启的事件源也被取消
+                if (canceled) upstream.cancel();
+            });
+        }
+
+        @NotNull
+        @Override
+        public Request request() {
+            return request;
+        }
+
+        @Override
+        public void cancel() {
+            canceled = true;
+            EventSource upstream = this.upstream;
+            if (null != upstream) {
+                upstream.cancel();
+            } else {
+                admission.cancel(false);
+            }
+        }
+
+        @Override
+        public void onOpen(@NotNull EventSource eventSource, @NotNull Response response) {
+            listener.onOpen(this, response);
+        }
+
+        @Override
+        public void onEvent(@NotNull EventSource eventSource, @Nullable String id, @Nullable String type, @NotNull String data) {
+            listener.onEvent(this, id, type, data);
+        }
+
+        @Override
+        public void onClosed(@NotNull EventSource eventSource) {
+            RateLimitedCallFactory.release(admitted);
+            listener.onClosed(this);
+        }
+
+        @Override
+        public void onFailure(@NotNull EventSource eventSource, @Nullable Throwable t, @Nullable Response response) {
+            // 请求没有到达 OpenAiInterceptor 时，借出的 apiKey 在这里归还；已由应答体归还时不会重复
+            RateLimitedCallFactory.release(admitted);
+            listener.onFailure(this, t, response);
+        }
+
+    }
+
+}
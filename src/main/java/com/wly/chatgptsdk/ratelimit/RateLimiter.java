@@ -0,0 +1,426 @@
+package com.wly.chatgptsdk.ratelimit;
+
+import com.wly.chatgptsdk.codec.JsonRequestBody;
+import com.wly.chatgptsdk.domain.chat.ChatCompletionRequest;
+import com.wly.chatgptsdk.domain.embedd.EmbeddingRequest;
+import com.wly.chatgptsdk.domain.qa.QACompletionRequest;
+import com.wly.chatgptsdk.token.TokenCounter;
+import okhttp3.Headers;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 客户端限流；按 apiKey 与模型分别维护每分钟请求数（RPM）与每分钟 token 数（TPM）两个令牌桶
+ * 请求的 token 数为 prompt 的 jtokkit 估算值加上为回复预留的 maxTokens。
+ * 准入是非阻塞的：acquire 返回 future，请求按到达顺序排队，令牌不足时由调度线程在预计补足的时刻重新检查，不占用调用线程。
+ * 应答头 x-ratelimit-remaining-requests 与 x-ratelimit-remaining-tokens 用于校准本地余量：本地余量取服务端余量减去仍在途的预留，
+ * 可升可降。多个进程共用同一个 apiKey 时本地桶能跟上真实的额度，服务端额度先于本地补足时也不会多等。
+ * 每次准入产生一个 Reservation，收到应答或请求失败时释放；没有释放的预留在一个补充周期后过期，不再计入在途。
+ */
+public class RateLimiter {
+
+    /** 没有模型信息的请求，如文件、账单接口 */
+    public static final String DEFAULT_MODEL = "default";
+
+    private static final long MINUTE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private static final ScheduledExecutorService SCHEDULER = newScheduler();
+
+    private final long requestsPerMinute;
+    private final long tokensPerMinute;
+    private final Map<String, long[]> modelLimits;
+    private final TokenCounter tokenCounter;
+    private final Map<String, Limits> limits = new ConcurrentHashMap<>();
+
+    private RateLimiter(Builder builder) {
+        this.requestsPerMinute = builder.requestsPerMinute;
+        this.tokensPerMinute = builder.tokensPerMinute;
+        this.modelLimits = new HashMap<>(builder.modelLimits);
+        this.tokenCounter = TokenCounter.getInstance();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 申请准入；预留不会被显式释放，一个补充周期后过期
+     *
+     * @param apiKey apiKey
+     * @param model  模型
+     * @param tokens 预计消耗的 token 数；超过桶容量时按容量计算
+     * @return 准入后完成的 future；取消 future 即放弃排队
+     */
+    public CompletableFuture<Void> acquire(String apiKey, String model, long tokens) {
+        CompletableFuture<Reservation> reservation = reserve(apiKey, model, tokens);
+        CompletableFuture<Void> admitted = reservation.thenApply(value -> null);
+        admitted.whenComplete((value, throwable) -> {
+            if (admitted.isCancelled()) reservation.cancel(false);
+        });
+        return admitted;
+    }
+
+    /**
+     * 申请准入并取得预留；收到应答后调用 update(Reservation, Headers)，请求失败时调用 release
+     *
+     * @param apiKey apiKey
+     * @param model  模型
+     * @param tokens 预计消耗的 token 数；超过桶容量时按容量计算
+     * @return 准入后完成的 future；取消 future 即放弃排队
+     */
+    public CompletableFuture<Reservation> reserve(String apiKey, String model, long tokens) {
+        Limits limits = limits(apiKey, model);
+        Waiter waiter = new Waiter(Math.min(tokens, limits.tokens.capacity));
+        synchronized (limits) {
+            limits.queue.addLast(waiter);
+        }
+        // 排在队首的请求放弃后，立即检查后面的请求
+        waiter.future.whenComplete((value, throwable) -> {
+            if (waiter.future.isCancelled()) drain(limits);
+        });
+        drain(limits);
+        return waiter.future;
+    }
+
+    /**
+     * 申请 Http 请求的准入；模型与 token 数从 JsonRequestBody 持有的请求对象中读取
+     */
+    public CompletableFuture<Void> acquire(String apiKey, Request request) {
+        return acquire(apiKey, model(request), estimateTokens(request));
+    }
+
+    /**
+     * 申请 Http 请求的准入并取得预留
+     */
+    public CompletableFuture<Reservation> reserve(String apiKey, Request request) {
+        return reserve(apiKey, model(request), estimateTokens(request));
+    }
+
+    /**
+     * 按应答头校准本地余量
+     */
+    public void update(String apiKey, String model, Headers headers) {
+        correct(limits(apiKey, model), headers);
+    }
+
+    /**
+     * 释放预留并按该请求的应答头校准本地余量；服务端余量已包含该请求
+     */
+    public void update(Reservation reservation, Headers headers) {
+        release(reservation);
+        correct(reservation.limits, headers);
+    }
+
+    /**
+     * 释放预留；请求没有得到应答时调用，重复释放不会生效
+     */
+    public void release(Reservation reservation) {
+        reservation.release();
+    }
+
+    private void correct(Limits limits, Headers headers) {
+        String remainingRequests = headers.get("x-ratelimit-remaining-requests");
+        String remainingTokens = headers.get("x-ratelimit-remaining-tokens");
+        if (null == remainingRequests && null == remainingTokens) return;
+        boolean raised;
+        synchronized (limits) {
+            long now = System.nanoTime();
+            limits.expire(now);
+            raised = limits.requests.correct(parse(remainingRequests), limits.inFlight.size(), now);
+            raised |= limits.tokens.correct(parse(remainingTokens), limits.inFlightTokens, now);
+        }
+        // 余量上调后，排队的请求可能不必等到定时检查
+        if (raised) drain(limits);
+    }
+
+    /**
+     * 请求的模型；不是 JsonRequestBody 时返回 DEFAULT_MODEL
+     */
+    public static String model(Request request) {
+        Object value = value(request);
+        String model = null;
+        if (value instanceof ChatCompletionRequest) model = ((ChatCompletionRequest) value).getModel();
+        if (value instanceof QACompletionRequest) model = ((QACompletionRequest) value).getModel();
+        if (value instanceof EmbeddingRequest) model = ((EmbeddingRequest) value).getModel();
+        return null == model ? DEFAULT_MODEL : model;
+    }
+
+    /**
+     * 预计消耗的 token 数；prompt 估算值加上 maxTokens * n
+     */
+    public long estimateTokens(Request request) {
+        Object value = value(request);
+        if (value instanceof ChatCompletionRequest) {
+            ChatCompletionRequest chatCompletionRequest = (ChatCompletionRequest) value;
+            return tokenCounter.count(chatCompletionRequest) + completionTokens(chatCompletionRequest.getMaxTokens(), chatCompletionRequest.getN());
+        }
+        if (value instanceof QACompletionRequest) {
+            QACompletionRequest qaCompletionRequest = (QACompletionRequest) value;
+            return tokenCounter.count(qaCompletionRequest) + completionTokens(qaCompletionRequest.getMaxTokens(), qaCompletionRequest.getN());
+        }
+        if (value instanceof EmbeddingRequest) {
+            return tokenCounter.count((EmbeddingRequest) value);
+        }
+        return 0;
+    }
+
+    private static long completionTokens(Integer maxTokens, Integer n) {
+        return (null == maxTokens ? 0L : maxTokens) * (null == n ? 1 : Math.max(n, 1));
+    }
+
+    private static Object value(Request request) {
+        RequestBody body = request.body();
+        return body instanceof JsonRequestBody ? ((JsonRequestBody) body).value() : null;
+    }
+
+    private Limits limits(String apiKey, String model) {
+        return limits.computeIfAbsent(apiKey + '\u0000' + model, key -> {
+            long[] limit = modelLimits.get(model);
+            long now = System.nanoTime();
+            return null == limit
+                    ? new Limits(new Bucket(requestsPerMinute, now), new Bucket(tokensPerMinute, now))
+                    : new Limits(new Bucket(limit[0], now), new Bucket(limit[1], now));
+        });
+    }
+
+    /**
+     * 按顺序放行排队的请求；队首令牌不足时安排一次定时检查，后面的请求不会越过队首
+     */
+    private void drain(Limits limits) {
+        List<Waiter> admitted = new ArrayList<>();
+        synchronized (limits) {
+            long now = System.nanoTime();
+            limits.requests.refill(now);
+            limits.tokens.refill(now);
+            limits.expire(now);
+            while (!limits.queue.isEmpty()) {
+                Waiter waiter = limits.queue.peekFirst();
+                if (waiter.future.isDone()) {
+                    limits.queue.pollFirst();
+                    continue;
+                }
+                long wait = Math.max(limits.requests.nanosUntil(1), limits.tokens.nanosUntil(waiter.tokens));
+                if (wait > 0) {
+                    if (!limits.scheduled) {
+                        limits.scheduled = true;
+                        SCHEDULER.schedule(() -> {
+                            synchronized (limits) {
+                                limits.scheduled = false;
+                            }
+                            drain(limits);
+                        }, wait, TimeUnit.NANOSECONDS);
+                    }
+                    break;
+                }
+                limits.requests.take(1);
+                limits.tokens.take(waiter.tokens);
+                limits.queue.pollFirst();
+                admitted.add(waiter);
+            }
+        }
+        // 在锁外完成 future，后续回调可能会发起请求；调用方已放弃时立即释放预留
+        for (Waiter waiter : admitted) {
+            Reservation reservation;
+            synchronized (limits) {
+                reservation = new Reservation(limits, waiter.tokens, System.nanoTime());
+                limits.reserve(reservation);
+            }
+            if (!waiter.future.complete(reservation)) release(reservation);
+        }
+    }
+
+    private static long parse(String value) {
+        if (null == value) return -1;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static ScheduledExecutorService newScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "openai-rate-limiter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    /**
+     * 令牌桶；每分钟补满 capacity，余量可以为小数
+     */
+    private static final class Bucket {
+
+        private final long capacity;
+        private double available;
+        private long lastRefill;
+
+        Bucket(long capacity, long now) {
+            this.capacity = capacity;
+            this.available = capacity;
+            this.lastRefill = now;
+        }
+
+        void refill(long now) {
+            available = Math.min(capacity, available + (double) (now - lastRefill) * capacity / MINUTE_NANOS);
+            lastRefill = now;
+        }
+
+        long nanosUntil(long amount) {
+            if (available >= amount) return 0;
+            return (long) Math.ceil((amount - available) * MINUTE_NANOS / capacity);
+        }
+
+        void take(long amount) {
+            available -= amount;
+        }
+
+        /**
+         * 以服务端余量减去本地在途的预留为准；服务端尚未计入在途请求，扣除后不会超发
+         *
+         * @return 余量是否上调
+         */
+        boolean correct(long remaining, long inFlight, long now) {
+            if (remaining < 0) return false;
+            refill(now);
+            double previous = available;
+            available = Math.min(capacity, remaining - inFlight);
+            return available > previous;
+        }
+
+    }
+
+    private static final class Limits {
+
+        private final Bucket requests;
+        private final Bucket tokens;
+        private final ArrayDeque<Waiter> queue = new ArrayDeque<>();
+        private boolean scheduled;
+        /** 在途的预留，按准入顺序排列 */
+        private final LinkedHashSet<Reservation> inFlight = new LinkedHashSet<>();
+        private long inFlightTokens;
+
+        Limits(Bucket requests, Bucket tokens) {
+            this.requests = requests;
+            this.tokens = tokens;
+        }
+
+        void reserve(Reservation reservation) {
+            inFlight.add(reservation);
+            inFlightTokens += reservation.tokens;
+        }
+
+        void release(Reservation reservation) {
+            if (inFlight.remove(reservation)) inFlightTokens -= reservation.tokens;
+        }
+
+        /**
+         * 丢弃超过一个补充周期的预留；对应的请求即便没有报告结果，服务端的额度也已补回
+         */
+        void expire(long now) {
+            Iterator<Reservation> iterator = inFlight.iterator();
+            while (iterator.hasNext()) {
+                Reservation reservation = iterator.next();
+                if (now - reservation.admittedAt < MINUTE_NANOS) break;
+                iterator.remove();
+                inFlightTokens -= reservation.tokens;
+            }
+        }
+
+    }
+
+    private static final class Waiter {
+
+        private final long tokens;
+        private final CompletableFuture<Reservation> future = new CompletableFuture<>();
+
+        Waiter(long tokens) {
+            this.tokens = tokens;
+        }
+
+    }
+
+    /**
+     * 一次准入的预留；在收到应答或请求失败之前计为在途
+     */
+    public static final class Reservation {
+
+        private final Limits limits;
+        private final long tokens;
+        private final long admittedAt;
+
+        private Reservation(Limits limits, long tokens, long admittedAt) {
+            this.limits = limits;
+            this.tokens = tokens;
+            this.admittedAt = admittedAt;
+        }
+
+        public long tokens() {
+            return tokens;
+        }
+
+        void release() {
+            synchronized (limits) {
+                limits.release(this);
+            }
+        }
+
+    }
+
+    /**
+     * 建造者模式
+     */
+    public static final class Builder {
+
+        /** gpt-3.5-turbo 付费账户的默认额度 */
+        private long requestsPerMinute = 3_500;
+        private long tokensPerMinute = 90_000;
+        private final Map<String, long[]> modelLimits = new HashMap<>();
+
+        /**
+         * 默认额度；未单独设置的模型使用
+         */
+        public Builder limits(long requestsPerMinute, long tokensPerMinute) {
+            check(requestsPerMinute, tokensPerMinute);
+            this.requestsPerMinute = requestsPerMinute;
+            this.tokensPerMinute = tokensPerMinute;
+            return this;
+        }
+
+        /**
+         * 单个模型的额度
+         */
+        public Builder limits(String model, long requestsPerMinute, long tokensPerMinute) {
+            check(requestsPerMinute, tokensPerMinute);
+            this.modelLimits.put(model, new long[]{requestsPerMinute, tokensPerMinute});
+            return this;
+        }
+
+        public RateLimiter build() {
+            return new RateLimiter(this);
+        }
+
+        private static void check(long requestsPerMinute, long tokensPerMinute) {
+            if (requestsPerMinute <= 0 || tokensPerMinute <= 0) {
+                throw new IllegalArgumentException("limits must be positive");
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.wly.chatgptsdk.retry;
+
+/**
+ * 重试预算
+ * 每个请求存入 ratio 个重试额度，每次重试消耗 1 个；另外每秒有 minRetriesPerSecond 个保底额度，保证低流量时也能重试。
+ * 上游故障时重试总量被限制在请求量的 ratio 倍以内，重试不会放大故障。
+ */
+public class RetryBudget {
+
+    private final double ratio;
+    private final int minRetriesPerSecond;
+    private final double maxBalance;
+
+    private double balance;
+    private int reserve;
+    private long reserveSecond;
+
+    /**
+     * @param ratio               每个请求可以带来的重试额度，如 0.2 表示重试最多为请求量的 20%
+     * @param minRetriesPerSecond 每秒保底的重试次数
+     */
+    public RetryBudget(double ratio, int minRetriesPerSecond) {
+        if (ratio < 0 || minRetriesPerSecond < 0) {
+            throw new IllegalArgumentException("ratio and minRetriesPerSecond must not be negative");
+        }
+        this.ratio = ratio;
+        this.minRetriesPerSecond = minRetriesPerSecond;
+        // 额度最多积累 10 秒的保底量或 100 个，避免长时间空闲后集中重试
+        this.maxBalance = Math.max(100, minRetriesPerSecond * 10);
+    }
+
+    /**
+     * 记录一次请求
+     */
+    public synchronized void onRequest() {
+        balance = Math.min(maxBalance, balance + ratio);
+    }
+
+    /**
+     * 申请一次重试
+     *
+     * @return 预算不足时返回 false
+     */
+    public synchronized boolean tryAcquire() {
+        long second = System.nanoTime() / 1_000_000_000L;
+        if (second != reserveSecond) {
+            reserveSecond = second;
+            reserve = minRetriesPerSecond;
+        }
+        if (reserve > 0) {
+            reserve--;
+            return true;
+        }
+        if (balance >= 1) {
+            balance--;
+            return true;
+        }
+        return false;
+    }
+
+}
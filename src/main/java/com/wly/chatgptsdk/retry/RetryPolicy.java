@@ -0,0 +1,181 @@
+package com.wly.chatgptsdk.retry;
+
+import okhttp3.Response;
+import okhttp3.internal.http2.StreamResetException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 重试策略
+ * 可重试的情况：429、5xx 等状态码，以及连接重置、超时、连接提前关闭等网络异常。
+ * 等待时间为全抖动的指数退避 random(0, min(maxDelay, baseDelay * 2^n))；应答带有 Retry-After 时按其等待，
+ * 超过 maxDelay 则不再重试。所有重试共享一个 RetryBudget。
+ */
+public class RetryPolicy {
+
+    private static final ScheduledExecutorService SCHEDULER = newScheduler();
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final Set<Integer> retryableStatus;
+    private final RetryBudget budget;
+
+    private RetryPolicy(Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.baseDelayMillis = builder.baseDelayMillis;
+        this.maxDelayMillis = builder.maxDelayMillis;
+        this.retryableStatus = new HashSet<>(builder.retryableStatus);
+        this.budget = builder.budget;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 总尝试次数；包含首次请求
+     */
+    public int maxAttempts() {
+        return maxAttempts;
+    }
+
+    public RetryBudget budget() {
+        return budget;
+    }
+
+    public boolean isRetryable(Response response) {
+        return retryableStatus.contains(response.code());
+    }
+
+    public boolean isRetryable(Throwable t) {
+        return t instanceof SocketException
+                || t instanceof SocketTimeoutException
+                || t instanceof EOFException
+                || t instanceof StreamResetException
+                || (t instanceof IOException && null != t.getMessage() && t.getMessage().contains("unexpected end of stream"));
+    }
+
+    /**
+     * 第 retry 次重试前的等待时间
+     *
+     * @param retry    重试序号；从 0 开始
+     * @param response 应答；网络异常时为空
+     * @return 毫秒；Retry-After 超过 maxDelay 时返回 -1，表示不应重试
+     */
+    public long delayMillis(int retry, Response response) {
+        long retryAfter = null == response ? -1 : retryAfterMillis(response);
+        if (retryAfter >= 0) return retryAfter <= maxDelayMillis ? retryAfter : -1;
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(retry, 30));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * 在调度线程上延迟执行；流式请求的重试不占用回调线程
+     */
+    public void schedule(Runnable task, long delayMillis) {
+        SCHEDULER.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 读取 retry-after-ms 或 Retry-After（秒）；没有时返回 -1
+     */
+    private static long retryAfterMillis(Response response) {
+        String millis = response.header("retry-after-ms");
+        if (null != millis) {
+            try {
+                return (long) Double.parseDouble(millis.trim());
+            } catch (NumberFormatException ignore) {
+                // 继续读取 Retry-After
+            }
+        }
+        String seconds = response.header("Retry-After");
+        if (null != seconds) {
+            try {
+                return (long) (Double.parseDouble(seconds.trim()) * 1000);
+            } catch (NumberFormatException ignore) {
+                // HTTP 日期格式不处理，按退避计算
+            }
+        }
+        return -1;
+    }
+
+    private static ScheduledExecutorService newScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "openai-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    /**
+     * 建造者模式
+     */
+    public static final class Builder {
+
+        private int maxAttempts = 3;
+        private long baseDelayMillis = 500;
+        private long maxDelayMillis = TimeUnit.SECONDS.toMillis(30);
+        private final Set<Integer> retryableStatus = new HashSet<>();
+        private RetryBudget budget = new RetryBudget(0.2, 10);
+
+        private Builder() {
+            retryableStatus.add(408);
+            retryableStatus.add(429);
+            retryableStatus.add(500);
+            retryableStatus.add(502);
+            retryableStatus.add(503);
+            retryableStatus.add(504);
+        }
+
+        public Builder maxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        public Builder baseDelay(long duration, TimeUnit unit) {
+            this.baseDelayMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        public Builder maxDelay(long duration, TimeUnit unit) {
+            this.maxDelayMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        /**
+         * 额外的可重试状态码
+         */
+        public Builder retryOn(int status) {
+            this.retryableStatus.add(status);
+            return this;
+        }
+
+        public Builder budget(RetryBudget budget) {
+            this.budget = budget;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            if (maxAttempts < 1) throw new IllegalArgumentException("maxAttempts must be at least 1");
+            if (baseDelayMillis <= 0 || maxDelayMillis < baseDelayMillis) {
+                throw new IllegalArgumentException("delays must be positive and maxDelay must not be less than baseDelay");
+            }
+            if (null == budget) throw new IllegalArgumentException("budget is required");
+            return new RetryPolicy(this);
+        }
+
+    }
+
+}
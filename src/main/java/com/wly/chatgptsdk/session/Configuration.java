@@ -1,13 +1,24 @@
 package com.wly.chatgptsdk.session;
 
 import com.wly.chatgptsdk.IOpenAiApi;
+import com.wly.chatgptsdk.cache.RequestCoalescer;
+import com.wly.chatgptsdk.cache.ResponseCache;
+import com.wly.chatgptsdk.circuit.CircuitBreakerRegistry;
+import com.wly.chatgptsdk.key.ApiKeyPool;
+import com.wly.chatgptsdk.metrics.MetricsRecorder;
+import com.wly.chatgptsdk.ratelimit.RateLimitedEventSourceFactory;
+import com.wly.chatgptsdk.ratelimit.RateLimiter;
+import com.wly.chatgptsdk.retry.RetryPolicy;
 import lombok.*;
 import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
 import okhttp3.OkHttpClient;
 import okhttp3.sse.EventSource;
 import okhttp3.sse.EventSources;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.concurrent.Executor;
+
 @Slf4j
 @Data
 @NoArgsConstructor
@@ -18,14 +29,25 @@ public class Configuration {
     @Setter
     private IOpenAiApi openAiApi;
 
+    /** 异步执行的 OpenAI 接口；由 OpenAiAsyncSession 使用 */
+    @Getter
+    @Setter
+    private IOpenAiApi asyncOpenAiApi;
+
     @Getter
     @Setter
     private OkHttpClient okHttpClient;
 
+    /** 发起请求的 Call 工厂；开启限流时为 RateLimitedCallFactory，否则即 okHttpClient */
+    private Call.Factory callFactory;
+
     @Getter
     @NotNull
     private String apiKey;
 
+    /** apiKey 池；设置后未指定 apiKey 的请求从池中选择 key，apiKey 字段只作为限流的标识 */
+    private ApiKeyPool apiKeyPool;
+
     @Getter
     private String apiHost;
 
@@ -36,8 +58,217 @@ public class Configuration {
     @Deprecated
     private String authToken;
 
+    /** 连接池；最大空闲连接数 */
+    private int maxIdleConnections = 32;
+
+    /** 连接池；空闲连接保活时长，单位秒 */
+    private long keepAliveDuration = 300;
+
+    /** 调度器；异步请求的最大并发数 */
+    private int maxRequests = 256;
+
+    /** 调度器；单个 Host 的最大并发数。OpenAI 请求都指向同一个 apiHost，OkHttp 默认的 5 会成为瓶颈 */
+    private int maxRequestsPerHost = 256;
+
+    /** 异步会话的回调执行器；为空时直接在 OkHttp 的回调线程上完成，此时回调中不要做阻塞操作 */
+    private Executor callbackExecutor;
+
+    /** 流式应答的缓冲区大小；下游消费慢时最多缓存的事件数量，超出后暂停读取上游 */
+    private int streamBufferSize = 64;
+
+    /**
+     * 虚拟线程模式；需要 Java 21 及以上运行时。开启后 OkHttp 调度器在虚拟线程上执行异步请求，
+     * 并改用 HTTP/1.1，避免 HTTP/2 帧读取中的 synchronized 等待把虚拟线程固定在载体线程上。
+     * 未指定 callbackExecutor 时，异步会话的回调同样在虚拟线程上执行，回调中可以直接阻塞。
+     * 同步会话的方法仍在调用方线程上阻塞，由调用方决定是否通过 VirtualThreads.newExecutor 提交。
+     */
+    private boolean virtualThreads;
+
+    /** 应答缓存；为空时不缓存。只对 temperature 为 0 的非流式问答生效 */
+    private ResponseCache responseCache;
+
+    /** 请求合并；为空时不合并。相同的并发问答、向量与流式对话请求只向上游发送一次 */
+    private RequestCoalescer requestCoalescer;
+
+    /** 客户端限流；为空时不限流。按 apiKey 与模型控制每分钟请求数与 token 数 */
+    private RateLimiter rateLimiter;
+
+    /** 重试策略；为空时不重试。流式请求只在首个事件送达之前重试 */
+    private RetryPolicy retryPolicy;
+
+    /** 熔断器；为空时不熔断。按 host 与接口路径统计失败率与慢调用率，打开时快速失败 */
+    private CircuitBreakerRegistry circuitBreakers;
+
+    /** 指标记录；为空时不记录。记录各接口的耗时、在途数量、错误，以及流式应答的首 token 时间与生成速度 */
+    private MetricsRecorder metricsRecorder;
+
+    public Call.Factory getCallFactory() {
+        return null == callFactory ? okHttpClient : callFactory;
+    }
+
     public EventSource.Factory createRequestFactory() {
-        return EventSources.createFactory(okHttpClient);
+        EventSource.Factory factory = EventSources.createFactory(okHttpClient);
+        // 开启限流时，事件源先排队准入，再交给 OkHttp 调度器
+        return null == rateLimiter ? factory : new RateLimitedEventSourceFactory(factory, rateLimiter, apiKey, apiKeyPool);
+    }
+
+    /**
+     * 复制一份可修改的配置；会话工厂在副本上补充构建好的传输层，再通过 snapshot() 交给会话
+     *
+     * @return 配置副本
+     */
+    public Configuration copy() {
+        return copyTo(new Configuration());
+    }
+
+    /**
+     * 复制一份只读的配置快照；会话只持有快照，不再与调用方共享同一个可变对象，快照的 setter 抛出 UnsupportedOperationException
+     *
+     * @return 配置快照
+     */
+    public Configuration snapshot() {
+        return copyTo(new ReadOnlyConfiguration());
+    }
+
+    private Configuration copyTo(Configuration target) {
+        target.openAiApi = this.openAiApi;
+        target.asyncOpenAiApi = this.asyncOpenAiApi;
+        target.okHttpClient = this.okHttpClient;
+        target.callFactory = this.callFactory;
+        target.apiKey = this.apiKey;
+        target.apiKeyPool = this.apiKeyPool;
+        target.apiHost = this.apiHost;
+        target.authToken = this.authToken;
+        target.maxIdleConnections = this.maxIdleConnections;
+        target.keepAliveDuration = this.keepAliveDuration;
+        target.maxRequests = this.maxRequests;
+        target.maxRequestsPerHost = this.maxRequestsPerHost;
+        target.callbackExecutor = this.callbackExecutor;
+        target.streamBufferSize = this.streamBufferSize;
+        target.virtualThreads = this.virtualThreads;
+        target.responseCache = this.responseCache;
+        target.requestCoalescer = this.requestCoalescer;
+        target.rateLimiter = this.rateLimiter;
+        target.retryPolicy = this.retryPolicy;
+        target.circuitBreakers = this.circuitBreakers;
+        target.metricsRecorder = this.metricsRecorder;
+        return target;
+    }
+
+    /**
+     * 只读的配置快照；字段只在 copyTo 中直接赋值，所有 setter 都被禁用
+     */
+    private static final class ReadOnlyConfiguration extends Configuration {
+
+        @Override
+        public void setOpenAiApi(IOpenAiApi openAiApi) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setAsyncOpenAiApi(IOpenAiApi asyncOpenAiApi) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setOkHttpClient(OkHttpClient okHttpClient) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setCallFactory(Call.Factory callFactory) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setApiKey(String apiKey) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setApiKeyPool(ApiKeyPool apiKeyPool) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setApiHost(String apiHost) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setAuthToken(String authToken) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setMaxIdleConnections(int maxIdleConnections) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setKeepAliveDuration(long keepAliveDuration) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setMaxRequests(int maxRequests) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setMaxRequestsPerHost(int maxRequestsPerHost) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setCallbackExecutor(Executor callbackExecutor) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setStreamBufferSize(int streamBufferSize) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setVirtualThreads(boolean virtualThreads) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setResponseCache(ResponseCache responseCache) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setRequestCoalescer(RequestCoalescer requestCoalescer) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setRateLimiter(RateLimiter rateLimiter) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setRetryPolicy(RetryPolicy retryPolicy) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setCircuitBreakers(CircuitBreakerRegistry circuitBreakers) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setMetricsRecorder(MetricsRecorder metricsRecorder) {
+            throw readOnly();
+        }
+
+        private static UnsupportedOperationException readOnly() {
+            return new UnsupportedOperationException("configuration snapshot is read-only");
+        }
+
     }
 
 }
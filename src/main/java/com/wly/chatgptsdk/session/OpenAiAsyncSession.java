@@ -0,0 +1,220 @@
+package com.wly.chatgptsdk.session;
+
+import com.wly.chatgptsdk.domain.billing.BillingUsage;
+import com.wly.chatgptsdk.domain.billing.Subscription;
+import com.wly.chatgptsdk.domain.chat.ChatCompletionRequest;
+import com.wly.chatgptsdk.domain.chat.ChatCompletionResponse;
+import com.wly.chatgptsdk.domain.edits.EditRequest;
+import com.wly.chatgptsdk.domain.edits.EditResponse;
+import com.wly.chatgptsdk.domain.embedd.EmbeddingRequest;
+import com.wly.chatgptsdk.domain.embedd.EmbeddingResponse;
+import com.wly.chatgptsdk.domain.embedd.FloatEmbeddingResponse;
+import com.wly.chatgptsdk.domain.files.DeleteFileResponse;
+import com.wly.chatgptsdk.domain.files.UploadFileResponse;
+import com.wly.chatgptsdk.domain.images.ImageEditRequest;
+import com.wly.chatgptsdk.domain.images.ImageRequest;
+import com.wly.chatgptsdk.domain.images.ImageResponse;
+import com.wly.chatgptsdk.domain.other.OpenAiResponse;
+import com.wly.chatgptsdk.domain.qa.QACompletionRequest;
+import com.wly.chatgptsdk.domain.qa.QACompletionResponse;
+import com.wly.chatgptsdk.domain.whisper.TranscriptionsRequest;
+import com.wly.chatgptsdk.domain.whisper.TranslationsRequest;
+import com.wly.chatgptsdk.domain.whisper.WhisperResponse;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * openAi 异步会话接口
+ * 与 OpenAiSession 一一对应，但不会阻塞调用线程。请求交由 OkHttp 调度器异步执行，
+ * 结果在 Configuration#callbackExecutor 上完成 CompletableFuture；取消 CompletableFuture 会同时取消底层 Http 请求。
+ */
+public interface OpenAiAsyncSession {
+
+    /**
+     * 文本问答；简单请求
+     *
+     * @param question 请求信息
+     * @return 应答结果
+     */
+    CompletableFuture<QACompletionResponse> completions(String question);
+
+    /**
+     * 文本问答
+     *
+     * @param qaCompletionRequest 请求信息
+     * @return 应答结果
+     */
+    CompletableFuture<QACompletionResponse> completions(QACompletionRequest qaCompletionRequest);
+
+    /**
+     * 问答模型 GPT-3.5/4.0
+     *
+     * @param chatCompletionRequest 请求信息
+     * @return 应答结果
+     */
+    CompletableFuture<ChatCompletionResponse> completions(ChatCompletionRequest chatCompletionRequest);
+
+    /**
+     * 文本修复
+     *
+     * @param editRequest 请求信息
+     * @return 应答结果
+     */
+    CompletableFuture<EditResponse> edit(EditRequest editRequest);
+
+    /**
+     * 生成图片
+     *
+     * @param prompt 图片描述
+     * @return 应答结果
+     */
+    CompletableFuture<ImageResponse> genImages(String prompt);
+
+    /**
+     * 生成图片
+     *
+     * @param imageRequest 图片描述
+     * @return 应答结果
+     */
+    CompletableFuture<ImageResponse> genImages(ImageRequest imageRequest);
+
+    /**
+     * 修改图片
+     *
+     * @param image  图片对象
+     * @param prompt 修改描述
+     * @return 应答结果
+     */
+    CompletableFuture<ImageResponse> editImages(File image, String prompt);
+
+    /**
+     * 修改图片
+     *
+     * @param image            图片对象
+     * @param imageEditRequest 图片参数
+     * @return 应答结果
+     */
+    CompletableFuture<ImageResponse> editImages(File image, ImageEditRequest imageEditRequest);
+
+    /**
+     * 修改图片
+     *
+     * @param image            图片对象，小于4M的PNG图片
+     * @param mask             图片对象，小于4M的PNG图片
+     * @param imageEditRequest 图片参数
+     * @return 应答结果
+     */
+    CompletableFuture<ImageResponse> editImages(File image, File mask, ImageEditRequest imageEditRequest);
+
+    /**
+     * 向量计算；单个文本
+     *
+     * @param input 文本信息
+     * @return 应答结果
+     */
+    CompletableFuture<EmbeddingResponse> embeddings(String input);
+
+    /**
+     * 向量计算；多个文本
+     *
+     * @param inputs 多个文本
+     * @return 应答结果
+     */
+    CompletableFuture<EmbeddingResponse> embeddings(String... inputs);
+
+    /**
+     * 向量计算；多个文本
+     *
+     * @param inputs 多个文本
+     * @return 应答结果
+     */
+    CompletableFuture<EmbeddingResponse> embeddings(List<String> inputs);
+
+    /**
+     * 向量计算；入参
+     *
+     * @param embeddingRequest 请求结果
+     * @return 应答结果
+     */
+    CompletableFuture<EmbeddingResponse> embeddings(EmbeddingRequest embeddingRequest);
+
+    /**
+     * 向量计算；向量以 float[] 返回
+     * 请求未指定 encoding_format 时使用 base64，应答按小端序 float32 直接解码，避免 List<BigDecimal> 的内存开销
+     *
+     * @param embeddingRequest 请求结果
+     * @return 应答结果
+     */
+    CompletableFuture<FloatEmbeddingResponse> floatEmbeddings(EmbeddingRequest embeddingRequest);
+
+    /**
+     * 获取文件
+     *
+     * @return 应答结果
+     */
+    CompletableFuture<OpenAiResponse<File>> files();
+
+    /**
+     * 上传文件
+     *
+     * @param file 文件
+     * @return 应答结果
+     */
+    CompletableFuture<UploadFileResponse> uploadFile(File file);
+
+    /**
+     * 上传文件
+     *
+     * @param purpose Use "fine-tune" for Fine-tuning. This allows us to validate the format of the uploaded file.
+     * @param file    文件
+     * @return 应答结果
+     */
+    CompletableFuture<UploadFileResponse> uploadFile(String purpose, File file);
+
+    /**
+     * 删除文件
+     *
+     * @param fileId 文件ID
+     * @return 应答结果
+     */
+    CompletableFuture<DeleteFileResponse> deleteFile(String fileId);
+
+    /**
+     * 语音转文字
+     *
+     * @param file                  语音文件
+     * @param transcriptionsRequest 请求信息
+     * @return 应答结果
+     */
+    CompletableFuture<WhisperResponse> speed2TextTranscriptions(File file, TranscriptionsRequest transcriptionsRequest);
+
+    /**
+     * 语音翻译
+     *
+     * @param file                语音文件
+     * @param translationsRequest 请求信息
+     * @return 应答结果
+     */
+    CompletableFuture<WhisperResponse> speed2TextTranslations(File file, TranslationsRequest translationsRequest);
+
+    /**
+     * 账单查询
+     *
+     * @return 应答结果
+     */
+    CompletableFuture<Subscription> subscription();
+
+    /**
+     * 消耗查询
+     *
+     * @param starDate 开始时间
+     * @param endDate  结束时间
+     * @return 应答数据
+     */
+    CompletableFuture<BillingUsage> billingUsage(@NotNull LocalDate starDate, @NotNull LocalDate endDate);
+
+}
@@ -9,6 +9,7 @@ import com.wly.chatgptsdk.domain.edits.EditRequest;
 import com.wly.chatgptsdk.domain.edits.EditResponse;
 import com.wly.chatgptsdk.domain.embedd.EmbeddingRequest;
 import com.wly.chatgptsdk.domain.embedd.EmbeddingResponse;
+import com.wly.chatgptsdk.domain.embedd.FloatEmbeddingResponse;
 import com.wly.chatgptsdk.domain.files.DeleteFileResponse;
 import com.wly.chatgptsdk.domain.files.UploadFileResponse;
 import com.wly.chatgptsdk.domain.images.ImageEditRequest;
@@ -20,11 +21,19 @@ import com.wly.chatgptsdk.domain.qa.QACompletionResponse;
 import com.wly.chatgptsdk.domain.whisper.TranscriptionsRequest;
 import com.wly.chatgptsdk.domain.whisper.TranslationsRequest;
 import com.wly.chatgptsdk.domain.whisper.WhisperResponse;
+import com.wly.chatgptsdk.stream.ChatDeltaListener;
+import com.wly.chatgptsdk.stream.FlushPolicy;
+import com.wly.chatgptsdk.stream.MulticastStream;
+import com.wly.chatgptsdk.stream.StopCondition;
+import io.reactivex.Flowable;
 import okhttp3.sse.EventSource;
 import okhttp3.sse.EventSourceListener;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.channels.WritableByteChannel;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
@@ -66,6 +75,17 @@ public interface OpenAiSession {
      */
     EventSource completions(QACompletionRequest qaCompletionRequest, EventSourceListener eventSourceListener) throws JsonProcessingException;
 
+    /**
+     * 文本问答 & 流式反馈 & 客户端停止
+     * 停止条件命中时立即取消请求，补发 finish_reason 为 client_stop 且带有 usage 的结束分片，随后发送 [DONE]
+     *
+     * @param qaCompletionRequest 请求信息
+     * @param stopCondition       停止条件
+     * @param eventSourceListener 实现监听；通过监听的 onEvent 方法接收数据
+     * @return 应答结果
+     */
+    EventSource completions(QACompletionRequest qaCompletionRequest, StopCondition stopCondition, EventSourceListener eventSourceListener) throws JsonProcessingException;
+
     /**
      * 问答模型 GPT-3.5/4.0
      *
@@ -91,6 +111,108 @@ public interface OpenAiSession {
      */
     CompletableFuture<String> chatCompletions(ChatCompletionRequest chatCompletionRequest) throws InterruptedException, JsonProcessingException;
 
+    /**
+     * 问答模型 GPT-3.5/4.0 & 流式反馈 & 聚合
+     * 按 choice 序号把增量拼接为完整应答，n > 1 时包含全部对话及各自的结束原因；取消 future 时同步取消请求。
+     * 开启请求合并时与其他相同请求共享上游事件流
+     *
+     * @param chatCompletionRequest 请求信息
+     * @return 聚合后的应答；choices 中使用 message 而不是 delta
+     */
+    CompletableFuture<ChatCompletionResponse> chatCompletionsAggregated(ChatCompletionRequest chatCompletionRequest) throws JsonProcessingException;
+
+    /**
+     * 问答模型 GPT-3.5/4.0 & 流式反馈 & 聚合 & 客户端停止
+     * 停止条件命中时立即取消请求，返回已收到的内容；被停止的对话 finish_reason 为 client_stop，usage 按 TokenCounter 计数
+     *
+     * @param chatCompletionRequest 请求信息
+     * @param stopCondition         停止条件
+     * @return 聚合后的应答
+     */
+    CompletableFuture<ChatCompletionResponse> chatCompletionsAggregated(ChatCompletionRequest chatCompletionRequest, StopCondition stopCondition) throws JsonProcessingException;
+
+    /**
+     * 问答模型 GPT-3.5/4.0 & 流式反馈 & 增量解码
+     * 分片直接从应答字节中解码出 index、role、content、finish_reason，不创建中间对象。
+     * 监听在读取线程上执行，阻塞监听即暂停读取上游；因此不参与请求合并，每次调用独占一个上游请求
+     *
+     * @param chatCompletionRequest 请求信息
+     * @param chatDeltaListener     增量监听；通过 onDelta 方法接收数据
+     * @return 应答结果；EventSource 对象可以取消应答
+     */
+    EventSource chatCompletions(ChatCompletionRequest chatCompletionRequest, ChatDeltaListener chatDeltaListener) throws JsonProcessingException;
+
+    /**
+     * 问答模型 GPT-3.5/4.0 & 流式反馈 & 增量解码 & 客户端停止
+     * 停止条件命中的对话收到一个 finish_reason 为 client_stop 的空增量；全部对话结束后立即取消请求并回调 onClosed
+     *
+     * @param chatCompletionRequest 请求信息
+     * @param stopCondition         停止条件
+     * @param chatDeltaListener     增量监听
+     * @return 应答结果；EventSource 对象可以取消应答
+     */
+    EventSource chatCompletions(ChatCompletionRequest chatCompletionRequest, StopCondition stopCondition, ChatDeltaListener chatDeltaListener) throws JsonProcessingException;
+
+    /**
+     * 问答模型 GPT-3.5/4.0 & 流式反馈 & 写入字符流
+     * 第一个对话（index 0）的内容增量直接写入 writer；写入阻塞时暂停读取上游。writer 由调用方关闭
+     *
+     * @param chatCompletionRequest 请求信息
+     * @param writer                写入目标
+     * @param flushPolicy           刷新策略
+     * @return 写入的字符数；取消 future 时同步取消请求
+     */
+    CompletableFuture<Long> chatCompletions(ChatCompletionRequest chatCompletionRequest, Writer writer, FlushPolicy flushPolicy) throws JsonProcessingException;
+
+    /**
+     * 问答模型 GPT-3.5/4.0 & 流式反馈 & 写入字节流
+     * 内容增量按 UTF-8 编码后写入 outputStream；写入阻塞时暂停读取上游。outputStream 由调用方关闭
+     *
+     * @param chatCompletionRequest 请求信息
+     * @param outputStream          写入目标
+     * @param flushPolicy           刷新策略
+     * @return 写入的字符数；取消 future 时同步取消请求
+     */
+    CompletableFuture<Long> chatCompletions(ChatCompletionRequest chatCompletionRequest, OutputStream outputStream, FlushPolicy flushPolicy) throws JsonProcessingException;
+
+    /**
+     * 问答模型 GPT-3.5/4.0 & 流式反馈 & 写入通道
+     * 内容增量按 UTF-8 编码后写入 channel；通道必须处于阻塞模式。channel 由调用方关闭
+     *
+     * @param chatCompletionRequest 请求信息
+     * @param channel               写入目标
+     * @param flushPolicy           刷新策略
+     * @return 写入的字符数；取消 future 时同步取消请求
+     */
+    CompletableFuture<Long> chatCompletions(ChatCompletionRequest chatCompletionRequest, WritableByteChannel channel, FlushPolicy flushPolicy) throws JsonProcessingException;
+
+    /**
+     * 问答模型 GPT-3.5/4.0 & 流式反馈 & 多播
+     * 一个上游请求分发给多个订阅者，后加入的订阅者从头重放；每个订阅者独立消费，最后一个订阅者离开时取消上游
+     *
+     * @param chatCompletionRequest 请求信息
+     * @param capacity              环形缓冲区容量；应覆盖一次应答的最大分片数
+     * @return 多播流；通过 subscribe 加入
+     */
+    MulticastStream chatCompletionsMulticast(ChatCompletionRequest chatCompletionRequest, int capacity) throws JsonProcessingException;
+
+    /**
+     * 问答模型 GPT-3.5/4.0 & 流式反馈 & 背压
+     * 每次订阅开启一次请求；下游消费慢时暂停读取上游，取消订阅时同步取消 EventSource
+     *
+     * @param chatCompletionRequest 请求信息
+     * @return 应答分片
+     */
+    Flowable<ChatCompletionResponse> chatCompletionsFlowable(ChatCompletionRequest chatCompletionRequest);
+
+    /**
+     * 问答模型 GPT-3.5/4.0 & 流式反馈 & 背压；只包含第一个对话（index 0）的内容增量
+     *
+     * @param chatCompletionRequest 请求信息
+     * @return 内容增量
+     */
+    Flowable<String> chatCompletionsContentFlowable(ChatCompletionRequest chatCompletionRequest);
+
     /**
      * 问答模型 GPT-3.5/4.0 & 流式反馈
      *
@@ -191,6 +313,15 @@ public interface OpenAiSession {
      */
     EmbeddingResponse embeddings(EmbeddingRequest embeddingRequest);
 
+    /**
+     * 向量计算；向量以 float[] 返回
+     * 请求未指定 encoding_format 时使用 base64，应答按小端序 float32 直接解码，避免 List<BigDecimal> 的内存开销
+     *
+     * @param embeddingRequest 请求结果
+     * @return 应答结果
+     */
+    FloatEmbeddingResponse floatEmbeddings(EmbeddingRequest embeddingRequest);
+
     /**
      * 获取文件
      *
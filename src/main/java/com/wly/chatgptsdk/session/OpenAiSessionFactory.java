@@ -1,5 +1,12 @@
 package com.wly.chatgptsdk.session;
 
 public interface OpenAiSessionFactory {
+
     OpenAiSession openSession();
+
+    /**
+     * 开启异步会话；与同步会话共享同一个 Http 客户端
+     */
+    OpenAiAsyncSession openAsyncSession();
+
 }
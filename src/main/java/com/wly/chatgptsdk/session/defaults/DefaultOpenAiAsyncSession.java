@@ -0,0 +1,241 @@
+package com.wly.chatgptsdk.session.defaults;
+
+import com.wly.chatgptsdk.IOpenAiApi;
+import com.wly.chatgptsdk.cache.RequestCoalescer;
+import com.wly.chatgptsdk.cache.ResponseCache;
+import com.wly.chatgptsdk.domain.billing.BillingUsage;
+import com.wly.chatgptsdk.domain.billing.Subscription;
+import com.wly.chatgptsdk.domain.chat.ChatCompletionRequest;
+import com.wly.chatgptsdk.domain.chat.ChatCompletionResponse;
+import com.wly.chatgptsdk.domain.edits.EditRequest;
+import com.wly.chatgptsdk.domain.edits.EditResponse;
+import com.wly.chatgptsdk.domain.embedd.EmbeddingRequest;
+import com.wly.chatgptsdk.domain.embedd.EmbeddingResponse;
+import com.wly.chatgptsdk.domain.embedd.FloatEmbeddingResponse;
+import com.wly.chatgptsdk.domain.files.DeleteFileResponse;
+import com.wly.chatgptsdk.domain.files.UploadFileResponse;
+import com.wly.chatgptsdk.domain.images.ImageEditRequest;
+import com.wly.chatgptsdk.domain.images.ImageRequest;
+import com.wly.chatgptsdk.domain.images.ImageResponse;
+import com.wly.chatgptsdk.domain.other.OpenAiResponse;
+import com.wly.chatgptsdk.domain.qa.QACompletionRequest;
+import com.wly.chatgptsdk.domain.qa.QACompletionResponse;
+import com.wly.chatgptsdk.domain.whisper.TranscriptionsRequest;
+import com.wly.chatgptsdk.domain.whisper.TranslationsRequest;
+import com.wly.chatgptsdk.domain.whisper.WhisperResponse;
+import com.wly.chatgptsdk.session.Configuration;
+import com.wly.chatgptsdk.session.OpenAiAsyncSession;
+import io.reactivex.Single;
+import io.reactivex.disposables.Disposable;
+import okhttp3.MultipartBody;
+import okhttp3.RequestBody;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * 异步会话
+ * 使用 RxJava2CallAdapterFactory.createAsync() 创建的 IOpenAiApi，订阅时通过 OkHttp 调度器 enqueue 请求，
+ * 调用线程不会被阻塞；在途请求数量只受 Dispatcher 的 maxRequests 与 maxRequestsPerHost 约束。
+ */
+public class DefaultOpenAiAsyncSession implements OpenAiAsyncSession {
+
+    /**
+     * 配置信息
+     */
+    private final Configuration configuration;
+
+    /**
+     * OpenAI 接口；异步执行
+     */
+    private final IOpenAiApi openAiApi;
+
+    /**
+     * 回调执行器；为空时直接在 OkHttp 的回调线程上完成
+     */
+    private final Executor callbackExecutor;
+
+    public DefaultOpenAiAsyncSession(Configuration configuration) {
+        this.configuration = configuration;
+        this.openAiApi = configuration.getAsyncOpenAiApi();
+        this.callbackExecutor = configuration.getCallbackExecutor();
+    }
+
+    @Override
+    public CompletableFuture<QACompletionResponse> completions(String question) {
+        QACompletionRequest request = QACompletionRequest
+                .builder()
+                .prompt(question)
+                .build();
+        return this.completions(request);
+    }
+
+    @Override
+    public CompletableFuture<QACompletionResponse> completions(QACompletionRequest qaCompletionRequest) {
+        ResponseCache responseCache = configuration.getResponseCache();
+        if (null != responseCache && ResponseCache.cacheable(qaCompletionRequest)) {
+            return responseCache.loadAsync(qaCompletionRequest, QACompletionResponse.class,
+                    () -> execute(qaCompletionRequest, QACompletionResponse.class, this.openAiApi.completions(qaCompletionRequest)));
+        }
+        return execute(qaCompletionRequest, QACompletionResponse.class, this.openAiApi.completions(qaCompletionRequest));
+    }
+
+    @Override
+    public CompletableFuture<ChatCompletionResponse> completions(ChatCompletionRequest chatCompletionRequest) {
+        ResponseCache responseCache = configuration.getResponseCache();
+        if (null != responseCache && ResponseCache.cacheable(chatCompletionRequest)) {
+            return responseCache.loadAsync(chatCompletionRequest, ChatCompletionResponse.class,
+                    () -> execute(chatCompletionRequest, ChatCompletionResponse.class, this.openAiApi.completions(chatCompletionRequest)));
+        }
+        return execute(chatCompletionRequest, ChatCompletionResponse.class, this.openAiApi.completions(chatCompletionRequest));
+    }
+
+    @Override
+    public CompletableFuture<EditResponse> edit(EditRequest editRequest) {
+        return toFuture(this.openAiApi.edits(editRequest));
+    }
+
+    @Override
+    public CompletableFuture<ImageResponse> genImages(String prompt) {
+        ImageRequest imageRequest = ImageRequest.builder().prompt(prompt).build();
+        return this.genImages(imageRequest);
+    }
+
+    @Override
+    public CompletableFuture<ImageResponse> genImages(ImageRequest imageRequest) {
+        return toFuture(this.openAiApi.genImages(imageRequest));
+    }
+
+    @Override
+    public CompletableFuture<ImageResponse> editImages(File image, String prompt) {
+        ImageEditRequest imageEditRequest = ImageEditRequest.builder().prompt(prompt).build();
+        return this.editImages(image, null, imageEditRequest);
+    }
+
+    @Override
+    public CompletableFuture<ImageResponse> editImages(File image, ImageEditRequest imageEditRequest) {
+        return this.editImages(image, null, imageEditRequest);
+    }
+
+    @Override
+    public CompletableFuture<ImageResponse> editImages(File image, File mask, ImageEditRequest imageEditRequest) {
+        MultipartBody.Part imageMultipartBody = MultipartParams.image("image", image);
+        MultipartBody.Part maskMultipartBody = MultipartParams.image("mask", mask);
+        Map<String, RequestBody> requestBodyMap = MultipartParams.imageEdit(imageEditRequest);
+        return toFuture(this.openAiApi.editImages(imageMultipartBody, maskMultipartBody, requestBodyMap));
+    }
+
+    @Override
+    public CompletableFuture<EmbeddingResponse> embeddings(String input) {
+        return this.embeddings(Collections.singletonList(input));
+    }
+
+    @Override
+    public CompletableFuture<EmbeddingResponse> embeddings(String... inputs) {
+        return this.embeddings(Arrays.asList(inputs));
+    }
+
+    @Override
+    public CompletableFuture<EmbeddingResponse> embeddings(List<String> inputs) {
+        EmbeddingRequest embeddingRequest = EmbeddingRequest.builder().input(inputs).build();
+        return this.embeddings(embeddingRequest);
+    }
+
+    @Override
+    public CompletableFuture<EmbeddingResponse> embeddings(EmbeddingRequest embeddingRequest) {
+        return execute(embeddingRequest, EmbeddingResponse.class, this.openAiApi.embeddings(embeddingRequest));
+    }
+
+    @Override
+    public CompletableFuture<FloatEmbeddingResponse> floatEmbeddings(EmbeddingRequest embeddingRequest) {
+        if (null == embeddingRequest.getEncodingFormat()) {
+            embeddingRequest = embeddingRequest.toBuilder().encodingFormat(EmbeddingRequest.EncodingFormat.BASE64.getCode()).build();
+        }
+        return execute(embeddingRequest, FloatEmbeddingResponse.class, this.openAiApi.floatEmbeddings(embeddingRequest));
+    }
+
+    @Override
+    public CompletableFuture<OpenAiResponse<File>> files() {
+        return toFuture(this.openAiApi.files());
+    }
+
+    @Override
+    public CompletableFuture<UploadFileResponse> uploadFile(File file) {
+        return this.uploadFile("fine-tune", file);
+    }
+
+    @Override
+    public CompletableFuture<UploadFileResponse> uploadFile(String purpose, File file) {
+        MultipartBody.Part multipartBody = MultipartParams.file("file", file);
+        RequestBody purposeBody = MultipartParams.text(purpose);
+        return toFuture(this.openAiApi.uploadFile(multipartBody, purposeBody));
+    }
+
+    @Override
+    public CompletableFuture<DeleteFileResponse> deleteFile(String fileId) {
+        return toFuture(this.openAiApi.deleteFile(fileId));
+    }
+
+    @Override
+    public CompletableFuture<WhisperResponse> speed2TextTranscriptions(File file, TranscriptionsRequest transcriptionsRequest) {
+        MultipartBody.Part multipartBody = MultipartParams.file("file", file);
+        Map<String, RequestBody> requestBodyMap = MultipartParams.transcriptions(transcriptionsRequest);
+        return toFuture(this.openAiApi.speed2TextTranscriptions(multipartBody, requestBodyMap));
+    }
+
+    @Override
+    public CompletableFuture<WhisperResponse> speed2TextTranslations(File file, TranslationsRequest translationsRequest) {
+        MultipartBody.Part multipartBody = MultipartParams.file("file", file);
+        Map<String, RequestBody> requestBodyMap = MultipartParams.translations(translationsRequest);
+        return toFuture(this.openAiApi.speed2TextTranslations(multipartBody, requestBodyMap));
+    }
+
+    @Override
+    public CompletableFuture<Subscription> subscription() {
+        return toFuture(this.openAiApi.subscription());
+    }
+
+    @Override
+    public CompletableFuture<BillingUsage> billingUsage(@NotNull LocalDate starDate, @NotNull LocalDate endDate) {
+        return toFuture(this.openAiApi.billingUsage(starDate, endDate));
+    }
+
+    /**
+     * 异步执行；开启请求合并时，相同的并发请求共享一次调用
+     */
+    private <T> CompletableFuture<T> execute(Object request, Class<T> responseType, Single<T> call) {
+        RequestCoalescer requestCoalescer = configuration.getRequestCoalescer();
+        if (null == requestCoalescer) return toFuture(call);
+        return requestCoalescer.executeAsync(request, responseType, () -> toFuture(call));
+    }
+
+    /**
+     * Single 转 CompletableFuture；在回调执行器上完成，取消 future 时释放订阅并取消 Http 请求
+     */
+    private <T> CompletableFuture<T> toFuture(Single<T> single) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Disposable disposable = single.subscribe(
+                value -> complete(() -> future.complete(value)),
+                throwable -> complete(() -> future.completeExceptionally(throwable)));
+        future.whenComplete((value, throwable) -> {
+            if (future.isCancelled()) disposable.dispose();
+        });
+        return future;
+    }
+
+    private void complete(Runnable completion) {
+        if (null == callbackExecutor) {
+            completion.run();
+            return;
+        }
+        callbackExecutor.execute(completion);
+    }
+
+}
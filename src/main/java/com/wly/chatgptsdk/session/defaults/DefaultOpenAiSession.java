@@ -1,22 +1,22 @@
 package com.wly.chatgptsdk.session.defaults;
 
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.http.ContentType;
 import com.alibaba.fastjson.JSON;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.wly.chatgptsdk.IOpenAiApi;
+import com.wly.chatgptsdk.cache.RequestCoalescer;
+import com.wly.chatgptsdk.cache.ResponseCache;
+import com.wly.chatgptsdk.codec.JsonRequestBody;
 import com.wly.chatgptsdk.common.Constants;
 import com.wly.chatgptsdk.domain.billing.BillingUsage;
 import com.wly.chatgptsdk.domain.billing.Subscription;
 import com.wly.chatgptsdk.domain.chat.ChatChoice;
 import com.wly.chatgptsdk.domain.chat.ChatCompletionRequest;
 import com.wly.chatgptsdk.domain.chat.ChatCompletionResponse;
-import com.wly.chatgptsdk.domain.chat.Message;
 import com.wly.chatgptsdk.domain.edits.EditRequest;
 import com.wly.chatgptsdk.domain.edits.EditResponse;
 import com.wly.chatgptsdk.domain.embedd.EmbeddingRequest;
 import com.wly.chatgptsdk.domain.embedd.EmbeddingResponse;
+import com.wly.chatgptsdk.domain.embedd.FloatEmbeddingResponse;
 import com.wly.chatgptsdk.domain.files.DeleteFileResponse;
 
 import com.wly.chatgptsdk.domain.files.UploadFileResponse;
@@ -29,10 +29,31 @@ import com.wly.chatgptsdk.domain.qa.QACompletionResponse;
 import com.wly.chatgptsdk.domain.whisper.TranscriptionsRequest;
 import com.wly.chatgptsdk.domain.whisper.TranslationsRequest;
 import com.wly.chatgptsdk.domain.whisper.WhisperResponse;
+import com.wly.chatgptsdk.interceptor.MetricsInterceptor;
+import com.wly.chatgptsdk.interceptor.RetryInterceptor;
+import com.wly.chatgptsdk.metrics.MetricsRecorder;
+import com.wly.chatgptsdk.metrics.StreamMetrics;
+import com.wly.chatgptsdk.retry.RetryPolicy;
 import com.wly.chatgptsdk.session.Configuration;
 import com.wly.chatgptsdk.session.OpenAiSession;
+import com.wly.chatgptsdk.stream.ChatCompletionAggregator;
+import com.wly.chatgptsdk.stream.ChatDeltaEventListener;
+import com.wly.chatgptsdk.stream.ChatDeltaEventSource;
+import com.wly.chatgptsdk.stream.ChatDeltaListener;
+import com.wly.chatgptsdk.stream.EventSourcePublisher;
+import com.wly.chatgptsdk.stream.FlushPolicy;
+import com.wly.chatgptsdk.stream.MulticastStream;
+import com.wly.chatgptsdk.stream.RetryingEventSource;
+import com.wly.chatgptsdk.stream.StopCondition;
+import com.wly.chatgptsdk.stream.StoppingDeltaListener;
+import com.wly.chatgptsdk.stream.StoppingEventSourceListener;
+import com.wly.chatgptsdk.stream.StreamSink;
+import io.reactivex.Flowable;
 import io.reactivex.Single;
 import java.io.File;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.channels.WritableByteChannel;
 import okhttp3.*;
 import okhttp3.sse.EventSource;
 import okhttp3.sse.EventSourceListener;
@@ -42,6 +63,7 @@ import org.jetbrains.annotations.NotNull;
 import java.time.LocalDate;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.UnaryOperator;
 
 
 
@@ -76,7 +98,12 @@ public class DefaultOpenAiSession implements OpenAiSession {
      */
     @Override
     public QACompletionResponse completions(QACompletionRequest qaCompletionRequest) {
-        return this.openAiApi.completions(qaCompletionRequest).blockingGet();
+        ResponseCache responseCache = configuration.getResponseCache();
+        if (null != responseCache && ResponseCache.cacheable(qaCompletionRequest)) {
+            return responseCache.load(qaCompletionRequest, QACompletionResponse.class,
+                    () -> execute(qaCompletionRequest, QACompletionResponse.class, this.openAiApi.completions(qaCompletionRequest)));
+        }
+        return execute(qaCompletionRequest, QACompletionResponse.class, this.openAiApi.completions(qaCompletionRequest));
     }
 
     /**
@@ -88,6 +115,14 @@ public class DefaultOpenAiSession implements OpenAiSession {
      */
     @Override
     public EventSource completions(QACompletionRequest qaCompletionRequest, EventSourceListener eventSourceListener) throws JsonProcessingException {
+        return completions(qaCompletionRequest, eventSourceListener, UnaryOperator.identity());
+    }
+
+    /**
+     * @param stopping 包装停止条件；位于指标与重试之内，客户端停止在指标中记为正常结束
+     */
+    private EventSource completions(QACompletionRequest qaCompletionRequest, EventSourceListener eventSourceListener,
+                                    UnaryOperator<EventSourceListener> stopping) throws JsonProcessingException {
         // 核心参数校验；不对用户的传参做更改，只返回错误信息。
         if (!qaCompletionRequest.isStream()) {
             throw new RuntimeException("illegal parameter stream is false!");
@@ -96,11 +131,11 @@ public class DefaultOpenAiSession implements OpenAiSession {
         // 构建请求信息
         Request request = new Request.Builder()
                 .url(configuration.getApiHost().concat(IOpenAiApi.v1_completions))
-                .post(RequestBody.create(MediaType.parse(ContentType.JSON.getValue()), new ObjectMapper().writeValueAsString(qaCompletionRequest)))
+                .post(JsonRequestBody.create(qaCompletionRequest))
                 .build();
 
         // 返回事件结果
-        return factory.newEventSource(request, eventSourceListener);
+        return newEventSource(request, eventSourceListener, stopping);
     }
 
     /**
@@ -114,15 +149,8 @@ public class DefaultOpenAiSession implements OpenAiSession {
                 .builder()
                 .prompt(question) // 设置问题字符串
                 .build();   // 构建QA完成请求
-        Single<QACompletionResponse> completions = this.openAiApi.completions(request);
-        /**
-         * blockingGet()方法通常是与响应式编程库（如RxJava）中的Single、Observable或其他响应式类型一起使用的。
-         * 在RxJava中，Single表示一个异步计算的结果，这个结果要么成功返回一个值，要么返回一个错误。
-         * blockingGet()是Single类中的一个方法。当你调用这个方法时，它会阻塞当前线程，直到Single完成计算并发出一个结果或错误。
-         * 如果Single成功完成，blockingGet()返回计算的结果；如果Single发出错误，blockingGet()将抛出一个异常。
-         * blockingGet()的作用是将异步计算转换为同步计算。
-         */
-        return completions.blockingGet(); // 同步调用API并返回响应
+        // 与请求对象的版本走同一条路径，缓存与请求合并同样生效
+        return completions(request);
     }
 
     /**
@@ -132,7 +160,12 @@ public class DefaultOpenAiSession implements OpenAiSession {
      */
     @Override
     public ChatCompletionResponse completions(ChatCompletionRequest chatCompletionRequest) {
-        return this.openAiApi.completions(chatCompletionRequest).blockingGet();
+        ResponseCache responseCache = configuration.getResponseCache();
+        if (null != responseCache && ResponseCache.cacheable(chatCompletionRequest)) {
+            return responseCache.load(chatCompletionRequest, ChatCompletionResponse.class,
+                    () -> execute(chatCompletionRequest, ChatCompletionResponse.class, this.openAiApi.completions(chatCompletionRequest)));
+        }
+        return execute(chatCompletionRequest, ChatCompletionResponse.class, this.openAiApi.completions(chatCompletionRequest));
     }
 
     /**
@@ -147,8 +180,14 @@ public class DefaultOpenAiSession implements OpenAiSession {
         return chatCompletions(Constants.NULL, Constants.NULL, chatCompletionRequest, eventSourceListener);
     }
 
+    @Override
+    public EventSource completions(QACompletionRequest qaCompletionRequest, StopCondition stopCondition, EventSourceListener eventSourceListener) throws JsonProcessingException {
+        return completions(qaCompletionRequest, eventSourceListener,
+                listener -> new StoppingEventSourceListener(stopCondition, listener, qaCompletionRequest));
+    }
+
     /**
-     * 使用CompletableFuture进行异步处理，返回值是聊天的完成响应
+     * 使用CompletableFuture进行异步处理，返回值是第一个对话（index 0）的完整内容
      * @param chatCompletionRequest 请求信息
      * @return
      * @throws InterruptedException
@@ -156,67 +195,171 @@ public class DefaultOpenAiSession implements OpenAiSession {
      */
     @Override
     public CompletableFuture<String> chatCompletions(ChatCompletionRequest chatCompletionRequest) throws InterruptedException, JsonProcessingException {
-        // 用于执行异步任务并获取结果
-        CompletableFuture<String> future = new CompletableFuture<>();
-        // 用于构建最终返回的数据
-        StringBuffer dataBuffer = new StringBuffer();
-
-        // 调用同名方法，处理聊天完成请求
-        chatCompletions(chatCompletionRequest, new EventSourceListener(){
-            // 当事件发生时调用
-            @Override
-            public void onEvent(EventSource eventSource, String id, String type, String data) {
-                // 检查是否完成聊天
-                if ("[DONE]".equalsIgnoreCase(data)) {
-                    onClosed(eventSource);
-                    future.complete(dataBuffer.toString());
-                }
-                //解析聊天完成响应数据
-                ChatCompletionResponse chatCompletionResponse = JSON.parseObject(data, ChatCompletionResponse.class);
-                List<ChatChoice> choices = chatCompletionResponse.getChoices();
-                // 遍历所有聊天选择
-                for (ChatChoice chatChoice : choices) {
-                    Message delta = chatChoice.getDelta();
-                    // 忽略助手角色的消息
-                    if (Constants.Role.ASSISTANT.getCode().equals(delta.getRole())) continue;
-
-                    // 检查完成理由，如果为"stop"，则结束会话
-                    String finishReason = chatChoice.getFinishReason();
-                    if ("stop".equalsIgnoreCase(finishReason)) {
-                        onClosed(eventSource);
-                        return;
-                    }
+        CompletableFuture<ChatCompletionResponse> aggregated = chatCompletionsAggregated(chatCompletionRequest);
+        CompletableFuture<String> future = aggregated.thenApply(response -> {
+            List<ChatChoice> choices = response.getChoices();
+            if (choices.isEmpty() || choices.get(0).getIndex() != 0) return "";
+            return choices.get(0).getMessage().getContent();
+        });
+        future.whenComplete((content, throwable) -> {
+            if (future.isCancelled()) aggregated.cancel(false);
+        });
+        return future;
+    }
 
-                    // 尝试将内容追加到dataBuffer
-                    try {
-                        dataBuffer.append(delta.getContent());
-                        System.out.println(delta.getContent());
-                    } catch (Exception e) {
-                        future.completeExceptionally(new RuntimeException("Request closed before completion"));
-                    }
+    @Override
+    public CompletableFuture<ChatCompletionResponse> chatCompletionsAggregated(ChatCompletionRequest chatCompletionRequest) throws JsonProcessingException {
+        ChatCompletionAggregator aggregator = new ChatCompletionAggregator();
+        // 聚合只在内存中拼接、不会阻塞，开启请求合并时与相同的请求共享上游事件流；其余增量方法直接读取字节，不参与合并
+        EventSource eventSource = null == configuration.getRequestCoalescer()
+                ? chatCompletions(chatCompletionRequest, aggregator)
+                : chatCompletions(chatCompletionRequest, new ChatDeltaEventListener(aggregator));
+        return aggregator.bind(eventSource).future();
+    }
 
-                }
-            }
+    @Override
+    public CompletableFuture<ChatCompletionResponse> chatCompletionsAggregated(ChatCompletionRequest chatCompletionRequest, StopCondition stopCondition) throws JsonProcessingException {
+        ChatCompletionAggregator aggregator = new ChatCompletionAggregator(chatCompletionRequest);
+        return aggregator.bind(chatCompletions(chatCompletionRequest, stopCondition, aggregator)).future();
+    }
 
-            // 当事件源关闭时调用
-            @Override
-            public void onClosed(EventSource eventSource) {
-                future.complete(dataBuffer.toString());
-            }
+    @Override
+    public EventSource chatCompletions(ChatCompletionRequest chatCompletionRequest, StopCondition stopCondition, ChatDeltaListener chatDeltaListener) throws JsonProcessingException {
+        int choices = null == chatCompletionRequest.getN() ? 1 : chatCompletionRequest.getN();
+        return chatCompletions(chatCompletionRequest, chatDeltaListener, listener -> new StoppingDeltaListener(stopCondition, listener, choices));
+    }
 
-            // 当事件源发生故障时调用
-            @Override
-            public void onFailure(EventSource eventSource, Throwable t, Response response) {
-                future.completeExceptionally(new RuntimeException("Request closed before completion"));
-            }
-        });
+    @Override
+    public CompletableFuture<Long> chatCompletions(ChatCompletionRequest chatCompletionRequest, Writer writer, FlushPolicy flushPolicy) throws JsonProcessingException {
+        return stream(chatCompletionRequest, StreamSink.writer(writer, flushPolicy));
+    }
 
-        return future;
+    @Override
+    public CompletableFuture<Long> chatCompletions(ChatCompletionRequest chatCompletionRequest, OutputStream outputStream, FlushPolicy flushPolicy) throws JsonProcessingException {
+        return stream(chatCompletionRequest, StreamSink.outputStream(outputStream, flushPolicy));
+    }
+
+    @Override
+    public CompletableFuture<Long> chatCompletions(ChatCompletionRequest chatCompletionRequest, WritableByteChannel channel, FlushPolicy flushPolicy) throws JsonProcessingException {
+        return stream(chatCompletionRequest, StreamSink.channel(channel, flushPolicy));
+    }
+
+    private CompletableFuture<Long> stream(ChatCompletionRequest chatCompletionRequest, StreamSink sink) throws JsonProcessingException {
+        return sink.bind(chatCompletions(chatCompletionRequest, sink)).future();
+    }
+
+    @Override
+    public EventSource chatCompletions(ChatCompletionRequest chatCompletionRequest, ChatDeltaListener chatDeltaListener) throws JsonProcessingException {
+        return chatCompletions(chatCompletionRequest, chatDeltaListener, UnaryOperator.identity());
+    }
+
+    /**
+     * 开启对话增量流
+     * 监听的包装顺序由外到内为：重试、停止条件、指标、使用方监听。停止条件命中时取消上游并回调 onClosed，
+     * 取消引起的失败被停止条件吞掉，指标记为正常结束
+     *
+     * @param stopping 包装停止条件
+     */
+    private EventSource chatCompletions(ChatCompletionRequest chatCompletionRequest, ChatDeltaListener chatDeltaListener,
+                                        UnaryOperator<ChatDeltaListener> stopping) throws JsonProcessingException {
+        Request request = buildChatCompletionsRequest(Constants.NULL, Constants.NULL, chatCompletionRequest);
+        MetricsRecorder metricsRecorder = configuration.getMetricsRecorder();
+        if (null != metricsRecorder) {
+            chatDeltaListener = StreamMetrics.wrap(metricsRecorder, MetricsInterceptor.endpoint(request), chatDeltaListener);
+        }
+        chatDeltaListener = stopping.apply(chatDeltaListener);
+        RetryPolicy retryPolicy = configuration.getRetryPolicy();
+        if (null == retryPolicy) return ChatDeltaEventSource.connect(configuration.getCallFactory(), request, chatDeltaListener);
+        Request retryable = RetryInterceptor.bypass(request);
+        return RetryingEventSource.deltas(retryPolicy,
+                listener -> ChatDeltaEventSource.connect(configuration.getCallFactory(), retryable, listener), chatDeltaListener);
+    }
+
+    @Override
+    public MulticastStream chatCompletionsMulticast(ChatCompletionRequest chatCompletionRequest, int capacity) throws JsonProcessingException {
+        Request request = buildChatCompletionsRequest(Constants.NULL, Constants.NULL, chatCompletionRequest);
+        return MulticastStream.start(listener -> newEventSource(request, listener), capacity, configuration.getCallbackExecutor());
+    }
+
+    @Override
+    public Flowable<ChatCompletionResponse> chatCompletionsFlowable(ChatCompletionRequest chatCompletionRequest) {
+        return Flowable.fromPublisher(EventSourcePublisher.fromEvents(
+                listener -> chatCompletions(chatCompletionRequest, listener),
+                data -> JSON.parseObject(data, ChatCompletionResponse.class),
+                configuration.getStreamBufferSize()));
+    }
+
+    @Override
+    public Flowable<String> chatCompletionsContentFlowable(ChatCompletionRequest chatCompletionRequest) {
+        return Flowable.fromPublisher(new EventSourcePublisher<String>(
+                emitter -> chatCompletions(chatCompletionRequest, new ChatDeltaListener() {
+                    @Override
+                    public void onDelta(EventSource eventSource, int index, String role, char[] content, int offset, int length, String finishReason) {
+                        if (index == 0 && length > 0) emitter.onNext(new String(content, offset, length));
+                    }
+
+                    @Override
+                    public void onClosed(EventSource eventSource) {
+                        emitter.onComplete();
+                    }
+
+                    @Override
+                    public void onFailure(EventSource eventSource, Throwable t, Response response) {
+                        emitter.onError(EventSourcePublisher.failure(t, response));
+                    }
+                }),
+                configuration.getStreamBufferSize()));
     }
 
     // 负责创建和发送聊天完成请求，返回EventSource用于处理聊天流
     @Override
     public EventSource chatCompletions(String apiHostByUser, String apiKeyByUser, ChatCompletionRequest chatCompletionRequest, EventSourceListener eventSourceListener) throws JsonProcessingException {
+        Request request = buildChatCompletionsRequest(apiHostByUser, apiKeyByUser, chatCompletionRequest);
+        // 开启请求合并时，相同的进行中请求共享同一个上游事件流
+        RequestCoalescer requestCoalescer = configuration.getRequestCoalescer();
+        if (null != requestCoalescer) {
+            return requestCoalescer.stream(chatCompletionRequest, apiHostByUser + '\u0000' + apiKeyByUser, eventSourceListener,
+                    listener -> newEventSource(request, listener));
+        }
+        // 返回结果信息；EventSource 对象可以取消应答
+        return newEventSource(request, eventSourceListener);
+    }
+
+    /**
+     * 开启事件源；配置了重试策略时，首个事件送达之前的失败由 RetryingEventSource 重新连接；配置了指标记录时记录首 token 时间与生成速度
+     */
+    private EventSource newEventSource(Request request, EventSourceListener eventSourceListener) {
+        return newEventSource(request, eventSourceListener, UnaryOperator.identity());
+    }
+
+    /**
+     * @param stopping 包装停止条件；位于重试之内、指标之外，客户端停止时指标收到的是 onClosed
+     */
+    private EventSource newEventSource(Request request, EventSourceListener eventSourceListener, UnaryOperator<EventSourceListener> stopping) {
+        MetricsRecorder metricsRecorder = configuration.getMetricsRecorder();
+        if (null != metricsRecorder) {
+            eventSourceListener = StreamMetrics.wrap(metricsRecorder, MetricsInterceptor.endpoint(request), eventSourceListener);
+        }
+        eventSourceListener = stopping.apply(eventSourceListener);
+        RetryPolicy retryPolicy = configuration.getRetryPolicy();
+        if (null == retryPolicy) return factory.newEventSource(request, eventSourceListener);
+        Request retryable = RetryInterceptor.bypass(request);
+        return RetryingEventSource.events(retryPolicy, listener -> factory.newEventSource(retryable, listener), eventSourceListener);
+    }
+
+    /**
+     * 同步执行；开启请求合并时，相同的并发请求共享一次调用。Single 是冷的，未订阅前不会发起请求
+     */
+    private <T> T execute(Object request, Class<T> responseType, Single<T> call) {
+        RequestCoalescer requestCoalescer = configuration.getRequestCoalescer();
+        if (null == requestCoalescer) return call.blockingGet();
+        return requestCoalescer.execute(request, responseType, call::blockingGet);
+    }
+
+    /**
+     * 构建流式对话请求
+     */
+    private Request buildChatCompletionsRequest(String apiHostByUser, String apiKeyByUser, ChatCompletionRequest chatCompletionRequest) throws JsonProcessingException {
         // 核心参数校验；不对用户的传参做更改，只返回错误信息。
         // 校验是否设置为流式请求
         if (!chatCompletionRequest.isStream()) {
@@ -225,19 +368,16 @@ public class DefaultOpenAiSession implements OpenAiSession {
 
         // 动态设置 Host、Key，便于用户传递自己的信息
         String apiHost = Constants.NULL.equals(apiHostByUser) ? configuration.getApiHost() : apiHostByUser;
-        String apiKey = Constants.NULL.equals(apiKeyByUser) ? configuration.getApiKey() : apiKeyByUser;
 
         // 构建请求到openai的请求信息
-        Request request = new Request.Builder()
+        Request.Builder builder = new Request.Builder()
                 // url: https://api.openai.com/v1/chat/completions - 通过 IOpenAiApi 配置的 POST 接口，用这样的方式从统一的地方获取配置信息
                 .url(apiHost.concat(IOpenAiApi.v1_chat_completions))
-                .addHeader("apiKey", apiKey)
-                // 封装请求参数信息，如果使用了 Fastjson 也可以替换 ObjectMapper 转换对象
-                .post(RequestBody.create(MediaType.parse(ContentType.JSON.getValue()), new ObjectMapper().writeValueAsString(chatCompletionRequest)))
-                .build();
-
-        // 返回结果信息；EventSource 对象可以取消应答
-        return factory.newEventSource(request, eventSourceListener);
+                // 封装请求参数信息；发送时由共享的 ObjectWriter 直接写入输出流
+                .post(JsonRequestBody.create(chatCompletionRequest));
+        // 只有用户自己传递的 apiKey 才写入请求头；否则由 OpenAiInterceptor 从 apiKey 池借出或使用配置的 apiKey
+        if (!Constants.NULL.equals(apiKeyByUser)) builder.addHeader("apiKey", apiKeyByUser);
+        return builder.build();
     }
 
     // 处理编辑请求，同步调用API并返回编辑响应
@@ -282,44 +422,11 @@ public class DefaultOpenAiSession implements OpenAiSession {
     // 编辑图片，给定图片文件、遮罩文件和图片编辑请求
     @Override
     public ImageResponse editImages(File image, File mask, ImageEditRequest imageEditRequest) {
-        // 1. imageMultipartBody
-        // 创建图片文件的请求体
-        RequestBody imageBody = RequestBody.create(MediaType.parse("multipart/form-data"), String.valueOf(image));
-        // 创建图片的multipart部分
-        /**
-         * multipart/form-data是一种编码类型，它允许你将表单数据分成多个部分（parts），每个部分可以包含不同类型的数据。
-         * 这种编码类型通常用于表单提交，尤其是当表单包含文件上传时。
-         * 每个部分都与表单的一个字段相对应，对于文件，它包含文件内容和文件名等信息。
-         *
-         * 对于图片上传，multipart部分是指将图片数据作为一个部分（part）包含在整个multipart/form-data编码的消息体中。在这个部分中，通常会包含：
-         * 图片的二进制数据。
-         * 与该图片相关的Content-Type头部，通常是image/jpeg、image/png等。
-         * 与该图片相关的Content-Disposition头部，它描述了表单字段的名称和文件名。
-         */
-        MultipartBody.Part imageMultipartBody = MultipartBody.Part.createFormData("image", image.getName(), imageBody);
-        // 2. maskMultipartBody
-        // 初始化遮罩文件的Multipart部分为null
-        MultipartBody.Part maskMultipartBody = null;
-        // 如果提供了遮罩文件，则创建其请求体和multipart部分
-        if (Objects.nonNull(mask)) {
-            RequestBody maskBody = RequestBody.create(MediaType.parse("multipart/form-data"), String.valueOf(mask));
-            maskMultipartBody = MultipartBody.Part.createFormData("mask", mask.getName(), maskBody);
-        }
-        // requestBodyMap
-        // 创建存放其他请求数据的map
-        Map<String, RequestBody> requestBodyMap = new HashMap<>();
-        // 添加文本提示到请求数据map
-        requestBodyMap.put("prompt", RequestBody.create(MediaType.parse("multipart/form-data"), imageEditRequest.getPrompt()));
-        // 添加图片数量到请求数据map
-        requestBodyMap.put("n", RequestBody.create(MediaType.parse("multipart/form-data"), imageEditRequest.getN().toString()));
-        // 添加图片大小到请求数据map
-        requestBodyMap.put("size", RequestBody.create(MediaType.parse("multipart/form-data"), imageEditRequest.getSize()));
-        // 添加响应格式到请求数据map
-        requestBodyMap.put("response_format", RequestBody.create(MediaType.parse("multipart/form-data"), imageEditRequest.getResponseFormat()));
-        // 如果用户信息提供，则添加到请求数据map
-        if (!(Objects.isNull(imageEditRequest.getUser()) || "".equals(imageEditRequest.getUser()))) {
-            requestBodyMap.put("user", RequestBody.create(MediaType.parse("multipart/form-data"), imageEditRequest.getUser()));
-        }
+        // 1. 图片与遮罩的 multipart 部分；遮罩可以为空
+        MultipartBody.Part imageMultipartBody = MultipartParams.image("image", image);
+        MultipartBody.Part maskMultipartBody = MultipartParams.image("mask", mask);
+        // 2. 其他请求参数
+        Map<String, RequestBody> requestBodyMap = MultipartParams.imageEdit(imageEditRequest);
         // 发送图片编辑请求并等待结果
         return this.openAiApi.editImages(imageMultipartBody, maskMultipartBody, requestBodyMap).blockingGet();
     }
@@ -353,7 +460,16 @@ public class DefaultOpenAiSession implements OpenAiSession {
     @Override
     public EmbeddingResponse embeddings(EmbeddingRequest embeddingRequest) {
         // 调用API客户端的embeddings方法，传入嵌入请求，并使用blockingGet方法等待并获取结果
-        return this.openAiApi.embeddings(embeddingRequest).blockingGet();
+        return execute(embeddingRequest, EmbeddingResponse.class, this.openAiApi.embeddings(embeddingRequest));
+    }
+
+    @Override
+    public FloatEmbeddingResponse floatEmbeddings(EmbeddingRequest embeddingRequest) {
+        // 未指定编码格式时使用 base64；复制请求，不修改调用方的对象
+        if (null == embeddingRequest.getEncodingFormat()) {
+            embeddingRequest = embeddingRequest.toBuilder().encodingFormat(EmbeddingRequest.EncodingFormat.BASE64.getCode()).build();
+        }
+        return execute(embeddingRequest, FloatEmbeddingResponse.class, this.openAiApi.floatEmbeddings(embeddingRequest));
     }
 
     @Override
@@ -370,12 +486,10 @@ public class DefaultOpenAiSession implements OpenAiSession {
 
     @Override
     public UploadFileResponse uploadFile(String purpose, File file) {
-        // 创建文件的请求体，表示为multipart/form-data类型
-        RequestBody fileBody = RequestBody.create(MediaType.parse("multipart/form-data"), file);
         // 创建multipart部分，包含文件数据和文件名
-        MultipartBody.Part multipartBody = MultipartBody.Part.createFormData("file", file.getName(), fileBody);
+        MultipartBody.Part multipartBody = MultipartParams.file("file", file);
         // 创建表示用途的请求体，例如“fine-tune”
-        RequestBody purposeBody = RequestBody.create(MediaType.parse("multipart/form-data"), purpose);
+        RequestBody purposeBody = MultipartParams.text(purpose);
         // 调用API客户端的uploadFile方法上传文件，并使用blockingGet方法等待并获取结果
         return this.openAiApi.uploadFile(multipartBody, purposeBody).blockingGet();
     }
@@ -389,61 +503,20 @@ public class DefaultOpenAiSession implements OpenAiSession {
     @Override
     public WhisperResponse speed2TextTranscriptions(File file, TranscriptionsRequest transcriptionsRequest) {
         // 1. 语音文件
-        // 创建语音文件的请求体，表示为multipart/form-data类型
-        RequestBody fileBody = RequestBody.create(MediaType.parse("multipart/form-data"), file);
-        // 创建multipart部分，包含文件数据和文件名
-        MultipartBody.Part multipartBody = MultipartBody.Part.createFormData("file", file.getName(), fileBody);
+        MultipartBody.Part multipartBody = MultipartParams.file("file", file);
         // 2. 参数封装
-        // 创建存放其他请求的map
-        Map<String, RequestBody> requestBodyMap = new HashMap<>();
-        if (StrUtil.isNotBlank(transcriptionsRequest.getLanguage())) {
-            // 检查并添加语言参数到请求数据map
-            requestBodyMap.put(TranscriptionsRequest.Fields.language, RequestBody.create(MediaType.parse("multipart/form-data"), transcriptionsRequest.getLanguage()));
-        }
-        if (StrUtil.isNotBlank(transcriptionsRequest.getModel())) {
-            // 检查并添加模型参数到请求数据map
-            requestBodyMap.put(TranscriptionsRequest.Fields.model, RequestBody.create(MediaType.parse("multipart/form-data"), transcriptionsRequest.getModel()));
-        }
-        if (StrUtil.isNotBlank(transcriptionsRequest.getPrompt())) {
-            // 检查并添加提示参数到请求数据map
-            requestBodyMap.put(TranscriptionsRequest.Fields.prompt, RequestBody.create(MediaType.parse("multipart/form-data"), transcriptionsRequest.getPrompt()));
-        }
-        if (StrUtil.isNotBlank(transcriptionsRequest.getResponseFormat())) {
-            // 检查并添加响应格式参数到请求数据map
-            requestBodyMap.put(TranscriptionsRequest.Fields.responseFormat, RequestBody.create(MediaType.parse("multipart/form-data"), transcriptionsRequest.getResponseFormat()));
-        }
-        // 添加温度参数到请求数据map
-        requestBodyMap.put(TranscriptionsRequest.Fields.temperature, RequestBody.create(MediaType.parse("multipart/form-data"), String.valueOf(transcriptionsRequest.getTemperature())));
+        Map<String, RequestBody> requestBodyMap = MultipartParams.transcriptions(transcriptionsRequest);
         return this.openAiApi.speed2TextTranscriptions(multipartBody, requestBodyMap).blockingGet();
     }
 
     @Override
     public WhisperResponse speed2TextTranslations(File file, TranslationsRequest translationsRequest) {
         // 1. 语音文件
-        // 创建语音文件的请求体，表示为multipart/form-data类型
-        RequestBody fileBody = RequestBody.create(MediaType.parse("multipart/form-data"), file);
-        // 创建multipart部分，包含文件数据和文件名
-        MultipartBody.Part multipartBody = MultipartBody.Part.createFormData("file", file.getName(), fileBody);
+        MultipartBody.Part multipartBody = MultipartParams.file("file", file);
         // 2. 参数封装
-        // 创建存放其他请求数据的map
-        Map<String, RequestBody> requestBodyMap = new HashMap<>();
-        // 检查并添加模型参数到请求数据map
-        if (StrUtil.isNotBlank(translationsRequest.getModel())) {
-            requestBodyMap.put(TranslationsRequest.Fields.model, RequestBody.create(MediaType.parse("multipart/form-data"), translationsRequest.getModel()));
-        }
-        // 检查并添加提示参数到请求数据map
-        if (StrUtil.isNotBlank(translationsRequest.getPrompt())) {
-            requestBodyMap.put(TranslationsRequest.Fields.prompt, RequestBody.create(MediaType.parse("multipart/form-data"), translationsRequest.getPrompt()));
-        }
-        // 检查并添加响应格式参数到请求数据map
-        if (StrUtil.isNotBlank(translationsRequest.getResponseFormat())) {
-            requestBodyMap.put(TranslationsRequest.Fields.responseFormat, RequestBody.create(MediaType.parse("multipart/form-data"), translationsRequest.getResponseFormat()));
-        }
-        // 添加温度参数到请求数据map，分别添加TranslationsRequest和TranscriptionsRequest的温度
-        requestBodyMap.put(TranslationsRequest.Fields.temperature, RequestBody.create(MediaType.parse("multipart/form-data"), String.valueOf(translationsRequest.getTemperature())));
-        requestBodyMap.put(TranscriptionsRequest.Fields.temperature, RequestBody.create(MediaType.parse("multipart/form-data"), String.valueOf(translationsRequest.getTemperature())));
-        // 调用API客户端的speed2TextTranscriptions方法（此处名称可能有误，应该是对应翻译的API）发送请求，并使用blockingGet等待并获取结果
-        return this.openAiApi.speed2TextTranscriptions(multipartBody, requestBodyMap).blockingGet();
+        Map<String, RequestBody> requestBodyMap = MultipartParams.translations(translationsRequest);
+        // 调用翻译接口 v1/audio/translations，并使用blockingGet等待并获取结果；与异步会话一致
+        return this.openAiApi.speed2TextTranslations(multipartBody, requestBodyMap).blockingGet();
     }
 
     @Override
@@ -1,54 +1,158 @@
 package com.wly.chatgptsdk.session.defaults;
 
 import com.wly.chatgptsdk.IOpenAiApi;
+import com.wly.chatgptsdk.circuit.CircuitBreakerRegistry;
+import com.wly.chatgptsdk.codec.JsonConverterFactory;
+import com.wly.chatgptsdk.common.VirtualThreads;
+import com.wly.chatgptsdk.interceptor.CircuitBreakerInterceptor;
+import com.wly.chatgptsdk.interceptor.MetricsInterceptor;
 import com.wly.chatgptsdk.interceptor.OpenAiInterceptor;
+import com.wly.chatgptsdk.interceptor.RateLimitInterceptor;
+import com.wly.chatgptsdk.interceptor.RetryInterceptor;
+import com.wly.chatgptsdk.metrics.MetricsRecorder;
+import com.wly.chatgptsdk.ratelimit.RateLimitedCallFactory;
+import com.wly.chatgptsdk.ratelimit.RateLimiter;
+import com.wly.chatgptsdk.retry.RetryPolicy;
 import com.wly.chatgptsdk.session.Configuration;
+import com.wly.chatgptsdk.session.OpenAiAsyncSession;
 import com.wly.chatgptsdk.session.OpenAiSession;
 import com.wly.chatgptsdk.session.OpenAiSessionFactory;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import okhttp3.logging.HttpLoggingInterceptor;
 import retrofit2.Retrofit;
 import retrofit2.adapter.rxjava2.RxJava2CallAdapterFactory;
-import retrofit2.converter.jackson.JacksonConverterFactory;
 
+import java.util.Collections;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * 会话工厂
+ * Http 客户端、连接池、调度器以及 Retrofit 服务只在首次开启会话时构建一次，之后所有会话共享，
+ * 这样可以复用 TCP 连接与 TLS 会话。每个会话只持有一份构建完成后不再修改的配置快照，因此开启会话的成本很低，且线程安全。
+ */
+@Slf4j
 public class DefaultOpenAiSessionFactory implements OpenAiSessionFactory {
+
     private final Configuration configuration;
 
+    /** 共享的只读配置快照；包含已构建好的 OkHttpClient 与 IOpenAiApi */
+    private volatile Configuration sharedConfiguration;
+
     public DefaultOpenAiSessionFactory(Configuration configuration) {
         this.configuration = configuration;
     }
 
     @Override
     public OpenAiSession openSession() {
+        return new DefaultOpenAiSession(sharedConfiguration());
+    }
+
+    @Override
+    public OpenAiAsyncSession openAsyncSession() {
+        return new DefaultOpenAiAsyncSession(sharedConfiguration());
+    }
+
+    /**
+     * 双重检查构建共享配置，保证并发开启会话时传输层只构建一次
+     */
+    private Configuration sharedConfiguration() {
+        Configuration shared = this.sharedConfiguration;
+        if (null == shared) {
+            synchronized (this) {
+                shared = this.sharedConfiguration;
+                if (null == shared) {
+                    shared = buildSharedConfiguration();
+                    this.sharedConfiguration = shared;
+                }
+            }
+        }
+        return shared;
+    }
+
+    private Configuration buildSharedConfiguration() {
+        Configuration snapshot = configuration.copy();
+
         // 1. 日志配置
         HttpLoggingInterceptor httpLoggingInterceptor = new HttpLoggingInterceptor();
         // 日志设置成HttpLoggingInterceptor.Level.BODY会导致流式堵塞，原因未知
         //httpLoggingInterceptor.setLevel(HttpLoggingInterceptor.Level.BODY);
         httpLoggingInterceptor.setLevel(HttpLoggingInterceptor.Level.NONE);
 
-        // 2. 开启 Http 客户端
-        OkHttpClient okHttpClient = new OkHttpClient
+        // 2. 连接池与调度器
+        ConnectionPool connectionPool = new ConnectionPool(snapshot.getMaxIdleConnections(), snapshot.getKeepAliveDuration(), TimeUnit.SECONDS);
+        boolean virtualThreads = snapshot.isVirtualThreads() && VirtualThreads.isSupported();
+        if (snapshot.isVirtualThreads() && !virtualThreads) {
+            log.warn("virtual threads require a Java 21 runtime, falling back to platform threads");
+        }
+        Dispatcher dispatcher = virtualThreads ? new Dispatcher(VirtualThreads.newExecutor("OkHttp Dispatcher")) : new Dispatcher();
+        dispatcher.setMaxRequests(snapshot.getMaxRequests());
+        dispatcher.setMaxRequestsPerHost(snapshot.getMaxRequestsPerHost());
+        // 未指定回调执行器时，异步会话的回调也放到虚拟线程上，回调中可以直接阻塞，不会占住调度器线程
+        if (virtualThreads && null == snapshot.getCallbackExecutor()) {
+            snapshot.setCallbackExecutor(VirtualThreads.newExecutor("OpenAi Callback"));
+        }
+
+        // 3. 开启 Http 客户端；重试拦截器在最外层，每次重试都重新经过熔断、apiKey 选择与限流
+        OkHttpClient.Builder okHttpClientBuilder = new OkHttpClient
                 .Builder()
+                .connectionPool(connectionPool)
+                .dispatcher(dispatcher);
+        MetricsRecorder metricsRecorder = snapshot.getMetricsRecorder();
+        if (null != metricsRecorder) {
+            okHttpClientBuilder.addInterceptor(new MetricsInterceptor(metricsRecorder));
+        }
+        RetryPolicy retryPolicy = snapshot.getRetryPolicy();
+        if (null != retryPolicy) {
+            okHttpClientBuilder.addInterceptor(new RetryInterceptor(retryPolicy));
+        }
+        CircuitBreakerRegistry circuitBreakers = snapshot.getCircuitBreakers();
+        if (null != circuitBreakers) {
+            okHttpClientBuilder.addInterceptor(new CircuitBreakerInterceptor(circuitBreakers));
+        }
+        okHttpClientBuilder
                 .addInterceptor(httpLoggingInterceptor)
-                .addInterceptor(new OpenAiInterceptor(configuration.getApiKey()))
+                .addInterceptor(new OpenAiInterceptor(snapshot.getApiKey(), snapshot.getApiKeyPool()))
                 .connectTimeout(450, TimeUnit.SECONDS)
                 .writeTimeout(450, TimeUnit.SECONDS)
-                .readTimeout(450, TimeUnit.SECONDS)
-                .build();
-        configuration.setOkHttpClient(okHttpClient);
+                .readTimeout(450, TimeUnit.SECONDS);
+        if (virtualThreads) {
+            okHttpClientBuilder.protocols(Collections.singletonList(Protocol.HTTP_1_1));
+        }
+        RateLimiter rateLimiter = snapshot.getRateLimiter();
+        if (null != rateLimiter) {
+            okHttpClientBuilder.addInterceptor(new RateLimitInterceptor(rateLimiter, snapshot.getApiKey()));
+        }
+        OkHttpClient okHttpClient = okHttpClientBuilder.build();
+        snapshot.setOkHttpClient(okHttpClient);
 
-        // 3. 创建 API 服务
+        // 开启限流时，请求先在 Call 工厂中排队准入，再交给 OkHttp 调度器；异步请求的重试同样在 Call 工厂中重新排队
+        Call.Factory callFactory = null == rateLimiter ? okHttpClient : new RateLimitedCallFactory(okHttpClient, rateLimiter, snapshot.getApiKey(), snapshot.getApiKeyPool(), retryPolicy);
+        snapshot.setCallFactory(callFactory);
+
+        // 4. 创建 API 服务；同步服务在调用线程上执行请求，异步服务通过调度器 enqueue 执行
         IOpenAiApi openAiApi = new Retrofit.Builder()
-                .baseUrl(configuration.getApiHost())
-                .client(okHttpClient)
+                .baseUrl(snapshot.getApiHost())
+                .callFactory(callFactory)
                 .addCallAdapterFactory(RxJava2CallAdapterFactory.create())
-                .addConverterFactory(JacksonConverterFactory.create())
+                .addConverterFactory(JsonConverterFactory.create())
                 .build().create(IOpenAiApi.class);
-        configuration.setOpenAiApi(openAiApi);
+        snapshot.setOpenAiApi(openAiApi);
 
-        return new DefaultOpenAiSession(configuration);
+        IOpenAiApi asyncOpenAiApi = new Retrofit.Builder()
+                .baseUrl(snapshot.getApiHost())
+                .callFactory(callFactory)
+                .addCallAdapterFactory(RxJava2CallAdapterFactory.createAsync())
+                .addConverterFactory(JsonConverterFactory.create())
+                .build().create(IOpenAiApi.class);
+        snapshot.setAsyncOpenAiApi(asyncOpenAiApi);
 
+        // 会话只拿到只读快照
+        return snapshot.snapshot();
     }
+
 }
@@ -0,0 +1,111 @@
+package com.wly.chatgptsdk.session.defaults;
+
+import cn.hutool.core.util.StrUtil;
+import com.wly.chatgptsdk.domain.images.ImageEditRequest;
+import com.wly.chatgptsdk.domain.whisper.TranscriptionsRequest;
+import com.wly.chatgptsdk.domain.whisper.TranslationsRequest;
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
+import okhttp3.RequestBody;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * multipart/form-data 请求参数封装；同步会话与异步会话共用
+ *
+ * multipart/form-data是一种编码类型，它允许你将表单数据分成多个部分（parts），每个部分可以包含不同类型的数据。
+ * 这种编码类型通常用于表单提交，尤其是当表单包含文件上传时。
+ * 每个部分都与表单的一个字段相对应，对于文件，它包含文件内容和文件名等信息。
+ */
+final class MultipartParams {
+
+    private static final MediaType MULTIPART_FORM_DATA = MediaType.parse("multipart/form-data");
+
+    private static final MediaType IMAGE_PNG = MediaType.parse("image/png");
+
+    private MultipartParams() {
+    }
+
+    /**
+     * 文本参数
+     */
+    static RequestBody text(String value) {
+        return RequestBody.create(MULTIPART_FORM_DATA, value);
+    }
+
+    /**
+     * 文件参数；包含文件数据和文件名
+     */
+    static MultipartBody.Part file(String name, File file) {
+        RequestBody fileBody = RequestBody.create(MULTIPART_FORM_DATA, file);
+        return MultipartBody.Part.createFormData(name, file.getName(), fileBody);
+    }
+
+    /**
+     * 图片参数；图片为空时返回 null
+     */
+    static MultipartBody.Part image(String name, File image) {
+        if (Objects.isNull(image)) return null;
+        RequestBody imageBody = RequestBody.create(IMAGE_PNG, image);
+        return MultipartBody.Part.createFormData(name, image.getName(), imageBody);
+    }
+
+    /**
+     * 修改图片的请求参数
+     */
+    static Map<String, RequestBody> imageEdit(ImageEditRequest imageEditRequest) {
+        Map<String, RequestBody> requestBodyMap = new HashMap<>();
+        requestBodyMap.put("prompt", text(imageEditRequest.getPrompt()));
+        requestBodyMap.put("n", text(imageEditRequest.getN().toString()));
+        requestBodyMap.put("size", text(imageEditRequest.getSize()));
+        requestBodyMap.put("response_format", text(imageEditRequest.getResponseFormat()));
+        if (!(Objects.isNull(imageEditRequest.getUser()) || "".equals(imageEditRequest.getUser()))) {
+            requestBodyMap.put("user", text(imageEditRequest.getUser()));
+        }
+        return requestBodyMap;
+    }
+
+    /**
+     * 语音转文字的请求参数
+     */
+    static Map<String, RequestBody> transcriptions(TranscriptionsRequest transcriptionsRequest) {
+        Map<String, RequestBody> requestBodyMap = new HashMap<>();
+        if (StrUtil.isNotBlank(transcriptionsRequest.getLanguage())) {
+            requestBodyMap.put(TranscriptionsRequest.Fields.language, text(transcriptionsRequest.getLanguage()));
+        }
+        if (StrUtil.isNotBlank(transcriptionsRequest.getModel())) {
+            requestBodyMap.put(TranscriptionsRequest.Fields.model, text(transcriptionsRequest.getModel()));
+        }
+        if (StrUtil.isNotBlank(transcriptionsRequest.getPrompt())) {
+            requestBodyMap.put(TranscriptionsRequest.Fields.prompt, text(transcriptionsRequest.getPrompt()));
+        }
+        if (StrUtil.isNotBlank(transcriptionsRequest.getResponseFormat())) {
+            requestBodyMap.put(TranscriptionsRequest.Fields.responseFormat, text(transcriptionsRequest.getResponseFormat()));
+        }
+        requestBodyMap.put(TranscriptionsRequest.Fields.temperature, text(String.valueOf(transcriptionsRequest.getTemperature())));
+        return requestBodyMap;
+    }
+
+    /**
+     * 语音翻译的请求参数
+     */
+    static Map<String, RequestBody> translations(TranslationsRequest translationsRequest) {
+        Map<String, RequestBody> requestBodyMap = new HashMap<>();
+        if (StrUtil.isNotBlank(translationsRequest.getModel())) {
+            requestBodyMap.put(TranslationsRequest.Fields.model, text(translationsRequest.getModel()));
+        }
+        if (StrUtil.isNotBlank(translationsRequest.getPrompt())) {
+            requestBodyMap.put(TranslationsRequest.Fields.prompt, text(translationsRequest.getPrompt()));
+        }
+        if (StrUtil.isNotBlank(translationsRequest.getResponseFormat())) {
+            requestBodyMap.put(TranslationsRequest.Fields.responseFormat, text(translationsRequest.getResponseFormat()));
+        }
+        requestBodyMap.put(TranslationsRequest.Fields.temperature, text(String.valueOf(translationsRequest.getTemperature())));
+        requestBodyMap.put(TranscriptionsRequest.Fields.temperature, text(String.valueOf(translationsRequest.getTemperature())));
+        return requestBodyMap;
+    }
+
+}
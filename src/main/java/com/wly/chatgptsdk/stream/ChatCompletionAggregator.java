@@ -0,0 +1,157 @@
+package com.wly.chatgptsdk.stream;
+
+import com.wly.chatgptsdk.domain.chat.ChatChoice;
+import com.wly.chatgptsdk.domain.chat.ChatCompletionRequest;
+import com.wly.chatgptsdk.domain.chat.ChatCompletionResponse;
+import com.wly.chatgptsdk.domain.chat.Message;
+import com.wly.chatgptsdk.domain.other.Usage;
+import com.wly.chatgptsdk.token.TokenCounter;
+import okhttp3.Response;
+import okhttp3.sse.EventSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 对话流式应答聚合
+ * 按 choice 序号把增量拼接成完整的 ChatCompletionResponse，每个 choice 记录角色与结束原因，n > 1 时各自独立拼接。
+ * 同一个流的回调由读取线程依次发出，因此内部使用非同步的 StringBuilder；结果 future 只完成一次，收到 [DONE] 或上游关闭时完成，
+ * 失败时以异常完成。取消 future 时同步取消事件源。
+ * 传入请求时按 TokenCounter 计算 usage：流式应答不携带 usage，客户端提前停止时服务端也不会告知已生成的 token 数。
+ */
+public class ChatCompletionAggregator extends ChatDeltaListener {
+
+    private final CompletableFuture<ChatCompletionResponse> future = new CompletableFuture<>();
+
+    /** 按 choice 序号存放；序号通常从 0 开始连续 */
+    private final List<ChoiceBuilder> choices = new ArrayList<>(1);
+
+    private final ChatCompletionRequest request;
+
+    private String id;
+    private String model;
+    private long created;
+
+    private volatile EventSource eventSource;
+
+    public ChatCompletionAggregator() {
+        this(null);
+    }
+
+    /**
+     * @param request 请求信息；用于计算 usage，可为空
+     */
+    public ChatCompletionAggregator(ChatCompletionRequest request) {
+        this.request = request;
+        future.whenComplete((response, throwable) -> {
+            EventSource source = eventSource;
+            if (future.isCancelled() && null != source) source.cancel();
+        });
+    }
+
+    /**
+     * 聚合结果
+     */
+    public CompletableFuture<ChatCompletionResponse> future() {
+        return future;
+    }
+
+    /**
+     * 绑定事件源；结果 future 被取消时取消该事件源
+     */
+    public ChatCompletionAggregator bind(EventSource eventSource) {
+        this.eventSource = eventSource;
+        if (future.isCancelled()) eventSource.cancel();
+        return this;
+    }
+
+    @Override
+    public void onMetadata(EventSource eventSource, String id, String model, long created) {
+        this.id = id;
+        this.model = model;
+        this.created = created;
+    }
+
+    @Override
+    public void onDelta(EventSource eventSource, int index, String role, char[] content, int offset, int length, String finishReason) {
+        if (index < 0 || future.isDone()) return;
+        ChoiceBuilder choice = choice(index);
+        if (null != role) choice.role = role;
+        if (length > 0) choice.content.append(content, offset, length);
+        if (null != finishReason) choice.finishReason = finishReason;
+    }
+
+    @Override
+    public void onClosed(EventSource eventSource) {
+        if (future.isDone()) return;
+        future.complete(build());
+    }
+
+    @Override
+    public void onFailure(EventSource eventSource, Throwable t, Response response) {
+        future.completeExceptionally(EventSourcePublisher.failure(t, response));
+    }
+
+    private ChoiceBuilder choice(int index) {
+        while (choices.size() <= index) {
+            choices.add(null);
+        }
+        ChoiceBuilder choice = choices.get(index);
+        if (null == choice) {
+            choice = new ChoiceBuilder();
+            choices.set(index, choice);
+        }
+        return choice;
+    }
+
+    private ChatCompletionResponse build() {
+        List<ChatChoice> chatChoices = new ArrayList<>(choices.size());
+        for (int i = 0; i < choices.size(); i++) {
+            ChoiceBuilder builder = choices.get(i);
+            if (null == builder) continue;
+            Message message = new Message();
+            message.setRole(builder.role);
+            message.setContent(builder.content.toString());
+            ChatChoice chatChoice = new ChatChoice();
+            chatChoice.setIndex(i);
+            chatChoice.setMessage(message);
+            chatChoice.setFinishReason(builder.finishReason);
+            chatChoices.add(chatChoice);
+        }
+        ChatCompletionResponse response = new ChatCompletionResponse();
+        response.setId(id);
+        response.setObject("chat.completion");
+        response.setModel(model);
+        response.setCreated(created);
+        response.setChoices(chatChoices);
+        if (null != request) response.setUsage(usage(chatChoices));
+        return response;
+    }
+
+    /**
+     * prompt 按请求计数，completion 按各 choice 已收到的内容计数
+     */
+    private Usage usage(List<ChatChoice> chatChoices) {
+        TokenCounter tokenCounter = TokenCounter.getInstance();
+        String encodingModel = null == model ? request.getModel() : model;
+        long completionTokens = 0;
+        for (ChatChoice chatChoice : chatChoices) {
+            completionTokens += tokenCounter.count(encodingModel, chatChoice.getMessage().getContent());
+        }
+        Usage usage = new Usage();
+        usage.setPromptTokens(tokenCounter.count(request));
+        usage.setCompletionTokens(completionTokens);
+        usage.setTotalTokens(usage.getPromptTokens() + completionTokens);
+        return usage;
+    }
+
+    private static final class ChoiceBuilder {
+
+        private final StringBuilder content = new StringBuilder();
+        private String role;
+        private String finishReason;
+
+    }
+
+}
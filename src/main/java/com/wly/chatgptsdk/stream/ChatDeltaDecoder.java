@@ -0,0 +1,140 @@
+package com.wly.chatgptsdk.stream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import okhttp3.sse.EventSource;
+
+import java.io.IOException;
+
+/**
+ * 对话流式分片解码器
+ * 基于 Jackson 的流式 JsonParser 直接解析分片字节，只提取 choices[i] 中的 index、delta.role、delta.content 与 finish_reason，
+ * 以及第一个分片中的 id、model 与 created；不构建 ChatCompletionResponse、ChatChoice、Message 等中间对象；content 写入可复用的字符缓冲区，每个流只分配一次。
+ * 非线程安全，每个流使用一个实例。
+ */
+public class ChatDeltaDecoder {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final byte[] DONE = EventSourcePublisher.DONE.getBytes();
+
+    /** 常见的角色与结束原因；命中时直接复用常量，避免为每个流创建字符串 */
+    private static final String[] KNOWN_VALUES = {"assistant", "user", "system", "stop", "length", "function_call", "tool_calls", "content_filter"};
+
+    private char[] content = new char[256];
+
+    /** 是否已经回调过 onMetadata；id、model、created 在同一个流的各分片中相同，只解析一次 */
+    private boolean metadataDelivered;
+
+    /**
+     * 是否为 [DONE] 结束标识
+     */
+    public static boolean isDone(byte[] data, int offset, int length) {
+        if (length != DONE.length) return false;
+        for (int i = 0; i < length; i++) {
+            if (data[offset + i] != DONE[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 解码一个分片，每个 choice 回调一次 listener
+     */
+    public void decode(byte[] data, int offset, int length, EventSource eventSource, ChatDeltaListener listener) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(data, offset, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("illegal chat completion chunk, object expected");
+            }
+            String id = null;
+            String model = null;
+            long created = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if ("choices".equals(field) && token == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        decodeChoice(parser, eventSource, listener);
+                    }
+                } else if (!metadataDelivered && "id".equals(field) && token == JsonToken.VALUE_STRING) {
+                    id = parser.getText();
+                } else if (!metadataDelivered && "model".equals(field) && token == JsonToken.VALUE_STRING) {
+                    model = parser.getText();
+                } else if (!metadataDelivered && "created".equals(field) && token == JsonToken.VALUE_NUMBER_INT) {
+                    created = parser.getLongValue();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (!metadataDelivered) {
+                metadataDelivered = true;
+                listener.onMetadata(eventSource, id, model, created);
+            }
+        }
+    }
+
+    private void decodeChoice(JsonParser parser, EventSource eventSource, ChatDeltaListener listener) throws IOException {
+        int index = 0;
+        String role = null;
+        int contentLength = 0;
+        String finishReason = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            switch (field) {
+                case "index":
+                    index = parser.getIntValue();
+                    break;
+                case "finish_reason":
+                    finishReason = token == JsonToken.VALUE_NULL ? null : knownOrText(parser);
+                    break;
+                case "delta":
+                    if (token != JsonToken.START_OBJECT) {
+                        parser.skipChildren();
+                        break;
+                    }
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String deltaField = parser.getCurrentName();
+                        JsonToken deltaToken = parser.nextToken();
+                        if ("content".equals(deltaField) && deltaToken == JsonToken.VALUE_STRING) {
+                            contentLength = copyContent(parser);
+                        } else if ("role".equals(deltaField) && deltaToken == JsonToken.VALUE_STRING) {
+                            role = knownOrText(parser);
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        listener.onDelta(eventSource, index, role, content, 0, contentLength, finishReason);
+    }
+
+    /**
+     * 把字符串内容复制到可复用缓冲区；解析器的字符数组在读取下一个 token 后失效
+     */
+    private int copyContent(JsonParser parser) throws IOException {
+        int length = parser.getTextLength();
+        if (length > content.length) {
+            content = new char[Math.max(length, content.length << 1)];
+        }
+        System.arraycopy(parser.getTextCharacters(), parser.getTextOffset(), content, 0, length);
+        return length;
+    }
+
+    private static String knownOrText(JsonParser parser) throws IOException {
+        char[] chars = parser.getTextCharacters();
+        int offset = parser.getTextOffset();
+        int length = parser.getTextLength();
+        for (String known : KNOWN_VALUES) {
+            if (known.length() != length) continue;
+            int i = 0;
+            while (i < length && known.charAt(i) == chars[offset + i]) i++;
+            if (i == length) return known;
+        }
+        return parser.getText();
+    }
+
+}
@@ -0,0 +1,60 @@
+package com.wly.chatgptsdk.stream;
+
+import okhttp3.Response;
+import okhttp3.sse.EventSource;
+import okhttp3.sse.EventSourceListener;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 把 EventSourceListener 的事件解码为对话增量
+ * 用于只能提供 EventSourceListener 的场景，例如 RequestCoalescer 合并的共享事件流，此时回调在共享的锁内执行，下游监听不应阻塞；
+ * 直接读取字节的 ChatDeltaEventSource 开销更低。
+ * 解码失败或下游抛出异常时取消事件源并回调 onFailure，之后不再转发任何回调。
+ */
+public class ChatDeltaEventListener extends EventSourceListener {
+
+    private final ChatDeltaListener listener;
+    private final ChatDeltaDecoder decoder = new ChatDeltaDecoder();
+
+    private volatile boolean terminated;
+
+    public ChatDeltaEventListener(ChatDeltaListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void onOpen(@NotNull EventSource eventSource, @NotNull Response response) {
+        if (terminated) return;
+        listener.onOpen(eventSource, response);
+    }
+
+    @Override
+    public void onEvent(@NotNull EventSource eventSource, String id, String type, @NotNull String data) {
+        if (terminated || EventSourcePublisher.DONE.equals(data)) return;
+        byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+        try {
+            decoder.decode(bytes, 0, bytes.length, eventSource, listener);
+        } catch (Throwable e) {
+            terminated = true;
+            eventSource.cancel();
+            listener.onFailure(eventSource, e, null);
+        }
+    }
+
+    @Override
+    public void onClosed(@NotNull EventSource eventSource) {
+        if (terminated) return;
+        terminated = true;
+        listener.onClosed(eventSource);
+    }
+
+    @Override
+    public void onFailure(@NotNull EventSource eventSource, Throwable t, Response response) {
+        if (terminated) return;
+        terminated = true;
+        listener.onFailure(eventSource, t, response);
+    }
+
+}
@@ -0,0 +1,167 @@
+package com.wly.chatgptsdk.stream;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.sse.EventSource;
+import okio.BufferedSource;
+import okio.ByteString;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+/**
+ * 对话流式应答的事件源
+ * 直接在应答字节流上按行读取 SSE，data 字段的字节写入可复用的缓冲区后交给 ChatDeltaDecoder 解码，
+ * 整个读取循环不为每一行创建 String；[DONE] 在字节层面识别，不会当作 JSON 解析。
+ */
+public class ChatDeltaEventSource implements EventSource, Callback {
+
+    private static final ByteString DATA = ByteString.encodeUtf8("data:");
+
+    private final Request request;
+    private final ChatDeltaListener listener;
+    private final ChatDeltaDecoder decoder = new ChatDeltaDecoder();
+
+    private volatile Call call;
+
+    /** 当前事件的 data 字节；多行 data 以 \n 拼接 */
+    private byte[] data = new byte[1024];
+    private int dataLength;
+
+    private ChatDeltaEventSource(Request request, ChatDeltaListener listener) {
+        this.request = request;
+        this.listener = listener;
+    }
+
+    /**
+     * 开启事件源
+     *
+     * @param client   Http 客户端；可以是限流等包装后的 Call 工厂
+     * @param request  请求信息
+     * @param listener 增量监听
+     * @return 事件源；可用于取消应答
+     */
+    public static ChatDeltaEventSource connect(Call.Factory client, Request request, ChatDeltaListener listener) {
+        Request sseRequest = request.newBuilder().header("Accept", "text/event-stream").build();
+        ChatDeltaEventSource eventSource = new ChatDeltaEventSource(sseRequest, listener);
+        Call call = client.newCall(sseRequest);
+        eventSource.call = call;
+        call.enqueue(eventSource);
+        return eventSource;
+    }
+
+    @Override
+    public void onResponse(@NotNull Call call, @NotNull Response response) {
+        try (ResponseBody body = response.body()) {
+            if (!response.isSuccessful() || null == body) {
+                listener.onFailure(this, null, response);
+                return;
+            }
+            listener.onOpen(this, response);
+            read(body.source());
+            listener.onClosed(this);
+        } catch (Throwable e) {
+            listener.onFailure(this, e, response);
+        }
+    }
+
+    @Override
+    public void onFailure(@NotNull Call call, @NotNull IOException e) {
+        listener.onFailure(this, e, null);
+    }
+
+    /**
+     * 读取事件流；收到 [DONE] 或者上游关闭时返回
+     */
+    private void read(BufferedSource source) throws IOException {
+        while (true) {
+            long newline = source.indexOf((byte) '\n');
+            if (newline == -1) {
+                // 上游关闭；最后一行没有换行符时按一行处理，未以空行结束的事件按 SSE 规范丢弃
+                long remaining = source.getBuffer().size();
+                if (remaining > 0) readLine(source, remaining, false);
+                return;
+            }
+            if (readLine(source, newline, true)) return;
+        }
+    }
+
+    /**
+     * 处理一行；空行触发事件分发。返回 true 表示收到 [DONE]
+     */
+    private boolean readLine(BufferedSource source, long length, boolean newline) throws IOException {
+        long contentLength = length;
+        if (contentLength > 0 && source.getBuffer().getByte(contentLength - 1) == '\r') {
+            contentLength--;
+        }
+        long trailing = length - contentLength + (newline ? 1 : 0);
+        if (contentLength == 0) {
+            source.skip(trailing);
+            return dispatch();
+        }
+        if (contentLength >= DATA.size() && source.rangeEquals(0, DATA)) {
+            source.skip(DATA.size());
+            contentLength -= DATA.size();
+            if (contentLength > 0 && source.getBuffer().getByte(0) == ' ') {
+                source.skip(1);
+                contentLength--;
+            }
+            appendData(source, (int) contentLength);
+            source.skip(trailing);
+            return false;
+        }
+        // event、id、retry 与注释行不影响对话分片，直接跳过
+        source.skip(contentLength + trailing);
+        return false;
+    }
+
+    private void appendData(BufferedSource source, int length) throws IOException {
+        int required = dataLength + (dataLength > 0 ? 1 : 0) + length;
+        if (required > data.length) {
+            byte[] grown = new byte[Math.max(required, data.length << 1)];
+            System.arraycopy(data, 0, grown, 0, dataLength);
+            data = grown;
+        }
+        if (dataLength > 0) {
+            data[dataLength++] = '\n';
+        }
+        int offset = dataLength;
+        int end = offset + length;
+        while (offset < end) {
+            int read = source.read(data, offset, end - offset);
+            if (read == -1) throw new IOException("unexpected end of stream");
+            offset += read;
+        }
+        dataLength = end;
+    }
+
+    /**
+     * 分发当前事件；返回 true 表示收到 [DONE]
+     */
+    private boolean dispatch() throws IOException {
+        if (dataLength == 0) return false;
+        int length = dataLength;
+        dataLength = 0;
+        if (ChatDeltaDecoder.isDone(data, 0, length)) {
+            return true;
+        }
+        decoder.decode(data, 0, length, this, listener);
+        return false;
+    }
+
+    @NotNull
+    @Override
+    public Request request() {
+        return request;
+    }
+
+    @Override
+    public void cancel() {
+        Call call = this.call;
+        if (null != call) call.cancel();
+    }
+
+}
@@ -0,0 +1,58 @@
+package com.wly.chatgptsdk.stream;
+
+import okhttp3.Response;
+import okhttp3.sse.EventSource;
+
+import java.io.IOException;
+
+/**
+ * 对话流式应答的增量监听；与 EventSourceListener 对应，但回调的是已经解码好的增量字段，
+ * 不再需要使用方把每个分片解析成 ChatCompletionResponse。
+ */
+public abstract class ChatDeltaListener {
+
+    /**
+     * 连接建立
+     */
+    public void onOpen(EventSource eventSource, Response response) {
+    }
+
+    /**
+     * 应答元数据；每个流只在第一个分片解码后回调一次，可能晚于该分片的 onDelta
+     *
+     * @param eventSource 事件源
+     * @param id          应答 ID；分片中没有时为 null
+     * @param model       模型；分片中没有时为 null
+     * @param created     创建时间，单位秒；分片中没有时为 0
+     */
+    public void onMetadata(EventSource eventSource, String id, String model, long created) {
+    }
+
+    /**
+     * 增量数据；每个分片中的每个 choice 回调一次
+     * content 只在回调期间有效，回调返回后数组会被复用，需要保留时请自行复制
+     *
+     * @param eventSource  事件源
+     * @param index        choice 序号
+     * @param role         角色；通常只在第一个分片中出现，其余为 null
+     * @param content      内容缓冲区；没有内容时长度为 0
+     * @param offset       内容起始位置
+     * @param length       内容长度
+     * @param finishReason 结束原因；只在最后一个分片中出现，其余为 null
+     */
+    public void onDelta(EventSource eventSource, int index, String role, char[] content, int offset, int length, String finishReason) throws IOException {
+    }
+
+    /**
+     * 收到 [DONE] 或者上游关闭连接
+     */
+    public void onClosed(EventSource eventSource) {
+    }
+
+    /**
+     * 请求失败、应答状态码异常或者读取中断
+     */
+    public void onFailure(EventSource eventSource, Throwable t, Response response) {
+    }
+
+}
@@ -0,0 +1,313 @@
+package com.wly.chatgptsdk.stream;
+
+import okhttp3.Response;
+import okhttp3.sse.EventSource;
+import okhttp3.sse.EventSourceListener;
+import org.jetbrains.annotations.NotNull;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 把 SSE 事件流适配为支持背压的 Publisher
+ * 每次订阅都会开启一个新的 EventSource（冷流）。解码后的事件先进入一个有界队列，下游按 request(n) 拉取；
+ * 队列满时阻塞 OkHttp 的读取线程，不再从 socket 读取数据，背压由此传递到 TCP 层，慢消费者不会让对象在堆上堆积。
+ * 下游取消订阅时同步取消底层 EventSource。
+ *
+ * @param <T> 事件解码后的类型
+ */
+public class EventSourcePublisher<T> implements Publisher<T> {
+
+    /** 流结束标识 */
+    public static final String DONE = "[DONE]";
+
+    /** 队列满时，读取线程每次等待的时长；期间会检查是否已被取消 */
+    private static final long OFFER_WAIT_MILLIS = 100;
+
+    private final EventSourceStarter<T> starter;
+    private final int bufferSize;
+
+    public EventSourcePublisher(EventSourceStarter<T> starter, int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be positive: " + bufferSize);
+        }
+        this.starter = starter;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * 基于 EventSourceListener 的事件流；每个 data 经 decoder 解码后发射
+     */
+    public static <T> EventSourcePublisher<T> fromEvents(ListenerStarter starter, EventDecoder<T> decoder, int bufferSize) {
+        return new EventSourcePublisher<>(emitter -> starter.start(new DecodingListener<>(emitter, decoder)), bufferSize);
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        StreamSubscription<T> subscription = new StreamSubscription<>(subscriber, bufferSize);
+        subscriber.onSubscribe(subscription);
+        if (subscription.cancelled || subscription.failed) return;
+        try {
+            subscription.attach(starter.start(subscription));
+        } catch (Throwable e) {
+            subscription.onError(e);
+        }
+    }
+
+    /**
+     * 开启 EventSource；由会话实现，负责构建请求，并把解码后的事件交给 emitter
+     */
+    public interface EventSourceStarter<T> {
+        EventSource start(Emitter<T> emitter) throws Exception;
+    }
+
+    /**
+     * 使用 EventSourceListener 开启 EventSource
+     */
+    public interface ListenerStarter {
+        EventSource start(EventSourceListener listener) throws Exception;
+    }
+
+    /**
+     * 解码 SSE 的 data 数据；返回 null 表示跳过该事件
+     */
+    public interface EventDecoder<T> {
+        T decode(String data) throws Exception;
+    }
+
+    /**
+     * 事件发射器；onNext 在缓冲区满时阻塞调用线程
+     */
+    public interface Emitter<T> {
+
+        void onNext(T value);
+
+        void onComplete();
+
+        void onError(Throwable t);
+
+        boolean isCancelled();
+
+    }
+
+    /**
+     * EventSourceListener 适配；处理 [DONE] 与失败
+     */
+    static final class DecodingListener<T> extends EventSourceListener {
+
+        private final Emitter<T> emitter;
+        private final EventDecoder<T> decoder;
+
+        DecodingListener(Emitter<T> emitter, EventDecoder<T> decoder) {
+            this.emitter = emitter;
+            this.decoder = decoder;
+        }
+
+        @Override
+        public void onEvent(@NotNull EventSource eventSource, String id, String type, @NotNull String data) {
+            if (emitter.isCancelled()) return;
+            if (DONE.equals(data)) {
+                emitter.onComplete();
+                return;
+            }
+            T value;
+            try {
+                value = decoder.decode(data);
+            } catch (Throwable e) {
+                eventSource.cancel();
+                emitter.onError(e);
+                return;
+            }
+            if (null != value) emitter.onNext(value);
+        }
+
+        @Override
+        public void onClosed(@NotNull EventSource eventSource) {
+            emitter.onComplete();
+        }
+
+        @Override
+        public void onFailure(@NotNull EventSource eventSource, Throwable t, Response response) {
+            emitter.onError(failure(t, response));
+        }
+
+    }
+
+    /**
+     * 统一失败原因；应答状态码异常时没有 Throwable
+     */
+    public static Throwable failure(Throwable t, Response response) {
+        if (null != t) return t;
+        return new RuntimeException("stream failed, http status " + (null == response ? "unknown" : response.code()));
+    }
+
+    static final class StreamSubscription<T> implements Subscription, Emitter<T> {
+
+        private final Subscriber<? super T> subscriber;
+        private final ArrayBlockingQueue<T> queue;
+
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+
+        private volatile EventSource eventSource;
+        private volatile boolean done;
+        private volatile boolean cancelled;
+        /** 协议违规或读取线程被中断；丢弃缓冲的事件，立即向下游发送 onError */
+        private volatile boolean failed;
+        private volatile Throwable error;
+        private boolean terminated;
+
+        StreamSubscription(Subscriber<? super T> subscriber, int bufferSize) {
+            this.subscriber = subscriber;
+            this.queue = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        void attach(EventSource eventSource) {
+            this.eventSource = eventSource;
+            // 开启过程中下游已取消，补充取消
+            if (cancelled || failed) eventSource.cancel();
+        }
+
+        @Override
+        public void onNext(T value) {
+            if (cancelled || done) return;
+            try {
+                // 队列满时阻塞读取线程，形成背压
+                while (!queue.offer(value, OFFER_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    if (cancelled) return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(new InterruptedIOException("interrupted while waiting for downstream demand"));
+                return;
+            }
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            if (done) return;
+            error = t;
+            done = true;
+            drain();
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException("§3.9 violated: positive request amount required but it was " + n));
+                return;
+            }
+            for (; ; ) {
+                long current = requested.get();
+                long next = current + n;
+                if (next < 0) next = Long.MAX_VALUE;
+                if (requested.compareAndSet(current, next)) break;
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if (cancelled) return;
+            cancelled = true;
+            EventSource eventSource = this.eventSource;
+            if (null != eventSource) eventSource.cancel();
+            if (wip.getAndIncrement() == 0) queue.clear();
+        }
+
+        /**
+         * 取消上游并以异常结束；不经过 cancel 的静默路径，保证下游收到 onError
+         */
+        private void fail(Throwable t) {
+            if (cancelled || failed) return;
+            error = t;
+            failed = true;
+            done = true;
+            EventSource eventSource = this.eventSource;
+            if (null != eventSource) eventSource.cancel();
+            drain();
+        }
+
+        /**
+         * 队列-排空循环；保证同一时刻只有一个线程向下游发射
+         */
+        private void drain() {
+            if (wip.getAndIncrement() != 0) return;
+            int missed = 1;
+            for (; ; ) {
+                long r = requested.get();
+                long e = 0;
+                while (e != r) {
+                    if (failed) {
+                        queue.clear();
+                        terminate();
+                        return;
+                    }
+                    if (cancelled) {
+                        queue.clear();
+                        return;
+                    }
+                    boolean d = done;
+                    T value = queue.poll();
+                    if (d && null == value) {
+                        terminate();
+                        return;
+                    }
+                    if (null == value) break;
+                    subscriber.onNext(value);
+                    e++;
+                }
+                if (e == r) {
+                    if (failed) {
+                        queue.clear();
+                        terminate();
+                        return;
+                    }
+                    if (cancelled) {
+                        queue.clear();
+                        return;
+                    }
+                    if (done && queue.isEmpty()) {
+                        terminate();
+                        return;
+                    }
+                }
+                if (e != 0 && r != Long.MAX_VALUE) {
+                    requested.addAndGet(-e);
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) break;
+            }
+        }
+
+        private void terminate() {
+            if (terminated) return;
+            terminated = true;
+            if (null != error) {
+                subscriber.onError(error);
+            } else {
+                subscriber.onComplete();
+            }
+        }
+
+    }
+
+}
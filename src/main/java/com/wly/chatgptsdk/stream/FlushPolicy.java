@@ -0,0 +1,63 @@
+package com.wly.chatgptsdk.stream;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 流式写入的刷新策略
+ * 累计未刷新的字符数达到阈值，或者距离上次刷新超过时间间隔时刷新一次；时间间隔只在增量到达时检查，不额外启动定时器。
+ * 流结束时总会刷新。
+ */
+public final class FlushPolicy {
+
+    /**
+     * 每个增量刷新一次；延迟最低，适合直接转发给浏览器
+     */
+    public static final FlushPolicy EVERY_DELTA = new FlushPolicy(1, 0);
+
+    /**
+     * 只在流结束时刷新；适合写入文件
+     */
+    public static final FlushPolicy ON_CLOSE = new FlushPolicy(Integer.MAX_VALUE, Long.MAX_VALUE);
+
+    private final int chars;
+    private final long intervalNanos;
+
+    private FlushPolicy(int chars, long intervalNanos) {
+        this.chars = chars;
+        this.intervalNanos = intervalNanos;
+    }
+
+    /**
+     * 累计字符数达到阈值时刷新
+     */
+    public static FlushPolicy everyChars(int chars) {
+        return of(chars, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 距离上次刷新超过时间间隔时刷新
+     */
+    public static FlushPolicy interval(long duration, TimeUnit unit) {
+        return of(Integer.MAX_VALUE, duration, unit);
+    }
+
+    /**
+     * 字符数与时间间隔任一满足即刷新
+     */
+    public static FlushPolicy of(int chars, long duration, TimeUnit unit) {
+        if (chars <= 0) throw new IllegalArgumentException("chars must be positive");
+        if (duration < 0) throw new IllegalArgumentException("duration must not be negative");
+        return new FlushPolicy(chars, unit.toNanos(duration));
+    }
+
+    /**
+     * 是否需要刷新
+     *
+     * @param pendingChars    未刷新的字符数
+     * @param nanosSinceFlush 距离上次刷新的纳秒数
+     */
+    boolean shouldFlush(int pendingChars, long nanosSinceFlush) {
+        return pendingChars > 0 && (pendingChars >= chars || nanosSinceFlush >= intervalNanos);
+    }
+
+}
@@ -0,0 +1,292 @@
+package com.wly.chatgptsdk.stream;
+
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.sse.EventSource;
+import okhttp3.sse.EventSourceListener;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * 多播事件流
+ * 一个上游 EventSource 通过共享的环形缓冲区分发给多个订阅者。上游读取线程只负责写入环形缓冲区并唤醒订阅者，
+ * 每个订阅者有独立的游标，在执行器上按自己的速度读取，慢订阅者不会拖慢上游与其他订阅者。
+ * 后加入的订阅者从第一个事件开始重放；流结束后加入的订阅者重放全部事件后收到结束回调。
+ * 环形缓冲区写满后覆盖最早的事件：落后超过容量的订阅者，以及需要重放已被覆盖事件的订阅者会收到 onFailure 并被移除，
+ * 因此容量应覆盖一次应答的最大分片数（约等于 max_tokens）。
+ * 最后一个订阅者离开时取消上游请求。
+ */
+@Slf4j
+public class MulticastStream extends EventSourceListener {
+
+    /** 默认容量；覆盖 4096 个分片 */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final AtomicReferenceArray<Event> ring;
+    private final int mask;
+    private final Executor executor;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    private volatile EventSource upstream;
+    private volatile Response openResponse;
+    /** 已写入的事件数；只由上游读取线程修改 */
+    private volatile long published;
+    /** 结束信号；在最后一个事件写入之后设置，只设置一次 */
+    private volatile Terminal terminal;
+
+    private MulticastStream(int capacity, Executor executor) {
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.executor = executor;
+    }
+
+    /**
+     * 开启多播流；上游立即开始读取，订阅之前收到的事件保存在环形缓冲区中
+     *
+     * @param starter  开启上游事件源
+     * @param capacity 环形缓冲区容量；向上取整为 2 的幂
+     * @param executor 订阅者回调的执行器；为空时使用内置的有界守护线程池
+     * @return 多播流
+     */
+    public static MulticastStream start(Function<EventSourceListener, EventSource> starter, int capacity, Executor executor) {
+        if (capacity <= 0 || capacity > 1 << 30) throw new IllegalArgumentException("capacity must be in (0, 2^30]: " + capacity);
+        MulticastStream stream = new MulticastStream(capacity, null == executor ? DefaultExecutor.INSTANCE : executor);
+        stream.upstream = starter.apply(stream);
+        return stream;
+    }
+
+    /**
+     * 订阅；从第一个事件开始重放
+     *
+     * @param listener 监听
+     * @return 当前订阅者的事件源；取消时只移除该订阅者，最后一个订阅者取消时同时取消上游
+     */
+    public EventSource subscribe(EventSourceListener listener) {
+        Subscriber subscriber = new Subscriber(listener);
+        subscribers.add(subscriber);
+        subscriber.signal();
+        return subscriber;
+    }
+
+    /**
+     * 当前订阅者数量
+     */
+    public int subscribers() {
+        return subscribers.size();
+    }
+
+    /**
+     * 已收到的事件数量
+     */
+    public long events() {
+        return published;
+    }
+
+    /**
+     * 取消上游与所有订阅者
+     */
+    public void cancel() {
+        terminate(new Terminal(new IOException("multicast stream cancelled"), null));
+        upstream.cancel();
+    }
+
+    @Override
+    public void onOpen(@NotNull EventSource eventSource, @NotNull Response response) {
+        openResponse = response;
+        signalAll();
+    }
+
+    @Override
+    public void onEvent(@NotNull EventSource eventSource, String id, String type, @NotNull String data) {
+        long sequence = published;
+        ring.set((int) sequence & mask, new Event(sequence, id, type, data));
+        published = sequence + 1;
+        signalAll();
+    }
+
+    @Override
+    public void onClosed(@NotNull EventSource eventSource) {
+        terminate(new Terminal(null, null));
+    }
+
+    @Override
+    public void onFailure(@NotNull EventSource eventSource, Throwable t, Response response) {
+        terminate(new Terminal(EventSourcePublisher.failure(t, response), response));
+    }
+
+    private void terminate(Terminal signal) {
+        synchronized (this) {
+            if (null != terminal) return;
+            terminal = signal;
+        }
+        signalAll();
+    }
+
+    private void signalAll() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.signal();
+        }
+    }
+
+    private void leave(Subscriber subscriber) {
+        synchronized (this) {
+            if (!subscribers.remove(subscriber) || !subscribers.isEmpty() || null != terminal) return;
+            terminal = new Terminal(new IOException("multicast stream cancelled, no subscribers left"), null);
+        }
+        EventSource source = upstream;
+        if (null != source) source.cancel();
+    }
+
+    /**
+     * 环形缓冲区中的事件；sequence 用于识别槽位是否已被覆盖
+     */
+    private static final class Event {
+
+        final long sequence;
+        final String id;
+        final String type;
+        final String data;
+
+        Event(long sequence, String id, String type, String data) {
+            this.sequence = sequence;
+            this.id = id;
+            this.type = type;
+            this.data = data;
+        }
+
+    }
+
+    /**
+     * 结束信号；failure 为空表示正常结束
+     */
+    private static final class Terminal {
+
+        final Throwable failure;
+        final Response response;
+
+        Terminal(Throwable failure, Response response) {
+            this.failure = failure;
+            this.response = response;
+        }
+
+    }
+
+    /**
+     * 订阅者；drain 同一时刻只在一个线程上运行，回调按顺序发出
+     */
+    private final class Subscriber implements EventSource {
+
+        private final EventSourceListener listener;
+        private final AtomicInteger wip = new AtomicInteger();
+
+        private long cursor;
+        private boolean opened;
+        private volatile boolean done;
+
+        Subscriber(EventSourceListener listener) {
+            this.listener = listener;
+        }
+
+        void signal() {
+            if (wip.getAndIncrement() == 0) executor.execute(this::drain);
+        }
+
+        private void drain() {
+            int missed = 1;
+            try {
+                while (true) {
+                    if (done) return;
+                    Terminal signal = terminal;
+                    long end = published;
+                    if (!opened && null != openResponse) {
+                        opened = true;
+                        listener.onOpen(this, openResponse);
+                    }
+                    while (cursor < end) {
+                        if (done) return;
+                        Event event = ring.get((int) cursor & mask);
+                        if (event.sequence != cursor) {
+                            fail(new IOException("subscriber fell behind by more than " + ring.length() + " events"), null);
+                            return;
+                        }
+                        listener.onEvent(this, event.id, event.type, event.data);
+                        cursor++;
+                    }
+                    if (null != signal) {
+                        // 结束信号之前写入的事件此时都已送达
+                        if (null == signal.failure) {
+                            done = true;
+                            subscribers.remove(this);
+                            listener.onClosed(this);
+                        } else {
+                            fail(signal.failure, signal.response);
+                        }
+                        return;
+                    }
+                    missed = wip.addAndGet(-missed);
+                    if (missed == 0) return;
+                }
+            } catch (RuntimeException e) {
+                log.warn("multicast subscriber callback failed, unsubscribing", e);
+                done = true;
+                leave(this);
+            }
+        }
+
+        private void fail(Throwable t, Response response) {
+            done = true;
+            leave(this);
+            listener.onFailure(this, t, response);
+        }
+
+        @NotNull
+        @Override
+        public Request request() {
+            return upstream.request();
+        }
+
+        @Override
+        public void cancel() {
+            if (done) return;
+            done = true;
+            leave(this);
+        }
+
+    }
+
+    /**
+     * 内置执行器；线程数固定为 CPU 核数且至少为 2，守护线程，空闲 60 秒后回收
+     * 订阅者的唤醒会合并，排队的任务数不超过订阅者数量；回调中有阻塞操作时应传入自己的执行器，避免占满内置线程。
+     */
+    private static final class DefaultExecutor {
+
+        static final ExecutorService INSTANCE = newExecutor(Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+        private static ExecutorService newExecutor(int threads) {
+            AtomicInteger sequence = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "openai-multicast-" + sequence.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+
+    }
+
+}
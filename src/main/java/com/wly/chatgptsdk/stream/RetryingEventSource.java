@@ -0,0 +1,180 @@
+package com.wly.chatgptsdk.stream;
+
+import com.wly.chatgptsdk.retry.RetryPolicy;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.sse.EventSource;
+import okhttp3.sse.EventSourceListener;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.function.Function;
+
+/**
+ * 可重试的事件源
+ * 首个事件送达之前的失败都在这里重试：可重试的状态码、建连失败，以及连接建立之后的读取中断（如连接重置）。
+ * 请求需要带有 RetryInterceptor.Bypass 标记，避免拦截器在调度器线程上重复重试；重连在调度线程上延迟执行，
+ * 经过限流的事件源会重新排队申请准入。
+ * 一旦有事件交给使用方，之后的失败直接回调，不会重放已送达的内容。onOpen 只回调一次，回调中的事件源始终是本对象。
+ */
+public final class RetryingEventSource implements EventSource {
+
+    private final RetryPolicy retryPolicy;
+    private final Function<RetryingEventSource, EventSource> connector;
+
+    private volatile EventSource current;
+    private volatile boolean canceled;
+    private volatile boolean opened;
+    private volatile boolean delivered;
+    /** 本次连接是否已建立；只在事件源的回调线程上读写 */
+    private boolean attemptOpened;
+    private int attempt = 1;
+
+    private RetryingEventSource(RetryPolicy retryPolicy, Function<RetryingEventSource, EventSource> connector) {
+        this.retryPolicy = retryPolicy;
+        this.connector = connector;
+    }
+
+    /**
+     * 包装 EventSourceListener 的事件源
+     *
+     * @param retryPolicy 重试策略
+     * @param starter     以监听开启上游事件源
+     * @param listener    使用方监听
+     * @return 事件源；取消时同时停止后续重试
+     */
+    public static EventSource events(RetryPolicy retryPolicy, Function<EventSourceListener, EventSource> starter, EventSourceListener listener) {
+        RetryingEventSource eventSource = new RetryingEventSource(retryPolicy, self -> starter.apply(self.new EventForwarder(listener)));
+        retryPolicy.budget().onRequest();
+        eventSource.connect();
+        return eventSource;
+    }
+
+    /**
+     * 包装 ChatDeltaListener 的事件源
+     *
+     * @param retryPolicy 重试策略
+     * @param starter     以监听开启上游事件源
+     * @param listener    使用方监听
+     * @return 事件源；取消时同时停止后续重试
+     */
+    public static EventSource deltas(RetryPolicy retryPolicy, Function<ChatDeltaListener, EventSource> starter, ChatDeltaListener listener) {
+        RetryingEventSource eventSource = new RetryingEventSource(retryPolicy, self -> starter.apply(self.new DeltaForwarder(listener)));
+        retryPolicy.budget().onRequest();
+        eventSource.connect();
+        return eventSource;
+    }
+
+    @NotNull
+    @Override
+    public Request request() {
+        return current.request();
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+        EventSource eventSource = current;
+        if (null != eventSource) eventSource.cancel();
+    }
+
+    private void connect() {
+        attemptOpened = false;
+        current = connector.apply(this);
+        // 与 cancel 并发时，保证新开启的连接也被取消
+        if (canceled) current.cancel();
+    }
+
+    private boolean open() {
+        attemptOpened = true;
+        if (opened) return false;
+        opened = true;
+        return true;
+    }
+
+    /**
+     * 判断是否重试；重试时在调度线程上延迟重连。连接建立之前按状态码或异常判断，之后只看读取异常
+     */
+    private boolean retry(Throwable t, Response response) {
+        if (canceled || delivered || attempt >= retryPolicy.maxAttempts()) return false;
+        Response failed = attemptOpened ? null : response;
+        boolean retryable = null != t ? retryPolicy.isRetryable(t) : null != failed && retryPolicy.isRetryable(failed);
+        if (!retryable) return false;
+        long delay = retryPolicy.delayMillis(attempt - 1, failed);
+        if (delay < 0 || !retryPolicy.budget().tryAcquire()) return false;
+        attempt++;
+        retryPolicy.schedule(() -> {
+            if (!canceled) connect();
+        }, delay);
+        return true;
+    }
+
+    private final class EventForwarder extends EventSourceListener {
+
+        private final EventSourceListener listener;
+
+        private EventForwarder(EventSourceListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onOpen(@NotNull EventSource eventSource, @NotNull Response response) {
+            if (open()) listener.onOpen(RetryingEventSource.this, response);
+        }
+
+        @Override
+        public void onEvent(@NotNull EventSource eventSource, @Nullable String id, @Nullable String type, @NotNull String data) {
+            delivered = true;
+            listener.onEvent(RetryingEventSource.this, id, type, data);
+        }
+
+        @Override
+        public void onClosed(@NotNull EventSource eventSource) {
+            listener.onClosed(RetryingEventSource.this);
+        }
+
+        @Override
+        public void onFailure(@NotNull EventSource eventSource, @Nullable Throwable t, @Nullable Response response) {
+            if (!retry(t, response)) listener.onFailure(RetryingEventSource.this, t, response);
+        }
+
+    }
+
+    private final class DeltaForwarder extends ChatDeltaListener {
+
+        private final ChatDeltaListener listener;
+
+        private DeltaForwarder(ChatDeltaListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onOpen(EventSource eventSource, Response response) {
+            if (open()) listener.onOpen(RetryingEventSource.this, response);
+        }
+
+        @Override
+        public void onMetadata(EventSource eventSource, String id, String model, long created) {
+            listener.onMetadata(RetryingEventSource.this, id, model, created);
+        }
+
+        @Override
+        public void onDelta(EventSource eventSource, int index, String role, char[] content, int offset, int length, String finishReason) throws IOException {
+            delivered = true;
+            listener.onDelta(RetryingEventSource.this, index, role, content, offset, length, finishReason);
+        }
+
+        @Override
+        public void onClosed(EventSource eventSource) {
+            listener.onClosed(RetryingEventSource.this);
+        }
+
+        @Override
+        public void onFailure(EventSource eventSource, Throwable t, Response response) {
+            if (!retry(t, response)) listener.onFailure(RetryingEventSource.this, t, response);
+        }
+
+    }
+
+}
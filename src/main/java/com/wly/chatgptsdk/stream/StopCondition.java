@@ -0,0 +1,223 @@
+package com.wly.chatgptsdk.stream;
+
+import java.util.regex.Pattern;
+
+/**
+ * 客户端停止条件
+ * 在流式应答的增量内容上逐段判定，命中后由 SDK 立即取消上游事件源，释放连接并不再为后续 token 付费。
+ * 条件本身不可变，可以在多个请求间共享；每个流的每个 choice 通过 matcher() 创建独立的判定状态。
+ */
+public interface StopCondition {
+
+    /**
+     * 结束原因；客户端停止时写入 finish_reason
+     */
+    String FINISH_REASON = "client_stop";
+
+    /**
+     * 为一个 choice 创建判定状态
+     */
+    Matcher matcher();
+
+    /**
+     * 判定状态；非线程安全，同一个流的增量按顺序送入
+     */
+    interface Matcher {
+
+        /**
+         * 送入一段增量内容
+         *
+         * @return true 表示命中，应停止
+         */
+        boolean test(char[] content, int offset, int length);
+
+    }
+
+    /**
+     * 内容中出现指定文本时停止；只保留 text.length() - 1 个字符的尾部用于跨增量匹配
+     */
+    static StopCondition contains(String text) {
+        if (null == text || text.isEmpty()) throw new IllegalArgumentException("text must not be empty");
+        return () -> new Matcher() {
+            private final StringBuilder window = new StringBuilder();
+
+            @Override
+            public boolean test(char[] content, int offset, int length) {
+                window.append(content, offset, length);
+                if (window.indexOf(text) >= 0) return true;
+                int keep = text.length() - 1;
+                if (window.length() > keep) window.delete(0, window.length() - keep);
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 正则在已收到的全部内容中命中时停止
+     * 每次增量都会在累计内容上从头查找，总开销随内容长度平方增长；长应答请使用 regex(Pattern, int) 限定匹配长度
+     */
+    static StopCondition regex(Pattern pattern) {
+        return () -> new Matcher() {
+            private final StringBuilder text = new StringBuilder();
+            private final java.util.regex.Matcher matcher = pattern.matcher(text);
+
+            @Override
+            public boolean test(char[] content, int offset, int length) {
+                if (length == 0) return false;
+                text.append(content, offset, length);
+                return matcher.reset(text).find();
+            }
+        };
+    }
+
+    /**
+     * 正则命中时停止；只查找结束在新增量中、长度不超过 maxMatchLength 的匹配
+     * 每次增量只从新增量之前 maxMatchLength - 1 个字符处开始查找，总开销与内容长度成线性；
+     * 查找区域之外的内容对 ^、$ 与环视仍然可见，因此锚点与环视的语义不变
+     *
+     * @param pattern        正则
+     * @param maxMatchLength 匹配的最大长度
+     */
+    static StopCondition regex(Pattern pattern, int maxMatchLength) {
+        if (maxMatchLength <= 0) throw new IllegalArgumentException("maxMatchLength must be positive");
+        return () -> new Matcher() {
+            private final StringBuilder text = new StringBuilder();
+            private final java.util.regex.Matcher matcher = pattern.matcher(text)
+                    .useTransparentBounds(true)
+                    .useAnchoringBounds(false);
+
+            @Override
+            public boolean test(char[] content, int offset, int length) {
+                if (length == 0) return false;
+                int from = Math.max(0, text.length() - maxMatchLength + 1);
+                text.append(content, offset, length);
+                matcher.reset(text);
+                return matcher.region(from, text.length()).find();
+            }
+        };
+    }
+
+    /**
+     * 第一个顶层 JSON 对象或数组闭合时停止；正确处理字符串中的括号与转义
+     * 开头的 { 或 [ 必须是第一个非空白字符，之前只允许一个 ``` 代码块标记（可带语言标识，如 ```json）；
+     * 内容以其他文本开头时不是 JSON 应答，永远不会命中，避免 "See [1]: {...}" 这类前导文本中的括号提前停止
+     */
+    static StopCondition jsonClosed() {
+        return () -> new Matcher() {
+            /** 开头：等待第一个非空白字符 */
+            private static final int LEADING = 0;
+            /** 代码块标记中的反引号 */
+            private static final int FENCE = 1;
+            /** 代码块标记之后的语言标识，到换行为止 */
+            private static final int INFO = 2;
+            /** JSON 内容 */
+            private static final int JSON = 3;
+            /** 不是 JSON 应答，或者已经闭合 */
+            private static final int DONE = 4;
+
+            private int state = LEADING;
+            private boolean fenced;
+            private int ticks;
+            private int depth;
+            private boolean inString;
+            private boolean escaped;
+
+            @Override
+            public boolean test(char[] content, int offset, int length) {
+                for (int i = offset, end = offset + length; i < end && state != DONE; i++) {
+                    char c = content[i];
+                    switch (state) {
+                        case LEADING:
+                            if (c == '{' || c == '[') {
+                                state = JSON;
+                                depth = 1;
+                            } else if (c == '`' && !fenced) {
+                                state = FENCE;
+                                ticks = 1;
+                            } else if (!Character.isWhitespace(c)) {
+                                state = DONE;
+                            }
+                            break;
+                        case FENCE:
+                            if (c == '`') {
+                                ticks++;
+                            } else if (ticks < 3) {
+                                state = DONE;
+                            } else {
+                                fenced = true;
+                                state = c == '\n' ? LEADING : INFO;
+                            }
+                            break;
+                        case INFO:
+                            if (c == '\n') state = LEADING;
+                            break;
+                        default:
+                            if (json(c)) {
+                                state = DONE;
+                                return true;
+                            }
+                    }
+                }
+                return false;
+            }
+
+            /**
+             * @return true 表示顶层已闭合
+             */
+            private boolean json(char c) {
+                if (inString) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (c == '\\') {
+                        escaped = true;
+                    } else if (c == '"') {
+                        inString = false;
+                    }
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    return --depth == 0;
+                } else if (c == '"') {
+                    inString = true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 收到指定数量的内容分片时停止；服务端每个内容分片对应一个 token
+     */
+    static StopCondition maxTokens(int tokens) {
+        if (tokens <= 0) throw new IllegalArgumentException("tokens must be positive");
+        return () -> new Matcher() {
+            private int count;
+
+            @Override
+            public boolean test(char[] content, int offset, int length) {
+                return length > 0 && ++count >= tokens;
+            }
+        };
+    }
+
+    /**
+     * 任一条件命中即停止
+     */
+    static StopCondition any(StopCondition... conditions) {
+        return () -> {
+            Matcher[] matchers = new Matcher[conditions.length];
+            for (int i = 0; i < conditions.length; i++) {
+                matchers[i] = conditions[i].matcher();
+            }
+            return (content, offset, length) -> {
+                boolean matched = false;
+                for (Matcher matcher : matchers) {
+                    // 每个条件都要看到全部增量，不能短路
+                    matched |= matcher.test(content, offset, length);
+                }
+                return matched;
+            };
+        };
+    }
+
+}
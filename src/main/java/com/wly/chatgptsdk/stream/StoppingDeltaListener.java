@@ -0,0 +1,107 @@
+package com.wly.chatgptsdk.stream;
+
+import okhttp3.Response;
+import okhttp3.sse.EventSource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 带停止条件的对话增量监听
+ * 每个 choice 独立判定：命中的 choice 立即收到一个 finish_reason 为 client_stop 的空增量，之后该 choice 的增量不再转发；
+ * 所有 choice 都已命中或由服务端结束后取消上游事件源，并回调 onClosed。取消引起的读取中断不会再传给下游。
+ */
+public class StoppingDeltaListener extends ChatDeltaListener {
+
+    private final StopCondition condition;
+    private final ChatDeltaListener listener;
+    private final int choices;
+
+    /** 按 choice 序号存放 */
+    private final List<StopCondition.Matcher> matchers = new ArrayList<>(1);
+    private final List<Boolean> finished = new ArrayList<>(1);
+    private int finishedCount;
+    private boolean clientStopped;
+
+    private volatile boolean stopped;
+
+    /**
+     * @param condition 停止条件
+     * @param listener  下游监听
+     * @param choices   请求的 choice 数量，即请求参数 n
+     */
+    public StoppingDeltaListener(StopCondition condition, ChatDeltaListener listener, int choices) {
+        this.condition = condition;
+        this.listener = listener;
+        this.choices = Math.max(choices, 1);
+    }
+
+    @Override
+    public void onOpen(EventSource eventSource, Response response) {
+        listener.onOpen(eventSource, response);
+    }
+
+    @Override
+    public void onMetadata(EventSource eventSource, String id, String model, long created) {
+        listener.onMetadata(eventSource, id, model, created);
+    }
+
+    @Override
+    public void onDelta(EventSource eventSource, int index, String role, char[] content, int offset, int length, String finishReason) throws IOException {
+        if (stopped || index < 0 || isFinished(index)) return;
+        listener.onDelta(eventSource, index, role, content, offset, length, finishReason);
+        if (null != finishReason) {
+            finish(index);
+        } else if (matcher(index).test(content, offset, length)) {
+            finish(index);
+            clientStopped = true;
+            listener.onDelta(eventSource, index, null, content, offset, 0, StopCondition.FINISH_REASON);
+        }
+        // 服务端结束的流等待 [DONE]；有 choice 被客户端停止时立即取消
+        if (clientStopped && finishedCount >= choices) {
+            stopped = true;
+            eventSource.cancel();
+            listener.onClosed(eventSource);
+        }
+    }
+
+    @Override
+    public void onClosed(EventSource eventSource) {
+        if (stopped) return;
+        stopped = true;
+        listener.onClosed(eventSource);
+    }
+
+    @Override
+    public void onFailure(EventSource eventSource, Throwable t, Response response) {
+        if (stopped) return;
+        stopped = true;
+        listener.onFailure(eventSource, t, response);
+    }
+
+    private StopCondition.Matcher matcher(int index) {
+        while (matchers.size() <= index) {
+            matchers.add(null);
+        }
+        StopCondition.Matcher matcher = matchers.get(index);
+        if (null == matcher) {
+            matcher = condition.matcher();
+            matchers.set(index, matcher);
+        }
+        return matcher;
+    }
+
+    private boolean isFinished(int index) {
+        return index < finished.size() && finished.get(index);
+    }
+
+    private void finish(int index) {
+        while (finished.size() <= index) {
+            finished.add(Boolean.FALSE);
+        }
+        finished.set(index, Boolean.TRUE);
+        finishedCount++;
+    }
+
+}
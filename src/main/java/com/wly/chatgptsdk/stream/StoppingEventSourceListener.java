@@ -0,0 +1,178 @@
+package com.wly.chatgptsdk.stream;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.wly.chatgptsdk.codec.JsonCodec;
+import com.wly.chatgptsdk.domain.qa.QACompletionRequest;
+import com.wly.chatgptsdk.token.TokenCounter;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Response;
+import okhttp3.sse.EventSource;
+import okhttp3.sse.EventSourceListener;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 带停止条件的文本问答事件监听
+ * 每个分片照常转发，同时取出 choices[i].text 送入各 choice 的停止条件；所有 choice 都已命中或由服务端结束、且至少一个由客户端停止时，
+ * 取消上游事件源，再补发一个与服务端格式一致的结束分片：choices 中列出被客户端停止的序号，finish_reason 为 client_stop，
+ * usage 按 TokenCounter 对请求与已收到的文本计数；随后发送 [DONE] 并回调 onClosed。
+ */
+@Slf4j
+public class StoppingEventSourceListener extends EventSourceListener {
+
+    private final StopCondition condition;
+    private final EventSourceListener listener;
+    private final QACompletionRequest request;
+    private final int choices;
+
+    /** 按 choice 序号存放 */
+    private final List<ChoiceState> states = new ArrayList<>(1);
+    private int finishedCount;
+    private boolean clientStopped;
+    private String id;
+    private String model;
+    private long created;
+
+    private volatile boolean stopped;
+
+    /**
+     * @param condition 停止条件
+     * @param listener  下游监听
+     * @param request   请求信息；用于确定 choice 数量与计算 usage
+     */
+    public StoppingEventSourceListener(StopCondition condition, EventSourceListener listener, QACompletionRequest request) {
+        this.condition = condition;
+        this.listener = listener;
+        this.request = request;
+        this.choices = null == request.getN() ? 1 : Math.max(request.getN(), 1);
+    }
+
+    @Override
+    public void onOpen(@NotNull EventSource eventSource, @NotNull Response response) {
+        listener.onOpen(eventSource, response);
+    }
+
+    @Override
+    public void onEvent(@NotNull EventSource eventSource, String id, String type, @NotNull String data) {
+        if (stopped) return;
+        listener.onEvent(eventSource, id, type, data);
+        if (EventSourcePublisher.DONE.equals(data)) return;
+        JsonNode chunk;
+        try {
+            chunk = JsonCodec.objectMapper().readTree(data);
+        } catch (JsonProcessingException e) {
+            log.warn("illegal completion chunk, stop condition skipped: {}", data);
+            return;
+        }
+        if (null == this.id) {
+            this.id = chunk.path("id").asText(null);
+            this.model = chunk.path("model").asText(null);
+            this.created = chunk.path("created").asLong();
+        }
+        for (JsonNode choice : chunk.path("choices")) {
+            ChoiceState state = state(choice.path("index").asInt());
+            if (state.finished) continue;
+            String text = choice.path("text").asText("");
+            state.text.append(text);
+            if (!choice.path("finish_reason").isNull() && !choice.path("finish_reason").isMissingNode()) {
+                state.finish();
+            } else if (state.matcher.test(text.toCharArray(), 0, text.length())) {
+                state.finish();
+                state.clientStopped = true;
+                clientStopped = true;
+            }
+        }
+        // 服务端结束的流等待 [DONE]；有 choice 被客户端停止时立即取消
+        if (clientStopped && finishedCount >= choices) stop(eventSource);
+    }
+
+    @Override
+    public void onClosed(@NotNull EventSource eventSource) {
+        if (stopped) return;
+        stopped = true;
+        listener.onClosed(eventSource);
+    }
+
+    @Override
+    public void onFailure(@NotNull EventSource eventSource, Throwable t, Response response) {
+        if (stopped) return;
+        stopped = true;
+        listener.onFailure(eventSource, t, response);
+    }
+
+    private void stop(EventSource eventSource) {
+        stopped = true;
+        eventSource.cancel();
+        listener.onEvent(eventSource, null, null, finalChunk());
+        listener.onEvent(eventSource, null, null, EventSourcePublisher.DONE);
+        listener.onClosed(eventSource);
+    }
+
+    /**
+     * 客户端停止时补发的结束分片
+     */
+    private String finalChunk() {
+        ObjectMapper objectMapper = JsonCodec.objectMapper();
+        TokenCounter tokenCounter = TokenCounter.getInstance();
+        String encodingModel = null == model ? request.getModel() : model;
+        ObjectNode chunk = objectMapper.createObjectNode()
+                .put("id", id)
+                .put("object", "text_completion")
+                .put("created", created)
+                .put("model", model);
+        long completionTokens = 0;
+        for (int i = 0; i < states.size(); i++) {
+            ChoiceState state = states.get(i);
+            if (null == state) continue;
+            completionTokens += tokenCounter.count(encodingModel, state.text.toString());
+            if (!state.clientStopped) continue;
+            chunk.withArray("choices").addObject()
+                    .put("index", i)
+                    .put("text", "")
+                    .putNull("logprobs")
+                    .put("finish_reason", StopCondition.FINISH_REASON);
+        }
+        long promptTokens = tokenCounter.count(request);
+        chunk.putObject("usage")
+                .put("prompt_tokens", promptTokens)
+                .put("completion_tokens", completionTokens)
+                .put("total_tokens", promptTokens + completionTokens);
+        return chunk.toString();
+    }
+
+    private ChoiceState state(int index) {
+        while (states.size() <= index) {
+            states.add(null);
+        }
+        ChoiceState state = states.get(index);
+        if (null == state) {
+            state = new ChoiceState(condition.matcher());
+            states.set(index, state);
+        }
+        return state;
+    }
+
+    private final class ChoiceState {
+
+        private final StopCondition.Matcher matcher;
+        private final StringBuilder text = new StringBuilder();
+        private boolean finished;
+        private boolean clientStopped;
+
+        ChoiceState(StopCondition.Matcher matcher) {
+            this.matcher = matcher;
+        }
+
+        void finish() {
+            finished = true;
+            finishedCount++;
+        }
+
+    }
+
+}
@@ -0,0 +1,263 @@
+package com.wly.chatgptsdk.stream;
+
+import okhttp3.Response;
+import okhttp3.sse.EventSource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 流式写入
+ * 把第一个对话（index 0）的内容增量直接写入 Writer、OutputStream 或 WritableByteChannel，字节目标按 UTF-8 编码到可复用的缓冲区，
+ * 整个过程不为每个增量创建 String 或 POJO。
+ * 写入发生在事件源的读取线程上：目标写入阻塞时读取循环随之暂停，不再从连接中读取数据，TCP 接收窗口写满后上游自然减速，
+ * 因此慢速的下游不会在内存中堆积分片。目标由调用方负责关闭，这里只在流结束时刷新。
+ * 结果 future 完成时的值为写入的字符数；取消 future 时同步取消事件源。
+ */
+public abstract class StreamSink extends ChatDeltaListener {
+
+    private final CompletableFuture<Long> future = new CompletableFuture<>();
+    private final FlushPolicy flushPolicy;
+
+    private volatile EventSource eventSource;
+
+    private long written;
+    private int pending;
+    private long lastFlushNanos = System.nanoTime();
+
+    StreamSink(FlushPolicy flushPolicy) {
+        this.flushPolicy = flushPolicy;
+        future.whenComplete((count, throwable) -> {
+            EventSource source = eventSource;
+            if (future.isCancelled() && null != source) source.cancel();
+        });
+    }
+
+    /**
+     * 写入字符流
+     */
+    public static StreamSink writer(Writer writer, FlushPolicy flushPolicy) {
+        return new WriterSink(writer, flushPolicy);
+    }
+
+    /**
+     * 写入字节流；UTF-8 编码
+     */
+    public static StreamSink outputStream(OutputStream outputStream, FlushPolicy flushPolicy) {
+        return new OutputStreamSink(outputStream, flushPolicy);
+    }
+
+    /**
+     * 写入通道；UTF-8 编码。通道必须处于阻塞模式，否则无法把写入阻塞传递给上游
+     */
+    public static StreamSink channel(WritableByteChannel channel, FlushPolicy flushPolicy) {
+        if (channel instanceof SelectableChannel && !((SelectableChannel) channel).isBlocking()) {
+            throw new IllegalArgumentException("channel must be in blocking mode");
+        }
+        return new ChannelSink(channel, flushPolicy);
+    }
+
+    /**
+     * 写入结果；值为写入的字符数
+     */
+    public CompletableFuture<Long> future() {
+        return future;
+    }
+
+    /**
+     * 绑定事件源；结果 future 被取消时取消该事件源
+     */
+    public StreamSink bind(EventSource eventSource) {
+        this.eventSource = eventSource;
+        if (future.isCancelled()) eventSource.cancel();
+        return this;
+    }
+
+    @Override
+    public void onDelta(EventSource eventSource, int index, String role, char[] content, int offset, int length, String finishReason) throws IOException {
+        if (index != 0 || length == 0 || future.isDone()) return;
+        write(content, offset, length);
+        written += length;
+        pending += length;
+        long now = System.nanoTime();
+        if (flushPolicy.shouldFlush(pending, now - lastFlushNanos)) {
+            flush();
+            pending = 0;
+            lastFlushNanos = now;
+        }
+    }
+
+    @Override
+    public void onClosed(EventSource eventSource) {
+        if (future.isDone()) return;
+        try {
+            finish();
+            flush();
+            future.complete(written);
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    @Override
+    public void onFailure(EventSource eventSource, Throwable t, Response response) {
+        future.completeExceptionally(EventSourcePublisher.failure(t, response));
+    }
+
+    abstract void write(char[] content, int offset, int length) throws IOException;
+
+    /**
+     * 流结束；在最后一次刷新之前调用
+     */
+    void finish() throws IOException {
+    }
+
+    abstract void flush() throws IOException;
+
+    private static final class WriterSink extends StreamSink {
+
+        private final Writer writer;
+
+        WriterSink(Writer writer, FlushPolicy flushPolicy) {
+            super(flushPolicy);
+            this.writer = writer;
+        }
+
+        @Override
+        void write(char[] content, int offset, int length) throws IOException {
+            writer.write(content, offset, length);
+        }
+
+        @Override
+        void flush() throws IOException {
+            writer.flush();
+        }
+
+    }
+
+    /**
+     * 字节目标；UTF-8 编码到固定大小的缓冲区，写满或刷新时输出。跨增量拆开的代理对在下一个增量中拼接
+     */
+    private abstract static class ByteSink extends StreamSink {
+
+        final byte[] buffer = new byte[8192];
+        int position;
+
+        /** 上一个增量末尾未配对的高代理项；没有时为 0 */
+        private char highSurrogate;
+
+        ByteSink(FlushPolicy flushPolicy) {
+            super(flushPolicy);
+        }
+
+        @Override
+        void write(char[] content, int offset, int length) throws IOException {
+            int end = offset + length;
+            for (int i = offset; i < end; i++) {
+                if (buffer.length - position < 4) drain();
+                char c = content[i];
+                if (highSurrogate != 0) {
+                    char high = highSurrogate;
+                    highSurrogate = 0;
+                    if (Character.isLowSurrogate(c)) {
+                        encode(Character.toCodePoint(high, c));
+                        continue;
+                    }
+                    buffer[position++] = '?';
+                }
+                if (c < 0x80) {
+                    buffer[position++] = (byte) c;
+                } else if (c < 0x800) {
+                    buffer[position++] = (byte) (0xc0 | c >> 6);
+                    buffer[position++] = (byte) (0x80 | c & 0x3f);
+                } else if (Character.isHighSurrogate(c)) {
+                    highSurrogate = c;
+                } else if (Character.isLowSurrogate(c)) {
+                    buffer[position++] = '?';
+                } else {
+                    buffer[position++] = (byte) (0xe0 | c >> 12);
+                    buffer[position++] = (byte) (0x80 | c >> 6 & 0x3f);
+                    buffer[position++] = (byte) (0x80 | c & 0x3f);
+                }
+            }
+        }
+
+        @Override
+        void finish() throws IOException {
+            if (highSurrogate == 0) return;
+            highSurrogate = 0;
+            if (buffer.length == position) drain();
+            buffer[position++] = '?';
+        }
+
+        private void encode(int codePoint) {
+            buffer[position++] = (byte) (0xf0 | codePoint >> 18);
+            buffer[position++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+            buffer[position++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+            buffer[position++] = (byte) (0x80 | codePoint & 0x3f);
+        }
+
+        /**
+         * 输出缓冲区中的字节
+         */
+        abstract void drain() throws IOException;
+
+    }
+
+    private static final class OutputStreamSink extends ByteSink {
+
+        private final OutputStream outputStream;
+
+        OutputStreamSink(OutputStream outputStream, FlushPolicy flushPolicy) {
+            super(flushPolicy);
+            this.outputStream = outputStream;
+        }
+
+        @Override
+        void drain() throws IOException {
+            outputStream.write(buffer, 0, position);
+            position = 0;
+        }
+
+        @Override
+        void flush() throws IOException {
+            drain();
+            outputStream.flush();
+        }
+
+    }
+
+    private static final class ChannelSink extends ByteSink {
+
+        private final WritableByteChannel channel;
+        private final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+
+        ChannelSink(WritableByteChannel channel, FlushPolicy flushPolicy) {
+            super(flushPolicy);
+            this.channel = channel;
+        }
+
+        @Override
+        void drain() throws IOException {
+            ((Buffer) byteBuffer).clear();
+            ((Buffer) byteBuffer).limit(position);
+            while (byteBuffer.hasRemaining()) {
+                channel.write(byteBuffer);
+            }
+            position = 0;
+        }
+
+        @Override
+        void flush() throws IOException {
+            drain();
+        }
+
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.wly.chatgptsdk.token;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * token 数缓存；直接映射、无锁
+ * 以 (编码, 文本) 的 64 位哈希为键，不持有文本本身，缓存的长对话历史不会因此滞留在堆上。
+ * 每个槽位是一个 long：高 32 位为哈希指纹，低 32 位为 token 数，读写都是单次原子操作，不需要加锁。
+ * 槽位冲突时后写入者覆盖先写入者，淘汰代价是一次重新编码。
+ * 指纹与槽位号合计约 44 位以上，两段不同文本被误判为同一键的概率可以忽略；计数只用于估算，偶发误差不影响正确性。
+ */
+final class TokenCountCache {
+
+    private final AtomicLongArray slots;
+    private final int mask;
+
+    /**
+     * @param size 期望的条数；向上取整为 2 的幂
+     */
+    TokenCountCache(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be positive: " + size);
+        }
+        int capacity = size == 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+        this.slots = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * @return token 数；未命中返回 -1
+     */
+    int get(long hash) {
+        long slot = slots.get((int) hash & mask);
+        return (int) (slot >>> 32) == fingerprint(hash) ? (int) slot : -1;
+    }
+
+    void put(long hash, int tokens) {
+        slots.lazySet((int) hash & mask, (long) fingerprint(hash) << 32 | (tokens & 0xFFFFFFFFL));
+    }
+
+    /**
+     * 文本的 64 位哈希；FNV-1a 逐字符累加后做 murmur3 的 fmix64 扩散
+     *
+     * @param seed 编码名称的哈希；不同编码的同一文本是不同的键
+     */
+    static long hash(int seed, String text) {
+        long h = 0xcbf29ce484222325L ^ seed;
+        for (int i = 0; i < text.length(); i++) {
+            h ^= text.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * 指纹取哈希的高 32 位并置最低位为 1，空槽位（0）永远不会命中
+     */
+    private static int fingerprint(long hash) {
+        return (int) (hash >>> 32) | 1;
+    }
+
+}
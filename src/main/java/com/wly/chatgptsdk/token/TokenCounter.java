@@ -0,0 +1,174 @@
+package com.wly.chatgptsdk.token;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingRegistry;
+import com.knuddels.jtokkit.api.EncodingType;
+import com.knuddels.jtokkit.api.ModelType;
+import com.wly.chatgptsdk.domain.chat.ChatCompletionRequest;
+import com.wly.chatgptsdk.domain.chat.Message;
+import com.wly.chatgptsdk.domain.embedd.EmbeddingRequest;
+import com.wly.chatgptsdk.domain.qa.QACompletionRequest;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * token 计数
+ * 在发送请求前估算 token 数量，提前发现上下文超限，而不是等待一次失败的请求。
+ * 编码器按模型选择并在全局共享，jtokkit 的编码器是不可变对象，可以被多个线程同时使用。
+ * 对话消息的计数按 (编码, 文本) 的哈希缓存，多轮对话中重复出现的历史消息不会被反复编码；缓存无锁，限流器每次放行都会查询它。
+ * 对话的计数规则参考 OpenAI cookbook：每条消息额外 3 个 token，name 额外 1 个，回复前缀 3 个。
+ */
+public class TokenCounter {
+
+    private static final EncodingRegistry ENCODING_REGISTRY = Encodings.newDefaultEncodingRegistry();
+
+    private static final TokenCounter INSTANCE = new TokenCounter(4096);
+
+    /** 每条消息的固定开销；<|start|>{role/name}\n{content}<|end|>\n */
+    private static final int TOKENS_PER_MESSAGE = 3;
+    /** 消息带 name 时的额外开销 */
+    private static final int TOKENS_PER_NAME = 1;
+    /** 回复以 <|start|>assistant<|message|> 开头；每个对话请求计一次 */
+    public static final int TOKENS_REPLY_PRIMING = 3;
+
+    /** gpt-3.5-turbo-0301 的消息格式不同：每条消息 4 个 token，name 替代 role 时少 1 个 */
+    private static final String GPT_3_5_TURBO_0301 = "gpt-3.5-turbo-0301";
+
+    private final Map<String, Encoding> encodings = new ConcurrentHashMap<>();
+    private final TokenCountCache cache;
+
+    /**
+     * @param cacheSize 缓存的消息文本条数；向上取整为 2 的幂
+     */
+    public TokenCounter(int cacheSize) {
+        this.cache = new TokenCountCache(cacheSize);
+    }
+
+    /**
+     * 全局共享的计数器
+     */
+    public static TokenCounter getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 模型对应的编码器；jtokkit 不认识的模型按名称前缀推断，gpt-3.5、gpt-4 与 embedding 模型均为 cl100k_base
+     *
+     * @param model 模型名称；为空时使用 cl100k_base
+     * @return 编码器
+     */
+    public Encoding encoding(String model) {
+        if (null == model) return ENCODING_REGISTRY.getEncoding(EncodingType.CL100K_BASE);
+        return encodings.computeIfAbsent(model, name -> {
+            Optional<ModelType> modelType = ModelType.fromName(name);
+            if (modelType.isPresent()) {
+                return ENCODING_REGISTRY.getEncodingForModel(modelType.get());
+            }
+            if (name.startsWith("text-davinci-") || name.startsWith("code-")) {
+                return ENCODING_REGISTRY.getEncoding(EncodingType.P50K_BASE);
+            }
+            if (name.equals("davinci") || name.equals("curie") || name.equals("babbage") || name.equals("ada")) {
+                return ENCODING_REGISTRY.getEncoding(EncodingType.R50K_BASE);
+            }
+            return ENCODING_REGISTRY.getEncoding(EncodingType.CL100K_BASE);
+        });
+    }
+
+    /**
+     * 文本 token 数；特殊标记按普通文本计数
+     *
+     * @param model 模型名称
+     * @param text  文本
+     * @return token 数
+     */
+    public int count(String model, String text) {
+        if (null == text || text.isEmpty()) return 0;
+        return encoding(model).countTokensOrdinary(text);
+    }
+
+    /**
+     * 对话请求的 prompt token 数；包含消息格式开销与回复前缀
+     *
+     * @param chatCompletionRequest 请求信息
+     * @return token 数
+     */
+    public int count(ChatCompletionRequest chatCompletionRequest) {
+        return count(chatCompletionRequest.getModel(), chatCompletionRequest.getMessages());
+    }
+
+    /**
+     * 消息列表的 token 数；包含消息格式开销与回复前缀
+     *
+     * @param model    模型名称
+     * @param messages 消息列表
+     * @return token 数
+     */
+    public int count(String model, List<Message> messages) {
+        int tokens = TOKENS_REPLY_PRIMING;
+        if (null == messages) return tokens;
+        for (Message message : messages) {
+            tokens += count(model, message);
+        }
+        return tokens;
+    }
+
+    /**
+     * 单条消息的 token 数；包含消息格式开销，不含回复前缀
+     *
+     * @param model   模型名称
+     * @param message 消息
+     * @return token 数
+     */
+    public int count(String model, Message message) {
+        boolean legacy = GPT_3_5_TURBO_0301.equals(model);
+        Encoding encoding = encoding(model);
+        int tokens = legacy ? 4 : TOKENS_PER_MESSAGE;
+        tokens += cached(encoding, message.getRole());
+        tokens += cached(encoding, message.getContent());
+        if (null != message.getName()) {
+            tokens += cached(encoding, message.getName()) + (legacy ? -1 : TOKENS_PER_NAME);
+        }
+        return tokens;
+    }
+
+    /**
+     * 文本问答请求的 prompt token 数
+     *
+     * @param qaCompletionRequest 请求信息
+     * @return token 数
+     */
+    public int count(QACompletionRequest qaCompletionRequest) {
+        String model = qaCompletionRequest.getModel();
+        return count(model, qaCompletionRequest.getPrompt()) + count(model, qaCompletionRequest.getSuffix());
+    }
+
+    /**
+     * 向量请求的 token 数；各条输入之和
+     *
+     * @param embeddingRequest 请求信息
+     * @return token 数
+     */
+    public int count(EmbeddingRequest embeddingRequest) {
+        int tokens = 0;
+        for (String input : embeddingRequest.getInput()) {
+            tokens += count(embeddingRequest.getModel(), input);
+        }
+        return tokens;
+    }
+
+    private int cached(Encoding encoding, String text) {
+        if (null == text || text.isEmpty()) return 0;
+        long hash = TokenCountCache.hash(encoding.getName().hashCode(), text);
+        int tokens = cache.get(hash);
+        if (tokens < 0) {
+            tokens = encoding.countTokensOrdinary(text);
+            cache.put(hash, tokens);
+        }
+        return tokens;
+    }
+
+}
@@ -0,0 +1,224 @@
+package com.wly.chatgptsdk.cache;
+
+import com.wly.chatgptsdk.domain.chat.ChatCompletionRequest;
+import com.wly.chatgptsdk.domain.chat.ChatCompletionResponse;
+import com.wly.chatgptsdk.domain.chat.Message;
+import com.wly.chatgptsdk.mock.LatencyProfile;
+import com.wly.chatgptsdk.mock.MockOpenAiServer;
+import com.wly.chatgptsdk.session.Configuration;
+import com.wly.chatgptsdk.session.OpenAiSession;
+import com.wly.chatgptsdk.session.defaults.DefaultOpenAiSessionFactory;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.sse.EventSource;
+import okhttp3.sse.EventSourceListener;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 请求合并测试；基于 MockOpenAiServer
+ */
+public class RequestCoalescerTest {
+
+    private MockOpenAiServer server;
+    private RequestCoalescer requestCoalescer;
+    private OpenAiSession session;
+
+    @Before
+    public void start() throws Exception {
+        // 首 token 之前等待 300ms，保证同一批请求同时在途
+        server = MockOpenAiServer.builder()
+                .tokens(6)
+                .latency(LatencyProfile.builder().timeToFirstToken(300, TimeUnit.MILLISECONDS).build())
+                .build().start();
+        requestCoalescer = new RequestCoalescer();
+        Configuration configuration = new Configuration();
+        configuration.setApiHost(server.url());
+        configuration.setApiKey("k");
+        configuration.setRequestCoalescer(requestCoalescer);
+        session = new DefaultOpenAiSessionFactory(configuration).openSession();
+    }
+
+    @After
+    public void close() {
+        server.close();
+    }
+
+    @Test
+    public void test_aggregated_streams_coalesced() throws Exception {
+        List<CompletableFuture<String>> contents = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            contents.add(session.chatCompletions(chatRequest()));
+        }
+        CompletableFuture<ChatCompletionResponse> aggregated = session.chatCompletionsAggregated(chatRequest());
+        String content = aggregated.get(5, TimeUnit.SECONDS).getChoices().get(0).getMessage().getContent();
+        Assert.assertFalse(content.isEmpty());
+        for (CompletableFuture<String> future : contents) {
+            Assert.assertEquals(content, future.get(5, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(1, server.requestCount());
+        Assert.assertEquals(0, requestCoalescer.inFlight());
+    }
+
+    @Test
+    public void test_cancel_one_member() throws Exception {
+        CompletableFuture<ChatCompletionResponse> cancelled = session.chatCompletionsAggregated(chatRequest());
+        CompletableFuture<ChatCompletionResponse> kept = session.chatCompletionsAggregated(chatRequest());
+        cancelled.cancel(false);
+        // 取消一个成员不影响共享同一上游的其他成员
+        Assert.assertFalse(kept.get(5, TimeUnit.SECONDS).getChoices().isEmpty());
+        Assert.assertEquals(1, server.requestCount());
+    }
+
+    @Test
+    public void test_cancel_all_members() throws Exception {
+        CompletableFuture<ChatCompletionResponse> first = session.chatCompletionsAggregated(chatRequest());
+        CompletableFuture<ChatCompletionResponse> second = session.chatCompletionsAggregated(chatRequest());
+        Assert.assertEquals(1, requestCoalescer.inFlight());
+        first.cancel(false);
+        second.cancel(false);
+        // 所有成员都取消后上游随之取消，之后的相同请求重新发起
+        Assert.assertEquals(0, requestCoalescer.inFlight());
+        Assert.assertFalse(session.chatCompletionsAggregated(chatRequest()).get(5, TimeUnit.SECONDS).getChoices().isEmpty());
+    }
+
+    @Test
+    public void test_cancel_during_replay() {
+        StubEventSource upstream = new StubEventSource();
+        Recorder first = new Recorder();
+        requestCoalescer.stream(chatRequest(), null, first, listener -> upstream.attach(listener));
+        upstream.listener.onEvent(upstream, null, null, "1");
+        upstream.listener.onEvent(upstream, null, null, "2");
+
+        // 后加入的监听在重放第一个事件时取消自己，不再收到后续重放
+        Recorder late = new Recorder() {
+            @Override
+            public void onEvent(@NotNull EventSource eventSource, String id, String type, @NotNull String data) {
+                super.onEvent(eventSource, id, type, data);
+                eventSource.cancel();
+            }
+        };
+        requestCoalescer.stream(chatRequest(), null, late, listener -> {
+            throw new AssertionError("expected to join the running stream");
+        });
+        Assert.assertEquals(Collections.singletonList("1"), late.events);
+
+        // 取消的监听已离开，第一个监听取消后上游随之取消
+        EventSource member = requestCoalescer.stream(chatRequest(), null, new Recorder(), listener -> {
+            throw new AssertionError("expected to join the running stream");
+        });
+        member.cancel();
+        Assert.assertFalse(upstream.cancelled);
+        first.eventSource.cancel();
+        Assert.assertTrue(upstream.cancelled);
+        Assert.assertEquals(0, requestCoalescer.inFlight());
+    }
+
+    @Test
+    public void test_throwing_member() {
+        StubEventSource upstream = new StubEventSource();
+        Recorder throwing = new Recorder() {
+            @Override
+            public void onEvent(@NotNull EventSource eventSource, String id, String type, @NotNull String data) {
+                throw new IllegalStateException("listener failure");
+            }
+        };
+        Recorder healthy = new Recorder();
+        requestCoalescer.stream(chatRequest(), null, throwing, listener -> upstream.attach(listener));
+        requestCoalescer.stream(chatRequest(), null, healthy, listener -> upstream.attach(listener));
+        upstream.listener.onEvent(upstream, null, null, "1");
+        upstream.listener.onEvent(upstream, null, null, "2");
+        upstream.listener.onClosed(upstream);
+
+        // 抛出异常的监听被移除并收到 onFailure，其余监听不受影响
+        Assert.assertTrue(throwing.failure instanceof IllegalStateException);
+        Assert.assertFalse(throwing.closed);
+        Assert.assertEquals(Arrays.asList("1", "2"), healthy.events);
+        Assert.assertTrue(healthy.closed);
+        Assert.assertFalse(upstream.cancelled);
+    }
+
+    @Test
+    public void test_last_member_throwing_cancels_upstream() {
+        StubEventSource upstream = new StubEventSource();
+        Recorder throwing = new Recorder() {
+            @Override
+            public void onEvent(@NotNull EventSource eventSource, String id, String type, @NotNull String data) {
+                throw new IllegalStateException("listener failure");
+            }
+        };
+        requestCoalescer.stream(chatRequest(), null, throwing, listener -> upstream.attach(listener));
+        upstream.listener.onEvent(upstream, null, null, "1");
+        Assert.assertTrue(upstream.cancelled);
+        Assert.assertEquals(0, requestCoalescer.inFlight());
+    }
+
+    private static ChatCompletionRequest chatRequest() {
+        ChatCompletionRequest request = new ChatCompletionRequest();
+        request.setStream(true);
+        request.setMessages(Collections.singletonList(Message.builder().content("hello").build()));
+        return request;
+    }
+
+    /**
+     * 手动驱动的上游事件源
+     */
+    private static final class StubEventSource implements EventSource {
+
+        private EventSourceListener listener;
+        private volatile boolean cancelled;
+
+        StubEventSource attach(EventSourceListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        @NotNull
+        @Override
+        public Request request() {
+            return new Request.Builder().url("http://localhost/v1/chat/completions").build();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+    }
+
+    private static class Recorder extends EventSourceListener {
+
+        private final List<String> events = new ArrayList<>();
+        private EventSource eventSource;
+        private Throwable failure;
+        private boolean closed;
+
+        @Override
+        public void onEvent(@NotNull EventSource eventSource, String id, String type, @NotNull String data) {
+            this.eventSource = eventSource;
+            events.add(data);
+        }
+
+        @Override
+        public void onClosed(@NotNull EventSource eventSource) {
+            closed = true;
+        }
+
+        @Override
+        public void onFailure(@NotNull EventSource eventSource, Throwable t, Response response) {
+            failure = t;
+        }
+
+    }
+
+}
@@ -0,0 +1,112 @@
+package com.wly.chatgptsdk.cache;
+
+import com.wly.chatgptsdk.domain.qa.QACompletionRequest;
+import com.wly.chatgptsdk.domain.qa.QACompletionResponse;
+import com.wly.chatgptsdk.mock.MockOpenAiServer;
+import com.wly.chatgptsdk.session.Configuration;
+import com.wly.chatgptsdk.session.OpenAiSession;
+import com.wly.chatgptsdk.session.defaults.DefaultOpenAiSessionFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 应答缓存测试；基于 MockOpenAiServer，以服务端收到的请求数判断是否命中
+ */
+public class ResponseCacheTest {
+
+    private MockOpenAiServer server;
+
+    @Before
+    public void start() throws Exception {
+        server = MockOpenAiServer.builder().tokens(5).build().start();
+    }
+
+    @After
+    public void close() {
+        server.close();
+    }
+
+    @Test
+    public void test_hit_skips_network() {
+        ResponseCache cache = new ResponseCache(16, 1, TimeUnit.MINUTES);
+        OpenAiSession session = session(cache);
+        QACompletionResponse first = session.completions(request("hello", 0));
+        QACompletionResponse second = session.completions(request("hello", 0));
+        Assert.assertEquals(1, server.requestCount());
+        Assert.assertEquals(first.getChoices()[0].getText(), second.getChoices()[0].getText());
+        // 每次命中都反序列化出新的对象
+        Assert.assertNotSame(first, second);
+        Assert.assertEquals(1, cache.hits());
+        Assert.assertEquals(1, cache.misses());
+        Assert.assertEquals(0.5, cache.hitRate(), 0);
+    }
+
+    @Test
+    public void test_temperature_bypass() {
+        ResponseCache cache = new ResponseCache(16, 1, TimeUnit.MINUTES);
+        OpenAiSession session = session(cache);
+        session.completions(request("hello", 0.7));
+        session.completions(request("hello", 0.7));
+        Assert.assertEquals(2, server.requestCount());
+        Assert.assertEquals(0, cache.hits());
+        Assert.assertEquals(0, cache.misses());
+    }
+
+    @Test
+    public void test_question_uses_cache() {
+        // completions(String) 构建的请求 temperature 为 0，与请求对象的版本共享缓存
+        ResponseCache cache = new ResponseCache(16, 1, TimeUnit.MINUTES);
+        OpenAiSession session = session(cache);
+        session.completions("hello");
+        session.completions("hello");
+        Assert.assertEquals(1, server.requestCount());
+        Assert.assertEquals(1, cache.hits());
+    }
+
+    @Test
+    public void test_ttl_expiry() throws Exception {
+        ResponseCache cache = new ResponseCache(16, 50, TimeUnit.MILLISECONDS);
+        OpenAiSession session = session(cache);
+        session.completions(request("hello", 0));
+        Thread.sleep(100);
+        session.completions(request("hello", 0));
+        Assert.assertEquals(2, server.requestCount());
+        Assert.assertEquals(0, cache.hits());
+        Assert.assertEquals(2, cache.misses());
+    }
+
+    @Test
+    public void test_lru_eviction() {
+        ResponseCache cache = new ResponseCache(2, 1, TimeUnit.MINUTES);
+        OpenAiSession session = session(cache);
+        session.completions(request("a", 0));
+        session.completions(request("b", 0));
+        // 访问 a 使其成为最近使用，随后写入 c 淘汰 b
+        session.completions(request("a", 0));
+        session.completions(request("c", 0));
+        Assert.assertEquals(3, server.requestCount());
+        session.completions(request("a", 0));
+        Assert.assertEquals(3, server.requestCount());
+        session.completions(request("b", 0));
+        Assert.assertEquals(4, server.requestCount());
+    }
+
+    private OpenAiSession session(ResponseCache cache) {
+        Configuration configuration = new Configuration();
+        configuration.setApiHost(server.url());
+        configuration.setApiKey("k");
+        configuration.setResponseCache(cache);
+        return new DefaultOpenAiSessionFactory(configuration).openSession();
+    }
+
+    private static QACompletionRequest request(String prompt, double temperature) {
+        QACompletionRequest request = QACompletionRequest.builder().prompt(prompt).build();
+        request.setTemperature(temperature);
+        return request;
+    }
+
+}
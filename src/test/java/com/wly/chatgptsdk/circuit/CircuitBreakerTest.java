@@ -0,0 +1,152 @@
+package com.wly.chatgptsdk.circuit;
+
+import com.wly.chatgptsdk.domain.chat.ChatCompletionRequest;
+import com.wly.chatgptsdk.domain.chat.Message;
+import com.wly.chatgptsdk.mock.FaultProfile;
+import com.wly.chatgptsdk.mock.MockOpenAiServer;
+import com.wly.chatgptsdk.session.Configuration;
+import com.wly.chatgptsdk.session.OpenAiSession;
+import com.wly.chatgptsdk.session.defaults.DefaultOpenAiSessionFactory;
+import okhttp3.HttpUrl;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 熔断器测试；会话级测试基于 MockOpenAiServer
+ */
+public class CircuitBreakerTest {
+
+    @Test
+    public void test_open_and_half_open() throws Exception {
+        List<CircuitBreaker.State> transitions = new ArrayList<>();
+        CircuitBreakerRegistry registry = CircuitBreakerRegistry.builder()
+                .windowSize(10)
+                .minimumCalls(4)
+                .openDuration(50, TimeUnit.MILLISECONDS)
+                .halfOpenCalls(2)
+                .listener((name, from, to) -> transitions.add(to))
+                .build();
+        CircuitBreaker breaker = registry.breaker("api.openai.com", "/v1/chat/completions");
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(breaker.tryAcquire());
+            breaker.record(i % 2 == 0, 0);
+        }
+        Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        Assert.assertFalse(breaker.tryAcquire());
+        Assert.assertFalse(registry.isHealthy());
+
+        Thread.sleep(60);
+        Assert.assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        Assert.assertTrue(breaker.tryAcquire());
+        Assert.assertTrue(breaker.tryAcquire());
+        // 探测名额用完
+        Assert.assertFalse(breaker.tryAcquire());
+        breaker.record(false, 0);
+        breaker.record(false, 0);
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        Assert.assertTrue(registry.isHealthy());
+        Assert.assertEquals(Arrays.asList(CircuitBreaker.State.OPEN, CircuitBreaker.State.HALF_OPEN, CircuitBreaker.State.CLOSED), transitions);
+    }
+
+    @Test
+    public void test_slow_calls() {
+        CircuitBreakerRegistry registry = CircuitBreakerRegistry.builder()
+                .windowSize(4)
+                .minimumCalls(4)
+                .halfOpenCalls(2)
+                .slowCallRateThreshold(0.5f)
+                .slowCallDuration(10, TimeUnit.MILLISECONDS)
+                .build();
+        CircuitBreaker breaker = registry.breaker("localhost", "/v1/embeddings");
+        breaker.record(false, 0);
+        breaker.record(false, 0);
+        breaker.record(false, TimeUnit.MILLISECONDS.toNanos(20));
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.record(false, TimeUnit.MILLISECONDS.toNanos(20));
+        Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void test_fail_fast_when_open() throws Exception {
+        FaultProfile faults = FaultProfile.builder().serverError(1).serverErrorStatus(503).build();
+        try (MockOpenAiServer server = MockOpenAiServer.builder().faults(faults).build().start()) {
+            CircuitBreakerRegistry registry = CircuitBreakerRegistry.builder()
+                    .windowSize(10)
+                    .minimumCalls(5)
+                    .openDuration(1, TimeUnit.MINUTES)
+                    .build();
+            Configuration configuration = new Configuration();
+            configuration.setApiHost(server.url());
+            configuration.setApiKey("k");
+            configuration.setCircuitBreakers(registry);
+            OpenAiSession session = new DefaultOpenAiSessionFactory(configuration).openSession();
+
+            for (int i = 0; i < 5; i++) {
+                try {
+                    session.completions(chatRequest());
+                    Assert.fail("expected server error");
+                } catch (RuntimeException expected) {
+                    Assert.assertFalse(causedBy(expected, CircuitOpenException.class));
+                }
+            }
+            Assert.assertEquals(Collections.singletonMap(host(server) + "/v1/chat/completions", CircuitBreaker.State.OPEN), registry.states());
+
+            // 打开期间直接失败，请求不再到达服务端
+            try {
+                session.completions(chatRequest());
+                Assert.fail("expected circuit open");
+            } catch (RuntimeException expected) {
+                Assert.assertTrue(causedBy(expected, CircuitOpenException.class));
+            }
+            Assert.assertEquals(5, server.requestCount());
+        }
+    }
+
+    @Test
+    public void test_breaker_per_endpoint_template() throws Exception {
+        try (MockOpenAiServer server = MockOpenAiServer.builder().build().start()) {
+            CircuitBreakerRegistry registry = CircuitBreakerRegistry.builder().build();
+            Configuration configuration = new Configuration();
+            configuration.setApiHost(server.url());
+            configuration.setApiKey("k");
+            configuration.setCircuitBreakers(registry);
+            OpenAiSession session = new DefaultOpenAiSessionFactory(configuration).openSession();
+
+            // 不同的文件 id 共用 v1/files/{file_id} 的熔断器
+            for (String fileId : Arrays.asList("file-a", "file-b", "file-c")) {
+                try {
+                    session.deleteFile(fileId);
+                } catch (RuntimeException expected) {
+                    // 文件不存在
+                }
+            }
+            Assert.assertEquals(Collections.singleton(host(server) + "/v1/files/{file_id}"), registry.states().keySet());
+            Assert.assertEquals(3, server.requestCount());
+        }
+    }
+
+    private static String host(MockOpenAiServer server) {
+        HttpUrl url = HttpUrl.get(server.url());
+        return url.host() + ":" + url.port();
+    }
+
+    private static boolean causedBy(Throwable t, Class<? extends Throwable> type) {
+        for (Throwable cause = t; null != cause; cause = cause.getCause()) {
+            if (type.isInstance(cause)) return true;
+        }
+        return false;
+    }
+
+    private static ChatCompletionRequest chatRequest() {
+        ChatCompletionRequest request = new ChatCompletionRequest();
+        request.setMessages(Collections.singletonList(Message.builder().content("hello").build()));
+        return request;
+    }
+
+}
@@ -0,0 +1,42 @@
+package com.wly.chatgptsdk.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 虚拟线程支持测试；结果取决于运行测试的 JDK
+ */
+public class VirtualThreadsTest {
+
+    private static final boolean JAVA_21 = !System.getProperty("java.specification.version").startsWith("1.")
+            && Integer.parseInt(System.getProperty("java.specification.version")) >= 21;
+
+    @Test
+    public void test_virtual_threads() throws Exception {
+        Assert.assertEquals(JAVA_21, VirtualThreads.isSupported());
+        if (!JAVA_21) {
+            try {
+                VirtualThreads.newExecutor("test");
+                Assert.fail("expected unsupported");
+            } catch (UnsupportedOperationException expected) {
+                // Java 21 以下
+            }
+            return;
+        }
+        ExecutorService executor = VirtualThreads.newExecutor("test");
+        try {
+            String name = executor.submit(() -> Thread.currentThread().getName()).get(5, TimeUnit.SECONDS);
+            Assert.assertEquals("test-0", name);
+            Thread thread = VirtualThreads.factory("f").newThread(() -> {
+            });
+            Assert.assertEquals("f-0", thread.getName());
+            Assert.assertTrue(thread.isDaemon());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+}
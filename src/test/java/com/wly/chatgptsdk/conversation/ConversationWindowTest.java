@@ -0,0 +1,116 @@
+package com.wly.chatgptsdk.conversation;
+
+import com.wly.chatgptsdk.common.Constants;
+import com.wly.chatgptsdk.domain.chat.Message;
+import com.wly.chatgptsdk.token.TokenCounter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 对话窗口测试
+ */
+public class ConversationWindowTest {
+
+    private static final String MODEL = "gpt-4";
+    private static final TokenCounter COUNTER = new TokenCounter(64);
+
+    @Test
+    public void test_trim_whole_turns() {
+        // 预算恰好容纳 system 与最近两轮
+        List<Message> history = Arrays.asList(
+                user("question one"), assistant("answer one"),
+                user("question two"), assistant("answer two"),
+                user("question three"), assistant("answer three"));
+        Message system = system("be brief");
+        ConversationWindow window = window(tokens(system, history.get(2), history.get(3), history.get(4), history.get(5)));
+        window.append(system);
+        for (Message message : history) {
+            window.append(message);
+        }
+        Assert.assertEquals(Arrays.asList("be brief", "question two", "answer two", "question three", "answer three"), contents(window));
+        Assert.assertEquals(COUNTER.count(MODEL, window.messages()), window.promptTokens());
+    }
+
+    @Test
+    public void test_never_keep_orphan_reply() {
+        // 只丢弃提问就够了，但回答随提问一起丢弃
+        Message question = user("q");
+        Message answer = assistant("a fairly long answer that takes up several tokens of the budget");
+        Message next = user("a follow up question that is long enough to force trimming of the first turn");
+        ConversationWindow window = window(tokens(answer, next));
+        window.append(question).append(answer).append(next);
+        Assert.assertEquals(Arrays.asList(next.getContent()), contents(window));
+    }
+
+    @Test
+    public void test_pinned_system_messages() {
+        Message system = system("you are a translator");
+        Message first = user("first question");
+        Message second = user("second question");
+        ConversationWindow window = window(tokens(system, second));
+        window.append(system).append(first).append(second);
+        Assert.assertEquals(Arrays.asList("you are a translator", "second question"), contents(window));
+        window.clear();
+        Assert.assertEquals(Arrays.asList("you are a translator"), contents(window));
+    }
+
+    @Test
+    public void test_system_message_evicts_turns() {
+        Message first = user("first question");
+        Message system = system("you are a translator");
+        ConversationWindow window = window(tokens(system));
+        window.append(first).append(system);
+        Assert.assertEquals(Arrays.asList("you are a translator"), contents(window));
+    }
+
+    @Test
+    public void test_over_budget() {
+        Message system = system("you are a translator");
+        ConversationWindow window = window(tokens(system, user("short")));
+        window.append(system);
+        try {
+            window.append(user("a message that is far too long to fit into what is left of the budget"));
+            Assert.fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // 窗口不变
+            Assert.assertEquals(Arrays.asList("you are a translator"), contents(window));
+        }
+    }
+
+    /**
+     * 预算恰好为给定消息的 prompt token 数的窗口
+     */
+    private static ConversationWindow window(int budget) {
+        int maxTokens = 100;
+        return new ConversationWindow(MODEL, budget + maxTokens, maxTokens, COUNTER);
+    }
+
+    private static int tokens(Message... messages) {
+        return COUNTER.count(MODEL, Arrays.asList(messages));
+    }
+
+    private static List<String> contents(ConversationWindow window) {
+        List<String> contents = new ArrayList<>();
+        for (Message message : window.messages()) {
+            contents.add(message.getContent());
+        }
+        return contents;
+    }
+
+    private static Message system(String content) {
+        return Message.builder().role(Constants.Role.SYSTEM).content(content).build();
+    }
+
+    private static Message user(String content) {
+        return Message.builder().role(Constants.Role.USER).content(content).build();
+    }
+
+    private static Message assistant(String content) {
+        return Message.builder().role(Constants.Role.ASSISTANT).content(content).build();
+    }
+
+}
@@ -0,0 +1,184 @@
+package com.wly.chatgptsdk.embedding;
+
+import com.wly.chatgptsdk.domain.embedd.EmbeddingRequest;
+import com.wly.chatgptsdk.domain.embedd.FloatEmbeddingResponse;
+import com.wly.chatgptsdk.domain.embedd.FloatItem;
+import com.wly.chatgptsdk.session.OpenAiAsyncSession;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 批量向量计算测试
+ */
+public class BatchEmbeddingEngineTest {
+
+    @Test
+    public void test_restore_input_order() throws Exception {
+        // 应答按倒序返回，index 指向请求内的位置
+        BatchEmbeddingEngine engine = engine(request -> {
+            List<Integer> indices = new ArrayList<>();
+            for (int i = 0; i < request.getInput().size(); i++) indices.add(i);
+            Collections.reverse(indices);
+            return response(request, indices);
+        }, new AtomicInteger());
+        float[][] vectors = engine.embed(Arrays.asList("a", "b", "c", "d", "e")).get(5, TimeUnit.SECONDS);
+        for (int i = 0; i < vectors.length; i++) {
+            Assert.assertEquals(String.valueOf((char) ('a' + i)).hashCode(), vectors[i][0], 0);
+        }
+    }
+
+    @Test
+    public void test_duplicate_index() throws Exception {
+        assertFails(request -> response(request, Arrays.asList(0, 0)));
+    }
+
+    @Test
+    public void test_index_out_of_range() throws Exception {
+        assertFails(request -> response(request, Arrays.asList(0, 2)));
+    }
+
+    @Test
+    public void test_null_index() throws Exception {
+        assertFails(request -> response(request, Arrays.asList(0, null)));
+    }
+
+    @Test
+    public void test_stream_batches_in_order() throws Exception {
+        // 请求乱序完成，批次仍按输入顺序交付；在途请求不超过并发度
+        List<CompletableFuture<FloatEmbeddingResponse>> futures = new ArrayList<>();
+        List<EmbeddingRequest> requests = new ArrayList<>();
+        OpenAiAsyncSession session = session(request -> {
+            CompletableFuture<FloatEmbeddingResponse> future = new CompletableFuture<>();
+            requests.add(request);
+            futures.add(future);
+            return future;
+        });
+        BatchEmbeddingEngine engine = BatchEmbeddingEngine.builder().session(session).maxItemsPerRequest(2).parallelism(2).build();
+        List<Integer> offsets = new ArrayList<>();
+        List<float[]> vectors = new ArrayList<>();
+        CompletableFuture<Void> done = engine.embed(Arrays.asList("a", "b", "c", "d", "e"), 0, (offset, batch) -> {
+            offsets.add(offset);
+            vectors.addAll(Arrays.asList(batch));
+        });
+        Assert.assertEquals(2, futures.size());
+        futures.get(1).complete(response(requests.get(1), Arrays.asList(0, 1)));
+        Assert.assertTrue(offsets.isEmpty());
+        // 第二批完成但未交付，窗口未释放
+        Assert.assertEquals(2, futures.size());
+        futures.get(0).complete(response(requests.get(0), Arrays.asList(1, 0)));
+        Assert.assertEquals(Arrays.asList(0, 2), offsets);
+        Assert.assertEquals(3, futures.size());
+        futures.get(2).complete(response(requests.get(2), Collections.singletonList(0)));
+        done.get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(Arrays.asList(0, 2, 4), offsets);
+        for (int i = 0; i < vectors.size(); i++) {
+            Assert.assertEquals(String.valueOf((char) ('a' + i)).hashCode(), vectors.get(i)[0], 0);
+        }
+    }
+
+    @Test
+    public void test_resume_after_failure() throws Exception {
+        List<String> inputs = Arrays.asList("a", "b", "c", "d", "e", "f");
+        AtomicInteger calls = new AtomicInteger();
+        BatchEmbeddingEngine failing = engine(request -> {
+            if (request.getInput().contains("c")) throw new IllegalStateException("upstream failure");
+            return response(request, Arrays.asList(0, 1));
+        }, calls);
+        int[] next = {0};
+        try {
+            failing.embed(inputs, 0, (offset, batch) -> next[0] = offset + batch.length).get(5, TimeUnit.SECONDS);
+            Assert.fail("expected failure");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        Assert.assertEquals(2, next[0]);
+
+        // 从上次交付的位置续跑，之前的输入不再请求
+        List<String> sent = new ArrayList<>();
+        BatchEmbeddingEngine engine = engine(request -> {
+            sent.addAll(request.getInput());
+            return response(request, Arrays.asList(0, 1));
+        }, new AtomicInteger());
+        List<Integer> offsets = new ArrayList<>();
+        engine.embed(inputs, next[0], (offset, batch) -> offsets.add(offset)).get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(Arrays.asList("c", "d", "e", "f"), sent);
+        Assert.assertEquals(Arrays.asList(2, 4), offsets);
+    }
+
+    @Test
+    public void test_consumer_failure_stops_job() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        BatchEmbeddingEngine engine = engine(request -> response(request, Arrays.asList(0, 1)), calls);
+        try {
+            engine.embed(Arrays.asList("a", "b", "c", "d"), 0, (offset, batch) -> {
+                throw new IOException("disk full");
+            }).get(5, TimeUnit.SECONDS);
+            Assert.fail("expected failure");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+        Assert.assertEquals(1, calls.get());
+    }
+
+    private static void assertFails(Function<EmbeddingRequest, FloatEmbeddingResponse> responder) throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        BatchEmbeddingEngine engine = engine(responder, calls);
+        try {
+            engine.embed(Arrays.asList("a", "b", "c", "d", "e", "f")).get(5, TimeUnit.SECONDS);
+            Assert.fail("expected failure");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        // 失败后不再切分新的请求
+        Assert.assertEquals(1, calls.get());
+    }
+
+    private static BatchEmbeddingEngine engine(Function<EmbeddingRequest, FloatEmbeddingResponse> responder, AtomicInteger calls) {
+        OpenAiAsyncSession session = session(request -> {
+            calls.incrementAndGet();
+            CompletableFuture<FloatEmbeddingResponse> future = new CompletableFuture<>();
+            try {
+                future.complete(responder.apply(request));
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+            return future;
+        });
+        return BatchEmbeddingEngine.builder().session(session).maxItemsPerRequest(2).parallelism(1).build();
+    }
+
+    private static OpenAiAsyncSession session(Function<EmbeddingRequest, CompletableFuture<FloatEmbeddingResponse>> embeddings) {
+        return (OpenAiAsyncSession) Proxy.newProxyInstance(
+                OpenAiAsyncSession.class.getClassLoader(), new Class<?>[]{OpenAiAsyncSession.class}, (proxy, method, args) -> {
+                    if (!"floatEmbeddings".equals(method.getName())) throw new UnsupportedOperationException(method.getName());
+                    return embeddings.apply((EmbeddingRequest) args[0]);
+                });
+    }
+
+    private static FloatEmbeddingResponse response(EmbeddingRequest request, List<Integer> indices) {
+        List<FloatItem> items = new ArrayList<>();
+        for (Integer index : indices) {
+            FloatItem item = new FloatItem();
+            item.setIndex(index);
+            String input = null == index || index >= request.getInput().size() ? "?" : request.getInput().get(index);
+            item.setEmbedding(new float[]{input.hashCode()});
+            items.add(item);
+        }
+        FloatEmbeddingResponse response = new FloatEmbeddingResponse();
+        response.setData(items);
+        return response;
+    }
+
+}
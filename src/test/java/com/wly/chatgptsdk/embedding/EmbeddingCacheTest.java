@@ -0,0 +1,78 @@
+package com.wly.chatgptsdk.embedding;
+
+import com.wly.chatgptsdk.domain.embedd.EmbeddingRequest;
+import com.wly.chatgptsdk.domain.embedd.FloatEmbeddingResponse;
+import com.wly.chatgptsdk.domain.embedd.FloatItem;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 向量缓存测试
+ */
+public class EmbeddingCacheTest {
+
+    private static final String MODEL = EmbeddingRequest.Model.TEXT_EMBEDDING_ADA_002.getCode();
+
+    @Test
+    public void test_merge_misses() {
+        EmbeddingCache cache = new EmbeddingCache(16);
+        cache.put(MODEL, "b", new float[]{2});
+        EmbeddingCache.Lookup lookup = cache.lookup(request("a", "b", "c"));
+        Assert.assertEquals(Arrays.asList("a", "c"), lookup.misses);
+        float[][] vectors = lookup.merge(response(new Integer[]{1, 0}, new float[]{3}, new float[]{1}));
+        Assert.assertEquals(1, vectors[0][0], 0);
+        Assert.assertEquals(2, vectors[1][0], 0);
+        Assert.assertEquals(3, vectors[2][0], 0);
+        Assert.assertEquals(3, cache.get(MODEL, "c")[0], 0);
+    }
+
+    @Test
+    public void test_duplicate_index() {
+        assertRejected(new Integer[]{0, 0});
+    }
+
+    @Test
+    public void test_index_out_of_range() {
+        assertRejected(new Integer[]{0, 2});
+    }
+
+    @Test
+    public void test_null_index() {
+        assertRejected(new Integer[]{0, null});
+    }
+
+    private static void assertRejected(Integer[] indices) {
+        EmbeddingCache cache = new EmbeddingCache(16);
+        EmbeddingCache.Lookup lookup = cache.lookup(request("a", "b"));
+        try {
+            lookup.merge(response(indices, new float[]{1}, new float[]{2}));
+            Assert.fail("expected failure");
+        } catch (IllegalStateException e) {
+            // 校验失败时不写入缓存
+            Assert.assertNull(cache.get(MODEL, "a"));
+            Assert.assertNull(cache.get(MODEL, "b"));
+        }
+    }
+
+    private static EmbeddingRequest request(String... inputs) {
+        return EmbeddingRequest.builder().model(MODEL).input(Arrays.asList(inputs)).build();
+    }
+
+    private static FloatEmbeddingResponse response(Integer[] indices, float[]... embeddings) {
+        List<FloatItem> items = new ArrayList<>();
+        for (int i = 0; i < indices.length; i++) {
+            FloatItem item = new FloatItem();
+            item.setIndex(indices[i]);
+            item.setEmbedding(embeddings[i]);
+            items.add(item);
+        }
+        FloatEmbeddingResponse response = new FloatEmbeddingResponse();
+        response.setData(items);
+        return response;
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.wly.chatgptsdk.embedding;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 精确检索向量索引测试
+ */
+public class FlatVectorIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void test_search() {
+        FlatVectorIndex index = new FlatVectorIndex(3);
+        index.add(1, new float[]{1, 0, 0});
+        index.add(2, new float[]{0, 1, 0});
+        index.add(3, new float[]{1, 1, 0});
+        List<SearchResult> results = index.search(new float[]{2, 0, 0}, 2);
+        Assert.assertEquals(1, results.get(0).getId());
+        Assert.assertEquals(1f, results.get(0).getScore(), 1e-6);
+        Assert.assertEquals(3, results.get(1).getId());
+    }
+
+    @Test
+    public void test_remove() {
+        FlatVectorIndex index = new FlatVectorIndex(3);
+        index.add(1, new float[]{1, 0, 0});
+        index.add(2, new float[]{0, 1, 0});
+        index.add(3, new float[]{0, 0, 1});
+        Assert.assertTrue(index.remove(1));
+        Assert.assertFalse(index.remove(1));
+        Assert.assertEquals(2, index.size());
+        // 最后一个向量移入空位后仍可检索
+        Assert.assertEquals(3, index.search(new float[]{0, 0, 1}, 1).get(0).getId());
+        Assert.assertEquals(2, index.search(new float[]{1, 0, 0}, 3).size());
+    }
+
+    @Test
+    public void test_dot_matches_naive_sum() {
+        Random random = new Random(3);
+        for (int length = 0; length < 20; length++) {
+            float[] a = HnswIndexTest.randomVector(random);
+            float[] b = HnswIndexTest.randomVector(random);
+            double expected = 0;
+            for (int i = 0; i < length; i++) {
+                expected += a[i] * b[i];
+            }
+            Assert.assertEquals(expected, VectorMath.dot(a, 0, b, length), 1e-4);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_capacity_limit() throws Exception {
+        // 2^20 个 2^20 维的向量超出单个数组的容量，读取快照时直接拒绝，不会因乘法溢出分配错误大小的数组
+        Path path = folder.getRoot().toPath().resolve("huge.bin");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(path))) {
+            out.writeInt(0x464C4154);
+            out.writeInt(1 << 20);
+            out.writeInt(1 << 20);
+        }
+        FlatVectorIndex.load(path);
+    }
+
+    @Test
+    public void test_save_load() throws Exception {
+        Random random = new Random(5);
+        FlatVectorIndex index = new FlatVectorIndex(32);
+        for (int i = 0; i < 100; i++) {
+            index.add(i, HnswIndexTest.randomVector(random));
+        }
+        index.remove(50);
+        Path path = folder.getRoot().toPath().resolve("flat.bin");
+        index.save(path);
+        FlatVectorIndex loaded = FlatVectorIndex.load(path);
+        Assert.assertEquals(99, loaded.size());
+        for (int i = 0; i < 10; i++) {
+            float[] query = HnswIndexTest.randomVector(random);
+            Assert.assertEquals(HnswIndexTest.ids(index.search(query, 5)), HnswIndexTest.ids(loaded.search(query, 5)));
+        }
+    }
+
+}
@@ -0,0 +1,188 @@
+package com.wly.chatgptsdk.embedding;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * HNSW 向量索引测试；以精确检索的结果为基准
+ */
+public class HnswIndexTest {
+
+    private static final int DIMENSIONS = 32;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void test_recall() {
+        Random random = new Random(7);
+        HnswIndex hnsw = HnswIndex.builder(DIMENSIONS).build();
+        FlatVectorIndex flat = new FlatVectorIndex(DIMENSIONS);
+        for (int i = 0; i < 5000; i++) {
+            float[] vector = randomVector(random);
+            hnsw.add(i, vector);
+            flat.add(i, vector);
+        }
+        Assert.assertTrue(recall(hnsw, flat, random, 100, 10) >= 0.9);
+    }
+
+    @Test
+    public void test_remove() {
+        Random random = new Random(11);
+        HnswIndex index = HnswIndex.builder(DIMENSIONS).build();
+        float[][] vectors = new float[500][];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = randomVector(random);
+            index.add(i, vectors[i]);
+        }
+        Assert.assertTrue(index.remove(42));
+        Assert.assertFalse(index.remove(42));
+        Assert.assertEquals(499, index.size());
+        for (SearchResult result : index.search(vectors[42], 10)) {
+            Assert.assertNotEquals(42, result.getId());
+        }
+        Assert.assertEquals(43, index.search(vectors[43], 1).get(0).getId());
+    }
+
+    @Test
+    public void test_compact() {
+        Random random = new Random(13);
+        HnswIndex hnsw = HnswIndex.builder(DIMENSIONS).build();
+        FlatVectorIndex flat = new FlatVectorIndex(DIMENSIONS);
+        for (int i = 0; i < 3000; i++) {
+            float[] vector = randomVector(random);
+            hnsw.add(i, vector);
+            flat.add(i, vector);
+        }
+        // 删除超过一半的向量，触发自动重建
+        for (int i = 0; i < 2000; i++) {
+            hnsw.remove(i);
+            flat.remove(i);
+        }
+        Assert.assertEquals(1000, hnsw.size());
+        Assert.assertTrue(recall(hnsw, flat, random, 100, 10) >= 0.9);
+        hnsw.compact();
+        Assert.assertEquals(1000, hnsw.size());
+        Assert.assertTrue(recall(hnsw, flat, random, 100, 10) >= 0.9);
+    }
+
+    @Test
+    public void test_save_load() throws Exception {
+        Random random = new Random(17);
+        HnswIndex index = HnswIndex.builder(DIMENSIONS).m(8).efSearch(32).build();
+        for (int i = 0; i < 1000; i++) {
+            index.add(i, randomVector(random));
+        }
+        index.remove(3);
+        Path path = folder.getRoot().toPath().resolve("hnsw.bin");
+        index.save(path);
+        HnswIndex loaded = HnswIndex.load(path);
+        Assert.assertEquals(index.size(), loaded.size());
+        for (int i = 0; i < 20; i++) {
+            float[] query = randomVector(random);
+            Assert.assertEquals(ids(index.search(query, 10)), ids(loaded.search(query, 10)));
+        }
+    }
+
+    @Test
+    public void test_load_rejects_corrupt_entry_point() throws Exception {
+        // 头部依次为 magic、version、dimensions、m、efConstruction、efSearch，入口点位于偏移 24
+        assertCorrupt(24, 1000);
+    }
+
+    @Test
+    public void test_load_rejects_corrupt_level() throws Exception {
+        // 第一个节点从偏移 36 开始：id(8) + deleted(1)，层数位于偏移 45
+        assertCorrupt(45, 99);
+    }
+
+    @Test
+    public void test_load_rejects_corrupt_neighbors() throws Exception {
+        int layer0 = 49 + DIMENSIONS * 4;
+        assertCorrupt(layer0, 1 << 20);
+        assertCorrupt(layer0 + 4, 1000);
+    }
+
+    @Test
+    public void test_load_rejects_truncated_file() throws Exception {
+        Path path = saved();
+        byte[] bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, bytes.length / 2));
+        try {
+            HnswIndex.load(path);
+            Assert.fail("expected IOException");
+        } catch (IOException expected) {
+            // EOFException
+        }
+    }
+
+    private void assertCorrupt(int offset, int value) throws Exception {
+        Path path = saved();
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(path));
+        bytes.putInt(offset, value);
+        Files.write(path, bytes.array());
+        try {
+            HnswIndex.load(path);
+            Assert.fail("expected IOException");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("corrupt hnsw index"));
+        }
+    }
+
+    private Path saved() throws IOException {
+        Random random = new Random(19);
+        HnswIndex index = HnswIndex.builder(DIMENSIONS).m(4).build();
+        for (int i = 0; i < 50; i++) {
+            index.add(i, randomVector(random));
+        }
+        Path path = folder.newFile().toPath();
+        index.save(path);
+        return path;
+    }
+
+    static List<Long> ids(List<SearchResult> results) {
+        List<Long> ids = new ArrayList<>(results.size());
+        for (SearchResult result : results) {
+            ids.add(result.getId());
+        }
+        return ids;
+    }
+
+    static double recall(VectorIndex index, FlatVectorIndex exact, Random random, int queries, int k) {
+        int hits = 0;
+        for (int q = 0; q < queries; q++) {
+            float[] query = randomVector(random);
+            Set<Long> expected = new HashSet<>();
+            for (SearchResult result : exact.search(query, k)) {
+                expected.add(result.getId());
+            }
+            List<SearchResult> results = index.search(query, k);
+            for (SearchResult result : results) {
+                if (expected.contains(result.getId())) hits++;
+            }
+        }
+        return hits / (double) (queries * k);
+    }
+
+    static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+}
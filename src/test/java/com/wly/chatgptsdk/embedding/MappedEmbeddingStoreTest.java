@@ -0,0 +1,70 @@
+package com.wly.chatgptsdk.embedding;
+
+import okio.ByteString;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+
+/**
+ * 内存映射向量存储测试
+ */
+public class MappedEmbeddingStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void test_reopen() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("embeddings.bin");
+        try (MappedEmbeddingStore store = MappedEmbeddingStore.open(path, 3, 64)) {
+            store.put(key("hello"), new float[]{1, 2, 3});
+            store.put(key("world"), new float[]{4, 5, 6});
+        }
+        try (MappedEmbeddingStore store = MappedEmbeddingStore.open(path, 3, 64)) {
+            Assert.assertArrayEquals(new float[]{1, 2, 3}, store.get(key("hello")), 0);
+            Assert.assertArrayEquals(new float[]{4, 5, 6}, store.get(key("world")), 0);
+            Assert.assertNull(store.get(key("missing")));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_reopen_with_other_dimensions() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("embeddings.bin");
+        MappedEmbeddingStore.open(path, 3, 64).close();
+        MappedEmbeddingStore.open(path, 4, 64);
+    }
+
+    @Test
+    public void test_overwrite_same_key() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("embeddings.bin");
+        try (MappedEmbeddingStore store = MappedEmbeddingStore.open(path, 2, 8)) {
+            store.put(key("a"), new float[]{1, 1});
+            store.put(key("a"), new float[]{2, 2});
+            Assert.assertArrayEquals(new float[]{2, 2}, store.get(key("a")), 0);
+        }
+    }
+
+    @Test
+    public void test_eviction() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("embeddings.bin");
+        // 只有一个槽位，探测全部落在同一个槽位上，新键覆盖旧键
+        try (MappedEmbeddingStore store = MappedEmbeddingStore.open(path, 2, 1)) {
+            store.put(key("a"), new float[]{1, 1});
+            store.put(key("b"), new float[]{2, 2});
+            Assert.assertNull(store.get(key("a")));
+            Assert.assertArrayEquals(new float[]{2, 2}, store.get(key("b")), 0);
+        }
+        try (MappedEmbeddingStore store = MappedEmbeddingStore.open(path, 2, 1)) {
+            Assert.assertNull(store.get(key("a")));
+            Assert.assertArrayEquals(new float[]{2, 2}, store.get(key("b")), 0);
+        }
+    }
+
+    private static ByteString key(String text) {
+        return ByteString.encodeUtf8(text).sha256();
+    }
+
+}
@@ -0,0 +1,128 @@
+package com.wly.chatgptsdk.key;
+
+import com.wly.chatgptsdk.domain.chat.ChatCompletionRequest;
+import com.wly.chatgptsdk.domain.chat.ChatCompletionResponse;
+import com.wly.chatgptsdk.domain.chat.Message;
+import com.wly.chatgptsdk.mock.LatencyProfile;
+import com.wly.chatgptsdk.mock.MockOpenAiServer;
+import com.wly.chatgptsdk.ratelimit.RateLimiter;
+import com.wly.chatgptsdk.session.Configuration;
+import com.wly.chatgptsdk.session.OpenAiSession;
+import com.wly.chatgptsdk.session.defaults.DefaultOpenAiSessionFactory;
+import okhttp3.Response;
+import okhttp3.sse.EventSource;
+import okhttp3.sse.EventSourceListener;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 流式对话使用 apiKey 池的测试；基于 MockOpenAiServer
+ */
+public class ApiKeyPoolStreamTest {
+
+    private static final String[] KEYS = {"k1", "k2", "k3"};
+
+    private MockOpenAiServer server;
+
+    @Before
+    public void start() throws Exception {
+        // 首 token 之前等待 300ms，保证同一批流式请求同时在途
+        server = MockOpenAiServer.builder()
+                .tokens(4)
+                .latency(LatencyProfile.builder().timeToFirstToken(300, TimeUnit.MILLISECONDS).build())
+                .build().start();
+    }
+
+    @After
+    public void close() {
+        server.close();
+    }
+
+    @Test
+    public void test_streams_use_pool() throws Exception {
+        OpenAiSession session = session(null);
+        await(streams(session, 9));
+        assertKeysUsed(9);
+    }
+
+    @Test
+    public void test_rate_limit_per_pool_key() throws Exception {
+        // 每个 key 每分钟 4 个请求；9 个请求分摊到 3 个 key 上可以立即准入，全部算在同一个 key 上则需要等待 75 秒
+        OpenAiSession session = session(RateLimiter.builder().limits(4, 1_000_000).build());
+        long start = System.nanoTime();
+        await(streams(session, 9));
+        Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertKeysUsed(9);
+    }
+
+    private OpenAiSession session(RateLimiter rateLimiter) {
+        Configuration configuration = new Configuration();
+        configuration.setApiHost(server.url());
+        configuration.setApiKey("system");
+        // 每个 key 最多 3 个在途请求，9 个同时在途的流式请求均匀分布在 3 个 key 上
+        configuration.setApiKeyPool(ApiKeyPool.builder().key(KEYS[0]).key(KEYS[1]).key(KEYS[2]).maxInFlightPerKey(3).build());
+        configuration.setRateLimiter(rateLimiter);
+        return new DefaultOpenAiSessionFactory(configuration).openSession();
+    }
+
+    /**
+     * 交替使用 EventSourceListener 与增量聚合两种流式接口
+     */
+    private static List<CompletableFuture<?>> streams(OpenAiSession session, int count) throws Exception {
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (i % 2 == 0) {
+                CompletableFuture<ChatCompletionResponse> future = session.chatCompletionsAggregated(chatRequest());
+                futures.add(future);
+                continue;
+            }
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            session.chatCompletions(chatRequest(), new EventSourceListener() {
+                @Override
+                public void onClosed(@NotNull EventSource eventSource) {
+                    future.complete(null);
+                }
+
+                @Override
+                public void onFailure(@NotNull EventSource eventSource, Throwable t, Response response) {
+                    future.completeExceptionally(new AssertionError("stream failed: " + (null == response ? t : response.code())));
+                }
+            });
+            futures.add(future);
+        }
+        return futures;
+    }
+
+    private static void await(List<CompletableFuture<?>> futures) throws Exception {
+        for (CompletableFuture<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private void assertKeysUsed(int total) {
+        long sum = 0;
+        for (String key : KEYS) {
+            Assert.assertEquals(key, 3, server.requestCount(key));
+            sum += server.requestCount(key);
+        }
+        Assert.assertEquals(total, sum);
+        Assert.assertEquals(0, server.requestCount("system"));
+    }
+
+    private static ChatCompletionRequest chatRequest() {
+        ChatCompletionRequest request = new ChatCompletionRequest();
+        request.setStream(true);
+        request.setMessages(Collections.singletonList(Message.builder().content("hello").build()));
+        return request;
+    }
+
+}
@@ -0,0 +1,133 @@
+package com.wly.chatgptsdk.key;
+
+import com.wly.chatgptsdk.IOpenAiApi;
+import com.wly.chatgptsdk.codec.JsonRequestBody;
+import com.wly.chatgptsdk.domain.chat.ChatCompletionRequest;
+import com.wly.chatgptsdk.domain.chat.Message;
+import com.wly.chatgptsdk.interceptor.OpenAiInterceptor;
+import com.wly.chatgptsdk.mock.MockOpenAiServer;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * apiKey 池测试
+ */
+public class ApiKeyPoolTest {
+
+    @Test
+    public void test_weighted_selection() throws Exception {
+        ApiKeyPool pool = ApiKeyPool.builder().key("a").key("b").build();
+        // a 只剩 1% 的额度
+        pool.update("a", response(200, "x-ratelimit-remaining-requests", "1", "x-ratelimit-limit-requests", "100"));
+        int b = 0;
+        for (int i = 0; i < 1000; i++) {
+            String key = pool.acquire();
+            if ("b".equals(key)) b++;
+            pool.release(key);
+        }
+        Assert.assertTrue("b selected " + b + " times", b > 950);
+    }
+
+    @Test
+    public void test_cooldown() throws Exception {
+        ApiKeyPool pool = ApiKeyPool.builder().key("a").key("b").build();
+        pool.update("a", response(429, "Retry-After", "60"));
+        for (int i = 0; i < 100; i++) {
+            String key = pool.acquire();
+            Assert.assertEquals("b", key);
+            pool.release(key);
+        }
+        pool.update("b", response(401));
+        try {
+            pool.acquire();
+            Assert.fail("expected all keys cooling down");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("cooling down"));
+        }
+        try {
+            pool.lease().get(1, TimeUnit.SECONDS);
+            Assert.fail("expected all keys cooling down");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void test_in_flight_limit() throws Exception {
+        ApiKeyPool pool = ApiKeyPool.builder().key("a").maxInFlightPerKey(1).acquireTimeout(100, TimeUnit.MILLISECONDS).build();
+        ApiKeyPool.Lease lease = pool.lease().get();
+        try {
+            pool.acquire();
+            Assert.fail("expected timeout");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("timed out"));
+        }
+        CompletableFuture<ApiKeyPool.Lease> waiting = pool.lease();
+        Assert.assertFalse(waiting.isDone());
+        // 重复归还只生效一次
+        lease.release();
+        lease.release();
+        Assert.assertEquals("a", waiting.get(1, TimeUnit.SECONDS).key());
+        Assert.assertFalse(pool.lease().isDone());
+    }
+
+    @Test
+    public void test_cancelled_lease_is_returned() throws Exception {
+        ApiKeyPool pool = ApiKeyPool.builder().key("a").maxInFlightPerKey(1).build();
+        ApiKeyPool.Lease lease = pool.lease().get();
+        CompletableFuture<ApiKeyPool.Lease> cancelled = pool.lease();
+        CompletableFuture<ApiKeyPool.Lease> waiting = pool.lease();
+        cancelled.cancel(false);
+        lease.release();
+        // 已放弃的借出方被跳过，名额交给后面的借出方
+        Assert.assertEquals("a", waiting.get(1, TimeUnit.SECONDS).key());
+    }
+
+    @Test
+    public void test_release_on_body_close() throws Exception {
+        try (MockOpenAiServer server = MockOpenAiServer.builder().build().start()) {
+            ApiKeyPool pool = ApiKeyPool.builder().key("a").maxInFlightPerKey(1).acquireTimeout(100, TimeUnit.MILLISECONDS).build();
+            OkHttpClient client = new OkHttpClient.Builder().addInterceptor(new OpenAiInterceptor("system", pool)).build();
+            ChatCompletionRequest chatCompletionRequest = new ChatCompletionRequest();
+            chatCompletionRequest.setMessages(Collections.singletonList(Message.builder().content("hello").build()));
+            Request request = new Request.Builder()
+                    .url(server.url() + IOpenAiApi.v1_chat_completions)
+                    .post(JsonRequestBody.create(chatCompletionRequest))
+                    .build();
+            Response response = client.newCall(request).execute();
+            Assert.assertEquals(1, server.requestCount("a"));
+            // 应答体关闭之前一直占用在途名额
+            try {
+                pool.acquire();
+                Assert.fail("expected timeout");
+            } catch (IOException e) {
+                Assert.assertTrue(e.getMessage().contains("timed out"));
+            }
+            response.close();
+            pool.release(pool.acquire());
+        }
+    }
+
+    private static Response response(int code, String... headers) {
+        Response.Builder builder = new Response.Builder()
+                .request(new Request.Builder().url("http://localhost/").build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message("");
+        for (int i = 0; i < headers.length; i += 2) {
+            builder.header(headers[i], headers[i + 1]);
+        }
+        return builder.build();
+    }
+
+}
@@ -0,0 +1,39 @@
+package com.wly.chatgptsdk.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 直方图测试
+ */
+public class HistogramTest {
+
+    @Test
+    public void test_percentile() {
+        Histogram histogram = new Histogram();
+        for (long i = 1; i <= 10_000; i++) {
+            histogram.record(i * 1000);
+        }
+        HistogramSnapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(10_000, snapshot.getCount());
+        Assert.assertEquals(10_000_000, snapshot.getMax());
+        // 相对误差不超过 1/32
+        assertClose(5_000_000, snapshot.percentile(50));
+        assertClose(9_900_000, snapshot.percentile(99));
+        Assert.assertEquals(10_000_000, snapshot.percentile(100));
+    }
+
+    @Test
+    public void test_buckets() {
+        for (long value : new long[]{0, 1, 31, 32, 33, 63, 64, 65, 1_000_000_007L, Long.MAX_VALUE}) {
+            int index = Histogram.index(value);
+            Assert.assertTrue(value <= Histogram.highestEquivalent(index));
+            if (index > 0) Assert.assertTrue(value > Histogram.highestEquivalent(index - 1));
+        }
+    }
+
+    private static void assertClose(long expected, long actual) {
+        Assert.assertTrue("expected ~" + expected + " but was " + actual, Math.abs(actual - expected) <= expected / 32);
+    }
+
+}
@@ -0,0 +1,102 @@
+package com.wly.chatgptsdk.metrics;
+
+import com.wly.chatgptsdk.domain.chat.ChatCompletionRequest;
+import com.wly.chatgptsdk.domain.chat.Message;
+import com.wly.chatgptsdk.mock.FaultProfile;
+import com.wly.chatgptsdk.mock.LatencyProfile;
+import com.wly.chatgptsdk.mock.MockOpenAiServer;
+import com.wly.chatgptsdk.session.Configuration;
+import com.wly.chatgptsdk.session.OpenAiSession;
+import com.wly.chatgptsdk.session.defaults.DefaultOpenAiSessionFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 指标记录测试；基于 MockOpenAiServer
+ */
+public class InMemoryMetricsRecorderTest {
+
+    private static final String ENDPOINT = "v1/chat/completions";
+
+    @Test
+    public void test_request_and_stream_metrics() throws Exception {
+        LatencyProfile latency = LatencyProfile.builder()
+                .timeToFirstToken(50, TimeUnit.MILLISECONDS)
+                .interTokenDelay(5, TimeUnit.MILLISECONDS)
+                .build();
+        try (MockOpenAiServer server = MockOpenAiServer.builder().tokens(8).latency(latency).build().start()) {
+            InMemoryMetricsRecorder recorder = new InMemoryMetricsRecorder();
+            OpenAiSession session = session(server, recorder);
+            session.completions(chatRequest(false));
+            session.chatCompletionsAggregated(chatRequest(true)).get(5, TimeUnit.SECONDS);
+
+            InMemoryMetricsRecorder.EndpointSnapshot snapshot = recorder.snapshot().get(ENDPOINT);
+            Assert.assertEquals(0, snapshot.getInFlight());
+            Assert.assertEquals(2, snapshot.getLatency().getCount());
+            Assert.assertTrue(snapshot.getErrors().isEmpty());
+            Assert.assertEquals(1, snapshot.getTimeToFirstToken().getCount());
+            Assert.assertTrue(snapshot.getTimeToFirstToken().getMax() >= TimeUnit.MILLISECONDS.toNanos(50));
+            Assert.assertEquals(7, snapshot.getInterTokenGap().getCount());
+            Assert.assertEquals(8, snapshot.getOutputTokens().getMax());
+            Assert.assertEquals(1, snapshot.getTokensPerSecond().getCount());
+        }
+    }
+
+    @Test
+    public void test_errors() throws Exception {
+        FaultProfile faults = FaultProfile.builder().rateLimit(1).build();
+        try (MockOpenAiServer server = MockOpenAiServer.builder().faults(faults).build().start()) {
+            InMemoryMetricsRecorder recorder = new InMemoryMetricsRecorder();
+            OpenAiSession session = session(server, recorder);
+            for (int i = 0; i < 3; i++) {
+                try {
+                    session.completions(chatRequest(false));
+                    Assert.fail("expected rate limit");
+                } catch (RuntimeException expected) {
+                    // 429
+                }
+            }
+            InMemoryMetricsRecorder.EndpointSnapshot snapshot = recorder.snapshot().get(ENDPOINT);
+            Assert.assertEquals(Long.valueOf(3), snapshot.getErrors().get("429"));
+            Assert.assertEquals(0, snapshot.getInFlight());
+        }
+    }
+
+    @Test
+    public void test_endpoint_template() throws Exception {
+        try (MockOpenAiServer server = MockOpenAiServer.builder().build().start()) {
+            InMemoryMetricsRecorder recorder = new InMemoryMetricsRecorder();
+            OpenAiSession session = session(server, recorder);
+            // 不同的文件 id 记入同一个 endpoint，而不是每个文件一组直方图
+            for (String fileId : Arrays.asList("file-a", "file-b", "file-c")) {
+                try {
+                    session.deleteFile(fileId);
+                } catch (RuntimeException expected) {
+                    // 文件不存在
+                }
+            }
+            Assert.assertEquals(Collections.singleton("v1/files/{file_id}"), recorder.snapshot().keySet());
+            Assert.assertEquals(Long.valueOf(3), recorder.snapshot().get("v1/files/{file_id}").getErrors().get("404"));
+        }
+    }
+
+    private static OpenAiSession session(MockOpenAiServer server, MetricsRecorder recorder) {
+        Configuration configuration = new Configuration();
+        configuration.setApiHost(server.url());
+        configuration.setApiKey("k");
+        configuration.setMetricsRecorder(recorder);
+        return new DefaultOpenAiSessionFactory(configuration).openSession();
+    }
+
+    private static ChatCompletionRequest chatRequest(boolean stream) {
+        ChatCompletionRequest request = new ChatCompletionRequest();
+        request.setStream(stream);
+        request.setMessages(Collections.singletonList(Message.builder().content("hello").build()));
+        return request;
+    }
+
+}
@@ -0,0 +1,163 @@
+package com.wly.chatgptsdk.ratelimit;
+
+import com.wly.chatgptsdk.IOpenAiApi;
+import com.wly.chatgptsdk.codec.JsonRequestBody;
+import com.wly.chatgptsdk.domain.chat.ChatCompletionRequest;
+import com.wly.chatgptsdk.domain.chat.ChatCompletionResponse;
+import com.wly.chatgptsdk.domain.chat.Message;
+import com.wly.chatgptsdk.mock.FaultProfile;
+import com.wly.chatgptsdk.mock.MockOpenAiServer;
+import com.wly.chatgptsdk.retry.RetryBudget;
+import com.wly.chatgptsdk.retry.RetryPolicy;
+import com.wly.chatgptsdk.session.Configuration;
+import com.wly.chatgptsdk.session.OpenAiAsyncSession;
+import com.wly.chatgptsdk.session.OpenAiSession;
+import com.wly.chatgptsdk.session.defaults.DefaultOpenAiSessionFactory;
+import okhttp3.Headers;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.sse.EventSource;
+import okhttp3.sse.EventSourceListener;
+import okhttp3.sse.EventSources;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 流式请求的限流准入测试；基于 MockOpenAiServer
+ */
+public class RateLimitedStreamTest {
+
+    private MockOpenAiServer server;
+
+    @Before
+    public void start() throws Exception {
+        server = MockOpenAiServer.builder().tokens(4).build().start();
+    }
+
+    @After
+    public void close() {
+        server.close();
+    }
+
+    @Test
+    public void test_admission_before_dispatch() throws Exception {
+        OkHttpClient client = new OkHttpClient.Builder()
+                .addInterceptor(chain -> chain.proceed(chain.request().newBuilder().header("Authorization", "Bearer k").build()))
+                .build();
+        Request request = new Request.Builder()
+                .url(server.url() + IOpenAiApi.v1_chat_completions)
+                .post(JsonRequestBody.create(chatRequest()))
+                .build();
+        // 每 100ms 补充一个请求，当前余量为 0
+        RateLimiter rateLimiter = RateLimiter.builder().limits(600, 1_000_000).build();
+        rateLimiter.update("k", RateLimiter.model(request), Headers.of("x-ratelimit-remaining-requests", "0"));
+        EventSource.Factory factory = new RateLimitedEventSourceFactory(EventSources.createFactory(client), rateLimiter, "k");
+
+        CountDownLatch closed = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++) {
+            factory.newEventSource(request, new EventSourceListener() {
+                @Override
+                public void onClosed(@NotNull EventSource eventSource) {
+                    closed.countDown();
+                }
+            });
+        }
+        // 排队准入期间不占用调度器
+        Assert.assertEquals(0, client.dispatcher().runningCallsCount() + client.dispatcher().queuedCallsCount());
+        Assert.assertTrue(closed.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void test_cancel_while_waiting() throws Exception {
+        OkHttpClient client = new OkHttpClient();
+        Request request = new Request.Builder()
+                .url(server.url() + IOpenAiApi.v1_chat_completions)
+                .post(JsonRequestBody.create(chatRequest()))
+                .build();
+        RateLimiter rateLimiter = RateLimiter.builder().limits(1, 1_000_000).build();
+        rateLimiter.acquire("k", RateLimiter.model(request), 0);
+        EventSource.Factory factory = new RateLimitedEventSourceFactory(EventSources.createFactory(client), rateLimiter, "k");
+
+        CompletableFuture<Throwable> failure = new CompletableFuture<>();
+        EventSource eventSource = factory.newEventSource(request, new EventSourceListener() {
+            @Override
+            public void onFailure(@NotNull EventSource eventSource, Throwable t, okhttp3.Response response) {
+                failure.complete(t);
+            }
+        });
+        eventSource.cancel();
+        Assert.assertEquals("Canceled", failure.get(1, TimeUnit.SECONDS).getMessage());
+        Assert.assertEquals(0, server.requestCount());
+    }
+
+    @Test
+    public void test_retry_readmitted() throws Exception {
+        server.close();
+        server = MockOpenAiServer.builder().tokens(4).faults(FaultProfile.builder().serverError(0.5).seed(1).build()).build().start();
+        Configuration configuration = new Configuration();
+        configuration.setApiHost(server.url());
+        configuration.setApiKey("k");
+        configuration.setRateLimiter(RateLimiter.builder().limits(6_000, 10_000_000).build());
+        configuration.setRetryPolicy(RetryPolicy.builder()
+                .maxAttempts(20)
+                .baseDelay(10, TimeUnit.MILLISECONDS)
+                .budget(new RetryBudget(10, 100))
+                .build());
+        DefaultOpenAiSessionFactory sessionFactory = new DefaultOpenAiSessionFactory(configuration);
+        OpenAiSession session = sessionFactory.openSession();
+        OpenAiAsyncSession asyncSession = sessionFactory.openAsyncSession();
+
+        List<CompletableFuture<ChatCompletionResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(session.chatCompletionsAggregated(chatRequest()));
+        }
+        List<CompletableFuture<String>> events = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            CompletableFuture<String> future = new CompletableFuture<>();
+            session.chatCompletions(chatRequest(), new EventSourceListener() {
+                @Override
+                public void onClosed(@NotNull EventSource eventSource) {
+                    future.complete("closed");
+                }
+
+                @Override
+                public void onFailure(@NotNull EventSource eventSource, Throwable t, okhttp3.Response response) {
+                    future.completeExceptionally(new AssertionError("stream failed: " + (null == response ? t : response.code())));
+                }
+            });
+            events.add(future);
+        }
+        // 异步请求由 RateLimitedCallFactory 重新排队重试
+        for (int i = 0; i < 20; i++) {
+            ChatCompletionRequest request = chatRequest();
+            request.setStream(false);
+            futures.add(asyncSession.completions(request));
+        }
+        for (CompletableFuture<ChatCompletionResponse> future : futures) {
+            Assert.assertFalse(future.get(10, TimeUnit.SECONDS).getChoices().isEmpty());
+        }
+        for (CompletableFuture<String> future : events) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        // 一半的请求失败后重试
+        Assert.assertTrue(server.requestCount() > 60);
+    }
+
+    private static ChatCompletionRequest chatRequest() {
+        ChatCompletionRequest request = new ChatCompletionRequest();
+        request.setStream(true);
+        request.setMessages(Collections.singletonList(Message.builder().content("hello").build()));
+        return request;
+    }
+
+}
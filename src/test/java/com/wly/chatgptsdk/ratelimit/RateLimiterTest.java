@@ -0,0 +1,104 @@
+package com.wly.chatgptsdk.ratelimit;
+
+import okhttp3.Headers;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 客户端限流测试
+ */
+public class RateLimiterTest {
+
+    @Test
+    public void test_admit_within_capacity() {
+        RateLimiter rateLimiter = RateLimiter.builder().limits(3, 1_000).build();
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(rateLimiter.acquire("k", "m", 10).isDone());
+        }
+        // 每分钟 3 个请求，第 4 个需要等待 20 秒
+        Assert.assertFalse(rateLimiter.acquire("k", "m", 10).isDone());
+    }
+
+    @Test
+    public void test_wait_for_refill() throws Exception {
+        // 每 100ms 补充一个请求
+        RateLimiter rateLimiter = RateLimiter.builder().limits(600, 1_000_000).build();
+        rateLimiter.update("k", "m", Headers.of("x-ratelimit-remaining-requests", "0"));
+        CompletableFuture<Void> first = rateLimiter.acquire("k", "m", 1);
+        CompletableFuture<Void> second = rateLimiter.acquire("k", "m", 1);
+        Assert.assertFalse(first.isDone());
+        first.get(1, TimeUnit.SECONDS);
+        second.get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void test_fifo_and_cancel() throws Exception {
+        // 每 60ms 补充一个 token
+        RateLimiter rateLimiter = RateLimiter.builder().limits(1_000, 1_000).build();
+        Assert.assertTrue(rateLimiter.acquire("k", "m", 1_000).isDone());
+        CompletableFuture<Void> large = rateLimiter.acquire("k", "m", 1_000);
+        CompletableFuture<Void> small = rateLimiter.acquire("k", "m", 1);
+        // 排在后面的小请求不能越过队首
+        Thread.sleep(200);
+        Assert.assertFalse(small.isDone());
+        // 队首放弃排队后，后面的请求随即放行
+        large.cancel(false);
+        small.get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void test_buckets_per_key_and_model() {
+        RateLimiter rateLimiter = RateLimiter.builder().limits(1, 1_000).limits("big", 2, 1_000).build();
+        Assert.assertTrue(rateLimiter.acquire("a", "m", 1).isDone());
+        Assert.assertFalse(rateLimiter.acquire("a", "m", 1).isDone());
+        Assert.assertTrue(rateLimiter.acquire("b", "m", 1).isDone());
+        Assert.assertTrue(rateLimiter.acquire("a", "big", 1).isDone());
+        Assert.assertTrue(rateLimiter.acquire("a", "big", 1).isDone());
+    }
+
+    @Test
+    public void test_update_from_headers() {
+        RateLimiter rateLimiter = RateLimiter.builder().limits(100, 1_000).build();
+        rateLimiter.update("k", "m", Headers.of("x-ratelimit-remaining-tokens", "10"));
+        Assert.assertTrue(rateLimiter.acquire("k", "m", 10).isDone());
+        Assert.assertFalse(rateLimiter.acquire("k", "m", 10).isDone());
+    }
+
+    @Test
+    public void test_update_raises_available() throws Exception {
+        // 服务端额度先于本地补足时，本地余量随之上调
+        RateLimiter rateLimiter = RateLimiter.builder().limits(100, 1_000).build();
+        RateLimiter.Reservation reservation = rateLimiter.reserve("k", "m", 1_000).get(1, TimeUnit.SECONDS);
+        CompletableFuture<Void> queued = rateLimiter.acquire("k", "m", 400);
+        Assert.assertFalse(queued.isDone());
+        rateLimiter.update(reservation, Headers.of("x-ratelimit-remaining-tokens", "500"));
+        // 排队的请求立即放行，不等定时检查
+        Assert.assertTrue(queued.isDone());
+        Assert.assertFalse(rateLimiter.acquire("k", "m", 400).isDone());
+    }
+
+    @Test
+    public void test_update_subtracts_in_flight() throws Exception {
+        RateLimiter rateLimiter = RateLimiter.builder().limits(100, 1_000).build();
+        RateLimiter.Reservation first = rateLimiter.reserve("k", "m", 300).get(1, TimeUnit.SECONDS);
+        rateLimiter.reserve("k", "m", 300).get(1, TimeUnit.SECONDS);
+        // 服务端只看到第一个请求：余量 700，减去仍在途的第二个请求后为 400
+        rateLimiter.update(first, Headers.of("x-ratelimit-remaining-tokens", "700"));
+        Assert.assertTrue(rateLimiter.acquire("k", "m", 400).isDone());
+        Assert.assertFalse(rateLimiter.acquire("k", "m", 100).isDone());
+    }
+
+    @Test
+    public void test_release_failed_request() throws Exception {
+        RateLimiter rateLimiter = RateLimiter.builder().limits(100, 1_000).build();
+        RateLimiter.Reservation failed = rateLimiter.reserve("k", "m", 600).get(1, TimeUnit.SECONDS);
+        rateLimiter.release(failed);
+        // 失败的请求不再计入在途，服务端余量全部可用
+        rateLimiter.update("k", "m", Headers.of("x-ratelimit-remaining-tokens", "1000"));
+        Assert.assertTrue(rateLimiter.acquire("k", "m", 1_000).isDone());
+    }
+
+}
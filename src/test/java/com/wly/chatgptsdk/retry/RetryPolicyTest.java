@@ -0,0 +1,126 @@
+package com.wly.chatgptsdk.retry;
+
+import com.wly.chatgptsdk.domain.chat.ChatCompletionRequest;
+import com.wly.chatgptsdk.domain.chat.ChatCompletionResponse;
+import com.wly.chatgptsdk.domain.chat.Message;
+import com.wly.chatgptsdk.mock.FaultProfile;
+import com.wly.chatgptsdk.mock.MockOpenAiServer;
+import com.wly.chatgptsdk.session.Configuration;
+import com.wly.chatgptsdk.session.OpenAiSession;
+import com.wly.chatgptsdk.session.defaults.DefaultOpenAiSessionFactory;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 重试策略测试；会话级测试基于 MockOpenAiServer
+ */
+public class RetryPolicyTest {
+
+    @Test
+    public void test_delay() {
+        RetryPolicy policy = RetryPolicy.builder()
+                .baseDelay(100, TimeUnit.MILLISECONDS)
+                .maxDelay(1, TimeUnit.SECONDS)
+                .build();
+        for (int retry = 0; retry < 10; retry++) {
+            long delay = policy.delayMillis(retry, null);
+            Assert.assertTrue(delay >= 0 && delay <= Math.min(1000, 100L << retry));
+        }
+        Assert.assertEquals(250, policy.delayMillis(0, response(429, "retry-after-ms", "250")));
+        Assert.assertEquals(500, policy.delayMillis(0, response(429, "Retry-After", "0.5")));
+        // Retry-After 超过 maxDelay 时不重试
+        Assert.assertEquals(-1, policy.delayMillis(0, response(429, "Retry-After", "5")));
+        Assert.assertTrue(policy.isRetryable(response(502)));
+        Assert.assertFalse(policy.isRetryable(response(400)));
+    }
+
+    @Test
+    public void test_budget() {
+        RetryBudget budget = new RetryBudget(0.5, 0);
+        Assert.assertFalse(budget.tryAcquire());
+        budget.onRequest();
+        Assert.assertFalse(budget.tryAcquire());
+        budget.onRequest();
+        Assert.assertTrue(budget.tryAcquire());
+        Assert.assertFalse(budget.tryAcquire());
+    }
+
+    @Test
+    public void test_blocking_and_stream_retry() throws Exception {
+        FaultProfile faults = FaultProfile.builder().serverError(0.3).rateLimit(0.2).retryAfter(10, TimeUnit.MILLISECONDS).build();
+        try (MockOpenAiServer server = MockOpenAiServer.builder().tokens(4).faults(faults).build().start()) {
+            RetryPolicy policy = RetryPolicy.builder()
+                    .maxAttempts(10)
+                    .baseDelay(1, TimeUnit.MILLISECONDS)
+                    .maxDelay(20, TimeUnit.MILLISECONDS)
+                    .budget(new RetryBudget(1, 100))
+                    .build();
+            OpenAiSession session = session(server, policy);
+            for (int i = 0; i < 10; i++) {
+                ChatCompletionResponse response = session.completions(chatRequest(false));
+                Assert.assertFalse(response.getChoices().isEmpty());
+            }
+            for (int i = 0; i < 10; i++) {
+                ChatCompletionResponse response = session.chatCompletionsAggregated(chatRequest(true)).get(5, TimeUnit.SECONDS);
+                Assert.assertFalse(response.getChoices().get(0).getMessage().getContent().isEmpty());
+            }
+            // 20 个请求全部成功，其中一部分经过了重试
+            Assert.assertTrue(server.requestCount() > 20);
+        }
+    }
+
+    @Test
+    public void test_budget_exhausted() throws Exception {
+        FaultProfile faults = FaultProfile.builder().serverError(1).build();
+        try (MockOpenAiServer server = MockOpenAiServer.builder().faults(faults).build().start()) {
+            RetryPolicy policy = RetryPolicy.builder()
+                    .maxAttempts(10)
+                    .baseDelay(1, TimeUnit.MILLISECONDS)
+                    .maxDelay(10, TimeUnit.MILLISECONDS)
+                    .budget(new RetryBudget(0, 0))
+                    .build();
+            OpenAiSession session = session(server, policy);
+            try {
+                session.completions(chatRequest(false));
+                Assert.fail("expected server error");
+            } catch (RuntimeException expected) {
+                // 预算为 0，不重试
+            }
+            Assert.assertEquals(1, server.requestCount());
+        }
+    }
+
+    private static OpenAiSession session(MockOpenAiServer server, RetryPolicy policy) {
+        Configuration configuration = new Configuration();
+        configuration.setApiHost(server.url());
+        configuration.setApiKey("k");
+        configuration.setRetryPolicy(policy);
+        return new DefaultOpenAiSessionFactory(configuration).openSession();
+    }
+
+    private static ChatCompletionRequest chatRequest(boolean stream) {
+        ChatCompletionRequest request = new ChatCompletionRequest();
+        request.setStream(stream);
+        request.setMessages(Collections.singletonList(Message.builder().content("hello").build()));
+        return request;
+    }
+
+    private static Response response(int code, String... headers) {
+        Response.Builder builder = new Response.Builder()
+                .request(new Request.Builder().url("http://localhost/").build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message("");
+        for (int i = 0; i < headers.length; i += 2) {
+            builder.header(headers[i], headers[i + 1]);
+        }
+        return builder.build();
+    }
+
+}
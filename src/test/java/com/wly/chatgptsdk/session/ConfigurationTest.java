@@ -0,0 +1,56 @@
+package com.wly.chatgptsdk.session;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * 配置快照测试
+ */
+public class ConfigurationTest {
+
+    @Test
+    public void test_snapshot_is_independent() {
+        Configuration configuration = new Configuration();
+        configuration.setApiHost("https://api.openai.com/");
+        configuration.setApiKey("k1");
+        configuration.setMaxRequests(8);
+        Configuration snapshot = configuration.snapshot();
+        configuration.setApiKey("k2");
+        configuration.setMaxRequests(16);
+        Assert.assertEquals("k1", snapshot.getApiKey());
+        Assert.assertEquals(8, snapshot.getMaxRequests());
+        Assert.assertEquals("https://api.openai.com/", snapshot.getApiHost());
+
+        // 副本可以继续修改，修改后再取快照
+        Configuration copy = snapshot.copy();
+        copy.setApiKey("k3");
+        Assert.assertEquals("k3", copy.snapshot().getApiKey());
+        Assert.assertEquals("k1", snapshot.getApiKey());
+    }
+
+    @Test
+    public void test_snapshot_setters_rejected() throws Exception {
+        Configuration snapshot = new Configuration().snapshot();
+        int setters = 0;
+        for (Method method : Configuration.class.getMethods()) {
+            if (!method.getName().startsWith("set") || method.getParameterCount() != 1) continue;
+            setters++;
+            Class<?> type = method.getParameterTypes()[0];
+            Object value = type == boolean.class ? Boolean.FALSE
+                    : type == int.class ? Integer.valueOf(0)
+                    : type == long.class ? Long.valueOf(0)
+                    : type == String.class ? "" : null;
+            try {
+                method.invoke(snapshot, value);
+                Assert.fail(method.getName() + " should be rejected");
+            } catch (InvocationTargetException e) {
+                Assert.assertTrue(method.getName(), e.getCause() instanceof UnsupportedOperationException);
+            }
+        }
+        Assert.assertTrue(setters > 20);
+    }
+
+}
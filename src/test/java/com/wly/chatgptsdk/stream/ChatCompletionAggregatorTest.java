@@ -0,0 +1,179 @@
+package com.wly.chatgptsdk.stream;
+
+import com.wly.chatgptsdk.cache.RequestCoalescer;
+import com.wly.chatgptsdk.domain.chat.ChatCompletionRequest;
+import com.wly.chatgptsdk.domain.chat.ChatCompletionResponse;
+import com.wly.chatgptsdk.domain.chat.Message;
+import com.wly.chatgptsdk.mock.LatencyProfile;
+import com.wly.chatgptsdk.mock.MockOpenAiServer;
+import com.wly.chatgptsdk.session.Configuration;
+import com.wly.chatgptsdk.session.OpenAiSession;
+import com.wly.chatgptsdk.session.defaults.DefaultOpenAiSessionFactory;
+import okhttp3.Request;
+import okhttp3.sse.EventSource;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对话流式应答聚合测试
+ */
+public class ChatCompletionAggregatorTest {
+
+    @Test
+    public void test_multi_choice() throws Exception {
+        ChatCompletionAggregator aggregator = new ChatCompletionAggregator();
+        ChatDeltaEventListener listener = new ChatDeltaEventListener(aggregator);
+        StubEventSource source = new StubEventSource();
+
+        // 两个 choice 的分片交错到达
+        listener.onEvent(source, null, null, "{\"id\":\"c1\",\"model\":\"m\",\"created\":7,\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\",\"content\":\"\"}},{\"index\":1,\"delta\":{\"role\":\"assistant\",\"content\":\"\"}}]}");
+        listener.onEvent(source, null, null, "{\"id\":\"c1\",\"choices\":[{\"index\":1,\"delta\":{\"content\":\"B1\"}}]}");
+        listener.onEvent(source, null, null, "{\"id\":\"c1\",\"choices\":[{\"index\":0,\"delta\":{\"content\":\"A1\"}}]}");
+        listener.onEvent(source, null, null, "{\"id\":\"c1\",\"choices\":[{\"index\":0,\"delta\":{\"content\":\"A2\"}},{\"index\":1,\"delta\":{\"content\":\"B2\"}}]}");
+        listener.onEvent(source, null, null, "{\"id\":\"c1\",\"choices\":[{\"index\":0,\"delta\":{},\"finish_reason\":\"stop\"},{\"index\":1,\"delta\":{},\"finish_reason\":\"length\"}]}");
+        listener.onEvent(source, null, null, EventSourcePublisher.DONE);
+        Assert.assertFalse(aggregator.future().isDone());
+        listener.onClosed(source);
+
+        ChatCompletionResponse response = aggregator.future().get();
+        Assert.assertEquals("c1", response.getId());
+        Assert.assertEquals("m", response.getModel());
+        Assert.assertEquals(7, response.getCreated());
+        Assert.assertEquals(2, response.getChoices().size());
+        Assert.assertEquals(0, response.getChoices().get(0).getIndex());
+        Assert.assertEquals("assistant", response.getChoices().get(0).getMessage().getRole());
+        Assert.assertEquals("A1A2", response.getChoices().get(0).getMessage().getContent());
+        Assert.assertEquals("stop", response.getChoices().get(0).getFinishReason());
+        Assert.assertEquals(1, response.getChoices().get(1).getIndex());
+        Assert.assertEquals("B1B2", response.getChoices().get(1).getMessage().getContent());
+        Assert.assertEquals("length", response.getChoices().get(1).getFinishReason());
+        Assert.assertNull(response.getUsage());
+    }
+
+    @Test
+    public void test_completes_exactly_once() throws Exception {
+        ChatCompletionAggregator aggregator = new ChatCompletionAggregator();
+        StubEventSource source = new StubEventSource();
+        delta(aggregator, source, 0, "first");
+        aggregator.onClosed(source);
+        ChatCompletionResponse response = aggregator.future().get();
+
+        // 完成之后的增量、重复关闭与失败都不再影响结果
+        delta(aggregator, source, 0, " late");
+        aggregator.onClosed(source);
+        aggregator.onFailure(source, new IOException("late failure"), null);
+        Assert.assertSame(response, aggregator.future().get());
+        Assert.assertEquals("first", response.getChoices().get(0).getMessage().getContent());
+        Assert.assertFalse(aggregator.future().isCompletedExceptionally());
+    }
+
+    @Test
+    public void test_failure() {
+        ChatCompletionAggregator aggregator = new ChatCompletionAggregator();
+        StubEventSource source = new StubEventSource();
+        aggregator.onFailure(source, new IOException("reset"), null);
+        aggregator.onClosed(source);
+        try {
+            aggregator.future().get();
+            Assert.fail();
+        } catch (Exception e) {
+            Assert.assertTrue(e instanceof ExecutionException);
+        }
+    }
+
+    @Test
+    public void test_usage() throws Exception {
+        ChatCompletionRequest request = chatRequest();
+        ChatCompletionAggregator aggregator = new ChatCompletionAggregator(request);
+        StubEventSource source = new StubEventSource();
+        delta(aggregator, source, 0, "hello world");
+        aggregator.onClosed(source);
+        ChatCompletionResponse response = aggregator.future().get();
+        Assert.assertTrue(response.getUsage().getPromptTokens() > 0);
+        Assert.assertEquals(2, response.getUsage().getCompletionTokens());
+        Assert.assertEquals(response.getUsage().getPromptTokens() + 2, response.getUsage().getTotalTokens());
+    }
+
+    @Test
+    public void test_cancel_cancels_source() {
+        ChatCompletionAggregator aggregator = new ChatCompletionAggregator();
+        StubEventSource source = new StubEventSource();
+        aggregator.bind(source);
+        aggregator.future().cancel(true);
+        Assert.assertTrue(source.cancelled);
+
+        // 绑定之前已取消
+        ChatCompletionAggregator cancelled = new ChatCompletionAggregator();
+        cancelled.future().cancel(true);
+        StubEventSource late = new StubEventSource();
+        cancelled.bind(late);
+        Assert.assertTrue(late.cancelled);
+    }
+
+    /**
+     * 开启合并时只有聚合接口走共享流；增量监听各自读取上游，慢监听不会拖住其他调用方
+     */
+    @Test
+    public void test_delta_listener_not_coalesced() throws Exception {
+        try (MockOpenAiServer server = MockOpenAiServer.builder()
+                .tokens(4)
+                .latency(LatencyProfile.builder().timeToFirstToken(300, TimeUnit.MILLISECONDS).build())
+                .build().start()) {
+            Configuration configuration = new Configuration();
+            configuration.setApiHost(server.url());
+            configuration.setApiKey("k");
+            configuration.setRequestCoalescer(new RequestCoalescer());
+            OpenAiSession session = new DefaultOpenAiSessionFactory(configuration).openSession();
+
+            CompletableFuture<ChatCompletionResponse> first = session.chatCompletionsAggregated(chatRequest());
+            CompletableFuture<ChatCompletionResponse> second = session.chatCompletionsAggregated(chatRequest());
+            ChatCompletionAggregator third = new ChatCompletionAggregator();
+            ChatCompletionAggregator fourth = new ChatCompletionAggregator();
+            session.chatCompletions(chatRequest(), third);
+            session.chatCompletions(chatRequest(), fourth);
+
+            String content = first.get(10, TimeUnit.SECONDS).getChoices().get(0).getMessage().getContent();
+            Assert.assertEquals(content, second.get(10, TimeUnit.SECONDS).getChoices().get(0).getMessage().getContent());
+            Assert.assertEquals(content, third.future().get(10, TimeUnit.SECONDS).getChoices().get(0).getMessage().getContent());
+            Assert.assertEquals(content, fourth.future().get(10, TimeUnit.SECONDS).getChoices().get(0).getMessage().getContent());
+            Assert.assertEquals(3, server.requestCount());
+        }
+    }
+
+    private static void delta(ChatCompletionAggregator aggregator, EventSource source, int index, String content) {
+        char[] chars = content.toCharArray();
+        aggregator.onDelta(source, index, null, chars, 0, chars.length, null);
+    }
+
+    private static ChatCompletionRequest chatRequest() {
+        ChatCompletionRequest request = new ChatCompletionRequest();
+        request.setStream(true);
+        request.setMessages(Collections.singletonList(Message.builder().content("hello").build()));
+        return request;
+    }
+
+    private static final class StubEventSource implements EventSource {
+
+        private volatile boolean cancelled;
+
+        @NotNull
+        @Override
+        public Request request() {
+            return new Request.Builder().url("http://localhost/v1/chat/completions").build();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.wly.chatgptsdk.stream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import okhttp3.sse.EventSource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 流式分片解码测试
+ */
+public class ChatDeltaDecoderTest {
+
+    @Test
+    public void test_decode() throws Exception {
+        ChatDeltaDecoder decoder = new ChatDeltaDecoder();
+        List<String> deltas = new ArrayList<>();
+        ChatDeltaListener listener = new ChatDeltaListener() {
+            @Override
+            public void onDelta(EventSource eventSource, int index, String role, char[] content, int offset, int length, String finishReason) {
+                deltas.add(index + "|" + role + "|" + new String(content, offset, length) + "|" + finishReason);
+            }
+        };
+
+        decode(decoder, "{\"id\":\"1\",\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\",\"content\":\"\"},\"logprobs\":null,\"finish_reason\":null}]}", listener);
+        decode(decoder, "{\"id\":\"1\",\"choices\":[{\"delta\":{\"content\":\"你好\\n\\\"world\\\"\"},\"index\":1}],\"usage\":{\"total_tokens\":3}}", listener);
+        decode(decoder, "{\"id\":\"1\",\"choices\":[{\"index\":0,\"delta\":{},\"finish_reason\":\"stop\"}]}", listener);
+
+        Assert.assertEquals("0|assistant||null", deltas.get(0));
+        Assert.assertEquals("1|null|你好\n\"world\"|null", deltas.get(1));
+        Assert.assertEquals("0|null||stop", deltas.get(2));
+    }
+
+    @Test
+    public void test_done() {
+        byte[] done = "[DONE]".getBytes(StandardCharsets.UTF_8);
+        Assert.assertTrue(ChatDeltaDecoder.isDone(done, 0, done.length));
+        Assert.assertFalse(ChatDeltaDecoder.isDone(done, 0, done.length - 1));
+    }
+
+    private static void decode(ChatDeltaDecoder decoder, String chunk, ChatDeltaListener listener) throws Exception {
+        byte[] bytes = chunk.getBytes(StandardCharsets.UTF_8);
+        decoder.decode(bytes, 0, bytes.length, null, listener);
+    }
+
+}
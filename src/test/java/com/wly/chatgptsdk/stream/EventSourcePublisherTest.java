@@ -0,0 +1,106 @@
+package com.wly.chatgptsdk.stream;
+
+import okhttp3.Request;
+import okhttp3.sse.EventSource;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 背压事件流测试
+ */
+public class EventSourcePublisherTest {
+
+    @Test
+    public void test_request_non_positive() {
+        AtomicBoolean started = new AtomicBoolean();
+        EventSourcePublisher<String> publisher = new EventSourcePublisher<>(emitter -> {
+            started.set(true);
+            return new StubEventSource();
+        }, 4);
+        RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        publisher.subscribe(subscriber);
+
+        Assert.assertTrue(subscriber.error.get() instanceof IllegalArgumentException);
+        Assert.assertFalse(started.get());
+    }
+
+    @Test
+    public void test_interrupted_while_blocked() throws Exception {
+        AtomicReference<EventSourcePublisher.Emitter<String>> emitterRef = new AtomicReference<>();
+        StubEventSource eventSource = new StubEventSource();
+        EventSourcePublisher<String> publisher = new EventSourcePublisher<>(emitter -> {
+            emitterRef.set(emitter);
+            return eventSource;
+        }, 1);
+        RecordingSubscriber subscriber = new RecordingSubscriber(-1);
+        publisher.subscribe(subscriber);
+
+        Thread reader = new Thread(() -> {
+            emitterRef.get().onNext("a");
+            // 缓冲区已满且下游没有请求，阻塞直到被中断
+            emitterRef.get().onNext("b");
+        });
+        reader.start();
+        Thread.sleep(200);
+        reader.interrupt();
+        reader.join(2000);
+
+        Assert.assertTrue(subscriber.error.get() instanceof InterruptedIOException);
+        Assert.assertTrue(eventSource.cancelled);
+    }
+
+    private static final class RecordingSubscriber implements Subscriber<String> {
+
+        /** 小于 0 表示不请求 */
+        private final long initialRequest;
+        private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        RecordingSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            if (initialRequest >= 0) subscription.request(initialRequest);
+        }
+
+        @Override
+        public void onNext(String value) {
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error.set(t);
+        }
+
+        @Override
+        public void onComplete() {
+        }
+
+    }
+
+    private static final class StubEventSource implements EventSource {
+
+        private volatile boolean cancelled;
+
+        @NotNull
+        @Override
+        public Request request() {
+            return new Request.Builder().url("http://localhost/").build();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+    }
+
+}
@@ -0,0 +1,229 @@
+package com.wly.chatgptsdk.stream;
+
+import com.wly.chatgptsdk.domain.chat.ChatCompletionRequest;
+import com.wly.chatgptsdk.domain.chat.Message;
+import com.wly.chatgptsdk.mock.LatencyProfile;
+import com.wly.chatgptsdk.mock.MockOpenAiServer;
+import com.wly.chatgptsdk.session.Configuration;
+import com.wly.chatgptsdk.session.OpenAiSession;
+import com.wly.chatgptsdk.session.defaults.DefaultOpenAiSessionFactory;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.sse.EventSource;
+import okhttp3.sse.EventSourceListener;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多播事件流测试；上游由测试直接驱动，最后一个用例基于 MockOpenAiServer
+ */
+public class MulticastStreamTest {
+
+    @Test
+    public void test_late_subscriber_replay() {
+        StubEventSource upstream = new StubEventSource();
+        MulticastStream stream = MulticastStream.start(listener -> upstream, 8, Runnable::run);
+        publish(stream, upstream, "a", "b");
+        Recorder early = new Recorder();
+        stream.subscribe(early);
+        publish(stream, upstream, "c");
+        Recorder late = new Recorder();
+        stream.subscribe(late);
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), early.events);
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), late.events);
+        stream.onClosed(upstream);
+        Assert.assertTrue(early.closed.isDone() && late.closed.isDone());
+        Assert.assertEquals(0, stream.subscribers());
+    }
+
+    @Test
+    public void test_replay_after_close() {
+        StubEventSource upstream = new StubEventSource();
+        MulticastStream stream = MulticastStream.start(listener -> upstream, 8, Runnable::run);
+        publish(stream, upstream, "a", "b", "c");
+        stream.onClosed(upstream);
+        Recorder recorder = new Recorder();
+        stream.subscribe(recorder);
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), recorder.events);
+        Assert.assertTrue(recorder.closed.isDone());
+        Assert.assertFalse(recorder.closed.isCompletedExceptionally());
+    }
+
+    @Test
+    public void test_replay_of_overwritten_events_fails() {
+        StubEventSource upstream = new StubEventSource();
+        MulticastStream stream = MulticastStream.start(listener -> upstream, 2, Runnable::run);
+        Recorder first = new Recorder();
+        stream.subscribe(first);
+        publish(stream, upstream, "a", "b", "c", "d", "e");
+        // 订阅者跟得上时环形缓冲区覆盖旧事件不影响它
+        Assert.assertEquals(Arrays.asList("a", "b", "c", "d", "e"), first.events);
+        Recorder late = new Recorder();
+        stream.subscribe(late);
+        Assert.assertTrue(late.events.isEmpty());
+        Assert.assertTrue(late.closed.isCompletedExceptionally());
+        Assert.assertEquals(1, stream.subscribers());
+        Assert.assertFalse(upstream.cancelled);
+    }
+
+    @Test
+    public void test_slow_subscriber_falls_behind() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            StubEventSource upstream = new StubEventSource();
+            MulticastStream stream = MulticastStream.start(listener -> upstream, 4, executor);
+            CountDownLatch blocked = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            Recorder slow = new Recorder() {
+                @Override
+                public void onEvent(@NotNull EventSource eventSource, String id, String type, @NotNull String data) {
+                    super.onEvent(eventSource, id, type, data);
+                    blocked.countDown();
+                    await(release);
+                }
+            };
+            Recorder fast = new Recorder();
+            stream.subscribe(slow);
+            stream.subscribe(fast);
+            publish(stream, upstream, "0");
+            Assert.assertTrue(blocked.await(5, TimeUnit.SECONDS));
+            // 慢订阅者停在第一个事件上，上游继续写入并覆盖它尚未读取的槽位
+            for (int i = 1; i < 10; i++) {
+                publish(stream, upstream, String.valueOf(i));
+                // 快订阅者每个事件都跟上，不会落后
+                while (fast.events.size() <= i) {
+                    Thread.sleep(1);
+                }
+            }
+            stream.onClosed(upstream);
+            release.countDown();
+            fast.closed.get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(10, fast.events.size());
+            try {
+                slow.closed.get(5, TimeUnit.SECONDS);
+                Assert.fail("expected slow subscriber to fall behind");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause().getMessage().contains("fell behind"));
+            }
+            Assert.assertEquals(Collections.singletonList("0"), slow.events);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void test_last_subscriber_cancels_upstream() {
+        StubEventSource upstream = new StubEventSource();
+        MulticastStream stream = MulticastStream.start(listener -> upstream, 8, Runnable::run);
+        EventSource first = stream.subscribe(new Recorder());
+        Recorder secondRecorder = new Recorder();
+        EventSource second = stream.subscribe(secondRecorder);
+        first.cancel();
+        Assert.assertFalse(upstream.cancelled);
+        publish(stream, upstream, "a");
+        Assert.assertEquals(Collections.singletonList("a"), secondRecorder.events);
+        second.cancel();
+        Assert.assertTrue(upstream.cancelled);
+        Assert.assertEquals(0, stream.subscribers());
+        // 上游已取消，之后的订阅者直接收到失败
+        Recorder late = new Recorder();
+        stream.subscribe(late);
+        Assert.assertTrue(late.closed.isCompletedExceptionally());
+    }
+
+    @Test
+    public void test_session_multicast() throws Exception {
+        try (MockOpenAiServer server = MockOpenAiServer.builder()
+                .tokens(8)
+                .latency(LatencyProfile.builder().interTokenDelay(5, TimeUnit.MILLISECONDS).build())
+                .build().start()) {
+            Configuration configuration = new Configuration();
+            configuration.setApiHost(server.url());
+            configuration.setApiKey("k");
+            OpenAiSession session = new DefaultOpenAiSessionFactory(configuration).openSession();
+            ChatCompletionRequest request = new ChatCompletionRequest();
+            request.setStream(true);
+            request.setMessages(Collections.singletonList(Message.builder().content("hello").build()));
+
+            MulticastStream stream = session.chatCompletionsMulticast(request, 64);
+            List<Recorder> recorders = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                Recorder recorder = new Recorder();
+                stream.subscribe(recorder);
+                recorders.add(recorder);
+            }
+            for (Recorder recorder : recorders) {
+                recorder.closed.get(5, TimeUnit.SECONDS);
+                Assert.assertEquals(recorders.get(0).events, recorder.events);
+            }
+            Assert.assertEquals(EventSourcePublisher.DONE, recorders.get(0).events.get(recorders.get(0).events.size() - 1));
+            Assert.assertEquals(1, server.requestCount());
+        }
+    }
+
+    private static void publish(MulticastStream stream, EventSource upstream, String... events) {
+        for (String event : events) {
+            stream.onEvent(upstream, null, null, event);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class Recorder extends EventSourceListener {
+
+        final List<String> events = Collections.synchronizedList(new ArrayList<>());
+        final CompletableFuture<Void> closed = new CompletableFuture<>();
+
+        @Override
+        public void onEvent(@NotNull EventSource eventSource, String id, String type, @NotNull String data) {
+            events.add(data);
+        }
+
+        @Override
+        public void onClosed(@NotNull EventSource eventSource) {
+            closed.complete(null);
+        }
+
+        @Override
+        public void onFailure(@NotNull EventSource eventSource, Throwable t, Response response) {
+            closed.completeExceptionally(null == t ? new IllegalStateException("failed") : t);
+        }
+
+    }
+
+    private static final class StubEventSource implements EventSource {
+
+        volatile boolean cancelled;
+
+        @NotNull
+        @Override
+        public Request request() {
+            return new Request.Builder().url("http://localhost/v1/chat/completions").build();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+    }
+
+}
@@ -0,0 +1,99 @@
+package com.wly.chatgptsdk.stream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+/**
+ * 停止条件测试
+ */
+public class StopConditionTest {
+
+    @Test
+    public void test_json_closed() {
+        StopCondition.Matcher matcher = StopCondition.jsonClosed().matcher();
+        Assert.assertFalse(feed(matcher, "```json\n{\"a\": \"}\\\"{\","));
+        Assert.assertFalse(feed(matcher, " \"b\": [1, {\"c\": 2}]"));
+        Assert.assertTrue(feed(matcher, "}\n```"));
+    }
+
+    @Test
+    public void test_json_closed_leading_text() {
+        // 前导文本中的括号不算 JSON 开头
+        StopCondition.Matcher matcher = StopCondition.jsonClosed().matcher();
+        Assert.assertFalse(feed(matcher, "See [1]: "));
+        Assert.assertFalse(feed(matcher, "{\"a\": 1}"));
+        Assert.assertFalse(feed(matcher, "[2]"));
+    }
+
+    @Test
+    public void test_json_closed_whitespace_and_fence() {
+        StopCondition.Matcher array = StopCondition.jsonClosed().matcher();
+        Assert.assertFalse(feed(array, " \n\t["));
+        Assert.assertFalse(feed(array, "1, \"]\", [2]"));
+        Assert.assertTrue(feed(array, "] trailing"));
+        Assert.assertFalse(feed(array, "{}"));
+
+        // 代码块标记与语言标识跨增量拆开
+        StopCondition.Matcher fenced = StopCondition.jsonClosed().matcher();
+        Assert.assertFalse(feed(fenced, "\n``"));
+        Assert.assertFalse(feed(fenced, "`js"));
+        Assert.assertFalse(feed(fenced, "on\n  {\"a\""));
+        Assert.assertTrue(feed(fenced, ": []}"));
+
+        StopCondition.Matcher bare = StopCondition.jsonClosed().matcher();
+        Assert.assertTrue(feed(bare, "```\n{}"));
+
+        // 不足三个反引号的行内代码、第二个代码块标记都不是 JSON 开头
+        Assert.assertFalse(feed(StopCondition.jsonClosed().matcher(), "`{}`"));
+        Assert.assertFalse(feed(StopCondition.jsonClosed().matcher(), "```\n```json\n{}"));
+    }
+
+    @Test
+    public void test_regex_window() {
+        StopCondition.Matcher matcher = StopCondition.regex(Pattern.compile("\\d{3}"), 3).matcher();
+        Assert.assertFalse(feed(matcher, "a1"));
+        Assert.assertFalse(feed(matcher, "2b"));
+        Assert.assertFalse(feed(matcher, "45"));
+        Assert.assertTrue(feed(matcher, "6"));
+
+        // 查找区域之外的内容对锚点仍然可见
+        StopCondition.Matcher anchored = StopCondition.regex(Pattern.compile("^END"), 3).matcher();
+        Assert.assertFalse(feed(anchored, "the "));
+        Assert.assertFalse(feed(anchored, "END"));
+        StopCondition.Matcher start = StopCondition.regex(Pattern.compile("^END"), 3).matcher();
+        Assert.assertFalse(feed(start, "EN"));
+        Assert.assertTrue(feed(start, "D"));
+
+        // 超过最大长度的匹配不会命中
+        StopCondition.Matcher bounded = StopCondition.regex(Pattern.compile("a.*z"), 4).matcher();
+        Assert.assertFalse(feed(bounded, "abcdef"));
+        Assert.assertFalse(feed(bounded, "z"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_regex_window_invalid() {
+        StopCondition.regex(Pattern.compile("x"), 0);
+    }
+
+    @Test
+    public void test_contains_across_deltas() {
+        StopCondition.Matcher matcher = StopCondition.contains("END").matcher();
+        Assert.assertFalse(feed(matcher, "the E"));
+        Assert.assertFalse(feed(matcher, "N"));
+        Assert.assertTrue(feed(matcher, "D."));
+    }
+
+    @Test
+    public void test_any() {
+        StopCondition.Matcher matcher = StopCondition.any(StopCondition.maxTokens(3), StopCondition.regex(Pattern.compile("\\d{3}"))).matcher();
+        Assert.assertFalse(feed(matcher, "1"));
+        Assert.assertTrue(feed(matcher, "23"));
+    }
+
+    private static boolean feed(StopCondition.Matcher matcher, String delta) {
+        return matcher.test(delta.toCharArray(), 0, delta.length());
+    }
+
+}
@@ -0,0 +1,138 @@
+package com.wly.chatgptsdk.stream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.wly.chatgptsdk.codec.JsonCodec;
+import com.wly.chatgptsdk.domain.chat.ChatChoice;
+import com.wly.chatgptsdk.domain.chat.ChatCompletionRequest;
+import com.wly.chatgptsdk.domain.chat.ChatCompletionResponse;
+import com.wly.chatgptsdk.domain.chat.Message;
+import com.wly.chatgptsdk.domain.other.Usage;
+import com.wly.chatgptsdk.domain.qa.QACompletionRequest;
+import com.wly.chatgptsdk.metrics.InMemoryMetricsRecorder;
+import com.wly.chatgptsdk.mock.LatencyProfile;
+import com.wly.chatgptsdk.mock.MockOpenAiServer;
+import com.wly.chatgptsdk.retry.RetryPolicy;
+import com.wly.chatgptsdk.session.Configuration;
+import com.wly.chatgptsdk.session.OpenAiSession;
+import com.wly.chatgptsdk.session.defaults.DefaultOpenAiSessionFactory;
+import com.wly.chatgptsdk.token.TokenCounter;
+import okhttp3.Response;
+import okhttp3.sse.EventSource;
+import okhttp3.sse.EventSourceListener;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 会话级的客户端停止测试；基于 MockOpenAiServer，同时开启指标与重试，验证停止后的 usage 与指标
+ */
+public class StoppedStreamTest {
+
+    /** 服务端输出 50 个 token，每个间隔 10ms；停止条件在第 3 个 token 命中 */
+    private static final int SERVER_TOKENS = 50;
+    private static final int STOP_TOKENS = 3;
+
+    private MockOpenAiServer server;
+    private InMemoryMetricsRecorder recorder;
+    private OpenAiSession session;
+
+    @Before
+    public void start() throws Exception {
+        server = MockOpenAiServer.builder()
+                .tokens(SERVER_TOKENS)
+                .latency(LatencyProfile.builder().interTokenDelay(10, TimeUnit.MILLISECONDS).build())
+                .build().start();
+        recorder = new InMemoryMetricsRecorder();
+        Configuration configuration = new Configuration();
+        configuration.setApiHost(server.url());
+        configuration.setApiKey("k");
+        configuration.setMetricsRecorder(recorder);
+        configuration.setRetryPolicy(RetryPolicy.builder().build());
+        session = new DefaultOpenAiSessionFactory(configuration).openSession();
+    }
+
+    @After
+    public void close() {
+        server.close();
+    }
+
+    @Test
+    public void test_chat_stop() throws Exception {
+        ChatCompletionRequest request = new ChatCompletionRequest();
+        request.setStream(true);
+        request.setMessages(Collections.singletonList(Message.builder().content("hello").build()));
+        long start = System.nanoTime();
+        ChatCompletionResponse response = session.chatCompletionsAggregated(request, StopCondition.maxTokens(STOP_TOKENS)).get(5, TimeUnit.SECONDS);
+        // 停止后不再等待剩余的 token
+        Assert.assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(SERVER_TOKENS * 10));
+
+        ChatChoice choice = response.getChoices().get(0);
+        Assert.assertEquals(StopCondition.FINISH_REASON, choice.getFinishReason());
+        Usage usage = response.getUsage();
+        TokenCounter tokenCounter = TokenCounter.getInstance();
+        Assert.assertEquals(tokenCounter.count(request), usage.getPromptTokens());
+        Assert.assertEquals(tokenCounter.count(response.getModel(), choice.getMessage().getContent()), usage.getCompletionTokens());
+        Assert.assertEquals(usage.getPromptTokens() + usage.getCompletionTokens(), usage.getTotalTokens());
+
+        assertStoppedCleanly("v1/chat/completions", STOP_TOKENS);
+    }
+
+    @Test
+    public void test_completion_stop() throws Exception {
+        QACompletionRequest request = QACompletionRequest.builder().prompt("hello").stream(true).build();
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+        CompletableFuture<Void> closed = new CompletableFuture<>();
+        session.completions(request, StopCondition.maxTokens(STOP_TOKENS), new EventSourceListener() {
+            @Override
+            public void onEvent(@NotNull EventSource eventSource, String id, String type, @NotNull String data) {
+                events.add(data);
+            }
+
+            @Override
+            public void onClosed(@NotNull EventSource eventSource) {
+                closed.complete(null);
+            }
+
+            @Override
+            public void onFailure(@NotNull EventSource eventSource, Throwable t, Response response) {
+                closed.completeExceptionally(new AssertionError("stream failed", t));
+            }
+        });
+        closed.get(5, TimeUnit.SECONDS);
+
+        // 3 个内容分片、补发的结束分片与 [DONE]
+        Assert.assertEquals(STOP_TOKENS + 2, events.size());
+        Assert.assertEquals(EventSourcePublisher.DONE, events.get(events.size() - 1));
+        JsonNode finalChunk = JsonCodec.objectMapper().readTree(events.get(events.size() - 2));
+        Assert.assertEquals(StopCondition.FINISH_REASON, finalChunk.path("choices").path(0).path("finish_reason").asText());
+        JsonNode usage = finalChunk.path("usage");
+        Assert.assertTrue(usage.path("completion_tokens").asLong() > 0);
+        Assert.assertEquals(usage.path("prompt_tokens").asLong() + usage.path("completion_tokens").asLong(), usage.path("total_tokens").asLong());
+
+        // EventSourceListener 方式按分片计数，补发的结束分片与服务端的结束分片一样计入
+        assertStoppedCleanly("v1/completions", STOP_TOKENS + 1);
+    }
+
+    /**
+     * 客户端停止记为正常结束：没有错误，输出 token 数等于停止时收到的分片数量
+     */
+    private void assertStoppedCleanly(String endpoint, int outputTokens) throws InterruptedException {
+        // 取消引起的上游失败在读取线程上异步到达，等待其被吞掉
+        Thread.sleep(100);
+        InMemoryMetricsRecorder.EndpointSnapshot snapshot = recorder.snapshot().get(endpoint);
+        Assert.assertEquals(Collections.emptyMap(), snapshot.getErrors());
+        Assert.assertEquals(1, snapshot.getOutputTokens().getCount());
+        Assert.assertEquals(outputTokens, snapshot.getOutputTokens().getMax());
+        Assert.assertEquals(1, snapshot.getTokensPerSecond().getCount());
+        Assert.assertEquals(1, server.requestCount());
+    }
+
+}
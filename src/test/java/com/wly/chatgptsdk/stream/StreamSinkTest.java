@@ -0,0 +1,355 @@
+package com.wly.chatgptsdk.stream;
+
+import com.wly.chatgptsdk.domain.chat.ChatCompletionRequest;
+import com.wly.chatgptsdk.domain.chat.ChatCompletionResponse;
+import com.wly.chatgptsdk.domain.chat.Message;
+import com.wly.chatgptsdk.mock.MockOpenAiServer;
+import com.wly.chatgptsdk.session.Configuration;
+import com.wly.chatgptsdk.session.OpenAiSession;
+import com.wly.chatgptsdk.session.defaults.DefaultOpenAiSessionFactory;
+import okhttp3.Request;
+import okhttp3.sse.EventSource;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 流式写入测试
+ */
+public class StreamSinkTest {
+
+    @Test
+    public void test_utf8_split_surrogate() throws Exception {
+        String text = "héllo 世界 😀!";
+        char[] chars = text.toCharArray();
+        int split = text.indexOf('\ud83d') + 1;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamSink sink = StreamSink.outputStream(out, FlushPolicy.EVERY_DELTA);
+        sink.onDelta(null, 0, null, chars, 0, split, null);
+        sink.onDelta(null, 1, null, chars, 0, chars.length, null);
+        sink.onDelta(null, 0, null, chars, split, chars.length - split, null);
+        sink.onClosed(null);
+
+        Assert.assertArrayEquals(text.getBytes(StandardCharsets.UTF_8), out.toByteArray());
+        Assert.assertEquals(chars.length, sink.future().get().longValue());
+    }
+
+    @Test
+    public void test_writer() throws Exception {
+        StringWriter writer = new StringWriter();
+        StreamSink sink = StreamSink.writer(writer, FlushPolicy.ON_CLOSE);
+        delta(sink, 0, "你好");
+        delta(sink, 1, "ignored");
+        delta(sink, 0, ", world");
+        sink.onClosed(null);
+        // 完成之后的增量不再写入
+        delta(sink, 0, "late");
+
+        Assert.assertEquals("你好, world", writer.toString());
+        Assert.assertEquals(9, sink.future().get().longValue());
+    }
+
+    @Test
+    public void test_channel() throws Exception {
+        // 超过 8KB 缓冲区，覆盖写满后输出的路径
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 20_000) {
+            text.append("世界 hello ");
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamSink sink = StreamSink.channel(Channels.newChannel(out), FlushPolicy.everyChars(4096));
+        for (int i = 0; i < text.length(); i += 7) {
+            delta(sink, 0, text.substring(i, Math.min(text.length(), i + 7)));
+        }
+        sink.onClosed(null);
+
+        Assert.assertEquals(text.toString(), new String(out.toByteArray(), StandardCharsets.UTF_8));
+        Assert.assertEquals(text.length(), sink.future().get().longValue());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_channel_non_blocking() throws Exception {
+        try (SocketChannel channel = SocketChannel.open()) {
+            channel.configureBlocking(false);
+            StreamSink.channel(channel, FlushPolicy.EVERY_DELTA);
+        }
+    }
+
+    @Test
+    public void test_flush_policy() {
+        FlushPolicy everyChars = FlushPolicy.everyChars(10);
+        Assert.assertFalse(everyChars.shouldFlush(0, Long.MAX_VALUE));
+        Assert.assertFalse(everyChars.shouldFlush(9, TimeUnit.HOURS.toNanos(1)));
+        Assert.assertTrue(everyChars.shouldFlush(10, 0));
+
+        FlushPolicy interval = FlushPolicy.interval(50, TimeUnit.MILLISECONDS);
+        Assert.assertFalse(interval.shouldFlush(1_000_000, TimeUnit.MILLISECONDS.toNanos(49)));
+        Assert.assertTrue(interval.shouldFlush(1, TimeUnit.MILLISECONDS.toNanos(50)));
+        Assert.assertFalse(interval.shouldFlush(0, TimeUnit.MILLISECONDS.toNanos(50)));
+
+        FlushPolicy either = FlushPolicy.of(10, 50, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(either.shouldFlush(10, 0));
+        Assert.assertTrue(either.shouldFlush(1, TimeUnit.MILLISECONDS.toNanos(50)));
+        Assert.assertFalse(either.shouldFlush(9, TimeUnit.MILLISECONDS.toNanos(49)));
+
+        Assert.assertTrue(FlushPolicy.EVERY_DELTA.shouldFlush(1, 0));
+        Assert.assertFalse(FlushPolicy.ON_CLOSE.shouldFlush(Integer.MAX_VALUE - 1, Long.MAX_VALUE - 1));
+
+        try {
+            FlushPolicy.everyChars(0);
+            Assert.fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+        try {
+            FlushPolicy.interval(-1, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    @Test
+    public void test_flush_every_chars() throws Exception {
+        FlushCountingWriter writer = new FlushCountingWriter();
+        StreamSink sink = StreamSink.writer(writer, FlushPolicy.everyChars(5));
+        delta(sink, 0, "abc");
+        Assert.assertEquals(0, writer.flushes);
+        delta(sink, 0, "de");
+        Assert.assertEquals(1, writer.flushes);
+        delta(sink, 0, "fgh");
+        Assert.assertEquals(1, writer.flushes);
+        sink.onClosed(null);
+        Assert.assertEquals(2, writer.flushes);
+        Assert.assertEquals("abcdefgh", writer.toString());
+    }
+
+    @Test
+    public void test_flush_interval() throws Exception {
+        FlushCountingWriter writer = new FlushCountingWriter();
+        StreamSink sink = StreamSink.writer(writer, FlushPolicy.interval(50, TimeUnit.MILLISECONDS));
+        delta(sink, 0, "a");
+        Assert.assertEquals(0, writer.flushes);
+        Thread.sleep(80);
+        delta(sink, 0, "b");
+        Assert.assertEquals(1, writer.flushes);
+        delta(sink, 0, "c");
+        Assert.assertEquals(1, writer.flushes);
+        sink.onClosed(null);
+        Assert.assertEquals(2, writer.flushes);
+    }
+
+    @Test
+    public void test_cancel_cancels_source() {
+        StreamSink sink = StreamSink.writer(new StringWriter(), FlushPolicy.EVERY_DELTA);
+        StubEventSource source = new StubEventSource();
+        sink.bind(source);
+        Assert.assertFalse(source.cancelled);
+        sink.future().cancel(true);
+        Assert.assertTrue(source.cancelled);
+
+        // 绑定之前已取消
+        StreamSink cancelled = StreamSink.writer(new StringWriter(), FlushPolicy.EVERY_DELTA);
+        cancelled.future().cancel(true);
+        StubEventSource late = new StubEventSource();
+        cancelled.bind(late);
+        Assert.assertTrue(late.cancelled);
+    }
+
+    @Test
+    public void test_session_writer() throws Exception {
+        try (MockOpenAiServer server = MockOpenAiServer.builder().tokens(16).build().start()) {
+            OpenAiSession session = session(server.url());
+            String expected = session.chatCompletionsAggregated(chatRequest()).get(10, TimeUnit.SECONDS)
+                    .getChoices().get(0).getMessage().getContent();
+
+            StringWriter writer = new StringWriter();
+            long written = session.chatCompletions(chatRequest(), writer, FlushPolicy.EVERY_DELTA).get(10, TimeUnit.SECONDS);
+            Assert.assertEquals(expected, writer.toString());
+            Assert.assertEquals(expected.length(), written);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            session.chatCompletions(chatRequest(), Channels.newChannel(out), FlushPolicy.ON_CLOSE).get(10, TimeUnit.SECONDS);
+            Assert.assertEquals(expected, new String(out.toByteArray(), StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * 写入阻塞时读取线程暂停，上游写满 TCP 窗口后停止发送；取消 future 时断开连接
+     */
+    @Test
+    public void test_blocked_sink_stops_upstream() throws Exception {
+        try (EndlessStreamServer server = new EndlessStreamServer()) {
+            CountDownLatch blocked = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            AtomicInteger writes = new AtomicInteger();
+            OutputStream out = new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[]{(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(@NotNull byte[] b, int off, int len) throws IOException {
+                    writes.incrementAndGet();
+                    blocked.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+            };
+
+            CompletableFuture<Long> future = session(server.url()).chatCompletions(chatRequest(), out, FlushPolicy.EVERY_DELTA);
+            Assert.assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+            // 等上游发送量稳定下来
+            long sent = server.sent.get();
+            for (int i = 0; i < 50; i++) {
+                Thread.sleep(100);
+                long now = server.sent.get();
+                if (now == sent) break;
+                sent = now;
+            }
+            Assert.assertEquals(sent, server.sent.get());
+            Assert.assertTrue("upstream kept sending: " + sent, sent < EndlessStreamServer.LIMIT);
+            Assert.assertEquals(1, writes.get());
+            Assert.assertFalse(future.isDone());
+
+            future.cancel(true);
+            release.countDown();
+            Assert.assertTrue(server.disconnected.await(10, TimeUnit.SECONDS));
+            Assert.assertTrue(server.sent.get() < EndlessStreamServer.LIMIT);
+        }
+    }
+
+    private static void delta(StreamSink sink, int index, String content) throws IOException {
+        char[] chars = content.toCharArray();
+        sink.onDelta(null, index, null, chars, 0, chars.length, null);
+    }
+
+    private static OpenAiSession session(String apiHost) {
+        Configuration configuration = new Configuration();
+        configuration.setApiHost(apiHost);
+        configuration.setApiKey("k");
+        return new DefaultOpenAiSessionFactory(configuration).openSession();
+    }
+
+    private static ChatCompletionRequest chatRequest() {
+        ChatCompletionRequest request = new ChatCompletionRequest();
+        request.setStream(true);
+        request.setMessages(Collections.singletonList(Message.builder().content("hello").build()));
+        return request;
+    }
+
+    private static final class FlushCountingWriter extends StringWriter {
+
+        private int flushes;
+
+        @Override
+        public void flush() {
+            flushes++;
+        }
+
+    }
+
+    private static final class StubEventSource implements EventSource {
+
+        private volatile boolean cancelled;
+
+        @NotNull
+        @Override
+        public Request request() {
+            return new Request.Builder().url("http://localhost/v1/chat/completions").build();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+    }
+
+    /**
+     * 不停发送分片的 SSE 服务；记录已写入套接字的字节数，发送量达到上限或连接断开时停止
+     */
+    private static final class EndlessStreamServer implements AutoCloseable {
+
+        static final long LIMIT = 256L * 1024 * 1024;
+
+        final AtomicLong sent = new AtomicLong();
+        final CountDownLatch disconnected = new CountDownLatch(1);
+
+        private final ServerSocket serverSocket;
+        private final Thread thread;
+
+        EndlessStreamServer() throws IOException {
+            serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+            thread = new Thread(this::serve, "endless-sse");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        String url() {
+            return "http://" + serverSocket.getInetAddress().getHostAddress() + ":" + serverSocket.getLocalPort() + "/";
+        }
+
+        private void serve() {
+            try (Socket socket = serverSocket.accept()) {
+                socket.setSendBufferSize(64 * 1024);
+                readHeaders(socket.getInputStream());
+                OutputStream out = socket.getOutputStream();
+                out.write(("HTTP/1.1 200 OK\r\nContent-Type: text/event-stream\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                byte[] chunk = "data: {\"id\":\"1\",\"choices\":[{\"index\":0,\"delta\":{\"content\":\"0123456789abcdef\"}}]}\n\n".getBytes(StandardCharsets.US_ASCII);
+                while (sent.get() < LIMIT) {
+                    out.write(chunk);
+                    sent.addAndGet(chunk.length);
+                }
+            } catch (IOException ignored) {
+                // 客户端断开
+            } finally {
+                disconnected.countDown();
+            }
+        }
+
+        /**
+         * 读到请求头结束；请求体很小，留在接收缓冲区中即可
+         */
+        private static void readHeaders(InputStream in) throws IOException {
+            int matched = 0;
+            byte[] end = {'\r', '\n', '\r', '\n'};
+            while (matched < end.length) {
+                int b = in.read();
+                if (b < 0) throw new IOException("unexpected end of request");
+                matched = b == end[matched] ? matched + 1 : (b == '\r' ? 1 : 0);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+            thread.interrupt();
+        }
+
+    }
+
+}
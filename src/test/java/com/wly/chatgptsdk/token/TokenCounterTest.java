@@ -0,0 +1,78 @@
+package com.wly.chatgptsdk.token;
+
+import com.wly.chatgptsdk.common.Constants;
+import com.wly.chatgptsdk.domain.chat.ChatCompletionRequest;
+import com.wly.chatgptsdk.domain.chat.Message;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * token 计数测试；期望值取自 OpenAI cookbook 的 How to count tokens with tiktoken，与接口返回的 prompt_tokens 一致
+ */
+public class TokenCounterTest {
+
+    private static final List<Message> EXAMPLE_MESSAGES = Arrays.asList(
+            message(Constants.Role.SYSTEM, null, "You are a helpful, pattern-following assistant that translates corporate jargon into plain English."),
+            message(Constants.Role.SYSTEM, "example_user", "New synergies will help drive top-line growth."),
+            message(Constants.Role.SYSTEM, "example_assistant", "Things working well together will increase revenue."),
+            message(Constants.Role.SYSTEM, "example_user", "Let's circle back when we have more bandwidth to touch base on opportunities for increased leverage."),
+            message(Constants.Role.SYSTEM, "example_assistant", "Let's talk later when we're less busy about how to do better."),
+            message(Constants.Role.USER, null, "This late pivot means we don't have time to boil the ocean for the client deliverable."));
+
+    @Test
+    public void test_cookbook_example() {
+        TokenCounter counter = new TokenCounter(64);
+        Assert.assertEquals(129, counter.count(request("gpt-3.5-turbo-0613")));
+        Assert.assertEquals(129, counter.count(request("gpt-4")));
+        // 第二次计数命中缓存，结果不变
+        Assert.assertEquals(129, counter.count(request("gpt-4")));
+    }
+
+    @Test
+    public void test_gpt_3_5_turbo_0301() {
+        // 每条消息 4 个 token，name 替代 role 时少 1 个
+        Assert.assertEquals(127, new TokenCounter(64).count(request("gpt-3.5-turbo-0301")));
+    }
+
+    @Test
+    public void test_message_overhead() {
+        TokenCounter counter = new TokenCounter(64);
+        String model = "gpt-4";
+        int content = counter.count(model, "hello world");
+        int role = counter.count(model, "user");
+        Message plain = message(Constants.Role.USER, null, "hello world");
+        Assert.assertEquals(3 + role + content, counter.count(model, plain));
+        Message named = message(Constants.Role.USER, "alice", "hello world");
+        Assert.assertEquals(3 + role + content + counter.count(model, "alice") + 1, counter.count(model, named));
+        // 回复前缀
+        Assert.assertEquals(TokenCounter.TOKENS_REPLY_PRIMING, counter.count(model, Collections.<Message>emptyList()));
+    }
+
+    @Test
+    public void test_cache_eviction() {
+        // 单槽位缓存：交替计数两段文本，每次都被对方覆盖，结果依然正确
+        TokenCounter counter = new TokenCounter(1);
+        Message a = message(Constants.Role.USER, null, "hello world");
+        Message b = message(Constants.Role.USER, null, "a somewhat longer piece of text");
+        int first = counter.count("gpt-4", a);
+        int second = counter.count("gpt-4", b);
+        Assert.assertNotEquals(first, second);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(first, counter.count("gpt-4", a));
+            Assert.assertEquals(second, counter.count("gpt-4", b));
+        }
+    }
+
+    private static ChatCompletionRequest request(String model) {
+        return ChatCompletionRequest.builder().model(model).messages(EXAMPLE_MESSAGES).build();
+    }
+
+    private static Message message(Constants.Role role, String name, String content) {
+        return Message.builder().role(role).name(name).content(content).build();
+    }
+
+}